@@ -0,0 +1,276 @@
+/*
+ JournalCacheControllerTest.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.event.cache;
+
+import android.test.AndroidTestCase;
+
+import org.deviceconnect.android.event.Event;
+import org.deviceconnect.android.event.EventError;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+/**
+ * {@link JournalCacheController}のテスト.
+ * <p>
+ * ジャーナルファイルを直接切り詰めたり書き換えたりして、再生時の復元を確認する。
+ * </p>
+ *
+ * @author NTT DOCOMO, INC.
+ */
+public class JournalCacheControllerTest extends AndroidTestCase {
+
+    /** ジャーナルファイル名. */
+    private static final String JOURNAL_FILE_NAME = "org_deviceconnect_android_event_cache.journal";
+
+    /** コンパクション中の一時ファイル名. */
+    private static final String TEMP_FILE_NAME = JOURNAL_FILE_NAME + ".tmp";
+
+    /** {@link FileCacheController}のキャッシュファイル名. */
+    private static final String LEGACY_CACHE_FILE_NAME = "org_deviceconnect_android_event_cache.dat";
+
+    /** テスト用のサービスID. */
+    private static final String SERVICE_ID = "test_service_id";
+
+    /** テスト用のプロファイル名. */
+    private static final String PROFILE = "deviceorientation";
+
+    /** テスト用の属性名. */
+    private static final String ATTRIBUTE = "ondeviceorientation";
+
+    /** テスト用のレシーバー名. */
+    private static final String RECEIVER = "org.deviceconnect.android.test";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteFiles();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteFiles();
+        super.tearDown();
+    }
+
+    /**
+     * 追加・削除したイベントがジャーナルの再生で復元されることを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・削除したイベント、削除したセッションキーのイベントが復元されないこと。
+     * ・上書きしたアクセストークンが復元されること。
+     * </pre>
+     */
+    public void testReplay() {
+        JournalCacheController controller = new JournalCacheController(getContext());
+        assertEquals(EventError.NONE, controller.addEvent(createEvent("session1", "token1")));
+        assertEquals(EventError.NONE, controller.addEvent(createEvent("session2", "token2")));
+        assertEquals(EventError.NONE, controller.addEvent(createEvent("session3", "token3")));
+        assertEquals(EventError.NONE, controller.addEvent(createEvent("session1", "token4")));
+        assertEquals(EventError.NONE, controller.removeEvent(createEvent("session2", null)));
+        controller.removeEvents("session3");
+        controller.flush();
+
+        JournalCacheController replayed = new JournalCacheController(getContext());
+        List<Event> events = getEvents(replayed);
+        assertEquals(1, events.size());
+        assertEquals("session1", events.get(0).getSessionKey());
+        assertEquals("token4", events.get(0).getAccessToken());
+        assertNotNull(events.get(0).getCreateDate());
+    }
+
+    /**
+     * 書き込み途中で途切れた末尾のレコードが破棄されることを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・途切れたレコードより前のイベントのみが復元されること。
+     * ・ジャーナルファイルが正常なレコードの終端まで切り詰められること。
+     * ・切り詰めた後に追記したイベントが復元されること。
+     * </pre>
+     *
+     * @throws IOException ジャーナルファイルの操作に失敗した場合
+     */
+    public void testTornRecordIsDiscarded() throws IOException {
+        JournalCacheController controller = new JournalCacheController(getContext());
+        controller.addEvent(createEvent("session1", "token1"));
+        long validLength = getJournal().length();
+        controller.addEvent(createEvent("session2", "token2"));
+        controller.flush();
+        setLength(getJournal(), getJournal().length() - 3);
+
+        JournalCacheController replayed = new JournalCacheController(getContext());
+        List<Event> events = getEvents(replayed);
+        assertEquals(1, events.size());
+        assertEquals("session1", events.get(0).getSessionKey());
+        assertEquals(validLength, getJournal().length());
+
+        replayed.addEvent(createEvent("session3", "token3"));
+        replayed.flush();
+        assertEquals(2, getEvents(new JournalCacheController(getContext())).size());
+    }
+
+    /**
+     * CRCが一致しないレコード以降が破棄されることを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・内容が書き換えられたレコードより前のイベントのみが復元されること。
+     * ・ジャーナルファイルが正常なレコードの終端まで切り詰められること。
+     * </pre>
+     *
+     * @throws IOException ジャーナルファイルの操作に失敗した場合
+     */
+    public void testCorruptedRecordIsDiscarded() throws IOException {
+        JournalCacheController controller = new JournalCacheController(getContext());
+        controller.addEvent(createEvent("session1", "token1"));
+        long validLength = getJournal().length();
+        controller.addEvent(createEvent("session2", "token2"));
+        controller.flush();
+
+        // 2つ目のレコードの長さ(int)の直後、内容の先頭バイトを書き換える
+        RandomAccessFile raf = new RandomAccessFile(getJournal(), "rw");
+        try {
+            raf.seek(validLength + 4);
+            int b = raf.read();
+            raf.seek(validLength + 4);
+            raf.write(b ^ 0xFF);
+        } finally {
+            raf.close();
+        }
+
+        JournalCacheController replayed = new JournalCacheController(getContext());
+        List<Event> events = getEvents(replayed);
+        assertEquals(1, events.size());
+        assertEquals("session1", events.get(0).getSessionKey());
+        assertEquals(validLength, getJournal().length());
+    }
+
+    /**
+     * 一定数のレコードを追記するとジャーナルが現在の内容のみに置き換えられることを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・コンパクション後のジャーナルが登録中のイベントの分の長さになること。
+     * ・コンパクション後のジャーナルから同じイベントが復元されること。
+     * ・全削除でジャーナルが空になること。
+     * </pre>
+     */
+    public void testCompaction() {
+        JournalCacheController controller = new JournalCacheController(getContext(), 4);
+        controller.addEvent(createEvent("session1", "token1"));
+        controller.addEvent(createEvent("session2", "token2"));
+        long twoRecords = getJournal().length();
+        controller.removeEvent(createEvent("session2", null));
+        assertTrue(getJournal().length() > twoRecords);
+
+        // 4レコード目の追記でコンパクションされる
+        controller.addEvent(createEvent("session2", "token5"));
+        assertEquals(twoRecords, getJournal().length());
+        assertFalse(getContext().getFileStreamPath(TEMP_FILE_NAME).exists());
+
+        JournalCacheController replayed = new JournalCacheController(getContext(), 4);
+        List<Event> events = getEvents(replayed);
+        assertEquals(2, events.size());
+        Event event = replayed.getEvent(SERVICE_ID, PROFILE, null, ATTRIBUTE, "session2", RECEIVER);
+        assertNotNull(event);
+        assertEquals("token5", event.getAccessToken());
+
+        replayed.removeAll();
+        assertEquals(0, getJournal().length());
+        assertEquals(0, getEvents(new JournalCacheController(getContext(), 4)).size());
+    }
+
+    /**
+     * {@link FileCacheController}のキャッシュファイルからジャーナルに移行されることを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・キャッシュファイルのイベントが復元されること。
+     * ・移行後にキャッシュファイルが削除され、ジャーナルが作成されること。
+     * ・次回以降はジャーナルからイベントが復元されること。
+     * </pre>
+     */
+    public void testMigrateLegacyCache() {
+        FileCacheController legacy = new FileCacheController(getContext(), true);
+        legacy.addEvent(createEvent("session1", "token1"));
+        legacy.addEvent(createEvent("session2", "token2"));
+        assertTrue(getContext().getFileStreamPath(LEGACY_CACHE_FILE_NAME).exists());
+        assertFalse(getJournal().exists());
+
+        JournalCacheController migrated = new JournalCacheController(getContext());
+        assertEquals(2, getEvents(migrated).size());
+        assertFalse(getContext().getFileStreamPath(LEGACY_CACHE_FILE_NAME).exists());
+        assertTrue(getJournal().length() > 0);
+
+        migrated.removeEvent(createEvent("session1", null));
+        migrated.flush();
+        List<Event> events = getEvents(new JournalCacheController(getContext()));
+        assertEquals(1, events.size());
+        assertEquals("token2", events.get(0).getAccessToken());
+    }
+
+    /**
+     * テスト用のイベントを作成する.
+     *
+     * @param sessionKey セッションキー
+     * @param accessToken アクセストークン
+     * @return イベント
+     */
+    private static Event createEvent(final String sessionKey, final String accessToken) {
+        Event event = new Event();
+        event.setServiceId(SERVICE_ID);
+        event.setProfile(PROFILE);
+        event.setAttribute(ATTRIBUTE);
+        event.setSessionKey(sessionKey);
+        event.setAccessToken(accessToken);
+        event.setReceiverName(RECEIVER);
+        return event;
+    }
+
+    /**
+     * テスト用のイベントの種類に登録されているイベント一覧を取得する.
+     *
+     * @param controller キャッシュコントローラー
+     * @return イベント一覧
+     */
+    private static List<Event> getEvents(final JournalCacheController controller) {
+        return controller.getEvents(SERVICE_ID, PROFILE, null, ATTRIBUTE);
+    }
+
+    /**
+     * ジャーナルファイルを取得する.
+     *
+     * @return ジャーナルファイル
+     */
+    private File getJournal() {
+        return getContext().getFileStreamPath(JOURNAL_FILE_NAME);
+    }
+
+    /**
+     * ファイルを指定された長さに切り詰める.
+     *
+     * @param file ファイル
+     * @param length 長さ
+     * @throws IOException ファイルの操作に失敗した場合
+     */
+    private static void setLength(final File file, final long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * テストで作成したファイルを削除する.
+     */
+    private void deleteFiles() {
+        getContext().deleteFile(JOURNAL_FILE_NAME);
+        getContext().deleteFile(TEMP_FILE_NAME);
+        getContext().deleteFile(LEGACY_CACHE_FILE_NAME);
+    }
+}
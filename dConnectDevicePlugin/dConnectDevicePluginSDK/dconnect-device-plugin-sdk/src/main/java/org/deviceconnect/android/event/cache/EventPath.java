@@ -0,0 +1,164 @@
+/*
+ EventPath.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.event.cache;
+
+import org.deviceconnect.android.event.Event;
+
+/**
+ * イベントの種類(プロファイル、インターフェース、属性の組)を表すキー.
+ * <p>
+ * 同じ組であれば異なるインスタンスでも等しいキーとして扱う。
+ * イベント送信時の検索でインスタンスを生成しないように、登録中のキーは
+ * キャッシュ毎に管理する。
+ * インターフェース名と属性名のnullと空文字は同じものとして扱う。
+ * </p>
+ *
+ * @author NTT DOCOMO, INC.
+ */
+public final class EventPath {
+
+    /**
+     * 空のインターフェース名・属性名を表す値.
+     */
+    private static final String EMPTY = "";
+
+    /**
+     * プロファイル名.
+     */
+    private final String mProfile;
+
+    /**
+     * インターフェース名. 無い場合は空文字.
+     */
+    private final String mInterface;
+
+    /**
+     * 属性名. 無い場合は空文字.
+     */
+    private final String mAttribute;
+
+    /**
+     * ハッシュ値.
+     */
+    private final int mHashCode;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param profile プロファイル名
+     * @param inter インターフェース名
+     * @param attribute 属性名
+     */
+    private EventPath(final String profile, final String inter, final String attribute) {
+        mProfile = profile;
+        mInterface = inter;
+        mAttribute = attribute;
+        int hash = profile.hashCode();
+        hash = 31 * hash + inter.hashCode();
+        hash = 31 * hash + attribute.hashCode();
+        mHashCode = hash;
+    }
+
+    /**
+     * 指定された組のキーを生成する.
+     *
+     * @param profile プロファイル名
+     * @param inter インターフェース名
+     * @param attribute 属性名
+     * @return キー
+     */
+    public static EventPath of(final String profile, final String inter, final String attribute) {
+        if (profile == null) {
+            throw new IllegalArgumentException("profile is null.");
+        }
+        return new EventPath(profile, normalize(inter), normalize(attribute));
+    }
+
+    /**
+     * イベントデータのキーを生成する.
+     *
+     * @param event イベントデータ
+     * @return キー
+     */
+    public static EventPath of(final Event event) {
+        return of(event.getProfile(), event.getInterface(), event.getAttribute());
+    }
+
+    /**
+     * インターフェース名・属性名を正規化する.
+     *
+     * @param name 名前
+     * @return nullの場合は空文字、それ以外は引数の値
+     */
+    static String normalize(final String name) {
+        if (name == null) {
+            return EMPTY;
+        }
+        return name;
+    }
+
+    /**
+     * プロファイル名を取得する.
+     *
+     * @return プロファイル名
+     */
+    public String getProfile() {
+        return mProfile;
+    }
+
+    /**
+     * インターフェース名を取得する.
+     *
+     * @return インターフェース名。無い場合はnull
+     */
+    public String getInterface() {
+        return mInterface.length() == 0 ? null : mInterface;
+    }
+
+    /**
+     * 属性名を取得する.
+     *
+     * @return 属性名。無い場合はnull
+     */
+    public String getAttribute() {
+        return mAttribute.length() == 0 ? null : mAttribute;
+    }
+
+    @Override
+    public int hashCode() {
+        return mHashCode;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof EventPath)) {
+            return false;
+        }
+        EventPath other = (EventPath) o;
+        return mHashCode == other.mHashCode
+                && mProfile.equals(other.mProfile)
+                && mInterface.equals(other.mInterface)
+                && mAttribute.equals(other.mAttribute);
+    }
+
+    /**
+     * 文字列表現を取得する.
+     * <p>
+     * プロファイル名、インターフェース名、属性名を'/'で区切った文字列を返す。
+     * 異なる組が同じ文字列になることはない。
+     * </p>
+     *
+     * @return 文字列表現
+     */
+    @Override
+    public String toString() {
+        return mProfile + "/" + mInterface + "/" + mAttribute;
+    }
+}
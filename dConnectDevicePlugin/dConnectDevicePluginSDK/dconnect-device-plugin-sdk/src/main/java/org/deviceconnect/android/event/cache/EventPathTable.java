@@ -0,0 +1,139 @@
+/*
+ EventPathTable.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.event.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * イベントが登録されている{@link EventPath}の一覧.
+ * <p>
+ * イベント送信時に文字列の連結やインスタンスの生成を行わずにキーを検索できるようにする。
+ * キーは登録中のイベント一覧の数を参照数として保持し、参照数が0になった時点で削除する。
+ * そのため、クライアントが指定した任意の組が登録・解除後も残り続けることはない。
+ * </p>
+ * <p>
+ * {@link #find(String, String, String)}はロックを取得せずに呼び出してよい。
+ * それ以外はキャッシュの更新用のロックを取得してから呼び出すこと。
+ * </p>
+ *
+ * @author NTT DOCOMO, INC.
+ */
+final class EventPathTable {
+
+    /**
+     * 登録中のキー. プロファイル名、インターフェース名、属性名の順に検索する。
+     */
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, ConcurrentHashMap<String, EventPath>>>
+            mPaths = new ConcurrentHashMap<>();
+
+    /**
+     * キー毎の参照数.
+     */
+    private final Map<EventPath, Integer> mRefCounts = new HashMap<>();
+
+    /**
+     * 登録中のキーを検索する.
+     * <p>
+     * 見つからない場合は、その組のイベントが登録されていないことを意味する。
+     * </p>
+     *
+     * @param profile プロファイル名
+     * @param inter インターフェース名
+     * @param attribute 属性名
+     * @return キー。登録されていない場合はnull
+     */
+    EventPath find(final String profile, final String inter, final String attribute) {
+        if (profile == null) {
+            return null;
+        }
+        ConcurrentHashMap<String, ConcurrentHashMap<String, EventPath>> inters = mPaths.get(profile);
+        if (inters == null) {
+            return null;
+        }
+        ConcurrentHashMap<String, EventPath> attrs = inters.get(EventPath.normalize(inter));
+        if (attrs == null) {
+            return null;
+        }
+        return attrs.get(EventPath.normalize(attribute));
+    }
+
+    /**
+     * キーの参照数を1つ増やし、登録中のキーを取得する.
+     * <p>
+     * 未登録の場合は引数のキーを登録する。
+     * </p>
+     *
+     * @param path キー
+     * @return 登録中のキー
+     */
+    EventPath acquire(final EventPath path) {
+        Integer count = mRefCounts.get(path);
+        if (count != null) {
+            mRefCounts.put(path, count + 1);
+            return find(path.getProfile(), path.getInterface(), path.getAttribute());
+        }
+        mRefCounts.put(path, 1);
+
+        ConcurrentHashMap<String, ConcurrentHashMap<String, EventPath>> inters = mPaths.get(path.getProfile());
+        if (inters == null) {
+            inters = new ConcurrentHashMap<>();
+            mPaths.put(path.getProfile(), inters);
+        }
+        String inter = EventPath.normalize(path.getInterface());
+        ConcurrentHashMap<String, EventPath> attrs = inters.get(inter);
+        if (attrs == null) {
+            attrs = new ConcurrentHashMap<>();
+            inters.put(inter, attrs);
+        }
+        attrs.put(EventPath.normalize(path.getAttribute()), path);
+        return path;
+    }
+
+    /**
+     * キーの参照数を1つ減らし、0になった場合は削除する.
+     *
+     * @param path キー
+     */
+    void release(final EventPath path) {
+        Integer count = mRefCounts.get(path);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            mRefCounts.put(path, count - 1);
+            return;
+        }
+        mRefCounts.remove(path);
+
+        ConcurrentHashMap<String, ConcurrentHashMap<String, EventPath>> inters = mPaths.get(path.getProfile());
+        if (inters == null) {
+            return;
+        }
+        String inter = EventPath.normalize(path.getInterface());
+        ConcurrentHashMap<String, EventPath> attrs = inters.get(inter);
+        if (attrs == null) {
+            return;
+        }
+        attrs.remove(EventPath.normalize(path.getAttribute()));
+        if (attrs.isEmpty()) {
+            inters.remove(inter);
+            if (inters.isEmpty()) {
+                mPaths.remove(path.getProfile());
+            }
+        }
+    }
+
+    /**
+     * 全てのキーを削除する.
+     */
+    void clear() {
+        mPaths.clear();
+        mRefCounts.clear();
+    }
+}
@@ -105,6 +105,11 @@ public class FileCacheController extends MemoryCacheController {
 
     /**
      * データをファイルからロードする.
+     * <p>
+     * ファイルにはサービスID毎に{@link EventPath#toString()}をキーとしたイベント一覧を保存している。
+     * 以前の形式で保存されたファイルもそのまま読み込めるように、イベントの種類を表すキーは
+     * ファイルのキーではなく各イベントデータから求め直す({@link #setCache(Map)})。
+     * </p>
      */
     @SuppressWarnings("unchecked")
     private void load() {
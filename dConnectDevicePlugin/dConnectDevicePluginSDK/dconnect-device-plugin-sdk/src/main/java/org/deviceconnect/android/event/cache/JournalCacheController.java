@@ -0,0 +1,604 @@
+/*
+ JournalCacheController.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.event.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import org.deviceconnect.android.event.Event;
+import org.deviceconnect.android.event.EventError;
+
+import android.content.Context;
+
+/**
+ * イベントデータの変更を追記型のジャーナルファイルに保存し、キャッシュの操作機能を提供する.
+ * <p>
+ * {@link FileCacheController}はflushの度にキャッシュ全体を書き出すが、このクラスは
+ * イベントの追加・削除毎に変更内容のみを1レコードとしてファイルの末尾に追記する。
+ * 起動時にはジャーナルを先頭から再生してキャッシュを復元する。
+ * 書き込み途中で終了したなどの理由で末尾のレコードが壊れている場合は、そのレコード以降を破棄する。
+ * </p>
+ * <p>
+ * 一定数のレコードを追記する毎に、現在のキャッシュの内容のみを書き出したジャーナルに置き換える(コンパクション)。
+ * また、ジャーナルファイルが存在せず{@link FileCacheController}のキャッシュファイルが存在する場合は、
+ * その内容を読み込んでジャーナルに移行する。
+ * </p>
+ *
+ * @author NTT DOCOMO, INC.
+ */
+public class JournalCacheController extends MemoryCacheController {
+
+    /**
+     * ジャーナルファイル名.
+     */
+    private static final String JOURNAL_FILE_NAME = "org_deviceconnect_android_event_cache.journal";
+
+    /**
+     * コンパクション中の一時ファイル名.
+     */
+    private static final String TEMP_FILE_NAME = JOURNAL_FILE_NAME + ".tmp";
+
+    /**
+     * {@link FileCacheController}のキャッシュファイル名.
+     */
+    private static final String LEGACY_CACHE_FILE_NAME = "org_deviceconnect_android_event_cache.dat";
+
+    /**
+     * コンパクションを行うレコード数のデフォルト値.
+     */
+    private static final int DEFAULT_COMPACTION_THRESHOLD = 1000;
+
+    /**
+     * 1レコードの最大サイズ. これを超える長さのレコードは壊れているものとみなす。
+     */
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+
+    /** レコード種別: イベントの追加. */
+    private static final byte TYPE_ADD = 1;
+
+    /** レコード種別: イベントの削除. */
+    private static final byte TYPE_REMOVE = 2;
+
+    /** レコード種別: セッションキーに紐づくイベントの削除. */
+    private static final byte TYPE_REMOVE_SESSION = 3;
+
+    /** レコード種別: 全イベントの削除. */
+    private static final byte TYPE_REMOVE_ALL = 4;
+
+    /**
+     * ロガー.
+     */
+    private Logger mLogger = Logger.getLogger("org.deviceconnect.dplugin");
+
+    /**
+     * コンテキストオブジェクト. ファイル操作に利用する。
+     */
+    private final Context mContext;
+
+    /**
+     * コンパクションを行うレコード数.
+     */
+    private final int mCompactionThreshold;
+
+    /**
+     * 前回のコンパクション以降に追記したレコード数.
+     */
+    private int mRecordCount;
+
+    /**
+     * ジャーナルファイルへの出力ストリーム.
+     */
+    private FileOutputStream mOutput;
+
+    /**
+     * コンテキストを指定してジャーナルキャッシュコントローラーのインスタンスを生成する.
+     *
+     * @param context コンテキストオブジェクト
+     */
+    public JournalCacheController(final Context context) {
+        this(context, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * コンパクションを行うレコード数を指定してジャーナルキャッシュコントローラーのインスタンスを生成する.
+     *
+     * @param context コンテキストオブジェクト
+     * @param compactionThreshold コンパクションを行うレコード数
+     */
+    public JournalCacheController(final Context context, final int compactionThreshold) {
+        if (context == null) {
+            throw new IllegalArgumentException("Context is null.");
+        }
+        if (compactionThreshold <= 0) {
+            throw new IllegalArgumentException("compactionThreshold must be larger than 0.");
+        }
+        mContext = context;
+        mCompactionThreshold = compactionThreshold;
+        load();
+    }
+
+    @Override
+    public synchronized EventError addEvent(final Event event) {
+        EventError error = super.addEvent(event);
+        if (error == EventError.NONE) {
+            // 登録済みの場合は既存のイベントが更新されるので、キャッシュ上のイベントを記録する
+            Event stored = getEvent(event.getServiceId(), event.getProfile(), event.getInterface(),
+                    event.getAttribute(), event.getSessionKey(), event.getReceiverName());
+            if (stored != null) {
+                append(TYPE_ADD, stored, null);
+            }
+        }
+        return error;
+    }
+
+    @Override
+    public synchronized EventError removeEvent(final Event event) {
+        EventError error = super.removeEvent(event);
+        if (error == EventError.NONE) {
+            append(TYPE_REMOVE, event, null);
+        }
+        return error;
+    }
+
+    @Override
+    public synchronized boolean removeEvents(final String sessionKey) {
+        boolean result = super.removeEvents(sessionKey);
+        append(TYPE_REMOVE_SESSION, null, sessionKey);
+        return result;
+    }
+
+    @Override
+    public synchronized boolean removeAll() {
+        boolean result = super.removeAll();
+        // 全削除の場合は空のジャーナルに置き換える
+        compact();
+        return result;
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (mOutput != null) {
+            try {
+                mOutput.getFD().sync();
+            } catch (IOException e) {
+                mLogger.severe("Exception occurred in JournalCacheController. " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * ジャーナルファイルからキャッシュを復元する.
+     */
+    private void load() {
+        File journal = mContext.getFileStreamPath(JOURNAL_FILE_NAME);
+        File legacy = mContext.getFileStreamPath(LEGACY_CACHE_FILE_NAME);
+        if (journal.exists()) {
+            long validLength = replay(journal);
+            if (validLength < journal.length()) {
+                // 末尾の壊れたレコードを破棄する
+                mLogger.warning("JournalCacheController: discarded a torn record. offset=" + validLength);
+                truncate(journal, validLength);
+            }
+            openOutput();
+        } else if (legacy.exists()) {
+            migrate(legacy);
+        } else {
+            openOutput();
+        }
+    }
+
+    /**
+     * ジャーナルファイルを再生する.
+     *
+     * @param journal ジャーナルファイル
+     * @return 正常に読み込めたレコードの終端位置
+     */
+    private long replay(final File journal) {
+        long validLength = 0;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)));
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0 || length > MAX_RECORD_SIZE) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                int checksum;
+                try {
+                    in.readFully(payload);
+                    checksum = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                apply(payload);
+                validLength += 4 + length + 4;
+                mRecordCount++;
+            }
+        } catch (IOException e) {
+            mLogger.severe("Exception occurred in JournalCacheController. " + e.getMessage());
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    mLogger.severe("Exception occurred in JournalCacheController. " + e.getMessage());
+                }
+            }
+        }
+        return validLength;
+    }
+
+    /**
+     * 1レコードの内容をキャッシュに反映する.
+     *
+     * @param payload レコードの内容
+     * @throws IOException レコードの内容が不正な場合
+     */
+    private void apply(final byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        switch (type) {
+        case TYPE_ADD: {
+            Event event = readEvent(in);
+            Timestamp createDate = readTimestamp(in);
+            Timestamp updateDate = readTimestamp(in);
+            if (super.addEvent(event) == EventError.NONE) {
+                Event stored = getEvent(event.getServiceId(), event.getProfile(), event.getInterface(),
+                        event.getAttribute(), event.getSessionKey(), event.getReceiverName());
+                if (stored != null) {
+                    stored.setCreateDate(createDate);
+                    stored.setUpdateDate(updateDate);
+                }
+            }
+            break;
+        }
+        case TYPE_REMOVE:
+            super.removeEvent(readEvent(in));
+            break;
+        case TYPE_REMOVE_SESSION:
+            super.removeEvents(in.readUTF());
+            break;
+        case TYPE_REMOVE_ALL:
+            super.removeAll();
+            break;
+        default:
+            throw new IOException("Unknown record type: " + type);
+        }
+    }
+
+    /**
+     * {@link FileCacheController}のキャッシュファイルからジャーナルに移行する.
+     * <p>
+     * 移行に失敗した場合は書きかけのジャーナルを削除し、次回の起動時に再度移行する。
+     * その場合、今回の起動中の変更はメモリにのみ保持する。
+     * </p>
+     *
+     * @param legacy {@link FileCacheController}のキャッシュファイル
+     */
+    @SuppressWarnings("unchecked")
+    private void migrate(final File legacy) {
+        boolean loaded = false;
+        ObjectInputStream ois = null;
+        try {
+            ois = new ObjectInputStream(new FileInputStream(legacy));
+            setCache((Map<String, Map<String, List<Event>>>) ois.readObject());
+            loaded = true;
+        } catch (IOException e) {
+            mLogger.severe("Exception occurred in JournalCacheController. " + e.getMessage());
+        } catch (ClassNotFoundException e) {
+            mLogger.severe("Exception occurred in JournalCacheController. " + e.getMessage());
+        } catch (ClassCastException e) {
+            mLogger.severe("Exception occurred in JournalCacheController. " + e.getMessage());
+        } finally {
+            if (ois != null) {
+                try {
+                    ois.close();
+                } catch (IOException e) {
+                    mLogger.severe("Exception occurred in JournalCacheController. " + e.getMessage());
+                }
+            }
+        }
+
+        // 移行後のジャーナルを書き出せた場合のみ、古いキャッシュファイルを削除する
+        if (loaded && compact()) {
+            if (!legacy.delete()) {
+                mLogger.warning("JournalCacheController: failed to delete " + legacy.getName());
+            }
+            return;
+        }
+
+        // ジャーナルが残っていると次回の起動時に移行されないため、書きかけのジャーナルを削除する
+        closeOutput();
+        File journal = mContext.getFileStreamPath(JOURNAL_FILE_NAME);
+        if (journal.exists() && !journal.delete()) {
+            mLogger.severe("JournalCacheController: failed to delete " + journal.getName());
+        }
+    }
+
+    /**
+     * 現在のキャッシュの内容のみを書き出したジャーナルに置き換える.
+     *
+     * @return 置き換えに成功した場合はtrue、それ以外はfalse
+     */
+    private boolean compact() {
+        closeOutput();
+
+        File journal = mContext.getFileStreamPath(JOURNAL_FILE_NAME);
+        File temp = mContext.getFileStreamPath(TEMP_FILE_NAME);
+        boolean result = false;
+        FileOutputStream fos = null;
+        try {
+            fos = new FileOutputStream(temp);
+            BufferedOutputStream out = new BufferedOutputStream(fos);
+            for (Map<String, List<Event>> events : getCache().values()) {
+                for (List<Event> eventList : events.values()) {
+                    for (Event event : eventList) {
+                        out.write(createRecord(TYPE_ADD, event, null));
+                    }
+                }
+            }
+            out.flush();
+            fos.getFD().sync();
+            fos.close();
+            fos = null;
+            result = temp.renameTo(journal);
+            if (!result) {
+                mLogger.severe("JournalCacheController: failed to rename " + temp.getName());
+            }
+        } catch (IOException e) {
+            mLogger.severe("Exception occurred in JournalCacheController. " + e.getMessage());
+        } finally {
+            if (fos != null) {
+                try {
+                    fos.close();
+                } catch (IOException e) {
+                    mLogger.severe("Exception occurred in JournalCacheController. " + e.getMessage());
+                }
+            }
+        }
+
+        mRecordCount = 0;
+        openOutput();
+        return result;
+    }
+
+    /**
+     * レコードをジャーナルファイルに追記する.
+     *
+     * @param type レコード種別
+     * @param event イベントデータ
+     * @param sessionKey セッションキー
+     */
+    private void append(final byte type, final Event event, final String sessionKey) {
+        if (mOutput == null) {
+            return;
+        }
+        try {
+            // 1回の書き込みでレコード全体を書き出す
+            mOutput.write(createRecord(type, event, sessionKey));
+        } catch (IOException e) {
+            mLogger.severe("Exception occurred in JournalCacheController. " + e.getMessage());
+            return;
+        }
+        mRecordCount++;
+        if (mRecordCount >= mCompactionThreshold) {
+            compact();
+        }
+    }
+
+    /**
+     * レコードを作成する.
+     * <p>
+     * レコードは、内容の長さ(int)、内容、内容のCRC32(int)で構成する。
+     * </p>
+     *
+     * @param type レコード種別
+     * @param event イベントデータ
+     * @param sessionKey セッションキー
+     * @return レコード
+     * @throws IOException 書き込みに失敗した場合
+     */
+    private static byte[] createRecord(final byte type, final Event event, final String sessionKey)
+            throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeByte(type);
+        switch (type) {
+        case TYPE_ADD:
+            writeEvent(out, event);
+            writeTimestamp(out, event.getCreateDate());
+            writeTimestamp(out, event.getUpdateDate());
+            break;
+        case TYPE_REMOVE:
+            writeEvent(out, event);
+            break;
+        case TYPE_REMOVE_SESSION:
+            out.writeUTF(sessionKey);
+            break;
+        default:
+            break;
+        }
+        out.flush();
+        byte[] data = payload.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream(data.length + 8);
+        DataOutputStream rout = new DataOutputStream(record);
+        rout.writeInt(data.length);
+        rout.write(data);
+        rout.writeInt((int) crc.getValue());
+        rout.flush();
+        return record.toByteArray();
+    }
+
+    /**
+     * イベントデータを書き込む.
+     *
+     * @param out 出力先
+     * @param event イベントデータ
+     * @throws IOException 書き込みに失敗した場合
+     */
+    private static void writeEvent(final DataOutputStream out, final Event event) throws IOException {
+        writeString(out, event.getServiceId());
+        writeString(out, event.getProfile());
+        writeString(out, event.getInterface());
+        writeString(out, event.getAttribute());
+        writeString(out, event.getSessionKey());
+        writeString(out, event.getAccessToken());
+        writeString(out, event.getReceiverName());
+    }
+
+    /**
+     * イベントデータを読み込む.
+     *
+     * @param in 入力元
+     * @return イベントデータ
+     * @throws IOException 読み込みに失敗した場合
+     */
+    private static Event readEvent(final DataInputStream in) throws IOException {
+        Event event = new Event();
+        event.setServiceId(readString(in));
+        event.setProfile(readString(in));
+        event.setInterface(readString(in));
+        event.setAttribute(readString(in));
+        event.setSessionKey(readString(in));
+        event.setAccessToken(readString(in));
+        event.setReceiverName(readString(in));
+        return event;
+    }
+
+    /**
+     * nullを許容して文字列を書き込む.
+     *
+     * @param out 出力先
+     * @param value 文字列
+     * @throws IOException 書き込みに失敗した場合
+     */
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * nullを許容して文字列を読み込む.
+     *
+     * @param in 入力元
+     * @return 文字列
+     * @throws IOException 読み込みに失敗した場合
+     */
+    private static String readString(final DataInputStream in) throws IOException {
+        if (in.readBoolean()) {
+            return in.readUTF();
+        }
+        return null;
+    }
+
+    /**
+     * nullを許容して日時を書き込む.
+     *
+     * @param out 出力先
+     * @param value 日時
+     * @throws IOException 書き込みに失敗した場合
+     */
+    private static void writeTimestamp(final DataOutputStream out, final Timestamp value) throws IOException {
+        out.writeLong(value != null ? value.getTime() : -1L);
+    }
+
+    /**
+     * nullを許容して日時を読み込む.
+     *
+     * @param in 入力元
+     * @return 日時
+     * @throws IOException 読み込みに失敗した場合
+     */
+    private static Timestamp readTimestamp(final DataInputStream in) throws IOException {
+        long time = in.readLong();
+        return time < 0 ? null : new Timestamp(time);
+    }
+
+    /**
+     * ファイルを指定された長さに切り詰める.
+     *
+     * @param file ファイル
+     * @param length 長さ
+     */
+    private void truncate(final File file, final long length) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(length);
+        } catch (IOException e) {
+            mLogger.severe("Exception occurred in JournalCacheController. " + e.getMessage());
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    mLogger.severe("Exception occurred in JournalCacheController. " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * ジャーナルファイルを追記モードで開く.
+     */
+    private void openOutput() {
+        try {
+            mOutput = new FileOutputStream(mContext.getFileStreamPath(JOURNAL_FILE_NAME), true);
+        } catch (IOException e) {
+            mLogger.severe("Exception occurred in JournalCacheController. " + e.getMessage());
+            mOutput = null;
+        }
+    }
+
+    /**
+     * ジャーナルファイルを閉じる.
+     */
+    private void closeOutput() {
+        if (mOutput != null) {
+            try {
+                mOutput.close();
+            } catch (IOException e) {
+                mLogger.severe("Exception occurred in JournalCacheController. " + e.getMessage());
+            }
+            mOutput = null;
+        }
+    }
+}
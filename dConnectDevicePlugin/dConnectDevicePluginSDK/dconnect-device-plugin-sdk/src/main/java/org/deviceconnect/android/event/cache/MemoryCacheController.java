@@ -14,11 +14,17 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * イベントデータをメモリにキャッシュし、キャッシュの操作機能を提供する.
- * 
+ * <p>
+ * イベント送信時に頻繁に呼び出される{@link #getEvents(String, String, String, String)}は
+ * ロックを取得せずに参照できるようにし、イベントの登録・解除のみを排他制御する。
+ * また、セッションキー毎のイベント一覧を保持し、{@link #removeEvents(String)}で
+ * キャッシュ全体を走査しないようにする。
+ * </p>
  * 
  * @author NTT DOCOMO, INC.
  */
@@ -26,9 +32,32 @@ public class MemoryCacheController extends BaseCacheController {
 
     /**
      * イベントマップ. serviceId毎にイベントの種類をキーにイベント情報を管理する。
-     * 
+     * <p>
+     * 参照はロック無しで行い、更新は{@link #mLock}を取得してから行う。
+     * </p>
+     */
+    private final ConcurrentHashMap<String, ConcurrentHashMap<EventPath, CopyOnWriteArrayList<Event>>> mEventMap;
+
+    /**
+     * セッションキー毎のイベント一覧.
+     * <p>
+     * {@link #mLock}を取得してから参照・更新する。
+     * </p>
+     */
+    private final Map<String, List<Event>> mSessionMap;
+
+    /**
+     * イベントが登録されているイベントの種類の一覧.
+     * <p>
+     * イベント一覧の作成時に登録し、イベント一覧が空になった時に削除する。
+     * </p>
+     */
+    private final EventPathTable mPaths = new EventPathTable();
+
+    /**
+     * 更新用のロックオブジェクト.
      */
-    private Map<String, Map<String, List<Event>>> mEventMap;
+    private final Object mLock = new Object();
     
     /** 
      * 空のサービスID用キー.
@@ -44,7 +73,8 @@ public class MemoryCacheController extends BaseCacheController {
      * メモリキャッシュコントローラーを生成する.
      */
     public MemoryCacheController() {
-        mEventMap = new HashMap<>();
+        mEventMap = new ConcurrentHashMap<>();
+        mSessionMap = new HashMap<>();
     }
     
     /**
@@ -55,9 +85,19 @@ public class MemoryCacheController extends BaseCacheController {
      * @return サービスID
      */
     private String getServiceId(final Event event) {
-        String serviceId = event.getServiceId();
+        return getServiceId(event.getServiceId());
+    }
+
+    /**
+     * サービスIDのキーを取得する.
+     * サービスIDが無い場合はnullを示す特殊な文字列を返す。
+     * 
+     * @param serviceId サービスID
+     * @return サービスIDのキー
+     */
+    private String getServiceId(final String serviceId) {
         if (serviceId == null) {
-            serviceId = NULL_SERVICE_ID;
+            return NULL_SERVICE_ID;
         }
         return serviceId;
     }
@@ -76,88 +116,78 @@ public class MemoryCacheController extends BaseCacheController {
         }
         return receiver;
     }
-    
+
     @Override
-    public synchronized EventError addEvent(final Event event) {
+    public EventError addEvent(final Event event) {
         if (!checkParameter(event)) {
             return EventError.INVALID_PARAMETER;
         }
 
         String serviceId = getServiceId(event);
-        Map<String, List<Event>> events = mEventMap.get(serviceId);
-        
-        if (events == null) {
-            events = new HashMap<>();
-            mEventMap.put(serviceId, events);
-        }
-        
-        String path = event.getProfile();
-        if (event.getInterface() != null) {
-            path += event.getInterface();
-        }
-        if (event.getAttribute() != null) {
-            path += event.getAttribute();
-        }
-
-        List<Event> eventList = events.get(path);
-        if (eventList == null) {
-            eventList = new CopyOnWriteArrayList<>();
-            events.put(path, eventList);
-        }
-        
+        EventPath path = EventPath.of(event);
         String sessionKey = event.getSessionKey();
         String receiver = getReceiverName(event);
-        for (Event e : eventList) {
-            if (e.getSessionKey().equals(sessionKey) && e.getReceiverName().equals(receiver)) {
-                // 登録済みの場合はアクセストークンを上書きする
-                e.setAccessToken(event.getAccessToken());
-                e.setUpdateDate(Utils.getCurreTimestamp());
-                return EventError.NONE;
+
+        synchronized (mLock) {
+            ConcurrentHashMap<EventPath, CopyOnWriteArrayList<Event>> events = mEventMap.get(serviceId);
+            if (events == null) {
+                events = new ConcurrentHashMap<>();
+                mEventMap.put(serviceId, events);
+            }
+
+            CopyOnWriteArrayList<Event> eventList = events.get(path);
+            if (eventList == null) {
+                // 空のイベント一覧には必ずイベントを追加するため、ここでキーを登録する
+                eventList = new CopyOnWriteArrayList<>();
+                events.put(mPaths.acquire(path), eventList);
             }
+
+            for (Event e : eventList) {
+                if (e.getSessionKey().equals(sessionKey) && e.getReceiverName().equals(receiver)) {
+                    // 登録済みの場合はアクセストークンを上書きする
+                    e.setAccessToken(event.getAccessToken());
+                    e.setUpdateDate(Utils.getCurreTimestamp());
+                    return EventError.NONE;
+                }
+            }
+            event.setCreateDate(Utils.getCurreTimestamp());
+            event.setUpdateDate(Utils.getCurreTimestamp());
+            eventList.add(event);
+            addSessionIndex(event);
         }
-        event.setCreateDate(Utils.getCurreTimestamp());
-        event.setUpdateDate(Utils.getCurreTimestamp());
-        eventList.add(event);
-        
+
         return EventError.NONE;
     }
 
     @Override
-    public synchronized EventError removeEvent(final Event event) {
+    public EventError removeEvent(final Event event) {
         
         if (!checkParameter(event)) {
             return EventError.INVALID_PARAMETER;
         }
         
         String serviceId = getServiceId(event);
-        Map<String, List<Event>> events = mEventMap.get(serviceId);
-        
-        if (events == null) {
-            return EventError.NOT_FOUND;
-        }
-
-        String path = event.getProfile();
-        if (event.getInterface() != null) {
-            path += event.getInterface();
-        }
-        if (event.getAttribute() != null) {
-            path += event.getAttribute();
-        }
-
-        List<Event> eventList = events.get(path);
-        if (eventList == null) {
-            return EventError.NOT_FOUND;
-        }
-        
+        EventPath path = EventPath.of(event);
         String sessionKey = event.getSessionKey();
         String receiver = getReceiverName(event);
-        for (Event e : eventList) {
-            if (e.getSessionKey().equals(sessionKey) && e.getReceiverName().equals(receiver)) {
-                eventList.remove(e);
-                if (eventList.size() == 0) {
-                    events.remove(path);
+
+        synchronized (mLock) {
+            Map<EventPath, CopyOnWriteArrayList<Event>> events = mEventMap.get(serviceId);
+            if (events == null) {
+                return EventError.NOT_FOUND;
+            }
+
+            List<Event> eventList = events.get(path);
+            if (eventList == null) {
+                return EventError.NOT_FOUND;
+            }
+
+            for (Event e : eventList) {
+                if (e.getSessionKey().equals(sessionKey) && e.getReceiverName().equals(receiver)) {
+                    removeFromEventMap(e);
+                    removeSessionIndex(e);
+                    return EventError.NONE;
                 }
-                return EventError.NONE;
             }
         }
         
@@ -165,7 +195,7 @@ public class MemoryCacheController extends BaseCacheController {
     }
 
     @Override
-    public synchronized Event getEvent(final String serviceId, final String profile, final String inter, 
+    public Event getEvent(final String serviceId, final String profile, final String inter, 
             final String attribute, final String sessionKey, final String receiver) {
         Event event = null;
         String tmpReceiver = receiver;
@@ -191,25 +221,18 @@ public class MemoryCacheController extends BaseCacheController {
     }
 
     @Override
-    public synchronized List<Event> getEvents(final String serviceId, final String profile, 
+    public List<Event> getEvents(final String serviceId, final String profile, 
             final String inter, final String attribute) {
-        
-        String tmpServiceId = serviceId;
-        if (serviceId == null) {
-            tmpServiceId = NULL_SERVICE_ID;
-        }
-        Map<String, List<Event>> events = mEventMap.get(tmpServiceId);
-        
+        // イベント送信時に呼び出されるため、ロックを取得しない
+        Map<EventPath, CopyOnWriteArrayList<Event>> events = mEventMap.get(getServiceId(serviceId));
         if (events == null) {
             return new ArrayList<>();
         }
 
-        String path = profile;
-        if (inter != null) {
-            path += inter;
-        }
-        if (attribute != null) {
-            path += attribute;
+        // 一度も登録されていないイベントの種類の場合はキーが存在しない
+        EventPath path = mPaths.find(profile, inter, attribute);
+        if (path == null) {
+            return new ArrayList<>();
         }
 
         List<Event> res = events.get(path);
@@ -226,54 +249,159 @@ public class MemoryCacheController extends BaseCacheController {
     }
 
     @Override
-    public synchronized boolean removeAll() {
-        mEventMap.clear();
-        return mEventMap.size() == 0;
+    public boolean removeAll() {
+        synchronized (mLock) {
+            mEventMap.clear();
+            mSessionMap.clear();
+            mPaths.clear();
+            return mEventMap.size() == 0;
+        }
     }
     
     /**
      * イベントデータのキャッシュオブジェクトを取得する.
-     * Map&lt;serviceId, Map&lt;profile+interface+attribute, List&lt;Event&gt;&gt;&gt;。
+     * Map&lt;serviceId, Map&lt;{@link EventPath#toString()}, List&lt;Event&gt;&gt;&gt;。
+     * <p>
+     * 取得したキャッシュはこの時点のコピーであり、変更してもキャッシュには反映されない。
+     * </p>
      * 
      * @return キャッシュ
      */
-    protected synchronized Map<String, Map<String, List<Event>>> getCache() {
-        return mEventMap;
+    protected Map<String, Map<String, List<Event>>> getCache() {
+        Map<String, Map<String, List<Event>>> cache = new HashMap<>();
+        synchronized (mLock) {
+            for (Entry<String, ConcurrentHashMap<EventPath, CopyOnWriteArrayList<Event>>> entry
+                    : mEventMap.entrySet()) {
+                Map<String, List<Event>> events = new HashMap<>();
+                for (Entry<EventPath, CopyOnWriteArrayList<Event>> e : entry.getValue().entrySet()) {
+                    events.put(e.getKey().toString(), new CopyOnWriteArrayList<>(e.getValue()));
+                }
+                cache.put(entry.getKey(), events);
+            }
+        }
+        return cache;
     }
     
     /**
      * キャッシュを設定する.
      * nullの場合設定されない。
+     * <p>
+     * イベントの種類を表すキーは、キャッシュのキーではなく各イベントデータから求め直す。
+     * </p>
      * 
      * @param cache キャッシュ
      */
-    protected synchronized void setCache(final Map<String, Map<String, List<Event>>> cache) {
-        if (cache != null) {
-            mEventMap = cache;
+    protected void setCache(final Map<String, Map<String, List<Event>>> cache) {
+        if (cache == null) {
+            return;
+        }
+        synchronized (mLock) {
+            mEventMap.clear();
+            mSessionMap.clear();
+            mPaths.clear();
+            for (Entry<String, Map<String, List<Event>>> entry : cache.entrySet()) {
+                ConcurrentHashMap<EventPath, CopyOnWriteArrayList<Event>> events = new ConcurrentHashMap<>();
+                for (List<Event> eventList : entry.getValue().values()) {
+                    if (eventList == null) {
+                        continue;
+                    }
+                    for (Event event : eventList) {
+                        if (!checkParameter(event)) {
+                            continue;
+                        }
+                        EventPath path = EventPath.of(event);
+                        CopyOnWriteArrayList<Event> list = events.get(path);
+                        if (list == null) {
+                            list = new CopyOnWriteArrayList<>();
+                            events.put(mPaths.acquire(path), list);
+                        }
+                        list.add(event);
+                        addSessionIndex(event);
+                    }
+                }
+                if (!events.isEmpty()) {
+                    mEventMap.put(entry.getKey(), events);
+                }
+            }
         }
     }
 
     @Override
-    public synchronized boolean removeEvents(final String sessionKey) {
+    public boolean removeEvents(final String sessionKey) {
         
         if (sessionKey == null) {
             throw new IllegalArgumentException("SessionKey is null.");
         }
-        
-        for (Entry<String, Map<String, List<Event>>> entry : mEventMap.entrySet()) {
-            for (Entry<String, List<Event>> events : entry.getValue().entrySet()) {
-                List<Event> removes = new ArrayList<>();
-                for (Event event : events.getValue()) {
-                    if (sessionKey.equals(event.getSessionKey())) {
-                        removes.add(event);
-                    }
-                }
-                if (removes.size() != 0) {
-                    events.getValue().removeAll(removes);
+
+        synchronized (mLock) {
+            List<Event> removes = mSessionMap.remove(sessionKey);
+            if (removes != null) {
+                for (Event event : removes) {
+                    removeFromEventMap(event);
                 }
             }
         }
         
         return true;
     }
+
+    /**
+     * イベントマップからイベントを削除する.
+     * 空になったイベント一覧は削除し、イベントの種類の一覧からも取り除く。
+     * {@link #mLock}を取得してから呼び出すこと。
+     * 
+     * @param event 削除するイベント
+     */
+    private void removeFromEventMap(final Event event) {
+        String serviceId = getServiceId(event);
+        EventPath path = EventPath.of(event);
+        Map<EventPath, CopyOnWriteArrayList<Event>> events = mEventMap.get(serviceId);
+        if (events == null) {
+            return;
+        }
+        List<Event> eventList = events.get(path);
+        if (eventList == null) {
+            return;
+        }
+        eventList.remove(event);
+        if (eventList.size() == 0) {
+            events.remove(path);
+            mPaths.release(path);
+            if (events.size() == 0) {
+                mEventMap.remove(serviceId);
+            }
+        }
+    }
+
+    /**
+     * セッションキー毎のイベント一覧にイベントを追加する.
+     * {@link #mLock}を取得してから呼び出すこと。
+     * 
+     * @param event 追加するイベント
+     */
+    private void addSessionIndex(final Event event) {
+        List<Event> events = mSessionMap.get(event.getSessionKey());
+        if (events == null) {
+            events = new ArrayList<>();
+            mSessionMap.put(event.getSessionKey(), events);
+        }
+        events.add(event);
+    }
+
+    /**
+     * セッションキー毎のイベント一覧からイベントを削除する.
+     * {@link #mLock}を取得してから呼び出すこと。
+     * 
+     * @param event 削除するイベント
+     */
+    private void removeSessionIndex(final Event event) {
+        List<Event> events = mSessionMap.get(event.getSessionKey());
+        if (events == null) {
+            return;
+        }
+        events.remove(event);
+        if (events.isEmpty()) {
+            mSessionMap.remove(event.getSessionKey());
+        }
+    }
 }
@@ -0,0 +1,257 @@
+/*
+ AccessTokenCache.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.localoauth;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.deviceconnect.android.localoauth.oauthserver.db.SQLiteToken;
+import org.restlet.ext.oauth.internal.Scope;
+
+/**
+ * アクセストークンの確認結果のキャッシュ.
+ * <p>
+ * {@link LocalOAuth2Main#checkAccessToken(String, String, String[])}でDBから読み込んだ
+ * トークンのスコープとクライアントの有無を保持し、2回目以降の確認をDBにアクセスせずに行う。
+ * 保持する件数には上限があり、最も長く参照されていないものから破棄する。
+ * また、保持期間が過ぎたものや全スコープの有効期限が切れたものは破棄する。
+ * </p>
+ * <p>
+ * トークンのアクセス日時の更新は、このクラスに記録しておき、まとめてDBに書き込む。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+final class AccessTokenCache {
+
+    /** 保持する件数の上限. */
+    private final int mMaxSize;
+
+    /** 保持期間[msec]. */
+    private final long mTimeToLive;
+
+    /** アクセストークンをキーとしたキャッシュ. 参照順に並べる. */
+    private final LinkedHashMap<String, Entry> mEntries;
+
+    /** DBに未反映のアクセス日時. キーはトークンID. */
+    private Map<Long, Long> mPendingAccessDates = new HashMap<Long, Long>();
+
+    /**
+     * コンストラクタ.
+     * @param maxSize 保持する件数の上限
+     * @param timeToLive 保持期間[msec]
+     */
+    AccessTokenCache(final int maxSize, final long timeToLive) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be larger than 0.");
+        }
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("timeToLive must be larger than 0.");
+        }
+        mMaxSize = maxSize;
+        mTimeToLive = timeToLive;
+        mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+                return size() > mMaxSize;
+            }
+        };
+    }
+
+    /**
+     * アクセストークンに対応するキャッシュを取得する.
+     * @param accessToken アクセストークン
+     * @param now 現在時刻
+     * @return キャッシュ。無い場合や保持期間が過ぎている場合はnull
+     */
+    synchronized Entry get(final String accessToken, final long now) {
+        Entry entry = mEntries.get(accessToken);
+        if (entry != null && entry.mExpireTime <= now) {
+            mEntries.remove(accessToken);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * DBから読み込んだトークンをキャッシュに追加する.
+     * <p>
+     * DBの内容と矛盾しないように、DBアクセス用のLockを取得した状態で呼び出すこと。
+     * </p>
+     * @param token DBから読み込んだトークン
+     * @param existClientId トークンを発行したクライアントが存在するか
+     * @param firstAccess DBから読み込んだ時点で初回アクセスだったか
+     * @param now 現在時刻
+     * @return 追加したキャッシュ
+     */
+    synchronized Entry put(final SQLiteToken token, final boolean existClientId, final boolean firstAccess,
+                           final long now) {
+        Entry entry = new Entry(token, existClientId, firstAccess, now, mTimeToLive);
+        mEntries.put(entry.mAccessToken, entry);
+        return entry;
+    }
+
+    /**
+     * クライアントIDが一致するキャッシュを破棄する.
+     * @param clientId クライアントID
+     */
+    synchronized void removeByClientId(final String clientId) {
+        for (Iterator<Entry> it = mEntries.values().iterator(); it.hasNext();) {
+            if (clientId.equals(it.next().mClientId)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * トークンIDが一致するキャッシュを破棄する.
+     * @param tokenId トークンID
+     */
+    synchronized void removeByTokenId(final long tokenId) {
+        for (Iterator<Entry> it = mEntries.values().iterator(); it.hasNext();) {
+            if (it.next().mTokenId == tokenId) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * 全てのキャッシュを破棄する.
+     */
+    synchronized void clear() {
+        mEntries.clear();
+    }
+
+    /**
+     * トークンのアクセス日時を記録する.
+     * @param tokenId トークンID
+     * @param accessDate アクセス日時
+     */
+    synchronized void recordAccessDate(final long tokenId, final long accessDate) {
+        mPendingAccessDates.put(tokenId, accessDate);
+    }
+
+    /**
+     * DBに未反映のアクセス日時を取り出す.
+     * @return トークンIDをキーとしたアクセス日時。無い場合は空のMap
+     */
+    synchronized Map<Long, Long> drainAccessDates() {
+        Map<Long, Long> accessDates = mPendingAccessDates;
+        mPendingAccessDates = new HashMap<Long, Long>();
+        return accessDates;
+    }
+
+    /**
+     * トークン1件分のキャッシュ.
+     */
+    static final class Entry {
+        /** アクセストークン. */
+        private final String mAccessToken;
+
+        /** トークンID. */
+        private final long mTokenId;
+
+        /** トークンを発行したクライアントID. */
+        private final String mClientId;
+
+        /** トークンを発行したクライアントが存在するか. */
+        private final boolean mExistClientId;
+
+        /** スコープ配列. */
+        private final Scope[] mScopes;
+
+        /** 登録日時. */
+        private final long mRegistrationDate;
+
+        /** DBから読み込んだ時点で初回アクセスだったか. */
+        private final boolean mFirstAccess;
+
+        /** キャッシュを破棄する日時. */
+        private final long mExpireTime;
+
+        /**
+         * コンストラクタ.
+         * <p>
+         * 保持期間は、指定された保持期間と全スコープの有効期限が切れる日時の早い方とする。
+         * </p>
+         * @param token DBから読み込んだトークン
+         * @param existClientId トークンを発行したクライアントが存在するか
+         * @param firstAccess DBから読み込んだ時点で初回アクセスだったか
+         * @param now 現在時刻
+         * @param timeToLive 保持期間[msec]
+         */
+        private Entry(final SQLiteToken token, final boolean existClientId, final boolean firstAccess,
+              final long now, final long timeToLive) {
+            mAccessToken = token.getAccessToken();
+            mTokenId = token.getId();
+            mClientId = token.getClientId();
+            mExistClientId = existClientId;
+            mScopes = token.getScope();
+            mRegistrationDate = token.getRegistrationDate();
+            mFirstAccess = firstAccess;
+
+            long expireTime = now + timeToLive;
+            long scopeExpireTime = Long.MIN_VALUE;
+            for (Scope s : mScopes) {
+                long e = s.getTimestamp() + s.getExpirePeriod() * LocalOAuth2Settings.MSEC;
+                if (e > scopeExpireTime) {
+                    scopeExpireTime = e;
+                }
+            }
+            if (mScopes.length > 0 && scopeExpireTime < expireTime) {
+                expireTime = scopeExpireTime;
+            }
+            mExpireTime = expireTime;
+        }
+
+        /**
+         * トークンIDを取得する.
+         * @return トークンID
+         */
+        long getTokenId() {
+            return mTokenId;
+        }
+
+        /**
+         * トークンを発行したクライアントが存在するかを取得する.
+         * @return true: 存在する / false: 存在しない
+         */
+        boolean isExistClientId() {
+            return mExistClientId;
+        }
+
+        /**
+         * スコープ配列を取得する.
+         * @return スコープ配列
+         */
+        Scope[] getScopes() {
+            return mScopes;
+        }
+
+        /**
+         * 登録日時を取得する.
+         * @return 登録日時
+         */
+        long getRegistrationDate() {
+            return mRegistrationDate;
+        }
+
+        /**
+         * DBから読み込んだ時点で初回アクセスだったかを取得する.
+         * <p>
+         * 読み込み時にアクセス日時を更新しているため、キャッシュから取得した場合は常に初回アクセスではない。
+         * </p>
+         * @return true: 初回アクセス / false: 初回アクセスではない
+         */
+        boolean isFirstAccess() {
+            return mFirstAccess;
+        }
+    }
+}
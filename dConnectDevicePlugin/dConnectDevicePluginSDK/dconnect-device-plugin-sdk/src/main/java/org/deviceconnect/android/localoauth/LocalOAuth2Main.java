@@ -89,6 +89,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
@@ -137,9 +140,25 @@ public final class LocalOAuth2Main {
     /** 自動テストモードフラグ. */
     private static boolean sAutoTestMode = false;
 
-    /** DBアクセス用Lockオブジェクト. */
+    /** 開いているDB. 一度開いたら{@link #destroy()}までクローズしない. */
+    private static SQLiteDatabase sDb;
+
+    /**
+     * DB書き込み用Lockオブジェクト.
+     * <p>
+     * DBはWALモードで開くため、読み込みのみの処理はこのLockを取得せずに書き込みと同時に実行できる。
+     * </p>
+     */
     private static Object sLockForDbAccess = new Object();
 
+    /** アクセストークンの確認結果のキャッシュ. */
+    private static final AccessTokenCache sTokenCache = new AccessTokenCache(
+            LocalOAuth2Settings.ACCESS_TOKEN_CACHE_SIZE,
+            LocalOAuth2Settings.ACCESS_TOKEN_CACHE_TIME * LocalOAuth2Settings.MSEC);
+
+    /** トークンのアクセス日時をまとめてDBに書き込むスレッド. */
+    private static ScheduledExecutorService sAccessDateWriter;
+
     /**
      * Bindフラグ.
      * <p>
@@ -226,16 +245,33 @@ public final class LocalOAuth2Main {
      * @param context コンテキスト
      */
     public static void initialize(final android.content.Context context) {
-        /* DB初期化処理 */
-        sDbHelper = new LocalOAuthOpenHelper(context);
-        
-        /* 初期化処理 */
-        sUserManager = new SampleUserManager();
-        sClientManager = new SQLiteClientManager();
-        sTokenManager = new SQLiteTokenManager();
+        synchronized (LocalOAuth2Main.class) {
+            /* DB初期化処理(DBは初回アクセス時に開く) */
+            sDb = null;
+            sDbHelper = new LocalOAuthOpenHelper(context);
+            
+            /* 初期化処理 */
+            sUserManager = new SampleUserManager();
+            sClientManager = new SQLiteClientManager();
+            sTokenManager = new SQLiteTokenManager();
+        }
 
         /* ユーザー追加 */
         addUserData(SampleUser.LOCALOAUTH_USER, SampleUser.LOCALOAUTH_PASS);
+
+        /* トークンのアクセス日時の書き込みを開始 */
+        sTokenCache.clear();
+        if (sAccessDateWriter != null) {
+            sAccessDateWriter.shutdownNow();
+        }
+        sAccessDateWriter = Executors.newSingleThreadScheduledExecutor();
+        sAccessDateWriter.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                writeAccessDates();
+            }
+        }, LocalOAuth2Settings.ACCESS_DATE_WRITE_INTERVAL, LocalOAuth2Settings.ACCESS_DATE_WRITE_INTERVAL,
+                TimeUnit.SECONDS);
     }
 
     /**
@@ -243,9 +279,20 @@ public final class LocalOAuth2Main {
      */
     public static void destroy() {
         
+        /* 未反映のアクセス日時を書き込んでからキャッシュを破棄する */
+        if (sAccessDateWriter != null) {
+            sAccessDateWriter.shutdownNow();
+            sAccessDateWriter = null;
+        }
+        writeAccessDates();
+        sTokenCache.clear();
+        
         /* DBをまとめてクローズ */
-        if (sDbHelper != null) {
-            sDbHelper.close();
+        synchronized (LocalOAuth2Main.class) {
+            sDb = null;
+            if (sDbHelper != null) {
+                sDbHelper.close();
+            }
         }
         
         sUserManager = null;
@@ -255,6 +302,26 @@ public final class LocalOAuth2Main {
     }
     
 
+    /**
+     * DBを取得する.
+     * <p>
+     * 初回の呼び出し時にDBを開き、ClientManagerとTokenManagerに設定する。
+     * 以降は{@link #destroy()}が呼ばれるまで同じDBを使い続ける。
+     * </p>
+     * @return DB
+     */
+    private static synchronized SQLiteDatabase getDatabase() {
+        if (sDb == null || !sDb.isOpen()) {
+            if (sDbHelper == null) {
+                throw new SQLiteException("LocalOAuth is not initialized.");
+            }
+            sDb = sDbHelper.getWritableDatabase();
+            ((SQLiteClientManager) sClientManager).setDb(sDb);
+            ((SQLiteTokenManager) sTokenManager).setDb(sDb);
+        }
+        return sDb;
+    }
+
     /**
      * (2)クライアントを登録する.
      * <p>
@@ -289,30 +356,21 @@ public final class LocalOAuth2Main {
         /* クライアント追加 */
         ClientData clientData = null;
         SQLiteDatabase db = null;
-        SQLiteTokenManager sqliteTokenManager = null;
-        SQLiteClientManager sqliteClientManager = null;
         
         /* DBを同時アクセスさせない */
         synchronized (sLockForDbAccess) {
             try {
                 /* DBオープン */
-                db = sDbHelper.getWritableDatabase();
+                db = getDatabase();
                 db.beginTransaction();
                 
-                /* TokenManagerにDBオブジェクトを設定 */
-                sqliteTokenManager = (SQLiteTokenManager) sTokenManager;
-                sqliteTokenManager.setDb(db);
-                
-                /* ClientManagerにDBオブジェクトを設定 */
-                sqliteClientManager = (SQLiteClientManager) sClientManager;
-                sqliteClientManager.setDb(db);
-                
                 /* パッケージ情報に対応するクライアントIDがすでに登録済なら破棄する */
                 Client client = getClientManager().findByPackageInfo(packageInfo);
                 if (client != null) {
                     String clientId = client.getClientId();
                     removeTokenData(clientId);
                     removeClientData(clientId);
+                    sTokenCache.removeByClientId(clientId);
                 }
                 
                 /* クライアントデータを新規生成して返す */
@@ -327,17 +385,6 @@ public final class LocalOAuth2Main {
             } finally {
                 if (db != null) {
                     db.endTransaction();
-                    db.close();
-                }
-                
-                /* TokenManagerのDBオブジェクトをクリア設定 */
-                if (sqliteTokenManager != null) {
-                    sqliteTokenManager.setDb(null);
-                }
-                
-                /* ClientManagerのDBオブジェクトをクリア設定 */
-                if (sqliteClientManager != null) {
-                    sqliteClientManager.setDb(null);
                 }
             }
         }
@@ -359,26 +406,17 @@ public final class LocalOAuth2Main {
         }
         
         SQLiteDatabase db = null;
-        SQLiteTokenManager sqliteTokenManager = null;
-        SQLiteClientManager sqliteClientManager = null;
         
         /* DBを同時アクセスさせない */
         synchronized (sLockForDbAccess) {
             try {
                 /* DBオープン */
-                db = sDbHelper.getWritableDatabase();
+                db = getDatabase();
                 db.beginTransaction();
                 
-                /* TokenManagerにDBオブジェクトを設定 */
-                sqliteTokenManager = (SQLiteTokenManager) sTokenManager;
-                sqliteTokenManager.setDb(db);
-                
-                /* ClientManagerにDBオブジェクトを設定 */
-                sqliteClientManager = (SQLiteClientManager) sClientManager;
-                sqliteClientManager.setDb(db);
-                
                 /* クライアントデータ削除 */
                 removeClientData(clientId);
+                sTokenCache.removeByClientId(clientId);
                 
                 /* コミット */
                 db.setTransactionSuccessful();
@@ -388,17 +426,6 @@ public final class LocalOAuth2Main {
             } finally {
                 if (db != null) {
                     db.endTransaction();
-                    db.close();
-                }
-                
-                /* TokenManagerのDBオブジェクトをクリア設定 */
-                if (sqliteTokenManager != null) {
-                    sqliteTokenManager.setDb(null);
-                }
-                
-                /* ClientManagerのDBオブジェクトをクリア設定 */
-                if (sqliteClientManager != null) {
-                    sqliteClientManager.setDb(null);
                 }
             }
         }
@@ -434,65 +461,48 @@ public final class LocalOAuth2Main {
         
         boolean result = false;
         
-        SQLiteDatabase db = null;
-        SQLiteClientManager sqliteClientManager = null;
-        
-        /* DBを同時アクセスさせない */
-        synchronized (sLockForDbAccess) {
-            try {
-                /* DBオープン */
-                db = sDbHelper.getReadableDatabase();
-                
-                /* ClientManagerにDBオブジェクトを設定 */
-                sqliteClientManager = (SQLiteClientManager) sClientManager;
-                sqliteClientManager.setDb(db);
-                
-                /* LocalOAuthが保持しているクライアントシークレットを取得 */
-                Client client = sqliteClientManager.findById(clientId);
-                if (client != null) {
-                    String clientSecret = String.copyValueOf(client.getClientSecret());
-                    
-                    /*
-                     * LocalOAuthが保持しているclientSecretとリクエストのclient_id, grant_type,
-                     * scopesを結合して暗号化しsignature作成
-                     */
-                    String innerSignature = AuthSignature.generateSignature(clientId, grantType,
-                            serviceId, scopes, clientSecret);
-                    
-                    /* Signature一致判定 */
-                    if (innerSignature.equals(signature)) {
-                        result = true;
-                    } else {
-                        String strScopes = "";
-                        for (int i = 0; i < scopes.length; i++) {
-                            if (i > 0) {
-                                strScopes += ",";
-                            }
-                            strScopes += scopes[i];
+        try {
+            /* DBオープン */
+            getDatabase();
+            SQLiteClientManager sqliteClientManager = (SQLiteClientManager) sClientManager;
+            
+            /* LocalOAuthが保持しているクライアントシークレットを取得 */
+            Client client = sqliteClientManager.findById(clientId);
+            if (client != null) {
+                String clientSecret = String.copyValueOf(client.getClientSecret());
+                
+                /*
+                 * LocalOAuthが保持しているclientSecretとリクエストのclient_id, grant_type,
+                 * scopesを結合して暗号化しsignature作成
+                 */
+                String innerSignature = AuthSignature.generateSignature(clientId, grantType,
+                        serviceId, scopes, clientSecret);
+                
+                /* Signature一致判定 */
+                if (innerSignature.equals(signature)) {
+                    result = true;
+                } else {
+                    String strScopes = "";
+                    for (int i = 0; i < scopes.length; i++) {
+                        if (i > 0) {
+                            strScopes += ",";
                         }
-                        sLogger.warning("checkSignature() - signature not equal.");
-                        sLogger.warning(" - signature: " + signature);
-                        sLogger.warning(" - innerSignature:" + innerSignature);
-                        sLogger.warning(" - clientId:" + clientId);
-                        sLogger.warning(" - grantType:" + grantType);
-                        sLogger.warning(" - serviceId:" + serviceId);
-                        sLogger.warning(" - scopes:" + strScopes);
-                        sLogger.warning(" - clientSecret:" + clientSecret);
+                        strScopes += scopes[i];
                     }
-                } else {
-                    sLogger.warning("client not found.  clientId: " + clientId);
-                }
-            } catch (SQLiteException e) {
-                throw new RuntimeException(e);
-            } finally {
-                if (db != null) {
-                    db.close();
-                }
-                /* TokenManagerのDBオブジェクトをクリア設定 */
-                if (sqliteClientManager != null) {
-                    sqliteClientManager.setDb(null);
+                    sLogger.warning("checkSignature() - signature not equal.");
+                    sLogger.warning(" - signature: " + signature);
+                    sLogger.warning(" - innerSignature:" + innerSignature);
+                    sLogger.warning(" - clientId:" + clientId);
+                    sLogger.warning(" - grantType:" + grantType);
+                    sLogger.warning(" - serviceId:" + serviceId);
+                    sLogger.warning(" - scopes:" + strScopes);
+                    sLogger.warning(" - clientSecret:" + clientSecret);
                 }
+            } else {
+                sLogger.warning("client not found.  clientId: " + clientId);
             }
+        } catch (SQLiteException e) {
+            throw new RuntimeException(e);
         }
         
         return result;
@@ -583,23 +593,13 @@ public final class LocalOAuth2Main {
                              */
         
         SQLiteDatabase db = null;
-        SQLiteClientManager sqliteClientManager = null;
-        SQLiteTokenManager sqliteTokenManager = null;
         
         /* DBを同時アクセスさせない */
         synchronized (sLockForDbAccess) {
             try {
                 /* DBオープン */
-                db = sDbHelper.getWritableDatabase();
+                db = getDatabase();
                 db.beginTransaction();
-                
-                /* ClientManagerにDBオブジェクトを設定 */
-                sqliteClientManager = (SQLiteClientManager) sClientManager;
-                sqliteClientManager.setDb(db);
-    
-                /* TokenManagerにDBオブジェクトを設定 */
-                sqliteTokenManager = (SQLiteTokenManager) sTokenManager;
-                sqliteTokenManager.setDb(db);
     
                 /* クライアントをDBから読み込み */
                 client = getClient(params);
@@ -615,17 +615,6 @@ public final class LocalOAuth2Main {
             } finally {
                 if (db != null) {
                     db.endTransaction();
-                    db.close();
-                }
-                
-                /* ClientManagerのDBオブジェクトをクリア設定 */
-                if (sqliteClientManager != null) {
-                    sqliteClientManager.setDb(null);
-                }
-                
-                /* TokenManagerのDBオブジェクトをクリア設定 */
-                if (sqliteClientManager != null) {
-                    sqliteClientManager.setDb(null);
                 }
             }
         }
@@ -701,51 +690,27 @@ public final class LocalOAuth2Main {
         }
         
         AccessTokenData acccessTokenData = null;
-        SQLiteDatabase db = null;
-        SQLiteClientManager sqliteClientManager = null;
-        SQLiteTokenManager sqliteTokenManager = null;
 
-        /* DBを同時アクセスさせない */
-        synchronized (sLockForDbAccess) {
-            try {
-                /* DBオープン */
-                db = sDbHelper.getReadableDatabase();
-                
-                /* ClientManagerにDBオブジェクトを設定 */
-                sqliteClientManager = (SQLiteClientManager) sClientManager;
-                sqliteClientManager.setDb(db);
-                
-                /* TokenManagerにDBオブジェクトを設定 */
-                sqliteTokenManager = (SQLiteTokenManager) sTokenManager;
-                sqliteTokenManager.setDb(db);
-                
-                /* パッケージ情報からクライアントデータを取得 */
-                Client client = sqliteClientManager.findByPackageInfo(packageInfo);
-                if (client != null) {
-                    /* クライアントからトークンを取得する */
-                    Token token = sqliteTokenManager.findToken(client, SampleUser.USERNAME);
-                    if (token != null) {
-                        String accessToken = token.getAccessToken();
-                        long date = token.getRegistrationDate();
-                        AccessTokenScope[] accessTokenScopes = scopesToAccessTokenScopes(token.getScope());
-                        acccessTokenData = new AccessTokenData(accessToken, date, accessTokenScopes);
-                    }
-                }
-            } catch (SQLiteException e) {
-                throw new RuntimeException(e);
-            } finally {
-                if (db != null) {
-                    db.close();
-                }
-                /* ClientManagerのDBオブジェクトをクリア設定 */
-                if (sqliteClientManager != null) {
-                    sqliteClientManager.setDb(null);
-                }
-                /* TokenManagerのDBオブジェクトをクリア設定 */
-                if (sqliteTokenManager != null) {
-                    sqliteTokenManager.setDb(null);
+        try {
+            /* DBオープン */
+            getDatabase();
+            SQLiteClientManager sqliteClientManager = (SQLiteClientManager) sClientManager;
+            SQLiteTokenManager sqliteTokenManager = (SQLiteTokenManager) sTokenManager;
+            
+            /* パッケージ情報からクライアントデータを取得 */
+            Client client = sqliteClientManager.findByPackageInfo(packageInfo);
+            if (client != null) {
+                /* クライアントからトークンを取得する */
+                Token token = sqliteTokenManager.findToken(client, SampleUser.USERNAME);
+                if (token != null) {
+                    String accessToken = token.getAccessToken();
+                    long date = token.getRegistrationDate();
+                    AccessTokenScope[] accessTokenScopes = scopesToAccessTokenScopes(token.getScope());
+                    acccessTokenData = new AccessTokenData(accessToken, date, accessTokenScopes);
                 }
             }
+        } catch (SQLiteException e) {
+            throw new RuntimeException(e);
         }
 
         return acccessTokenData;
@@ -788,6 +753,80 @@ public final class LocalOAuth2Main {
             return new CheckAccessTokenResult(false, false, false, false);
         }
 
+        long now = System.currentTimeMillis();
+        boolean isFirstAccess = false; /* true: 初回アクセス / false: 初回アクセスではない */
+
+        /* キャッシュにあればDBにアクセスせずに確認する(アクセス日時は後でまとめてDBに書き込む) */
+        AccessTokenCache.Entry entry = sTokenCache.get(accessToken, now);
+        if (entry != null) {
+            sTokenCache.recordAccessDate(entry.getTokenId(), now);
+        } else {
+            entry = loadAccessToken(accessToken, now);
+            if (entry != null) {
+                isFirstAccess = entry.isFirstAccess();
+            }
+        }
+
+        if (entry != null) {
+            isExistAccessToken = true; /* アクセストークンあり */
+            isExistClientId = entry.isExistClientId();
+            for (Scope s : entry.getScopes()) {
+                /* token.scopeに"*"が含まれていたら、どんなスコープにもアクセスできる */
+                if (BuildConfig.DEBUG && s.getScope().equals("*")) {
+                    isExistScope = true; /* スコープあり */
+                    isNotExpired = true; /* 有効期限 */
+                    break;
+                }
+                if (s.getScope().equals(scope)) {
+                    isExistScope = true; /* スコープあり */
+                    
+                    if (s.getExpirePeriod() == 0) {
+                        /* 有効期限0の場合は、トークン発行から1分以内の初回アクセスなら有効期限内とする */
+                        long t = now - entry.getRegistrationDate();
+                        if (0 <= t
+                        && t <= (LocalOAuth2Settings.ACCESS_TOKEN_GRACE_TIME * LocalOAuth2Settings.MSEC)
+                        && isFirstAccess) {
+                            isNotExpired = true;
+                        }
+                    } else if (s.getExpirePeriod() > 0) {
+                        /* 有効期限1以上の場合は、トークン発行からの経過時間が有効期限内かを判定して返す */
+                        isNotExpired = !s.isExpired();
+                    } else {
+                        /* 有効期限にマイナス値が設定されていたら、有効期限切れとみなす */
+                        isNotExpired = false;
+                    }
+                    break;
+                }
+            }
+        }
+        
+        CheckAccessTokenResult result = new CheckAccessTokenResult(isExistClientId, isExistAccessToken, isExistScope,
+                isNotExpired);
+        if (!result.checkResult()) {
+            sLogger.warning("checkAccessToken() - error.");
+            sLogger.warning(" - isExistClientId: " + isExistClientId);
+            sLogger.warning(" - isExistAccessToken: " + isExistAccessToken);
+            sLogger.warning(" - isExistScope:" + isExistScope);
+            sLogger.warning(" - isNotExpired:" + isNotExpired);
+            sLogger.warning(" - accessToken:" + accessToken);
+            sLogger.warning(" - scope:" + scope);
+        }
+        return result;
+    }
+
+    /**
+     * アクセストークンに対応するトークンをDBから読み込み、キャッシュに追加する.
+     * <p>
+     * 初回アクセスの判定を正しく行うため、DBから読み込んだ場合はアクセス日時をすぐにDBに書き込む。
+     * </p>
+     * @param accessToken アクセストークン
+     * @param now 現在時刻
+     * @return not null: 読み込んだトークンのキャッシュ / null: アクセストークンなし
+     */
+    private static AccessTokenCache.Entry loadAccessToken(final String accessToken, final long now) {
+        SQLiteToken token = null;
+        boolean isExistClientId = false;
+        boolean isFirstAccess = false;
         SQLiteDatabase db = null;
         SQLiteClientManager sqliteClientManager = null;
         SQLiteTokenManager sqliteTokenManager = null;
@@ -796,59 +835,21 @@ public final class LocalOAuth2Main {
         synchronized (sLockForDbAccess) {
             try {
                 /* DBオープン */
-                db = sDbHelper.getWritableDatabase();
+                db = getDatabase();
                 db.beginTransaction();
                 
-                /* ClientManagerにDBオブジェクトを設定 */
                 sqliteClientManager = (SQLiteClientManager) sClientManager;
-                sqliteClientManager.setDb(db);
-                
-                /* TokenManagerにDBオブジェクトを設定 */
                 sqliteTokenManager = (SQLiteTokenManager) sTokenManager;
-                sqliteTokenManager.setDb(db);
                 
                 /* アクセストークンを元にトークンを検索する */
-                SQLiteToken token = (SQLiteToken) sqliteTokenManager.findTokenByAccessToken(accessToken);
+                token = (SQLiteToken) sqliteTokenManager.findTokenByAccessToken(accessToken);
                 if (token != null) {
-                    isExistAccessToken = true; /* アクセストークンあり */
-                    Scope[] scopes = token.getScope();
-                    for (Scope s : scopes) {
-                        /* token.scopeに"*"が含まれていたら、どんなスコープにもアクセスできる */
-                        if (BuildConfig.DEBUG && s.getScope().equals("*")) {
-                            isExistScope = true; /* スコープあり */
-                            isNotExpired = true; /* 有効期限 */
-                            break;
-                        }
-                        if (s.getScope().equals(scope)) {
-                            isExistScope = true; /* スコープあり */
-                            
-                            if (s.getExpirePeriod() == 0) {
-                                /* 有効期限0の場合は、トークン発行から1分以内の初回アクセスなら有効期限内とする */
-                                long t = System.currentTimeMillis() - token.getRegistrationDate();
-                                if (0 <= t
-                                && t <= (LocalOAuth2Settings.ACCESS_TOKEN_GRACE_TIME * LocalOAuth2Settings.MSEC)
-                                && token.isFirstAccess()) {
-                                    isNotExpired = true;
-                                }
-                            } else if (s.getExpirePeriod() > 0) {
-                                /* 有効期限1以上の場合は、トークン発行からの経過時間が有効期限内かを判定して返す */
-                                isNotExpired = !s.isExpired();
-                            } else {
-                                /* 有効期限にマイナス値が設定されていたら、有効期限切れとみなす */
-                                isNotExpired = false;
-                            }
-                            break;
-                        }
-                    }
-    
                     /* このトークンを発行したクライアントIDが存在するかチェック */
-                    if (sqliteClientManager.findById(token.getClientId()) != null) {
-                        isExistClientId = true;
-                    }
-    
+                    isExistClientId = sqliteClientManager.findById(token.getClientId()) != null;
+                    isFirstAccess = token.isFirstAccess();
+                    
                     /* トークンのアクセス時間更新 */
-                    SQLiteToken sqliteToken = (SQLiteToken) token;
-                    sqliteToken.dbUpdateTokenAccessTime(db);
+                    token.dbUpdateTokenAccessTime(db);
                 }
                 
                 /* コミット */
@@ -859,31 +860,56 @@ public final class LocalOAuth2Main {
             } finally {
                 if (db != null) {
                     db.endTransaction();
-                    db.close();
-                }
-                /* TokenManagerのDBオブジェクトをクリア設定 */
-                if (sqliteTokenManager != null) {
-                    sqliteTokenManager.setDb(null);
-                }
-                /* ClientManagerのDBオブジェクトをクリア設定 */
-                if (sqliteClientManager != null) {
-                    sqliteClientManager.setDb(null);
                 }
             }
+            
+            /* DBの内容が変更されないうちにキャッシュに追加する */
+            if (token == null) {
+                return null;
+            }
+            return sTokenCache.put(token, isExistClientId, isFirstAccess, now);
+        }
+    }
+
+    /**
+     * キャッシュに記録したトークンのアクセス日時をまとめてDBに書き込む.
+     */
+    private static void writeAccessDates() {
+        Map<Long, Long> accessDates = sTokenCache.drainAccessDates();
+        if (accessDates.isEmpty()) {
+            return;
         }
         
-        CheckAccessTokenResult result = new CheckAccessTokenResult(isExistClientId, isExistAccessToken, isExistScope,
-                isNotExpired);
-        if (!result.checkResult()) {
-            sLogger.warning("checkAccessToken() - error.");
-            sLogger.warning(" - isExistClientId: " + isExistClientId);
-            sLogger.warning(" - isExistAccessToken: " + isExistAccessToken);
-            sLogger.warning(" - isExistScope:" + isExistScope);
-            sLogger.warning(" - isNotExpired:" + isNotExpired);
-            sLogger.warning(" - accessToken:" + accessToken);
-            sLogger.warning(" - scope:" + scope);
+        SQLiteDatabase db = null;
+        SQLiteTokenManager sqliteTokenManager = null;
+        
+        /* DBを同時アクセスさせない */
+        synchronized (sLockForDbAccess) {
+            if (sDbHelper == null) {
+                return;
+            }
+            try {
+                /* DBオープン */
+                db = getDatabase();
+                db.beginTransaction();
+                
+                sqliteTokenManager = (SQLiteTokenManager) sTokenManager;
+                
+                for (Map.Entry<Long, Long> accessDate : accessDates.entrySet()) {
+                    sqliteTokenManager.updateTokenAccessDate(accessDate.getKey(), accessDate.getValue());
+                }
+                
+                /* コミット */
+                db.setTransactionSuccessful();
+                
+            } catch (SQLiteException e) {
+                sLogger.warning("writeAccessDates() - " + e.getMessage());
+            } finally {
+                if (db != null) {
+                    db.endTransaction();
+                }
+            }
         }
-        return result;
     }
 
     /**
@@ -935,38 +961,22 @@ public final class LocalOAuth2Main {
         
         /* clientIdからclientSecretを取得する */
         String clientSecret = null;
-        SQLiteDatabase db = null;
-        SQLiteClientManager sqliteClientManager = null;
         
-        /* DBを同時アクセスさせない */
-        synchronized (sLockForDbAccess) {
-            try {
-                /* DBオープン */
-                db = sDbHelper.getReadableDatabase();
-                
-                /* ClientManagerにDBオブジェクトを設定 */
-                sqliteClientManager = (SQLiteClientManager) sClientManager;
-                sqliteClientManager.setDb(db);
-                
-                /* クライアントIDを元にをクライアントデータを検索する */
-                Client client = (Client) sqliteClientManager.findById(clientId);
-                if (client != null) {
-                    clientSecret = String.copyValueOf(client.getClientSecret());
-                } else {
-                    throw new AuthorizationException(AuthorizationException.CLIENT_NOT_FOUND);
-                }
-                
-            } catch (SQLiteException e) {
-                throw new RuntimeException(e);
-            } finally {
-                if (db != null) {
-                    db.close();
-                }
-                /* TokenManagerのDBオブジェクトをクリア設定 */
-                if (sqliteClientManager != null) {
-                    sqliteClientManager.setDb(null);
-                }
+        try {
+            /* DBオープン */
+            getDatabase();
+            SQLiteClientManager sqliteClientManager = (SQLiteClientManager) sClientManager;
+            
+            /* クライアントIDを元にをクライアントデータを検索する */
+            Client client = (Client) sqliteClientManager.findById(clientId);
+            if (client != null) {
+                clientSecret = String.copyValueOf(client.getClientSecret());
+            } else {
+                throw new AuthorizationException(AuthorizationException.CLIENT_NOT_FOUND);
             }
+            
+        } catch (SQLiteException e) {
+            throw new RuntimeException(e);
         }
         
         /* Signature作成 */
@@ -990,26 +1000,17 @@ public final class LocalOAuth2Main {
         }
         
         SQLiteDatabase db = null;
-        SQLiteClientManager sqliteClientManager = null;
-        SQLiteTokenManager sqliteTokenManager = null;
         
         /* DBを同時アクセスさせない */
         synchronized (sLockForDbAccess) {
             try {
                 /* DBオープン */
-                db = sDbHelper.getWritableDatabase();
+                db = getDatabase();
                 db.beginTransaction();
                 
-                /* ClientManagerにDBオブジェクトを設定 */
-                sqliteClientManager = (SQLiteClientManager) sClientManager;
-                sqliteClientManager.setDb(db);
-                
-                /* TokenManagerにDBオブジェクトを設定 */
-                sqliteTokenManager = (SQLiteTokenManager) sTokenManager;
-                sqliteTokenManager.setDb(db);
-                
                 Client client = sClientManager.findByPackageInfo(packageInfo);
                 sTokenManager.revokeAllTokens(client);
+                sTokenCache.removeByClientId(client.getClientId());
                 sLogger.fine("destroyAccessToken()");
                 sLogger.fine(" - clientId:" + client.getClientId());
                 sLogger.fine(" - packageName:" + packageInfo.getPackageName());
@@ -1025,15 +1026,6 @@ public final class LocalOAuth2Main {
             } finally {
                 if (db != null) {
                     db.endTransaction();
-                    db.close();
-                }
-                /* ClientManagerのDBオブジェクトをクリア設定 */
-                if (sqliteClientManager != null) {
-                    sqliteClientManager.setDb(null);
-                }
-                /* TokenManagerのDBオブジェクトをクリア設定 */
-                if (sqliteTokenManager != null) {
-                    sqliteTokenManager.setDb(null);
                 }
             }
         }
@@ -1055,46 +1047,17 @@ public final class LocalOAuth2Main {
         ClientPackageInfo clientPackageInfo = null;
         
         /* DBオープン */
-        SQLiteDatabase db = null;
-        SQLiteClientManager sqliteClientManager = null;
-        SQLiteTokenManager sqliteTokenManager = null;
+        getDatabase();
+        SQLiteClientManager sqliteClientManager = (SQLiteClientManager) sClientManager;
+        SQLiteTokenManager sqliteTokenManager = (SQLiteTokenManager) sTokenManager;
 
-        /* DBを同時アクセスさせない */
-        synchronized (sLockForDbAccess) {
-            try {
-                /* DBオープン */
-                db = sDbHelper.getReadableDatabase();
-                
-                /* ClientManagerにDBオブジェクトを設定 */
-                sqliteClientManager = (SQLiteClientManager) sClientManager;
-                sqliteClientManager.setDb(db);
-                
-                /* TokenManagerにDBオブジェクトを設定 */
-                sqliteTokenManager = (SQLiteTokenManager) sTokenManager;
-                sqliteTokenManager.setDb(db);
-                
-                SQLiteToken token = (SQLiteToken) sqliteTokenManager.findTokenByAccessToken(accessToken);
-                if (token != null) {
-                    String clientId = token.getClientId();
-                    if (clientId != null) {
-                        Client client = sqliteClientManager.findById(clientId);
-                        if (client != null) {
-                            clientPackageInfo = new ClientPackageInfo(client.getPackageInfo(), clientId);
-                        }
-                    }
-                }
-                
-            } finally {
-                if (db != null) {
-                    db.close();
-                }
-                /* ClientManagerのDBオブジェクトをクリア設定 */
-                if (sqliteClientManager != null) {
-                    sqliteClientManager.setDb(null);
-                }
-                /* TokenManagerのDBオブジェクトをクリア設定 */
-                if (sqliteTokenManager != null) {
-                    sqliteTokenManager.setDb(null);
+        SQLiteToken token = (SQLiteToken) sqliteTokenManager.findTokenByAccessToken(accessToken);
+        if (token != null) {
+            String clientId = token.getClientId();
+            if (clientId != null) {
+                Client client = sqliteClientManager.findById(clientId);
+                if (client != null) {
+                    clientPackageInfo = new ClientPackageInfo(client.getPackageInfo(), clientId);
                 }
             }
         }
@@ -1121,34 +1084,16 @@ public final class LocalOAuth2Main {
     public static SQLiteToken[] getAccessTokens() {
         SQLiteToken[] tokens = null;
         
-        SQLiteDatabase db = null;
-        SQLiteTokenManager sqliteTokenManager = null;
-        
-        /* DBを同時アクセスさせない */
-        synchronized (sLockForDbAccess) {
-            try {
-                /* DBオープン */
-                db = sDbHelper.getReadableDatabase();
-                
-                /* ClientManagerにDBオブジェクトを設定 */
-                sqliteTokenManager = (SQLiteTokenManager) sTokenManager;
-                sqliteTokenManager.setDb(db);
-                
-                /* LocalOAuthが保持しているクライアントシークレットを取得 */
-                tokens = (SQLiteToken[]) sqliteTokenManager.findTokens(SampleUser.USERNAME);
-                
-            } catch (SQLiteException e) {
-                throw new RuntimeException(e);
-            } finally {
-                if (db != null) {
-                    db.close();
-                }
-                
-                /* TokenManagerのDBオブジェクトをクリア設定 */
-                if (sqliteTokenManager != null) {
-                    sqliteTokenManager.setDb(null);
-                }
-            }
+        try {
+            /* DBオープン */
+            getDatabase();
+            SQLiteTokenManager sqliteTokenManager = (SQLiteTokenManager) sTokenManager;
+            
+            /* LocalOAuthが保持しているクライアントシークレットを取得 */
+            tokens = (SQLiteToken[]) sqliteTokenManager.findTokens(SampleUser.USERNAME);
+            
+        } catch (SQLiteException e) {
+            throw new RuntimeException(e);
         }
         
         return tokens;
@@ -1163,34 +1108,17 @@ public final class LocalOAuth2Main {
      * @return トークンデータ
      */
     public static SQLiteToken getAccessToken(final Client client) {
-        SQLiteDatabase db = null;
-        SQLiteTokenManager sqliteTokenManager = null;
         
-        /* DBを同時アクセスさせない */
-        synchronized (sLockForDbAccess) {
-            try {
-                /* DBオープン */
-                db = sDbHelper.getReadableDatabase();
-                
-                /* ClientManagerにDBオブジェクトを設定 */
-                sqliteTokenManager = (SQLiteTokenManager) sTokenManager;
-                sqliteTokenManager.setDb(db);
-                
-                /* LocalOAuthが保持しているクライアントシークレットを取得 */
-                return (SQLiteToken) sqliteTokenManager.findToken(client, SampleUser.USERNAME);
-                
-            } catch (SQLiteException e) {
-                throw new RuntimeException(e);
-            } finally {
-                if (db != null) {
-                    db.close();
-                }
-                
-                /* TokenManagerのDBオブジェクトをクリア設定 */
-                if (sqliteTokenManager != null) {
-                    sqliteTokenManager.setDb(null);
-                }
-            }
+        try {
+            /* DBオープン */
+            getDatabase();
+            SQLiteTokenManager sqliteTokenManager = (SQLiteTokenManager) sTokenManager;
+            
+            /* LocalOAuthが保持しているクライアントシークレットを取得 */
+            return (SQLiteToken) sqliteTokenManager.findToken(client, SampleUser.USERNAME);
+            
+        } catch (SQLiteException e) {
+            throw new RuntimeException(e);
         }
     }
     
@@ -1208,14 +1136,13 @@ public final class LocalOAuth2Main {
         synchronized (sLockForDbAccess) {
             try {
                 /* DBオープン */
-                db = sDbHelper.getWritableDatabase();
+                db = getDatabase();
                 db.beginTransaction();
                 
-                /* TokenManagerにDBオブジェクトを設定 */
                 sqliteTokenManager = (SQLiteTokenManager) sTokenManager;
-                sqliteTokenManager.setDb(db);
                 
                 sqliteTokenManager.revokeToken(tokenId);
+                sTokenCache.removeByTokenId(tokenId);
                 
                 /* コミット */
                 db.setTransactionSuccessful();
@@ -1225,11 +1152,6 @@ public final class LocalOAuth2Main {
             } finally {
                 if (db != null) {
                     db.endTransaction();
-                    db.close();
-                }
-                /* TokenManagerのDBオブジェクトをクリア設定 */
-                if (sqliteTokenManager != null) {
-                    sqliteTokenManager.setDb(null);
                 }
             }
         }
@@ -1248,14 +1170,13 @@ public final class LocalOAuth2Main {
         synchronized (sLockForDbAccess) {
             try {
                 /* DBオープン */
-                db = sDbHelper.getWritableDatabase();
+                db = getDatabase();
                 db.beginTransaction();
                 
-                /* TokenManagerにDBオブジェクトを設定 */
                 sqliteTokenManager = (SQLiteTokenManager) sTokenManager;
-                sqliteTokenManager.setDb(db);
                 
                 sqliteTokenManager.revokeAllTokens(SampleUser.USERNAME);
+                sTokenCache.clear();
                 
                 /* コミット */
                 db.setTransactionSuccessful();
@@ -1265,11 +1186,6 @@ public final class LocalOAuth2Main {
             } finally {
                 if (db != null) {
                     db.endTransaction();
-                    db.close();
-                }
-                /* TokenManagerのDBオブジェクトをクリア設定 */
-                if (sqliteTokenManager != null) {
-                    sqliteTokenManager.setDb(null);
                 }
             }
         }
@@ -1283,34 +1199,16 @@ public final class LocalOAuth2Main {
     public static SQLiteClient findClientByClientId(final String clientId) {
         SQLiteClient client = null;
         
-        SQLiteDatabase db = null;
-        SQLiteClientManager sqliteClientManager = null;
-        
-        /* DBを同時アクセスさせない */
-        synchronized (sLockForDbAccess) {
-            try {
-                /* DBオープン */
-                db = sDbHelper.getReadableDatabase();
-                
-                /* ClientManagerにDBオブジェクトを設定 */
-                sqliteClientManager = (SQLiteClientManager) sClientManager;
-                sqliteClientManager.setDb(db);
-                
-                /* LocalOAuthが保持しているクライアントシークレットを取得 */
-                client = (SQLiteClient) sqliteClientManager.findById(clientId);
-                
-            } catch (SQLiteException e) {
-                throw new RuntimeException(e);
-            } finally {
-                if (db != null) {
-                    db.close();
-                }
-                
-                /* TokenManagerのDBオブジェクトをクリア設定 */
-                if (sqliteClientManager != null) {
-                    sqliteClientManager.setDb(null);
-                }
-            }
+        try {
+            /* DBオープン */
+            getDatabase();
+            SQLiteClientManager sqliteClientManager = (SQLiteClientManager) sClientManager;
+            
+            /* LocalOAuthが保持しているクライアントシークレットを取得 */
+            client = (SQLiteClient) sqliteClientManager.findById(clientId);
+            
+        } catch (SQLiteException e) {
+            throw new RuntimeException(e);
         }
         
         return client;
@@ -1330,14 +1228,13 @@ public final class LocalOAuth2Main {
         synchronized (sLockForDbAccess) {
             try {
                 /* DBオープン */
-                db = sDbHelper.getWritableDatabase();
+                db = getDatabase();
                 db.beginTransaction();
                 
-                /* ClientManagerにDBオブジェクトを設定 */
                 sqliteClientManager = (SQLiteClientManager) sClientManager;
-                sqliteClientManager.setDb(db);
                 
                 sqliteClientManager.cleanupClient(LocalOAuth2Settings.CLIENT_CLEANUP_TIME);
+                sTokenCache.clear();
                 
                 /* 有効クライアント数を取得する */
                 clientCount = sqliteClientManager.countClients();
@@ -1349,11 +1246,6 @@ public final class LocalOAuth2Main {
             } finally {
                 if (db != null) {
                     db.endTransaction();
-                    db.close();
-                }
-                /* ClientManagerのDBオブジェクトをクリア設定 */
-                if (sqliteClientManager != null) {
-                    sqliteClientManager.setDb(null);
                 }
             }
         }
@@ -1388,29 +1280,23 @@ public final class LocalOAuth2Main {
                         AuthorizationException exception = null;
                         
                         SQLiteDatabase db = null;
-                        SQLiteClientManager sqliteClientManager = null;
                         SQLiteTokenManager sqliteTokenManager = null;
                         
                         /* DBを同時アクセスさせない */
                         synchronized (sLockForDbAccess) {
                             try {
                                 /* DBオープン */
-                                db = sDbHelper.getWritableDatabase();
+                                db = getDatabase();
                                 db.beginTransaction();
                                 
-                                /* ClientManagerにDBオブジェクトを設定 */
-                                sqliteClientManager = (SQLiteClientManager) sClientManager;
-                                sqliteClientManager.setDb(db);
-                                
-                                /* TokenManagerにDBオブジェクトを設定 */
                                 sqliteTokenManager = (SQLiteTokenManager) sTokenManager;
-                                sqliteTokenManager.setDb(db);
                                 
                                 /* アクセストークン発行する前に古い無効なトークン(クライアントIDが削除されて残っていたトークン)をクリーンアップする */
                                 sqliteTokenManager.cleanup();
                                 
                                 /* アクセストークン発行 */
                                 accessTokenData = publishAccessToken(params);
+                                sTokenCache.clear();
                                 
                                 /* コミット */
                                 db.setTransactionSuccessful();
@@ -1421,17 +1307,6 @@ public final class LocalOAuth2Main {
                             } finally {
                                 if (db != null) {
                                     db.endTransaction();
-                                    db.close();
-                                }
-                                
-                                /* ClientManagerのDBオブジェクトをクリア設定 */
-                                if (sqliteClientManager != null) {
-                                    sqliteClientManager.setDb(null);
-                                }
-                                
-                                /* TokenManagerのDBオブジェクトをクリア設定 */
-                                if (sqliteTokenManager != null) {
-                                    sqliteTokenManager.setDb(null);
                                 }
                             }
                         }
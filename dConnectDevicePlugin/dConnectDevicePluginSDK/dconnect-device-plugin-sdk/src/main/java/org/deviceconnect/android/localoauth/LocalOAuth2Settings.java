@@ -40,6 +40,15 @@ public final class LocalOAuth2Settings {
     /** 有効期限0が設定されたときに、初回アクセスを「有効期限内」として返す猶予時間[秒]. */
     public static final long ACCESS_TOKEN_GRACE_TIME = 1 * MINUTE; /* 1分[秒] */
     
+    /** アクセストークンの確認結果をキャッシュする件数の上限. */
+    public static final int ACCESS_TOKEN_CACHE_SIZE = 128;
+    
+    /** アクセストークンの確認結果をキャッシュする時間[秒]. */
+    public static final long ACCESS_TOKEN_CACHE_TIME = 5 * MINUTE; /* 5分[秒] */
+    
+    /** トークンのアクセス日時をまとめてDBに書き込む間隔[秒]. */
+    public static final long ACCESS_DATE_WRITE_INTERVAL = 10; /* 10秒 */
+    
     
     
     /**
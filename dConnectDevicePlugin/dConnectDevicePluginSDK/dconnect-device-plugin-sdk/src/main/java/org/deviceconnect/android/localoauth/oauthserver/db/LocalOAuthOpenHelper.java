@@ -87,6 +87,18 @@ public class LocalOAuthOpenHelper extends SQLiteOpenHelper {
             + "expire_period INTEGER "  /* [Ver5で単位変更]有効期限[sec]({timestamp + expire_period * 1000} が有効期限が切れる時間) */
             + ")";
     
+    /** インデックス作成コマンド(tokens.access_token). */
+    static final String CREATE_TOKENS_ACCESS_TOKEN_INDEX =
+            "CREATE INDEX IF NOT EXISTS tokens_access_token_index ON tokens (access_token)";
+    
+    /** インデックス作成コマンド(clients.client_id). */
+    static final String CREATE_CLIENTS_CLIENT_ID_INDEX =
+            "CREATE INDEX IF NOT EXISTS clients_client_id_index ON clients (client_id)";
+    
+    /** インデックス作成コマンド(scopes.tokens_tokenid). */
+    static final String CREATE_SCOPES_TOKEN_ID_INDEX =
+            "CREATE INDEX IF NOT EXISTS scopes_tokens_tokenid_index ON scopes (tokens_tokenid)";
+    
     /** テーブル削除コマンド(profiles). */
     static final String DROP_PROFILES_TABLE = "DROP TABLE profiles";
     
@@ -116,6 +128,26 @@ public class LocalOAuthOpenHelper extends SQLiteOpenHelper {
         createAllTables(db);
     }
 
+    /**
+     * DBを開いたときの処理.
+     * <p>
+     * 書き込み中でも読み込みを同時に行えるようにWALモードを有効にする。
+     * また、頻繁に検索するフィールドのインデックスが無ければ作成する
+     * (既存のDBにも作成するため、バージョンは変更しない)。
+     * </p>
+     * @param db データベース
+     */
+    @Override
+    public void onOpen(final SQLiteDatabase db) {
+        super.onOpen(db);
+        if (!db.isReadOnly()) {
+            db.enableWriteAheadLogging();
+            db.execSQL(CREATE_TOKENS_ACCESS_TOKEN_INDEX);
+            db.execSQL(CREATE_CLIENTS_CLIENT_ID_INDEX);
+            db.execSQL(CREATE_SCOPES_TOKEN_ID_INDEX);
+        }
+    }
+
     /**
      * アップグレード処理.
      * @param   db  データベース
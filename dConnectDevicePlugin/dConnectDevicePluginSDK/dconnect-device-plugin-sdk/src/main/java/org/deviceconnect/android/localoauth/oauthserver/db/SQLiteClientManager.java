@@ -53,6 +53,23 @@ import android.os.Bundle;
  */
 public class SQLiteClientManager extends AbstractClientManager {
 
+    /**
+     * クライアントIDからクライアントを検索するSQL.
+     * <p>
+     * SQL文を固定にすることで、コンパイル済みのステートメントがDBのキャッシュから再利用される。
+     * </p>
+     */
+    private static final String SQL_SELECT_CLIENT_BY_CLIENT_ID = "select "
+            + SQLiteClient.ID_FIELD + ", "
+            + SQLiteClient.CLIENTID_FIELD + ", "
+            + SQLiteClient.PACKAGENAME_FIELD + ", "
+            + SQLiteClient.DEVICEID_FIELD + ", "
+            + SQLiteClient.CLIENTSECRET_FIELD + ", "
+            + SQLiteClient.CLIENTTYPE_FIELD + ", "
+            + SQLiteClient.REGISTRATION_DATE_FIELD
+            + " from " + LocalOAuthOpenHelper.CLIENTS_TABLE
+            + " where " + SQLiteClient.CLIENTID_FIELD + " = ?";
+
     /**
      * DBオブジェクト.
      */
@@ -155,9 +172,15 @@ public class SQLiteClientManager extends AbstractClientManager {
      */
     public Client findById(final String id) {
         if (mDb != null) {
-            Bundle where = new Bundle();
-            where.putString(SQLiteClient.DATA_TYPE_STRING + "," + SQLiteClient.CLIENTID_FIELD, id);
-            Client[] clients = dbLoadClients(mDb, where);
+            Client[] clients;
+            if (id != null) {
+                String[] selectionArgs = { id };
+                clients = dbLoadClients(mDb.rawQuery(SQL_SELECT_CLIENT_BY_CLIENT_ID, selectionArgs));
+            } else {
+                Bundle where = new Bundle();
+                where.putString(SQLiteClient.DATA_TYPE_STRING + "," + SQLiteClient.CLIENTID_FIELD, id);
+                clients = dbLoadClients(mDb, where);
+            }
             if (clients == null || clients.length == 0) {
                 return null;
             } else if (clients.length == 1) {
@@ -245,15 +268,23 @@ public class SQLiteClientManager extends AbstractClientManager {
      * @return 条件に一致したclientデータ配列。該当データが0件ならnull。
      */
     private SQLiteClient[] dbLoadClients(final SQLiteDatabase db, final Bundle where) {
-
-        SQLiteClient[] result = null;
-
         String tables = LocalOAuthOpenHelper.CLIENTS_TABLE;
         String[] columns = SQLiteClient.CLIENT_ALL_FIELIDS;
         String selection = getSelection(where);
-        Cursor c = null;
+        return dbLoadClients(db.query(tables, columns, selection, null, null, null, null));
+    }
+
+    /**
+     * clientsテーブルを検索した結果からclientデータを読み込む.
+     * 
+     * @param c clientsテーブルの全フィールドを検索したカーソル。このメソッド内でクローズする。
+     * @return 条件に一致したclientデータ配列。該当データが0件ならnull。
+     */
+    private SQLiteClient[] dbLoadClients(final Cursor c) {
+
+        SQLiteClient[] result = null;
+
         try {
-            c = db.query(tables, columns, selection, null, null, null, null);
             if (c.moveToFirst()) {
                 int count = c.getCount();
                 if (count > 0) {
@@ -49,6 +49,7 @@ import org.restlet.ext.oauth.internal.Client;
 import org.restlet.ext.oauth.internal.Scope;
 import org.restlet.ext.oauth.internal.Token;
 
+import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
@@ -58,6 +59,36 @@ public class SQLiteTokenManager extends AbstractTokenManager {
     /** セッションマップ. */
     private final Map<String, AuthSession> mSessions = new ConcurrentHashMap<String, AuthSession>();
 
+    /**
+     * アクセストークンからトークンを検索するSQL.
+     * <p>
+     * SQL文を固定にすることで、コンパイル済みのステートメントがDBのキャッシュから再利用される。
+     * </p>
+     */
+    private static final String SQL_SELECT_TOKEN_BY_ACCESS_TOKEN = "select "
+            + SQLiteToken.ID_FIELD + ", "
+            + SQLiteToken.ACCCESS_TOKEN_FIELD + ", "
+            + SQLiteToken.TOKEN_TYPE_FIELD + ", "
+            + SQLiteToken.CLIENTID_FIELD + ", "
+            + SQLiteToken.USERS_USERID_FIELD + ", "
+            + SQLiteToken.REGISTRATION_DATE_FIELD + ", "
+            + SQLiteToken.ACCESS_DATE_FIELD + ", "
+            + SQLiteToken.APPLICATION_NAME_FIELD
+            + " from " + LocalOAuthOpenHelper.TOKENS_TABLE
+            + " where " + SQLiteToken.ACCCESS_TOKEN_FIELD + " = ?";
+
+    /**
+     * トークンIDからスコープを検索するSQL.
+     */
+    private static final String SQL_SELECT_SCOPES_BY_TOKEN_ID = "select "
+            + LocalOAuthOpenHelper.PROFILES_TABLE + "." + SQLiteProfile.PROFILE_NAME_FIELD + ", "
+            + LocalOAuthOpenHelper.SCOPES_TABLE + "." + SQLiteScopeDb.TIMESTAMP_FIELD + ", "
+            + LocalOAuthOpenHelper.SCOPES_TABLE + "." + SQLiteScopeDb.EXPIRE_PERIOD_FIELD
+            + " from " + LocalOAuthOpenHelper.SCOPES_TABLE + ", " + LocalOAuthOpenHelper.PROFILES_TABLE
+            + " where " + LocalOAuthOpenHelper.SCOPES_TABLE + "." + SQLiteScopeDb.TOKENS_TOKENID_FIELD + " = ?"
+            + " and " + LocalOAuthOpenHelper.SCOPES_TABLE + "." + SQLiteScopeDb.PROFILES_PROFILEID_FIELD
+            + " = " + LocalOAuthOpenHelper.PROFILES_TABLE + "." + SQLiteProfile.ID_FIELD;
+
     /**
      * DBオブジェクト.
      */
@@ -365,6 +396,24 @@ public class SQLiteTokenManager extends AbstractTokenManager {
         }
     }
 
+    /**
+     * トークンIDを指定してアクセス日時を更新する.
+     * 
+     * @param tokenId トークンID
+     * @param accessDate アクセス日時
+     */
+    public void updateTokenAccessDate(final long tokenId, final long accessDate) {
+        if (mDb != null) {
+            ContentValues values = new ContentValues();
+            values.put(SQLiteToken.ACCESS_DATE_FIELD, accessDate);
+            String whereClause = SQLiteToken.ID_FIELD + "=?";
+            String[] whereArgs = { String.valueOf(tokenId) };
+            mDb.update(LocalOAuthOpenHelper.TOKENS_TABLE, values, whereClause, whereArgs);
+        } else {
+            throw new SQLiteException("DBがオープンされていません。");
+        }
+    }
+
     /**
      * アクセストークンが一致するトークンを探す.
      * 
@@ -375,9 +424,8 @@ public class SQLiteTokenManager extends AbstractTokenManager {
     @Override
     public Token findTokenByAccessToken(final String accessToken) {
         if (mDb != null) {
-            String selection = SQLiteToken.ACCCESS_TOKEN_FIELD + "=?";
             String[] selectionArgs = { accessToken };
-            SQLiteToken[] tokens = dbLoadTokens(mDb, selection, selectionArgs);
+            SQLiteToken[] tokens = dbLoadTokens(mDb, mDb.rawQuery(SQL_SELECT_TOKEN_BY_ACCESS_TOKEN, selectionArgs));
 
             if (tokens == null || tokens.length == 0) { /* 該当データなし */
                 return null;
@@ -418,15 +466,24 @@ public class SQLiteTokenManager extends AbstractTokenManager {
      */
     private SQLiteToken[] dbLoadTokens(final SQLiteDatabase db, final String selection, final String[] selectionArgs) {
 
-        SQLiteToken[] result = null;
-
         /* tokensテーブル読み込み */
         String tables = LocalOAuthOpenHelper.TOKENS_TABLE;
         String[] columns = SQLiteToken.TOKEN_ALL_FIELIDS;
+        return dbLoadTokens(db, db.query(tables, columns, selection, selectionArgs, null, null, null));
+    }
+
+    /**
+     * tokensテーブルを検索した結果からtokenデータを読み込む.
+     * 
+     * @param db DBオブジェクト
+     * @param c tokensテーブルの全フィールドを検索したカーソル。このメソッド内でクローズする。
+     * @return 条件に一致したtokenデータ配列。該当データが0件ならnull。
+     */
+    private SQLiteToken[] dbLoadTokens(final SQLiteDatabase db, final Cursor c) {
+
+        SQLiteToken[] result = null;
 
-        Cursor c = null;
         try {
-            c = db.query(tables, columns, selection, selectionArgs, null, null, null);
             if (c.moveToFirst()) {
                 int count = c.getCount();
                 if (count > 0) {
@@ -587,29 +644,14 @@ public class SQLiteTokenManager extends AbstractTokenManager {
      */
     private void dbLoadScopesStoreToToken(final SQLiteDatabase db, final SQLiteToken[] tokens) {
 
-        final String tables = LocalOAuthOpenHelper.SCOPES_TABLE + "," + LocalOAuthOpenHelper.PROFILES_TABLE;
-        final String fieldProfilesProfileName = LocalOAuthOpenHelper.PROFILES_TABLE + "."
-                + SQLiteProfile.PROFILE_NAME_FIELD;
-        final String fieldScopesTimestamp = LocalOAuthOpenHelper.SCOPES_TABLE + "."
-                + SQLiteScopeDb.TIMESTAMP_FIELD;
-        final String fieldScopesExpirePeriod = LocalOAuthOpenHelper.SCOPES_TABLE + "."
-                + SQLiteScopeDb.EXPIRE_PERIOD_FIELD;
-        
-        final String fieldScopesTokenId = LocalOAuthOpenHelper.SCOPES_TABLE + "." + SQLiteScopeDb.TOKENS_TOKENID_FIELD;
-        final String fieldScopesProfileId = LocalOAuthOpenHelper.SCOPES_TABLE + "."
-                + SQLiteScopeDb.PROFILES_PROFILEID_FIELD;
-        final String fieldProfilesId = LocalOAuthOpenHelper.PROFILES_TABLE + "." + SQLiteProfile.ID_FIELD;
-        final String[] columns = {fieldProfilesProfileName, fieldScopesTimestamp, fieldScopesExpirePeriod};
-
         for (SQLiteToken token : tokens) {
-            String where = fieldScopesTokenId + " = " + token.getId() + " and " + fieldScopesProfileId + " = "
-                    + fieldProfilesId;
+            String[] selectionArgs = { String.valueOf(token.getId()) };
 
             Scope[] scopes = null;
 
             Cursor c = null;
             try {
-                c = db.query(tables, columns, where, null, null, null, null);
+                c = db.rawQuery(SQL_SELECT_SCOPES_BY_TOKEN_ID, selectionArgs);
                 if (c.moveToFirst()) {
                     int count = c.getCount();
                     if (count > 0) {
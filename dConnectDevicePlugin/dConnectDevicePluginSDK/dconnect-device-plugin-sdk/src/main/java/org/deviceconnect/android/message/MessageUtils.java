@@ -512,4 +512,23 @@ public final class MessageUtils {
         setError(response, ErrorCode.INVALID_ORIGIN, message);
     }
 
+    /**
+     * レスポンスのエラーコードに デバイスプラグイン利用不可エラー を設定する.
+     * 
+     * @param response レスポンスパラメータ
+     */
+    public static void setDevicePluginUnavailableError(final Intent response) {
+        setError(response, ErrorCode.DEVICE_PLUGIN_UNAVAILABLE);
+    }
+
+    /**
+     * レスポンスのエラーコードに デバイスプラグイン利用不可エラー を設定し、指定されたエラーメッセージを設定する.
+     * 
+     * @param response レスポンスパラメータ
+     * @param message エラーメッセージ　
+     */
+    public static void setDevicePluginUnavailableError(final Intent response, final String message) {
+        setError(response, ErrorCode.DEVICE_PLUGIN_UNAVAILABLE, message);
+    }
+
 }
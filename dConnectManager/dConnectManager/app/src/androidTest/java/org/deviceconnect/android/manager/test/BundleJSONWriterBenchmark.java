@@ -0,0 +1,203 @@
+/*
+ BundleJSONWriterBenchmark.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager.test;
+
+import android.os.Bundle;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import junit.framework.Assert;
+
+import org.deviceconnect.android.manager.util.BundleJSONWriter;
+import org.deviceconnect.android.manager.util.DConnectUtil;
+import org.deviceconnect.message.DConnectMessage;
+import org.deviceconnect.profile.ServiceDiscoveryProfileConstants;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+/**
+ * {@link BundleJSONWriter}とJSONObjectを経由した従来の変換の処理時間を比較する.
+ * <p>
+ * Bundleは端末上でしか扱えないため、JMHではなく端末上で同じ回数ずつ交互に変換して計測する。
+ * 結果はログ(タグ: {@value #TAG})に出力する。処理時間は端末の状態に左右されるため、
+ * テストとしては両者の出力が一致することのみを確認する。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BundleJSONWriterBenchmark {
+
+    /** ログのタグ. */
+    private static final String TAG = "BundleJSONWriter";
+
+    /** 計測前に実行する回数. */
+    private static final int WARMUP_COUNT = 2000;
+
+    /** 計測する回数. */
+    private static final int MEASURE_COUNT = 10000;
+
+    /** 計測を繰り返す回数. */
+    private static final int ROUND_COUNT = 3;
+
+    /** Service Discoveryのレスポンスに含めるサービスの数. */
+    private static final int SERVICE_COUNT = 20;
+
+    /** 最適化で変換処理が省かれないように、変換結果の長さを足し込む変数. */
+    private long mSink;
+
+    /**
+     * Device Orientationのイベントの変換を比較する.
+     *
+     * @throws Exception 変換に失敗した場合
+     */
+    @Test
+    public void benchmarkOrientationEvent() throws Exception {
+        compare("onDeviceOrientation", createOrientationEvent());
+    }
+
+    /**
+     * Service Discoveryのレスポンスの変換を比較する.
+     *
+     * @throws Exception 変換に失敗した場合
+     */
+    @Test
+    public void benchmarkServiceDiscoveryResponse() throws Exception {
+        compare("serviceDiscovery", createServiceDiscoveryResponse());
+    }
+
+    /**
+     * 2つの変換の出力が一致することを確認し、処理時間を計測してログに出力する.
+     *
+     * @param name 計測対象の名前
+     * @param bundle 変換するBundle
+     * @throws JSONException 変換に失敗した場合
+     * @throws UnsupportedEncodingException UTF-8がサポートされていない場合
+     */
+    private void compare(final String name, final Bundle bundle)
+            throws JSONException, UnsupportedEncodingException {
+        Assert.assertTrue(Arrays.equals(convertWithJSONObject(bundle), BundleJSONWriter.toJSONBytes(bundle)));
+
+        runJSONObject(bundle, WARMUP_COUNT);
+        runWriter(bundle, WARMUP_COUNT);
+        for (int round = 0; round < ROUND_COUNT; round++) {
+            long jsonObject = runJSONObject(bundle, MEASURE_COUNT);
+            long writer = runWriter(bundle, MEASURE_COUNT);
+            Log.i(TAG, String.format("%s round %d: JSONObject %d ns/op, BundleJSONWriter %d ns/op (%.2fx)",
+                    name, round, jsonObject / MEASURE_COUNT, writer / MEASURE_COUNT,
+                    (double) jsonObject / writer));
+        }
+        Log.d(TAG, "sink=" + mSink);
+    }
+
+    /**
+     * JSONObjectを経由した変換を指定回数実行する.
+     *
+     * @param bundle 変換するBundle
+     * @param count 実行回数
+     * @return 処理時間[nsec]
+     * @throws JSONException 変換に失敗した場合
+     * @throws UnsupportedEncodingException UTF-8がサポートされていない場合
+     */
+    private long runJSONObject(final Bundle bundle, final int count)
+            throws JSONException, UnsupportedEncodingException {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            mSink += convertWithJSONObject(bundle).length;
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * {@link BundleJSONWriter}による変換を指定回数実行する.
+     *
+     * @param bundle 変換するBundle
+     * @param count 実行回数
+     * @return 処理時間[nsec]
+     * @throws JSONException 変換に失敗した場合
+     */
+    private long runWriter(final Bundle bundle, final int count) throws JSONException {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            mSink += BundleJSONWriter.toJSONBytes(bundle).length;
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * 従来の方法でBundleをJSONのバイト列に変換する.
+     *
+     * @param bundle 変換するBundle
+     * @return JSONのバイト列
+     * @throws JSONException 変換に失敗した場合
+     * @throws UnsupportedEncodingException UTF-8がサポートされていない場合
+     */
+    private static byte[] convertWithJSONObject(final Bundle bundle)
+            throws JSONException, UnsupportedEncodingException {
+        JSONObject root = new JSONObject();
+        DConnectUtil.convertBundleToJSON(root, bundle);
+        return root.toString().getBytes("UTF-8");
+    }
+
+    /**
+     * Device Orientationのイベントを作成する.
+     *
+     * @return イベント
+     */
+    private static Bundle createOrientationEvent() {
+        Bundle acceleration = new Bundle();
+        acceleration.putDouble("x", 0.012345);
+        acceleration.putDouble("y", -0.98765);
+        acceleration.putDouble("z", 9.80665);
+        Bundle gravity = new Bundle(acceleration);
+        Bundle rotationRate = new Bundle();
+        rotationRate.putDouble("alpha", 1.5);
+        rotationRate.putDouble("beta", -0.25);
+        rotationRate.putDouble("gamma", 0.125);
+        Bundle orientation = new Bundle();
+        orientation.putBundle("acceleration", acceleration);
+        orientation.putBundle("accelerationIncludingGravity", gravity);
+        orientation.putBundle("rotationRate", rotationRate);
+        orientation.putLong("interval", 33);
+
+        Bundle event = new Bundle();
+        event.putString(DConnectMessage.EXTRA_SERVICE_ID, "host.HostDevicePlugin.localhost.deviceconnect.org");
+        event.putString(DConnectMessage.EXTRA_PROFILE, "deviceorientation");
+        event.putString(DConnectMessage.EXTRA_ATTRIBUTE, "ondeviceorientation");
+        event.putString(DConnectMessage.EXTRA_SESSION_KEY, "0123456789abcdef.HostDevicePlugin@receiver");
+        event.putBundle("orientation", orientation);
+        return event;
+    }
+
+    /**
+     * Service Discoveryのレスポンスを作成する.
+     *
+     * @return レスポンス
+     */
+    private static Bundle createServiceDiscoveryResponse() {
+        Bundle[] services = new Bundle[SERVICE_COUNT];
+        for (int i = 0; i < services.length; i++) {
+            Bundle service = new Bundle();
+            service.putString(ServiceDiscoveryProfileConstants.PARAM_ID,
+                    "service" + i + ".plugin.localhost.deviceconnect.org");
+            service.putString(ServiceDiscoveryProfileConstants.PARAM_NAME, "テストサービス" + i);
+            service.putString(ServiceDiscoveryProfileConstants.PARAM_TYPE, "BLE");
+            service.putBoolean(ServiceDiscoveryProfileConstants.PARAM_ONLINE, true);
+            service.putStringArray(ServiceDiscoveryProfileConstants.PARAM_SCOPES,
+                    new String[] {"battery", "deviceorientation", "serviceinformation", "vibration"});
+            services[i] = service;
+        }
+        Bundle response = new Bundle();
+        response.putInt(DConnectMessage.EXTRA_RESULT, DConnectMessage.RESULT_OK);
+        response.putParcelableArray(ServiceDiscoveryProfileConstants.PARAM_SERVICES, services);
+        return response;
+    }
+}
@@ -6,13 +6,17 @@
  */
 package org.deviceconnect.android.manager.test;
 
+import android.content.Intent;
 import android.os.Bundle;
+import android.os.Parcelable;
 import android.support.test.runner.AndroidJUnit4;
 
 import junit.framework.Assert;
 
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.deviceconnect.android.manager.util.BundleJSONWriter;
+import org.deviceconnect.android.manager.util.DConnectUtil;
 import org.deviceconnect.android.profile.restful.test.RESTfulDConnectTestCase;
 import org.deviceconnect.message.DConnectMessage;
 import org.deviceconnect.message.intent.message.IntentDConnectMessage;
@@ -21,6 +25,9 @@ import org.json.JSONObject;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+
 
 /**
  * {@link Bundle}を{@link JSONObject}に変換するテストを実行する.
@@ -99,4 +106,155 @@ public class JSONConversionTest extends RESTfulDConnectTestCase {
         Assert.assertEquals(0, root.getJSONArray("ArrayList<Integer>").get(0));
     }
 
+    /**
+     * 入れ子になったBundleを{@link BundleJSONWriter}が従来の変換と同じJSONに変換することを確認するテスト.
+     *
+     * @throws Exception 変換に失敗した場合
+     */
+    @Test
+    public void testWriterNestedBundle() throws Exception {
+        Bundle leaf = new Bundle();
+        leaf.putString("name", "leaf");
+        leaf.putInt("depth", 2);
+        Bundle child = new Bundle();
+        child.putBundle("leaf", leaf);
+        child.putBundle("empty", new Bundle());
+        child.putString("uri", "content://org.deviceconnect.test/child");
+        Bundle root = new Bundle();
+        root.putInt(IntentDConnectMessage.EXTRA_REQUEST_CODE, 1);
+        root.putBundle("child", child);
+        root.putParcelableArray("children", new Bundle[] {leaf, child});
+        assertSameJSON(root);
+    }
+
+    /**
+     * 配列とリストを{@link BundleJSONWriter}が従来の変換と同じJSONに変換することを確認するテスト.
+     *
+     * @throws Exception 変換に失敗した場合
+     */
+    @Test
+    public void testWriterArrays() throws Exception {
+        Bundle b = new Bundle();
+        b.putIntArray("int[]", new int[] {0, -1, Integer.MAX_VALUE});
+        b.putLongArray("long[]", new long[] {Long.MIN_VALUE, 1});
+        b.putShortArray("short[]", new short[] {Short.MAX_VALUE});
+        b.putByteArray("byte[]", new byte[] {-128, 0, 127});
+        b.putCharArray("char[]", new char[] {'a', '"'});
+        b.putFloatArray("float[]", new float[] {0.1f, 2f});
+        b.putDoubleArray("double[]", new double[] {1.5, 3.0, -0d});
+        b.putBooleanArray("boolean[]", new boolean[] {true, false});
+        b.putStringArray("String[]", new String[] {"a", null, "/\"\\"});
+        b.putSerializable("Integer[]", new Integer[] {1, null, 3});
+        b.putSerializable("Character[]", new Character[] {'x'});
+        b.putSerializable("Object[]", new Object[] {1L, 2L});
+        b.putSerializable("mixed", new Object[] {1, "2"});
+        b.putIntArray("empty", new int[0]);
+        ArrayList<Integer> integers = new ArrayList<Integer>();
+        integers.add(1);
+        integers.add(null);
+        b.putIntegerArrayList("ArrayList<Integer>", integers);
+        ArrayList<String> strings = new ArrayList<String>();
+        strings.add("\u3042");
+        b.putStringArrayList("ArrayList<String>", strings);
+        ArrayList<Bundle> bundles = new ArrayList<Bundle>();
+        Bundle element = new Bundle();
+        element.putString("uri", "content://org.deviceconnect.test/element");
+        bundles.add(element);
+        b.putParcelableArrayList("ArrayList<Bundle>", bundles);
+        assertSameJSON(b);
+    }
+
+    /**
+     * Parcelableを{@link BundleJSONWriter}が従来の変換と同じJSONに変換することを確認するテスト.
+     *
+     * @throws Exception 変換に失敗した場合
+     */
+    @Test
+    public void testWriterParcelables() throws Exception {
+        Bundle element = new Bundle();
+        element.putString("id", "service");
+        element.putString("uri", "content://org.deviceconnect.test/parcelable");
+        Bundle b = new Bundle();
+        b.putParcelableArray("Parcelable[]", new Parcelable[] {element, new Intent("test"), null});
+        b.putParcelable("Parcelable", new Intent("test"));
+        b.putParcelable("Bundle", element);
+        assertSameJSON(b);
+    }
+
+    /**
+     * エスケープが必要な文字列を{@link BundleJSONWriter}が従来の変換と同じJSONに変換することを確認するテスト.
+     *
+     * @throws Exception 変換に失敗した場合
+     */
+    @Test
+    public void testWriterEscape() throws Exception {
+        Bundle b = new Bundle();
+        b.putString("quote", "\"quoted\" 'single'");
+        b.putString("slash", "http://localhost:4035/gotapi\\path");
+        b.putString("control", "\b\f\n\r\t\u0000\u001f\u007f");
+        b.putString("unicode", "\u3042\u2028\u2029\ud83d\ude00");
+        b.putString("key \"with\" /escape/", "");
+        b.putString("uri", "http://localhost/not/converted");
+        assertSameJSON(b);
+    }
+
+    /**
+     * 数値を{@link BundleJSONWriter}が従来の変換と同じJSONに変換することを確認するテスト.
+     *
+     * @throws Exception 変換に失敗した場合
+     */
+    @Test
+    public void testWriterNumbers() throws Exception {
+        Bundle b = new Bundle();
+        b.putChar("char", 'A');
+        b.putByte("byte", Byte.MIN_VALUE);
+        b.putShort("short", Short.MIN_VALUE);
+        b.putInt("int", Integer.MIN_VALUE);
+        b.putLong("long", Long.MAX_VALUE);
+        b.putFloat("float", 0.1f);
+        b.putFloat("float.whole", 3f);
+        b.putDouble("double", 1.0E-7);
+        b.putDouble("double.whole", 100.0);
+        b.putDouble("double.large", 1.0E20);
+        b.putDouble("double.negativeZero", -0d);
+        b.putBoolean("boolean", true);
+        assertSameJSON(b);
+    }
+
+    /**
+     * NaNを含むBundleの変換では{@link BundleJSONWriter}も従来の変換と同じくJSONExceptionを発生させることを確認するテスト.
+     */
+    @Test
+    public void testWriterRejectsNaN() {
+        Bundle b = new Bundle();
+        b.putDouble("nan", Double.NaN);
+        try {
+            DConnectUtil.convertBundleToJSON(new JSONObject(), b);
+            Assert.fail("JSONObject accepted NaN.");
+        } catch (JSONException e) {
+            // 期待通り
+        }
+        try {
+            BundleJSONWriter.toJSONString(b);
+            Assert.fail("BundleJSONWriter accepted NaN.");
+        } catch (JSONException e) {
+            // 期待通り
+        }
+    }
+
+    /**
+     * {@link BundleJSONWriter}の出力が従来のJSONObjectを経由した変換と一致することを確認する.
+     *
+     * @param b 変換するBundle
+     * @throws JSONException 変換に失敗した場合
+     * @throws UnsupportedEncodingException UTF-8がサポートされていない場合
+     */
+    private static void assertSameJSON(final Bundle b) throws JSONException, UnsupportedEncodingException {
+        JSONObject root = new JSONObject();
+        DConnectUtil.convertBundleToJSON(root, b);
+        String expected = root.toString();
+        Assert.assertEquals(expected, BundleJSONWriter.toJSONString(b));
+        Assert.assertEquals(expected, new String(BundleJSONWriter.toJSONBytes(b), "UTF-8"));
+    }
+
 }
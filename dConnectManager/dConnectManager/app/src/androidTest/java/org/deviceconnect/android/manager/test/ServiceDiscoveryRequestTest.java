@@ -0,0 +1,304 @@
+/*
+ ServiceDiscoveryRequestTest.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager.test;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import junit.framework.Assert;
+
+import org.deviceconnect.android.manager.DevicePlugin;
+import org.deviceconnect.android.manager.DevicePluginManager;
+import org.deviceconnect.android.manager.ServiceDiscoveryCache;
+import org.deviceconnect.android.manager.request.ServiceDiscoveryRequest;
+import org.deviceconnect.android.profile.ServiceDiscoveryProfile;
+import org.deviceconnect.message.intent.message.IntentDConnectMessage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ServiceDiscoveryRequest}のデバイスプラグイン毎の応答期限と再起動のテスト.
+ * @author NTT DOCOMO, INC.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ServiceDiscoveryRequestTest {
+
+    /** リクエスト全体のタイムアウト時間[msec]. */
+    private static final int TIMEOUT = 30 * 1000;
+
+    /** 応答しないデバイスプラグインのタイムアウト時間[msec]. */
+    private static final int PLUGIN_TIMEOUT = 500;
+
+    /** テストでの待機時間の上限[msec]. */
+    private static final long WAIT = 5 * 1000;
+
+    /** Managerのドメイン名. */
+    private static final String DOMAIN = "localhost.deviceconnect.org";
+
+    /** デバイスプラグインへのブロードキャストを記録するコンテキスト. */
+    private RecordingContext mContext;
+
+    /** デバイスプラグイン管理クラス. */
+    private DevicePluginManager mPluginMgr;
+
+    /** Service Discoveryの結果のキャッシュ. */
+    private ServiceDiscoveryCache mCache;
+
+    /**
+     * テストの準備.
+     */
+    @Before
+    public void setUp() {
+        mContext = new RecordingContext(InstrumentationRegistry.getInstrumentation().getTargetContext());
+        mPluginMgr = new DevicePluginManager(mContext, DOMAIN);
+        mCache = new ServiceDiscoveryCache();
+    }
+
+    /**
+     * 応答しないデバイスプラグインを、リクエスト全体のタイムアウトを待たずに
+     * そのデバイスプラグインの期限で打ち切ることを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・応答しないデバイスプラグインの期限でService Discoveryが終了すること。
+     * ・応答したデバイスプラグインのサービスがキャッシュに記録されること。
+     * ・応答しなかったデバイスプラグインが失敗として記録されること。
+     * ・期限を過ぎてから届いたレスポンスは破棄されること。
+     * </pre>
+     *
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    @Test
+    public void testSilentPluginExpiresAtItsDeadline() throws InterruptedException {
+        DevicePlugin answering = createPlugin("answering");
+        DevicePlugin silent = createPlugin("silent");
+        ServiceDiscoveryRequest request = createRequest(answering, silent);
+        request.setPluginTimeout(silent, PLUGIN_TIMEOUT);
+
+        long start = System.currentTimeMillis();
+        Thread thread = start(request);
+        List<Intent> broadcasts = takeBroadcasts(2);
+        request.setResponse(createResponse(getRequestCode(broadcasts, answering), "service"));
+
+        thread.join(WAIT);
+        Assert.assertFalse("Service Discovery did not finish at the deadline.", thread.isAlive());
+        Assert.assertTrue(System.currentTimeMillis() - start < TIMEOUT);
+        Assert.assertEquals(1, mCache.getServices(Collections.singletonList(answering)).length);
+        Assert.assertFalse(mCache.isFailing(answering));
+        Assert.assertTrue(mCache.isFailing(silent));
+
+        request.setResponse(createResponse(getRequestCode(broadcasts, silent), "late"));
+        Assert.assertTrue(mCache.isFailing(silent));
+        Assert.assertEquals(0, mCache.getServices(Collections.singletonList(silent)).length);
+    }
+
+    /**
+     * 同じデバイスプラグインからの重複したレスポンスを、別のデバイスプラグインの応答として
+     * 数えないことを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・重複したレスポンスを受け取ってもService Discoveryが終了しないこと。
+     * ・最初に届いたレスポンスのサービスがキャッシュに記録されること。
+     * ・全てのデバイスプラグインが応答するとService Discoveryが終了すること。
+     * </pre>
+     *
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    @Test
+    public void testDuplicateResponseIsIgnored() throws InterruptedException {
+        DevicePlugin first = createPlugin("first");
+        DevicePlugin second = createPlugin("second");
+        ServiceDiscoveryRequest request = createRequest(first, second);
+
+        Thread thread = start(request);
+        List<Intent> broadcasts = takeBroadcasts(2);
+        int requestCode = getRequestCode(broadcasts, first);
+        request.setResponse(createResponse(requestCode, "service"));
+        request.setResponse(createResponse(requestCode, "duplicate1", "duplicate2"));
+        Assert.assertTrue("Duplicate response was counted.", thread.isAlive());
+
+        request.setResponse(createResponse(getRequestCode(broadcasts, second), "service"));
+        thread.join(WAIT);
+        Assert.assertFalse("Service Discovery did not finish.", thread.isAlive());
+        Bundle[] services = mCache.getServices(Collections.singletonList(first));
+        Assert.assertEquals(1, services.length);
+        Assert.assertEquals(mPluginMgr.appendServiceId(first, "service"),
+                services[0].getString(ServiceDiscoveryProfile.PARAM_ID));
+        Assert.assertFalse(mCache.isFailing(first));
+        Assert.assertFalse(mCache.isFailing(second));
+    }
+
+    /**
+     * 応答しないデバイスプラグインを、問い合わせの度に再起動しないことを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・1回目の問い合わせの後に応答しなかったデバイスプラグインが再起動されること。
+     * ・続けて応答しなかった場合は、再起動の間隔が空くまで再起動されないこと。
+     * </pre>
+     *
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    @Test
+    public void testSilentPluginRestartIsBackedOff() throws InterruptedException {
+        DevicePlugin silent = createPlugin("silent");
+        silent.setStartServiceClassName("org.deviceconnect.android.test.silent.Service");
+
+        for (int i = 0; i < 2; i++) {
+            ServiceDiscoveryRequest request = createRequest(silent);
+            request.setPluginTimeout(silent, PLUGIN_TIMEOUT);
+            Thread thread = start(request);
+            takeBroadcasts(1);
+            thread.join(WAIT);
+            Assert.assertFalse("Service Discovery did not finish at the deadline.", thread.isAlive());
+        }
+        Assert.assertTrue(mCache.isFailing(silent));
+        Assert.assertEquals(1, mContext.mStartedServices.size());
+    }
+
+    /**
+     * テスト用のデバイスプラグインを作成する.
+     * @param name デバイスプラグイン名
+     * @return デバイスプラグイン
+     */
+    private static DevicePlugin createPlugin(final String name) {
+        DevicePlugin plugin = new DevicePlugin();
+        plugin.setPackageName("org.deviceconnect.android.test." + name);
+        plugin.setClassName("org.deviceconnect.android.test." + name + ".Receiver");
+        plugin.setServiceId(name);
+        plugin.setDeviceName(name);
+        return plugin;
+    }
+
+    /**
+     * 指定したデバイスプラグインに問い合わせるリクエストを作成する.
+     * @param plugins デバイスプラグイン
+     * @return リクエスト
+     */
+    private ServiceDiscoveryRequest createRequest(final DevicePlugin... plugins) {
+        ServiceDiscoveryRequest request = new ServiceDiscoveryRequest();
+        request.setContext(mContext);
+        request.setDevicePluginManager(mPluginMgr);
+        request.setRequest(new Intent(IntentDConnectMessage.ACTION_GET));
+        request.setTimeout(TIMEOUT);
+        request.setDevicePlugins(new ArrayList<DevicePlugin>(Arrays.asList(plugins)));
+        request.setCache(mCache);
+        request.setResponseRequired(false);
+        return request;
+    }
+
+    /**
+     * リクエストを別スレッドで実行する.
+     * @param request リクエスト
+     * @return 実行しているスレッド
+     */
+    private static Thread start(final ServiceDiscoveryRequest request) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                request.run();
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * デバイスプラグインへのブロードキャストを指定した数だけ取得する.
+     * @param count ブロードキャストの数
+     * @return ブロードキャスト一覧
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    private List<Intent> takeBroadcasts(final int count) throws InterruptedException {
+        List<Intent> broadcasts = new ArrayList<Intent>();
+        for (int i = 0; i < count; i++) {
+            Intent broadcast = mContext.mBroadcasts.poll(WAIT, TimeUnit.MILLISECONDS);
+            Assert.assertNotNull("Request was not sent to the plugin.", broadcast);
+            broadcasts.add(broadcast);
+        }
+        return broadcasts;
+    }
+
+    /**
+     * 指定したデバイスプラグインへのブロードキャストからリクエストコードを取得する.
+     * @param broadcasts ブロードキャスト一覧
+     * @param plugin デバイスプラグイン
+     * @return リクエストコード
+     */
+    private static int getRequestCode(final List<Intent> broadcasts, final DevicePlugin plugin) {
+        for (Intent broadcast : broadcasts) {
+            if (plugin.getComponentName().equals(broadcast.getComponent())) {
+                return broadcast.getIntExtra(IntentDConnectMessage.EXTRA_REQUEST_CODE, -1);
+            }
+        }
+        Assert.fail("Request was not sent to " + plugin.getServiceId());
+        return -1;
+    }
+
+    /**
+     * デバイスプラグインのレスポンスを作成する.
+     * @param requestCode リクエストコード
+     * @param ids サービスID一覧
+     * @return レスポンス
+     */
+    private static Intent createResponse(final int requestCode, final String... ids) {
+        Bundle[] services = new Bundle[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            services[i] = new Bundle();
+            services[i].putString(ServiceDiscoveryProfile.PARAM_ID, ids[i]);
+            services[i].putString(ServiceDiscoveryProfile.PARAM_NAME, ids[i]);
+        }
+        Intent response = new Intent(IntentDConnectMessage.ACTION_RESPONSE);
+        response.putExtra(IntentDConnectMessage.EXTRA_REQUEST_CODE, requestCode);
+        response.putExtra(IntentDConnectMessage.EXTRA_RESULT, IntentDConnectMessage.RESULT_OK);
+        response.putExtra(ServiceDiscoveryProfile.PARAM_SERVICES, services);
+        return response;
+    }
+
+    /**
+     * デバイスプラグインへのブロードキャストを送信せずに記録するコンテキスト.
+     */
+    private static class RecordingContext extends ContextWrapper {
+        /** 記録したブロードキャスト. */
+        final BlockingQueue<Intent> mBroadcasts = new LinkedBlockingQueue<Intent>();
+
+        /** 記録したサービスの起動要求. */
+        final BlockingQueue<Intent> mStartedServices = new LinkedBlockingQueue<Intent>();
+
+        /**
+         * コンストラクタ.
+         * @param base 元のコンテキスト
+         */
+        RecordingContext(final Context base) {
+            super(base);
+        }
+
+        @Override
+        public void sendBroadcast(final Intent intent) {
+            // 送信元は同じIntentを使い回すのでコピーを記録する
+            mBroadcasts.add(new Intent(intent));
+        }
+
+        @Override
+        public ComponentName startService(final Intent service) {
+            mStartedServices.add(service);
+            return null;
+        }
+    }
+}
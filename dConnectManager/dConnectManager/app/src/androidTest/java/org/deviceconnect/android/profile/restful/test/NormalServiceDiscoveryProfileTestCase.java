@@ -10,6 +10,7 @@ import android.support.test.runner.AndroidJUnit4;
 
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.deviceconnect.android.manager.profile.DConnectServiceDiscoveryProfile;
 import org.deviceconnect.android.test.plugin.profile.TestServiceDiscoveryProfileConstants;
 import org.deviceconnect.profile.AuthorizationProfileConstants;
 import org.deviceconnect.profile.ServiceDiscoveryProfileConstants;
@@ -67,6 +68,44 @@ public class NormalServiceDiscoveryProfileTestCase extends RESTfulDConnectTestCa
         }
     }
 
+    /**
+     * サービス一覧を逐次通知するパラメータを指定してデバイス一覧取得リクエストを送信するテスト.
+     * <pre>
+     * 【HTTP通信】
+     * Method: GET
+     * Path: /servicediscovery?stream=true
+     * </pre>
+     * <pre>
+     * 【期待する動作】
+     * ・resultに0が返ってくること。
+     * ・servicesに少なくとも1つ以上のサービスが発見されること。
+     * ・servicesの中に「Test Success Device」のnameを持ったサービスが存在すること。
+     * ・キャッシュから応答する2回目のリクエストでも同じ結果が返ってくること。
+     * </pre>
+     */
+    @Test
+    public void testGetServicesWithStream() {
+        URIBuilder builder = TestURIBuilder.createURIBuilder();
+        builder.setProfile(ServiceDiscoveryProfileConstants.PROFILE_NAME);
+        builder.addParameter(AuthorizationProfileConstants.PARAM_ACCESS_TOKEN, getAccessToken());
+        builder.addParameter(DConnectServiceDiscoveryProfile.PARAM_STREAM, "true");
+        try {
+            for (int i = 0; i < 2; i++) {
+                HttpUriRequest request = new HttpGet(builder.toString());
+                JSONObject response = sendRequest(request);
+                assertResultOK(response);
+                JSONArray services = response.getJSONArray(
+                        ServiceDiscoveryProfileConstants.PARAM_SERVICES);
+                assertTrue(services.length() > 0);
+                JSONObject service = getServiceByName(services,
+                        TestServiceDiscoveryProfileConstants.DEVICE_NAME);
+                assertNotNull(service);
+            }
+        } catch (JSONException e) {
+            fail("Exception in JSONObject." + e.getMessage());
+        }
+    }
+
     /**
      * 指定した名前をもつサービスをJSON配列から検索する.
      * 
@@ -173,6 +173,64 @@ public class StressTestCase extends RESTfulDConnectTestCase {
         }
     }
 
+    /**
+     * 負荷テストを実行する.
+     * <p>
+     * dConnectManager自身が実装するAPIとテスト用デバイスプラグインの実装するAPIに対して、
+     * 複数同時リクエストを行う.
+     * dConnectManagerのプロファイルは1つずつ処理され、デバイスプラグインへの配送は同時に処理されるため、
+     * 混在させても全てのリクエストに正しいレスポンスが返ることを確認する.
+     * </p>
+     * @throws InterruptedException スレッドに割り込みが発生した場合
+     */
+    @Test
+    public void testStressTestDConnectManagerMixedAsync() throws InterruptedException  {
+        final int num = 60;
+        final JSONObject[] responses = new JSONObject[num];
+        final Count count = new Count(num);
+        // スレッドの準備
+        Thread[] threads = new Thread[num];
+        for (int i = 0; i < num; i++) {
+            final int pos = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    URIBuilder builder = TestURIBuilder.createURIBuilder();
+                    if (pos % 2 == 0) {
+                        builder.setProfile(SystemProfileConstants.PROFILE_NAME);
+                    } else {
+                        builder.setProfile("unique");
+                        builder.setAttribute("heavy");
+                        builder.addParameter(DConnectProfileConstants.PARAM_SERVICE_ID, getServiceId());
+                        builder.addParameter("key", Integer.toString(pos));
+                    }
+                    builder.addParameter(AuthorizationProfileConstants.PARAM_ACCESS_TOKEN, getAccessToken());
+                    final HttpUriRequest request = new HttpGet(builder.toString());
+                    responses[pos] = sendRequest(request);
+                    count.signal();
+                }
+            });
+        }
+        // dConnectManagerへの複数同時アクセスを実行
+        for (int i = 0; i < num; i++) {
+            threads[i].start();
+        }
+        count.start();
+        try {
+            for (int i = 0; i < responses.length; i++) {
+                JSONObject response = responses[i];
+                assertResultOK(response);
+                if (i % 2 == 0) {
+                    assertTrue(response.has(SystemProfileConstants.PARAM_VERSION));
+                } else {
+                    assertEquals(Integer.toString(i), response.getString("key"));
+                }
+            }
+        } catch (JSONException e) {
+            fail("Exception in JSONObject." + e.getMessage());
+        }
+    }
+
     /**
      * 負荷テストを実行する.
      * <p>
@@ -24,6 +24,9 @@ public class DConnectApplication extends Application {
     /** インスタンス */
     private static DConnectApplication sInstance;
 
+    /** デバイスプラグイン管理クラス. プロセス内で共有する. */
+    private DevicePluginManager mDevicePluginManager;
+
     @Override
     public void onCreate() {
         super.onCreate();
@@ -38,6 +41,24 @@ public class DConnectApplication extends Application {
         return sInstance;
     }
 
+    /**
+     * プロセス内で共有するデバイスプラグイン管理クラスを取得する.
+     * <p>
+     * 初回の呼び出し時にのみインストールされているアプリを走査してデバイスプラグイン一覧を作成する。
+     * 以降は{@link org.deviceconnect.android.manager.receiver.PackageManageReceiver}が受信した
+     * インストール・アンインストールの通知でのみ更新される。
+     * </p>
+     * @return デバイスプラグイン管理クラス
+     */
+    public synchronized DevicePluginManager getDevicePluginManager() {
+        if (mDevicePluginManager == null) {
+            DevicePluginManager mgr = new DevicePluginManager(this, null);
+            mgr.createDevicePluginList();
+            mDevicePluginManager = mgr;
+        }
+        return mDevicePluginManager;
+    }
+
     /**
      * セッションキーとデバイスプラグインの紐付けを行う.
      * @param identifyKey appendPluginIdToSessionKey()加工後のセッションキー
@@ -53,12 +53,29 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
 
 /**
  * DConnectMessageを受信するサービス.
+ * <p>
+ * リクエストは{@link #mRequestExecutor}の複数のスレッドで同時に処理する。各段階のスレッド安全性は以下の通り。
+ * </p>
+ * <ul>
+ * <li>オリジンのチェック: {@link Whitelist}はロックを取らずに参照でき、{@link HmacManager}のDBアクセスは同期化されている。</li>
+ * <li>アクセストークンのチェック: {@link LocalOAuth2Main}がDBアクセスを同期化している。</li>
+ * <li>Device Connect Managerのプロファイルの処理: プロファイルはスレッドセーフではないため、
+ *     {@link #mProfileLock}で1つずつ処理する。</li>
+ * <li>デバイスプラグインへの配送: {@link DevicePluginManager}と{@link DConnectRequestManager}が
+ *     スレッドセーフなため、同時に処理する。</li>
+ * </ul>
  * @author NTT DOCOMO, INC.
  */
 public abstract class DConnectMessageService extends Service 
@@ -87,6 +104,12 @@ public abstract class DConnectMessageService extends Service
     /** 起動用URIスキーム名. */
     private static final String SCHEME_LAUNCH = "dconnect";
 
+    /** リクエストを処理するスレッド数. */
+    private static final int REQUEST_THREAD_SIZE = 4;
+
+    /** 不要になったキャッシュファイルを削除する間隔[msec]. */
+    private static final long FILE_CLEANUP_INTERVAL = 60 * 1000;
+
     /** ロガー. */
     protected final Logger mLogger = Logger.getLogger("dconnect.manager");
 
@@ -100,7 +123,7 @@ public abstract class DConnectMessageService extends Service
     private DConnectProfile mDeliveryProfile;
 
     /** リクエスト管理クラス. */
-    protected DConnectRequestManager mRequestManager;
+    protected volatile DConnectRequestManager mRequestManager;
 
     /** デバイスプラグイン管理. */
     protected DevicePluginManager mPluginMgr;
@@ -115,13 +138,45 @@ public abstract class DConnectMessageService extends Service
     private DConnectLocalOAuth mLocalOAuth;
 
     /** HMAC管理クラス. */
-    private HmacManager mHmacManager;
+    private volatile HmacManager mHmacManager;
 
     /** ホワイトリスト管理クラス. */
-    private Whitelist mWhitelist;
+    private volatile Whitelist mWhitelist;
+
+    /** Device Connect Managerのプロファイルの処理を1つずつ行うためのロック. */
+    private final Object mProfileLock = new Object();
+
+    /** Service Discoveryの結果のキャッシュ. */
+    private final ServiceDiscoveryCache mDiscoveryCache = new ServiceDiscoveryCache();
 
     /** サーバの起動状態. */
-    protected boolean mRunningFlag;
+    protected volatile boolean mRunningFlag;
+
+    /**
+     * onStartCommandで受け取ったIntentを順番に処理するスレッド.
+     * <p>
+     * メインスレッドではライフサイクルの処理のみを行い、メッセージの処理はこのスレッドに受け渡す。
+     * 受け取った順番を保つため、スレッドは1つにする。
+     * </p>
+     */
+    private final ExecutorService mIntakeExecutor = Executors.newSingleThreadExecutor(
+            new NamedThreadFactory("dconnect-intake"));
+
+    /**
+     * リクエストを処理するスレッドプール.
+     * <p>
+     * Local OAuthのチェックなど時間の掛かる処理で他のメッセージの処理が遅れないように、
+     * リクエストはこのスレッドプールで受け付けた順番に処理を開始する。
+     * </p>
+     */
+    private final ExecutorService mRequestExecutor = Executors.newFixedThreadPool(REQUEST_THREAD_SIZE,
+            new NamedThreadFactory("dconnect-request"));
+
+    /** リクエスト処理の段階毎の所要時間. */
+    private final RequestTimings mRequestTimings = new RequestTimings();
+
+    /** 最後にキャッシュファイルの削除を行った時刻. */
+    private final AtomicLong mLastFileCleanup = new AtomicLong();
 
     @Override
     public IBinder onBind(final Intent intent) {
@@ -158,14 +213,15 @@ public abstract class DConnectMessageService extends Service
         // デバイスプラグインとのLocal OAuth情報
         mLocalOAuth = new DConnectLocalOAuth(this);
 
-        // デバイスプラグイン管理クラスの作成
-        mPluginMgr = new DevicePluginManager(this, mDConnectDomain);
+        // デバイスプラグイン管理クラスの取得
+        mPluginMgr = ((DConnectApplication) getApplication()).getDevicePluginManager();
+        mPluginMgr.setDConnectDomain(mDConnectDomain);
         mPluginMgr.setEventListener(this);
 
         // プロファイルの追加
         addProfile(new AuthorizationProfile());
         addProfile(new DConnectAvailabilityProfile());
-        addProfile(new DConnectServiceDiscoveryProfile(this, mPluginMgr));
+        addProfile(new DConnectServiceDiscoveryProfile(this, mPluginMgr, mDiscoveryCache));
         addProfile(new DConnectFilesProfile(this));
         addProfile(new DConnectSystemProfile(this, mPluginMgr));
 
@@ -176,6 +232,8 @@ public abstract class DConnectMessageService extends Service
 
     @Override
     public void onDestroy() {
+        mIntakeExecutor.shutdown();
+        mRequestExecutor.shutdown();
         stopDConnect();
         LocalOAuth2Main.destroy();
         super.onDestroy();
@@ -189,41 +247,115 @@ public abstract class DConnectMessageService extends Service
             return START_STICKY;
         }
 
-        if (!mRunningFlag) {
-            return START_STICKY;
-        }
-
         String action = intent.getAction();
         if (action == null) {
             mLogger.warning("action is null.");
             return START_STICKY;
         }
 
-        String scheme = intent.getScheme();
-        if (SCHEME_LAUNCH.equals(scheme)) {
-            String key = intent.getStringExtra(IntentDConnectMessage.EXTRA_KEY);
-            String origin = intent.getStringExtra(IntentDConnectMessage.EXTRA_ORIGIN);
-            if (key != null && !TextUtils.isEmpty(origin)) {
-                mHmacManager.updateKey(origin, key);
-            }
+        // 起動時にはデバイスプラグイン一覧を走査しないため、停止中もインストール・アンインストールの通知は反映する
+        if (!mRunningFlag && !isPackageChanged(action)) {
             return START_STICKY;
         }
 
-        if (checkAction(action)) {
-            onRequestReceive(intent);
-        } else if (IntentDConnectMessage.ACTION_RESPONSE.equals(action)) {
-            onResponseReceive(intent);
-        } else if (IntentDConnectMessage.ACTION_EVENT.equals(action)) {
-            onEventReceive(intent);
-        } else if (Intent.ACTION_PACKAGE_ADDED.equals(action)) {
-            mPluginMgr.checkAndAddDevicePlugin(intent);
-        } else if (Intent.ACTION_PACKAGE_REMOVED.equals(action)) {
-            mPluginMgr.checkAndRemoveDevicePlugin(intent);
+        try {
+            mIntakeExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    handleCommand(intent);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            mLogger.warning("Service is shutting down. Dropped intent: " + intent);
         }
-
         return START_STICKY;
     }
 
+    /**
+     * onStartCommandで受け取ったIntentを処理する.
+     * <p>
+     * {@link #mIntakeExecutor}のスレッドで受け取った順番に呼び出される。
+     * </p>
+     * @param intent 受け取ったIntent
+     */
+    private void handleCommand(final Intent intent) {
+        try {
+            String action = intent.getAction();
+            String scheme = intent.getScheme();
+            if (SCHEME_LAUNCH.equals(scheme)) {
+                String key = intent.getStringExtra(IntentDConnectMessage.EXTRA_KEY);
+                String origin = intent.getStringExtra(IntentDConnectMessage.EXTRA_ORIGIN);
+                if (key != null && !TextUtils.isEmpty(origin)) {
+                    mHmacManager.updateKey(origin, key);
+                }
+                return;
+            }
+
+            if (checkAction(action)) {
+                postRequest(intent);
+            } else if (IntentDConnectMessage.ACTION_RESPONSE.equals(action)) {
+                onResponseReceive(intent);
+            } else if (IntentDConnectMessage.ACTION_EVENT.equals(action)) {
+                onEventReceive(intent);
+            } else if (Intent.ACTION_PACKAGE_ADDED.equals(action)) {
+                mPluginMgr.checkAndAddDevicePlugin(intent);
+            } else if (Intent.ACTION_PACKAGE_REMOVED.equals(action)) {
+                mPluginMgr.checkAndRemoveDevicePlugin(intent);
+            }
+        } catch (RuntimeException e) {
+            mLogger.warning("Exception in handleCommand: " + e.toString());
+        }
+    }
+
+    /**
+     * 指定されたアクションがアプリのインストール・アンインストールの通知かをチェックする.
+     * @param action アクション
+     * @return インストール・アンインストールの通知の場合はtrue、それ以外はfalse
+     */
+    private static boolean isPackageChanged(final String action) {
+        return Intent.ACTION_PACKAGE_ADDED.equals(action) || Intent.ACTION_PACKAGE_REMOVED.equals(action);
+    }
+
+    /**
+     * リクエストをワーカースレッドで処理する.
+     * <p>
+     * 呼び出した順番にリクエストの処理を開始する。処理中に発生した例外はエラーレスポンスとして返却する。
+     * </p>
+     * @param request リクエスト用Intent
+     * @return 受け付けた場合はtrue、Device Connect Managerが停止している場合はfalse
+     */
+    protected boolean postRequest(final Intent request) {
+        if (!mRunningFlag) {
+            return false;
+        }
+        try {
+            mRequestExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        onRequestReceive(request);
+                    } catch (RuntimeException e) {
+                        mLogger.warning("Exception in onRequestReceive: " + e.toString());
+                        Intent response = new Intent(IntentDConnectMessage.ACTION_RESPONSE);
+                        MessageUtils.setUnknownError(response, e.getMessage());
+                        sendResponse(request, response);
+                    }
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * リクエスト処理の段階毎の所要時間を取得する.
+     * @return 段階毎の所要時間
+     */
+    public RequestTimings getRequestTimings() {
+        return mRequestTimings;
+    }
+
     /**
      * リクエスト用Intentを受領したときの処理を行う.
      * @param request リクエスト用Intent
@@ -238,7 +370,11 @@ public abstract class DConnectMessageService extends Service
         }
 
         // 不要になったキャッシュファイルの削除を行う
-        if (mFileMgr != null) {
+        // ディレクトリの走査を伴うため、リクエスト毎ではなく一定間隔で1つのスレッドのみが行う
+        long now = System.currentTimeMillis();
+        long last = mLastFileCleanup.get();
+        if (mFileMgr != null && now - last >= FILE_CLEANUP_INTERVAL
+                && mLastFileCleanup.compareAndSet(last, now)) {
             mFileMgr.checkAndRemove();
         }
 
@@ -249,7 +385,9 @@ public abstract class DConnectMessageService extends Service
 
         // オリジンの正当性チェック
         String profileName = parseProfileName(request);
+        long start = System.nanoTime();
         OriginError error = checkOrigin(request);
+        mRequestTimings.record(RequestTimings.Stage.ORIGIN, System.nanoTime() - start);
         switch (error) {
         case NOT_SPECIFIED:
             MessageUtils.setInvalidOriginError(response, "Origin is not specified.");
@@ -263,7 +401,9 @@ public abstract class DConnectMessageService extends Service
             // NOTE: Local OAuth関連のAPIに対する特別措置
             DConnectProfile profile = getProfile(profileName);
             if (profile != null && profile instanceof AuthorizationProfile) {
-                ((AuthorizationProfile) profile).onInvalidOrigin(request, response);
+                synchronized (mProfileLock) {
+                    ((AuthorizationProfile) profile).onInvalidOrigin(request, response);
+                }
             }
  
             MessageUtils.setInvalidOriginError(response, "The specified origin is not allowed.");
@@ -282,8 +422,10 @@ public abstract class DConnectMessageService extends Service
         if (mSettings.isUseALocalOAuth()) {
             // アクセストークンの取得
             String accessToken = request.getStringExtra(AuthorizationProfile.PARAM_ACCESS_TOKEN);
+            start = System.nanoTime();
             CheckAccessTokenResult result = LocalOAuth2Main.checkAccessToken(accessToken, profileName,
                     DConnectLocalOAuth.IGNORE_PROFILES);
+            mRequestTimings.record(RequestTimings.Stage.AUTH, System.nanoTime() - start);
             if (result.checkResult()) {
                 executeRequest(request, response);
             } else {
@@ -399,6 +541,7 @@ public abstract class DConnectMessageService extends Service
                         ServiceDiscoveryProfile.PARAM_NETWORK_SERVICE);
                 String id = service.getString(ServiceDiscoveryProfile.PARAM_ID);
                 did = mPluginMgr.appendServiceId(plugin, id);
+                mDiscoveryCache.onServiceChange(plugin, did, service);
 
                 // サービスIDを変更
                 replaceServiceId(event, plugin);
@@ -438,10 +581,16 @@ public abstract class DConnectMessageService extends Service
         String profileName = request.getStringExtra(DConnectMessage.EXTRA_PROFILE);
         DConnectProfile profile = getProfile(profileName);
         if (profile != null) {
-            send = profile.onRequest(request, response);
+            synchronized (mProfileLock) {
+                long start = System.nanoTime();
+                send = profile.onRequest(request, response);
+                mRequestTimings.record(RequestTimings.Stage.PROFILE, System.nanoTime() - start);
+            }
         }
         if (!send) {
+            long start = System.nanoTime();
             sendDeliveryProfile(request, response);
+            mRequestTimings.record(RequestTimings.Stage.DELIVERY, System.nanoTime() - start);
         }
     }
 
@@ -536,6 +685,10 @@ public abstract class DConnectMessageService extends Service
 
     @Override
     public void onDeviceFound(final DevicePlugin plugin) {
+        if (!mRunningFlag) {
+            // 停止中に追加されたデバイスプラグインには、起動時にまとめて通知する
+            return;
+        }
         RegisterNetworkServiceDiscovery req = new RegisterNetworkServiceDiscovery();
         req.setContext(this);
         req.setSessionKey(plugin.getServiceId());
@@ -546,6 +699,7 @@ public abstract class DConnectMessageService extends Service
 
     @Override
     public void onDeviceLost(final DevicePlugin plugin) {
+        mDiscoveryCache.remove(plugin.getServiceId());
         mLocalOAuth.deleteOAuthDatas(plugin.getServiceId());
     }
 
@@ -585,8 +739,11 @@ public abstract class DConnectMessageService extends Service
         mWhitelist = new Whitelist(this);
         // リクエスト管理クラスの作成
         mRequestManager = new DConnectRequestManager();
-        // デバイスプラグインの更新
-        mPluginMgr.createDevicePluginList();
+        // 登録済みのデバイスプラグインに通知する
+        // デバイスプラグイン一覧は停止中もインストール・アンインストールの通知で更新されるため、ここでは走査しない
+        for (DevicePlugin plugin : mPluginMgr.getDevicePlugins()) {
+            onDeviceFound(plugin);
+        }
         showNotification();
     }
 
@@ -787,6 +944,32 @@ public abstract class DConnectMessageService extends Service
         sendBroadcast(targetIntent);
     }
 
+    /**
+     * 名前付きのデーモンスレッドを作成するThreadFactory.
+     */
+    private static class NamedThreadFactory implements ThreadFactory {
+        /** スレッド名の接頭辞. */
+        private final String mPrefix;
+
+        /** 作成したスレッド数. */
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        /**
+         * コンストラクタ.
+         * @param prefix スレッド名の接頭辞
+         */
+        NamedThreadFactory(final String prefix) {
+            mPrefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(r, mPrefix + "-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
     /**
      * Originヘッダ解析時に検出したエラー.
      */
@@ -9,7 +9,6 @@ package org.deviceconnect.android.manager;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
-import android.net.Uri;
 
 import org.apache.james.mime4j.MimeException;
 import org.apache.james.mime4j.parser.AbstractContentHandler;
@@ -17,6 +16,7 @@ import org.apache.james.mime4j.parser.MimeStreamParser;
 import org.apache.james.mime4j.stream.BodyDescriptor;
 import org.apache.james.mime4j.stream.Field;
 import org.deviceconnect.android.manager.profile.DConnectFilesProfile;
+import org.deviceconnect.android.manager.util.BundleJSONWriter;
 import org.deviceconnect.android.manager.util.DConnectUtil;
 import org.deviceconnect.android.provider.FileManager;
 import org.deviceconnect.message.DConnectMessage;
@@ -26,6 +26,7 @@ import org.deviceconnect.server.DConnectServerError;
 import org.deviceconnect.server.DConnectServerEventListener;
 import org.deviceconnect.server.http.HttpRequest;
 import org.deviceconnect.server.http.HttpResponse;
+import org.deviceconnect.server.http.PendingHttpResponse;
 import org.deviceconnect.server.http.HttpResponse.StatusCode;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -37,13 +38,18 @@ import java.io.InputStream;
 import java.io.SequenceInputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
-import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 /**
@@ -53,9 +59,32 @@ import java.util.logging.Logger;
 public class DConnectServerEventListenerImpl implements
         DConnectServerEventListener {
     /**
-     * HTTPサーバからリクエストのマップ.
+     * レスポンス待ちのHTTPリクエストのマップ.
+     * <p>
+     * キーはリクエストコード。レスポンス受信時には該当するリクエストのみを再開させる。
+     * </p>
      */
-    private final Map<Integer, Intent> mRequestMap = new ConcurrentHashMap<Integer, Intent>();
+    private final ConcurrentMap<Integer, PendingResponse> mPendingResponses
+            = new ConcurrentHashMap<Integer, PendingResponse>();
+
+    /**
+     * レスポンスの変換とタイムアウト監視を行うスレッドプール.
+     * <p>
+     * HTTPサーバのスレッドはレスポンスを待たずに解放されるため、
+     * レスポンスの変換はこのスレッドプールで行う。
+     * </p>
+     */
+    private final ScheduledExecutorService mResponseExecutor
+            = Executors.newScheduledThreadPool(RESPONSE_THREAD_SIZE);
+
+    /** レスポンス待ちのHTTPリクエスト数. */
+    private final AtomicInteger mInFlightCount = new AtomicInteger();
+
+    /** タイムアウトしたHTTPリクエストの累計数. */
+    private final AtomicLong mTimeoutCount = new AtomicLong();
+
+    /** HTTPリクエストに割り当てるリクエストコードの連番. */
+    private final AtomicInteger mNextRequestCode = new AtomicInteger();
 
     /** ロガー. */
     private final Logger mLogger = Logger.getLogger("dconnect.manager");
@@ -63,22 +92,17 @@ public class DConnectServerEventListenerImpl implements
     /** JSONレスポンス用のCotnentType. */
     private static final String CONTENT_TYPE_JSON = "application/json; charset=UTF-8";
 
-    /** HTTPリクエストのセグメント数(Profileのみ) {@value}.  */
-    private static final int SEGMENT_PROFILE = 2;
-    /** HTTPリクエストのセグメント数(ProfilesとAttribute) {@value}. */
-    private static final int SEGMENT_ATTRIBUTE = 3;
-    /** HTTPリクエストのセグメント数(ProfileとInterfacesとAttribute) {@value}. */
-    private static final int SEGMENT_INTERFACES = 4;
 
     /** バッファサイズ. */
     private static final int BUF_SIZE = 4096;
 
-    /** ポーリング時間(ms). */
-    private static final int POLLING_WAIT_TIME = 10000;
+    /** レスポンスを処理するスレッド数. */
+    private static final int RESPONSE_THREAD_SIZE = 2;
+
     /** デフォルトのタイムアウト時間(ms). */
     private static final int DEFAULT_RESTFUL_TIMEOUT = 180000;
-    /** タイムアウト時間. */
-    private int mTimeout = DEFAULT_RESTFUL_TIMEOUT;
+    /** 新規に受け付けるHTTPリクエストのタイムアウト時間(ms). */
+    private volatile int mTimeout = DEFAULT_RESTFUL_TIMEOUT;
 
     /** このクラスが属するコンテキスト. */
     private Context mContext;
@@ -86,12 +110,12 @@ public class DConnectServerEventListenerImpl implements
     /** ファイルを管理するためのクラス. */
     private FileManager mFileMgr;
 
-    /** ロックオブジェクト. */
-    private final Object mLockObj = new Object();
-
     /** アプリケーションクラスインスタンス. */
     private DConnectApplication mApp;
 
+    /** HTTPリクエストをDevice Connect Managerに受け渡すクラス. */
+    private volatile RequestDispatcher mDispatcher;
+
     /**
      * コンストラクタ.
      * @param context このクラスが属するコンテキスト
@@ -109,6 +133,71 @@ public class DConnectServerEventListenerImpl implements
         mFileMgr = fileMgr;
     }
 
+    /**
+     * HTTPリクエストをDevice Connect Managerに受け渡すクラスを設定する.
+     * <p>
+     * 設定されていない場合は、{@link Context#startService(Intent)}でリクエストを受け渡す。
+     * </p>
+     * @param dispatcher HTTPリクエストを受け渡すクラス
+     */
+    public void setRequestDispatcher(final RequestDispatcher dispatcher) {
+        mDispatcher = dispatcher;
+    }
+
+    /**
+     * HTTPリクエストのタイムアウト時間を設定する.
+     * <p>
+     * 設定した値はこれ以降に受け付けたHTTPリクエストに適用される。
+     * </p>
+     * @param timeout タイムアウト時間(ミリ秒)
+     */
+    public void setTimeout(final int timeout) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout must be larger than 0.");
+        }
+        mTimeout = timeout;
+    }
+
+    /**
+     * HTTPリクエストのタイムアウト時間を取得する.
+     * @return タイムアウト時間(ミリ秒)
+     */
+    public int getTimeout() {
+        return mTimeout;
+    }
+
+    /**
+     * レスポンス待ちのHTTPリクエスト数を取得する.
+     * @return レスポンス待ちのHTTPリクエスト数
+     */
+    public int getInFlightCount() {
+        return mInFlightCount.get();
+    }
+
+    /**
+     * タイムアウトしたHTTPリクエストの累計数を取得する.
+     * @return タイムアウトしたHTTPリクエストの累計数
+     */
+    public long getTimeoutCount() {
+        return mTimeoutCount.get();
+    }
+
+    /**
+     * レスポンス待ちのHTTPリクエストをエラーで終了させ、スレッドプールを停止する.
+     * <p>
+     * HTTPサーバを停止する時に呼び出すこと。
+     * </p>
+     */
+    public void shutdown() {
+        for (Integer requestCode : mPendingResponses.keySet()) {
+            PendingResponse pending = mPendingResponses.remove(requestCode);
+            if (pending != null) {
+                pending.cancel();
+            }
+        }
+        mResponseExecutor.shutdownNow();
+    }
+
     /**
      * Device Connect Managerからレスポンスを受け取る.
      * 
@@ -117,10 +206,22 @@ public class DConnectServerEventListenerImpl implements
     public void onResponse(final Intent intent) {
         int requestCode = intent.getIntExtra(
                 IntentDConnectMessage.EXTRA_REQUEST_CODE, Integer.MIN_VALUE);
-        mRequestMap.put(requestCode, intent);
-        // レスポンスを受け取ったのでスレッドを再開
-        synchronized (mLockObj) {
-            mLockObj.notifyAll();
+        final PendingResponse pending = mPendingResponses.remove(requestCode);
+        if (pending != null) {
+            // 該当するHTTPリクエストのみにレスポンスを返却する
+            try {
+                mResponseExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        pending.complete(intent);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // 停止中はレスポンスを変換せずにエラーを返却する
+                pending.reject();
+            }
+        } else {
+            mLogger.warning("No pending request for the response. requestCode=" + requestCode);
         }
     }
 
@@ -161,19 +262,14 @@ public class DConnectServerEventListenerImpl implements
             return;
         }
 
-        DevicePluginManager mgr = new DevicePluginManager(mContext, null);
-        mgr.createDevicePluginList();
-        List<DevicePlugin> plugins = mgr.getDevicePlugins();
-        for (DevicePlugin plugin : plugins) {
-            String serviceId = plugin.getServiceId();
-            if (serviceId != null && serviceId.equals(matchServiceId)) {
-                Intent request = new Intent();
-                request.setComponent(plugin.getComponentName());
-                request.setAction(IntentDConnectMessage.ACTION_EVENT_TRANSMIT_DISCONNECT);
-                request.putExtra("pluginId", serviceId);
-                request.putExtra(IntentDConnectMessage.EXTRA_SESSION_KEY, matchSessionKey);
-                mContext.sendBroadcast(request);
-            }
+        DevicePlugin plugin = mApp.getDevicePluginManager().getDevicePlugin(matchServiceId);
+        if (plugin != null) {
+            Intent request = new Intent();
+            request.setComponent(plugin.getComponentName());
+            request.setAction(IntentDConnectMessage.ACTION_EVENT_TRANSMIT_DISCONNECT);
+            request.putExtra("pluginId", matchServiceId);
+            request.putExtra(IntentDConnectMessage.EXTRA_SESSION_KEY, matchSessionKey);
+            mContext.sendBroadcast(request);
         }
         mApp.removeDevicePluginIdentifyKey(matchSessionKey);
     }
@@ -198,36 +294,20 @@ public class DConnectServerEventListenerImpl implements
     @Override
     public boolean onReceivedHttpRequest(final HttpRequest request,
             final HttpResponse response) {
-        final int requestCode = UUID.randomUUID().hashCode();
-        Uri uri = Uri.parse(request.getUri());
-        List<String> segments = uri.getPathSegments();
-        Set<String> keyvalue = uri.getQueryParameterNames();
-        String contentType = getContentType(request.getHeaders());
+        final int requestCode = mNextRequestCode.incrementAndGet() & Integer.MAX_VALUE;
+        RequestRoute route = RequestRoute.parse(request);
+        String contentType = route.getContentType();
         String method = request.getMethod();
 
-        String api = null;
-        String profile = null;
-        String interfaces = null;
-        String attribute = null;
+        String api = route.getApi();
+        String profile = route.getProfile();
+        String interfaces = route.getInterface();
+        String attribute = route.getAttribute();
 
         long start = System.currentTimeMillis();
 
         if (BuildConfig.DEBUG) {
-            mLogger.info(String.format("@@@ Request URI: %s %s", method, uri));
-        }
-
-        if (segments.size() == SEGMENT_PROFILE) {
-            api = segments.get(0);
-            profile = segments.get(1);
-        } else if (segments.size() == SEGMENT_ATTRIBUTE) {
-            api = segments.get(0);
-            profile = segments.get(1);
-            attribute = segments.get(2);
-        } else if (segments.size() == SEGMENT_INTERFACES) {
-            api = segments.get(0);
-            profile = segments.get(1);
-            interfaces = segments.get(2);
-            attribute = segments.get(3);
+            mLogger.info(String.format("@@@ Request URI: %s %s", method, request.getUri()));
         }
 
         if (api == null || !api.equals("gotapi")) {
@@ -265,14 +345,17 @@ public class DConnectServerEventListenerImpl implements
         if (attribute != null) {
             intent.putExtra(IntentDConnectMessage.EXTRA_ATTRIBUTE, attribute);
         }
-        if (keyvalue != null) {
-            for (String key : keyvalue) {
-                intent.putExtra(key, uri.getQueryParameter(key));
-            }
+        for (Entry<String, String> param : route.getParams().entrySet()) {
+            intent.putExtra(param.getKey(), param.getValue());
         }
 
-        // アプリケーションのオリジン解析
-        parseOriginHeader(request, intent);
+        // アプリケーションのオリジン
+        if (route.getOrigin() != null) {
+            intent.putExtra(IntentDConnectMessage.EXTRA_ORIGIN, route.getOrigin());
+            if (route.isWebOrigin()) {
+                intent.putExtra(DConnectService.EXTRA_INNER_APP_TYPE, DConnectService.INNER_APP_TYPE_WEB);
+            }
+        }
 
         // Bodyの解析
         if (hasMultipart(contentType)) {
@@ -284,50 +367,32 @@ public class DConnectServerEventListenerImpl implements
         intent.putExtra(IntentDConnectMessage.EXTRA_REQUEST_CODE, requestCode);
         intent.putExtra(DConnectService.EXTRA_INNER_TYPE,
                 DConnectService.INNER_TYPE_HTTP);
-        mContext.startService(intent);
 
-        // レスポンスが返ってくるまで待つ
+        // レスポンスを取りこぼさないように、送信前にレスポンス待ちとして登録しておく
+        // HTTPサーバのスレッドはレスポンスを待たずに解放し、レスポンス受信時に返却する。
         // ただし、タイムアウト時間を設定しておき、永遠には待たない。
-        Intent resp = waitForResponse(requestCode);
-        try {
-            if (resp == null) {
-                // ここのエラーはタイムアウトの場合のみ
-                setTimeoutResponse(response);
-            } else {
-                convertResponse(response, profile, attribute, resp);
+        final PendingResponse pending = new PendingResponse(requestCode, response.suspend(),
+                profile, attribute, method, request.getUri(), start);
+        mPendingResponses.put(requestCode, pending);
+        mInFlightCount.incrementAndGet();
+        if (!pending.scheduleTimeout(mTimeout)) {
+            // 停止中はタイムアウトを監視できないため、リクエストを送信せずにエラーを返却する
+            if (mPendingResponses.remove(requestCode, pending)) {
+                pending.reject();
             }
-        } catch (JSONException e) {
-            setErrorResponse(response);
-        } catch (UnsupportedEncodingException e) {
-            setErrorResponse(response);
-        }
-
-        if (BuildConfig.DEBUG) {
-            mLogger.info(String.format("@@@ Request URI END(%d): %s %s",
-                    (System.currentTimeMillis() - start), method, request.getUri()));
+            return true;
         }
-        return true;
-    }
 
-    /**
-     * レスポンスが返ってくるまで待ちます.
-     * ただし、タイムアウトなどを起こした場合にはnullが返却される。
-     * @param requestCode リクエストコード
-     * @return レスポンス用のIntent
-     */
-    private Intent waitForResponse(final int requestCode) {
-        final long now = System.currentTimeMillis();
-        while (mRequestMap.get(requestCode) == null
-                && (System.currentTimeMillis() - now) < mTimeout) {
-            synchronized (mLockObj) {
-                try {
-                    mLockObj.wait(POLLING_WAIT_TIME);
-                } catch (InterruptedException e) {
-                    mLogger.warning("Exception ouccered in wait.");
-                }
+        // 同一プロセス内のDevice Connect Managerには、Intentを経由せずに直接受け渡す
+        RequestDispatcher dispatcher = mDispatcher;
+        if (dispatcher == null) {
+            mContext.startService(intent);
+        } else if (!dispatcher.dispatchRequest(intent)) {
+            if (mPendingResponses.remove(requestCode, pending)) {
+                pending.cancel();
             }
         }
-        return mRequestMap.remove(requestCode);
+        return true;
     }
 
     /**
@@ -390,27 +455,34 @@ public class DConnectServerEventListenerImpl implements
     }
 
     /**
-     * HTTPヘッダーからContent-Typeを取得する.
-     * Content-Typeが設定されていない場合にはnullを返却する.
-     * @param headers ヘッダー一覧
-     * @return Content-Typeの値
+     * HTTPサーバの停止中であることを示すエラーのレスポンスを作成する.
+     * @param response レスポンスを格納するインスタンス
      */
-    private String getContentType(final Map<String, String> headers) {
-        for (String key : headers.keySet()) {
-            if (key.toLowerCase(Locale.getDefault()).equals("content-type")) {
-                return headers.get(key);
-            }
-        }
-        return null;
+    private void setUnavailableResponse(final HttpResponse response) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{");
+        sb.append("\"" + DConnectMessage.EXTRA_RESULT +  "\":"
+                + DConnectMessage.RESULT_ERROR + ",");
+        sb.append("\"" + DConnectMessage.EXTRA_ERROR_CODE + "\": "
+                + DConnectMessage.ErrorCode.ILLEGAL_SERVER_STATE.getCode() + ",");
+        sb.append("\"" + DConnectMessage.EXTRA_ERROR_MESSAGE + "\":\""
+                + DConnectMessage.ErrorCode.ILLEGAL_SERVER_STATE.toString() + "\"");
+        sb.append("}");
+        response.setCode(StatusCode.SERVICE_UNAVAILABLE);
+        response.setContentType(CONTENT_TYPE_JSON);
+        response.setBody(sb.toString().getBytes());
     }
 
     /**
      * Content-Typeにマルチパートが入っているかをチェックする.
+     * <p>
+     * メディアタイプは大文字小文字を区別しないため、小文字に揃えてから比較する。
+     * </p>
      * @param contentType コンテンツタイプ
      * @return マルチパートが入っている場合はtrue,それ以外はfalse
      */
     private boolean hasMultipart(final String contentType) {
-        return contentType != null && contentType.indexOf("multipart/form-data") != -1;
+        return contentType != null && contentType.toLowerCase(Locale.ENGLISH).contains("multipart/form-data");
     }
 
     /**
@@ -419,69 +491,8 @@ public class DConnectServerEventListenerImpl implements
      * @return エンコードされている場合はtrue、それ以外はfalse
      */
     private boolean isUrlEncoded(final String contentType) {
-        return contentType != null && contentType.indexOf("application/x-www-form-urlencoded") != -1;
-    }
-
-    /**
-     * HTTPリクエストヘッダからアプリケーションのオリジンを取得する.
-     * @param request HTTPリクエスト
-     * @param intent key-valueを格納するIntent
-     */
-    private void parseOriginHeader(final HttpRequest request, final Intent intent) {
-        Map<String, String> headers = request.getHeaders();
-        if (headers == null) {
-            return;
-        }
-        String nativeOrigin = parseNativeOriginHeader(headers);
-        if (nativeOrigin != null) {
-            intent.putExtra(IntentDConnectMessage.EXTRA_ORIGIN, nativeOrigin);
-            return;
-        }
-        String webOrigin = parseWebOriginHeader(headers);
-        if (webOrigin != null) {
-            intent.putExtra(IntentDConnectMessage.EXTRA_ORIGIN, webOrigin);
-            intent.putExtra(DConnectService.EXTRA_INNER_APP_TYPE, DConnectService.INNER_APP_TYPE_WEB);
-        }
-    }
-
-    /**
-     * HTTPリクエストヘッダからWebアプリのオリジンを取得する.
-     * 
-     * @param headers HTTPリクエストヘッダ
-     * @return Webアプリのオリジン
-     */
-    private String parseWebOriginHeader(final Map<String, String> headers) {
-        for (Entry<String, String> entry :  headers.entrySet()) {
-            String key = entry.getKey();
-            if (key.equalsIgnoreCase("origin")) {
-                String value = entry.getValue();
-                if (value != null) {
-                    return value;
-                }
-                break;
-            }
-        }
-        return null;
-    }
-
-    /**
-     * HTTPリクエストヘッダからAndroidネイティブアプリのオリジンを取得する.
-     * 
-     * @param headers HTTPリクエストヘッダ
-     * @return Androidネイティブアプリのオリジン
-     */
-    private String parseNativeOriginHeader(final Map<String, String> headers) {
-        for (Entry<String, String> entry :  headers.entrySet()) {
-            String key = entry.getKey();
-            if (key.equalsIgnoreCase(DConnectMessage.HEADER_GOTAPI_ORIGIN)) {
-                String value = entry.getValue();
-                if (value != null) {
-                    return value;
-                }
-                break;
-            }
-        }
-        return null;
+        return contentType != null
+                && contentType.toLowerCase(Locale.ENGLISH).contains("application/x-www-form-urlencoded");
     }
 
     /**
@@ -528,7 +539,17 @@ public class DConnectServerEventListenerImpl implements
      * @param intent 変換したデータを格納するIntent
      */
     private void parseMultipart(final HttpRequest request, final Intent intent) {
-        InputStream is = null;
+        // Bodyはメモリに読み込まずにストリームのまま解析し、ファイルのパートは直接ファイルに書き込む。
+        InputStream is = request.getBodyStream();
+        if (is == null && request.getBody() != null) {
+            is = new ByteArrayInputStream(request.getBody());
+        }
+        if (is == null) {
+            return;
+        }
+
+        final String[] filename = new String[1];
+        final String[] fileUri = new String[1];
         try {
             Map<String, String> headers = request.getHeaders();
             MimeStreamParser parser = new MimeStreamParser();
@@ -538,10 +559,6 @@ public class DConnectServerEventListenerImpl implements
             }
             sb.append("\r\n");
 
-            is = new ByteArrayInputStream(request.getBody());
-
-            final String[] filename = new String[1];
-            final ByteArrayOutputStream data = new ByteArrayOutputStream();
             parser.setContentHandler(new AbstractContentHandler() {
                 /** 変数を格納するためのパートを表す. */
                 private static final int STATE_VALUE = 0;
@@ -549,6 +566,8 @@ public class DConnectServerEventListenerImpl implements
                 private static final int STATE_FILE = 1;
                 /** 処理名を格納する変数. */
                 private String mName;
+                /** パートのファイル名を格納する変数. */
+                private String mFileName;
                 /** 処理の状態を格納する変数. */
                 private int mState;
                 @Override
@@ -558,7 +577,12 @@ public class DConnectServerEventListenerImpl implements
                         if (mState == STATE_VALUE) {
                             intent.putExtra(mName, new String(loadBytes(in)));
                         } else if (mState == STATE_FILE) {
-                            data.write(loadBytes(in));
+                            // 許容するファイルは1個までなので、前のパートのファイルは削除する。
+                            if (filename[0] != null) {
+                                mFileMgr.removeFile(filename[0]);
+                            }
+                            filename[0] = mFileName;
+                            fileUri[0] = mFileMgr.saveFile(mFileName, in);
                         } else {
                             mLogger.warning("Unknown state. state=" + mState);
                         }
@@ -567,6 +591,7 @@ public class DConnectServerEventListenerImpl implements
                 @Override
                 public void startHeader() throws MimeException {
                     mName = null;
+                    mFileName = null;
                     mState = STATE_VALUE;
                 }
                 @Override
@@ -585,8 +610,8 @@ public class DConnectServerEventListenerImpl implements
                                     mName = params[1].trim();
                                     mName = mName.replaceAll("\"", "");
                                 } else if (params[0].trim().equals("filename")) {
-                                    filename[0] = params[1].trim();
-                                    filename[0] = filename[0].replaceAll("\"", "");
+                                    mFileName = params[1].trim();
+                                    mFileName = mFileName.replaceAll("\"", "");
                                     mState = STATE_FILE;
                                 }
                             }
@@ -596,23 +621,26 @@ public class DConnectServerEventListenerImpl implements
             });
             parser.parse(new SequenceInputStream(new ByteArrayInputStream(sb
                     .toString().getBytes("US-ASCII")), is));
-            if (filename[0] != null) {
-                String tmpUri = mFileMgr.saveFile(filename[0], data.toByteArray());
+            if (fileUri[0] != null) {
                 intent.putExtra(FileProfileConstants.PARAM_FILE_NAME, filename[0]);
-                intent.putExtra(FileProfileConstants.PARAM_URI, tmpUri);
+                intent.putExtra(FileProfileConstants.PARAM_URI, fileUri[0]);
             }
         } catch (final MimeException e) {
             mLogger.warning("Exception in parseMultipart." + e.getMessage());
+            removeIncompleteFile(filename[0]);
         } catch (IOException e) {
             mLogger.warning("Exception in parseMultipart." + e.getMessage());
-        } finally {
-            if (is != null) {
-                try {
-                    is.close();
-                } catch (IOException e) {
-                    mLogger.warning("Exception in parseMultipart." + e.getMessage());
-                }
-            }
+            removeIncompleteFile(filename[0]);
+        }
+    }
+
+    /**
+     * マルチパートの解析に失敗した場合に、途中まで書き込んだファイルを削除する.
+     * @param filename ファイル名
+     */
+    private void removeIncompleteFile(final String filename) {
+        if (filename != null) {
+            mFileMgr.removeFile(filename);
         }
     }
 
@@ -655,10 +683,175 @@ public class DConnectServerEventListenerImpl implements
                 response.setBody(data);
             }
         } else {
-            JSONObject root = new JSONObject();
-            DConnectUtil.convertBundleToJSON(root, resp.getExtras());
             response.setContentType(CONTENT_TYPE_JSON);
-            response.setBody(root.toString().getBytes("UTF-8"));
+            response.setBody(BundleJSONWriter.toJSONBytes(resp.getExtras()));
+        }
+    }
+
+    /**
+     * HTTPリクエストをDevice Connect Managerに受け渡すインターフェース.
+     */
+    public interface RequestDispatcher {
+        /**
+         * リクエストをDevice Connect Managerに受け渡す.
+         * <p>
+         * HTTPサーバのスレッドで呼び出されるため、リクエストの処理はワーカースレッドで行うこと。
+         * レスポンスは{@link DConnectServerEventListenerImpl#onResponse(Intent)}で返却する。
+         * </p>
+         * @param request リクエスト
+         * @return 受け付けた場合はtrue、受け付けられない場合はfalse
+         */
+        boolean dispatchRequest(Intent request);
+    }
+
+    /**
+     * レスポンス待ちのHTTPリクエスト.
+     * <p>
+     * HTTPリクエスト毎に生成し、対応するレスポンスを受け取った時、またはタイムアウトした時に
+     * HTTPレスポンスを返却する。
+     * </p>
+     */
+    private class PendingResponse {
+        /** リクエストコード. */
+        private final int mRequestCode;
+
+        /** HTTPレスポンスのハンドル. */
+        private final PendingHttpResponse mHandle;
+
+        /** リクエストされたプロファイル名. */
+        private final String mProfile;
+
+        /** リクエストされたアトリビュート名. */
+        private final String mAttribute;
+
+        /** HTTPメソッド. */
+        private final String mMethod;
+
+        /** リクエストURI. */
+        private final String mUri;
+
+        /** リクエストの受付時刻. */
+        private final long mStart;
+
+        /** タイムアウト監視のタスク. */
+        private ScheduledFuture<?> mTimeoutFuture;
+
+        /**
+         * コンストラクタ.
+         * @param requestCode リクエストコード
+         * @param handle HTTPレスポンスのハンドル
+         * @param profile プロファイル名
+         * @param attribute アトリビュート名
+         * @param method HTTPメソッド
+         * @param uri リクエストURI
+         * @param start リクエストの受付時刻
+         */
+        PendingResponse(final int requestCode, final PendingHttpResponse handle,
+                final String profile, final String attribute,
+                final String method, final String uri, final long start) {
+            mRequestCode = requestCode;
+            mHandle = handle;
+            mProfile = profile;
+            mAttribute = attribute;
+            mMethod = method;
+            mUri = uri;
+            mStart = start;
+        }
+
+        /**
+         * タイムアウトの監視を開始する.
+         * @param timeout タイムアウト時間(ms)
+         * @return 開始できた場合はtrue、スレッドプールが停止している場合はfalse
+         */
+        synchronized boolean scheduleTimeout(final long timeout) {
+            try {
+                mTimeoutFuture = mResponseExecutor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        // レスポンス受信と競合した場合には、先にマップから取り除いた方が処理する
+                        if (mPendingResponses.remove(mRequestCode, PendingResponse.this)) {
+                            mTimeoutCount.incrementAndGet();
+                            timeout();
+                        }
+                    }
+                }, timeout, TimeUnit.MILLISECONDS);
+                return true;
+            } catch (RejectedExecutionException e) {
+                return false;
+            }
+        }
+
+        /**
+         * レスポンスを受け取り、HTTPレスポンスを返却する.
+         * @param resp レスポンス
+         */
+        void complete(final Intent resp) {
+            cancelTimeout();
+            HttpResponse response = mHandle.getResponse();
+            try {
+                convertResponse(response, mProfile, mAttribute, resp);
+            } catch (JSONException e) {
+                setErrorResponse(response);
+            } catch (UnsupportedEncodingException e) {
+                setErrorResponse(response);
+            }
+            finish();
+        }
+
+        /**
+         * タイムアウトエラーのHTTPレスポンスを返却する.
+         */
+        void timeout() {
+            HttpResponse response = mHandle.getResponse();
+            try {
+                // ここのエラーはタイムアウトの場合のみ
+                setTimeoutResponse(response);
+            } catch (JSONException e) {
+                setErrorResponse(response);
+            } catch (UnsupportedEncodingException e) {
+                setErrorResponse(response);
+            }
+            finish();
+        }
+
+        /**
+         * レスポンスを待たずに、エラーのHTTPレスポンスを返却する.
+         */
+        void cancel() {
+            cancelTimeout();
+            setErrorResponse(mHandle.getResponse());
+            finish();
+        }
+
+        /**
+         * HTTPサーバの停止中のため、503エラーのHTTPレスポンスを返却する.
+         */
+        void reject() {
+            cancelTimeout();
+            setUnavailableResponse(mHandle.getResponse());
+            finish();
+        }
+
+        /**
+         * タイムアウトの監視を停止する.
+         */
+        private synchronized void cancelTimeout() {
+            if (mTimeoutFuture != null) {
+                mTimeoutFuture.cancel(false);
+                mTimeoutFuture = null;
+            }
+        }
+
+        /**
+         * HTTPサーバにレスポンスの返却を依頼する.
+         */
+        private void finish() {
+            mInFlightCount.decrementAndGet();
+            if (BuildConfig.DEBUG) {
+                mLogger.info(String.format("@@@ Request URI END(%d): %s %s",
+                        (System.currentTimeMillis() - mStart), mMethod, mUri));
+            }
+            mHandle.complete();
         }
     }
 }
@@ -21,7 +21,7 @@ import org.deviceconnect.android.manager.compat.NewScopeConverter;
 import org.deviceconnect.android.manager.compat.OldPathConverter;
 import org.deviceconnect.android.manager.compat.ServiceDiscoveryConverter;
 import org.deviceconnect.android.manager.compat.ServiceInformationConverter;
-import org.deviceconnect.android.manager.util.DConnectUtil;
+import org.deviceconnect.android.manager.util.BundleJSONWriter;
 import org.deviceconnect.android.manager.util.VersionName;
 import org.deviceconnect.android.profile.DConnectProfile;
 import org.deviceconnect.android.profile.ServiceDiscoveryProfile;
@@ -30,8 +30,8 @@ import org.deviceconnect.message.DConnectMessage;
 import org.deviceconnect.server.DConnectServer;
 import org.deviceconnect.server.DConnectServerConfig;
 import org.deviceconnect.server.nanohttpd.DConnectServerNanoHttpd;
+import org.deviceconnect.server.websocket.WebSocketEvent;
 import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -57,13 +57,28 @@ public class DConnectService extends DConnectMessageService {
     private static final VersionName OLD_SDK = VersionName.parse("1.0.0");
 
     /** RESTfulサーバ. */
-    private DConnectServer mRESTfulServer;
+    private volatile DConnectServer mRESTfulServer;
 
     /** RESTfulサーバからのイベントを受領するリスナー. */
     private DConnectServerEventListenerImpl mWebServerListener;
 
-    /** イベント送信スレッド. */
-    private ExecutorService mEventSender = Executors.newSingleThreadExecutor();
+    /** RESTfulサーバの起動・停止を行うスレッド. */
+    private ExecutorService mServerController = Executors.newSingleThreadExecutor();
+
+    /**
+     * HTTPリクエストを受け取り、ワーカースレッドで処理する.
+     * <p>
+     * 同一プロセス内のHTTPサーバからのリクエストは、startServiceによるIntentの受け渡しと
+     * メインスレッドを経由せずに、直接{@link #onRequestReceive(Intent)}を呼び出す。
+     * </p>
+     */
+    private final DConnectServerEventListenerImpl.RequestDispatcher mRequestDispatcher =
+            new DConnectServerEventListenerImpl.RequestDispatcher() {
+        @Override
+        public boolean dispatchRequest(final Intent request) {
+            return postRequest(request);
+        }
+    };
 
     private final MessageConverter[] mNewRequestConverters = {
         new NewPathConverter(),
@@ -114,29 +129,20 @@ public class DConnectService extends DConnectMessageService {
     public void sendEvent(final String receiver, final Intent event) {
         if (receiver == null || receiver.length() <= 0) {
             final String key = event.getStringExtra(DConnectMessage.EXTRA_SESSION_KEY);
-                mEventSender.execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        if (key != null && mRESTfulServer != null && mRESTfulServer.isRunning()) {
-                            try {
-                                if (BuildConfig.DEBUG) {
-                                    mLogger.info(String.format("sendEvent: %s extra: %s", key, event.getExtras()));
-                                }
-                                JSONObject root = new JSONObject();
-                                DConnectUtil.convertBundleToJSON(root, event.getExtras());
-
-                                mRESTfulServer.sendEvent(key, root.toString());
-                            } catch (JSONException e) {
-                                mLogger.warning("JSONException in sendEvent: " + e.toString());
-                            } catch (IOException e) {
-                                mLogger.warning("IOException in sendEvent: " + e.toString());
-                                if (mWebServerListener != null) {
-                                    mWebServerListener.onWebSocketDisconnected(key);
-                                }
-                            }
-                        }
+            DConnectServer server = mRESTfulServer;
+            if (key != null && server != null && server.isRunning()) {
+                if (BuildConfig.DEBUG) {
+                    mLogger.info(String.format("sendEvent: %s extra: %s", key, event.getExtras()));
+                }
+                try {
+                    server.sendEvent(key, new IntentEvent(event));
+                } catch (IOException e) {
+                    mLogger.warning("IOException in sendEvent: " + e.toString());
+                    if (mWebServerListener != null) {
+                        mWebServerListener.onWebSocketDisconnected(key);
                     }
-                });
+                }
+            }
         } else {
             super.sendEvent(receiver, event);
         }
@@ -146,13 +152,14 @@ public class DConnectService extends DConnectMessageService {
      * HTTPサーバを開始する.
      */
     private void startRESTfulServer() {
-        mEventSender.execute(new Runnable() {
+        mServerController.execute(new Runnable() {
             @Override
             public void run() {
                 mSettings.load(getApplicationContext());
 
                 mWebServerListener = new DConnectServerEventListenerImpl(getApplicationContext());
                 mWebServerListener.setFileManager(mFileMgr);
+                mWebServerListener.setRequestDispatcher(mRequestDispatcher);
 
                 DConnectServerConfig.Builder builder = new DConnectServerConfig.Builder();
                 builder.port(mSettings.getPort()).isSsl(mSettings.isSSL())
@@ -190,7 +197,7 @@ public class DConnectService extends DConnectMessageService {
      * HTTPサーバを停止する.
      */
     private void stopRESTfulServer() {
-        mEventSender.execute(new Runnable() {
+        mServerController.execute(new Runnable() {
             @Override
             public void run() {
                 if (mRESTfulServer != null) {
@@ -198,6 +205,9 @@ public class DConnectService extends DConnectMessageService {
                     mRESTfulServer.shutdown();
                     mRESTfulServer = null;
                 }
+                if (mWebServerListener != null) {
+                    mWebServerListener.shutdown();
+                }
 
                 if (BuildConfig.DEBUG) {
                     mLogger.info("RESTful Server was Stopped.");
@@ -335,4 +345,45 @@ public class DConnectService extends DConnectMessageService {
         return result;
     }
 
+
+    /**
+     * WebSocketで送信するイベント.
+     * <p>
+     * JSONへの変換は送信キューから取り出された時に行うため、まとめられたり破棄されたりしたイベントは変換しない。
+     * </p>
+     */
+    private class IntentEvent implements WebSocketEvent {
+        /** イベント. */
+        private final Intent mEvent;
+
+        /** 同じ種類のイベントを識別するキー. */
+        private final String mKey;
+
+        /**
+         * コンストラクタ.
+         * @param event イベント
+         */
+        IntentEvent(final Intent event) {
+            mEvent = event;
+            mKey = event.getStringExtra(DConnectMessage.EXTRA_SERVICE_ID)
+                + "/" + event.getStringExtra(DConnectMessage.EXTRA_PROFILE)
+                + "/" + event.getStringExtra(DConnectMessage.EXTRA_INTERFACE)
+                + "/" + event.getStringExtra(DConnectMessage.EXTRA_ATTRIBUTE);
+        }
+
+        @Override
+        public String getKey() {
+            return mKey;
+        }
+
+        @Override
+        public String createMessage() {
+            try {
+                return BundleJSONWriter.toJSONString(mEvent.getExtras());
+            } catch (JSONException e) {
+                mLogger.warning("JSONException in sendEvent: " + e.toString());
+                return null;
+            }
+        }
+    }
 }
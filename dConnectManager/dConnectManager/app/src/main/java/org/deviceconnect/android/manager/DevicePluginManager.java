@@ -17,6 +17,7 @@ import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.pm.ServiceInfo;
 import android.content.res.XmlResourceParser;
 
+import org.deviceconnect.android.manager.request.CircuitBreaker;
 import org.deviceconnect.android.manager.util.VersionName;
 import org.deviceconnect.message.DConnectMessage;
 import org.deviceconnect.message.intent.message.IntentDConnectMessage;
@@ -28,6 +29,7 @@ import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -35,6 +37,11 @@ import java.util.logging.Logger;
 
 /**
  * デバイスプラグインを管理するクラス.
+ * <p>
+ * インストールされているアプリの走査は{@link #createDevicePluginList()}の1回のみとし、
+ * 以降はアプリのインストール・アンインストールの通知で差分を更新する。
+ * デバイスプラグインはデバイスプラグインIDとパッケージ名で検索できる。
+ * </p>
  * @author NTT DOCOMO, INC.
  */
 public class DevicePluginManager {
@@ -48,8 +55,20 @@ public class DevicePluginManager {
     private static final String VALUE_META_DATA = "enable";
     /** マスクを定義. */
     private static final int MASK = 0xFF;
-    /** デバイスプラグイン一覧. */
+    /** デバイスプラグイン一覧. キーはデバイスプラグインのID. */
     private final Map<String, DevicePlugin> mPlugins = new ConcurrentHashMap<String, DevicePlugin>();
+    /**
+     * デバイスプラグイン一覧. キーはデバイスプラグインのパッケージ名.
+     * <p>
+     * 値のリストは変更せずに置き換える。更新は{@link #indexPlugin(DevicePlugin)}と
+     * {@link #unindexPlugin(DevicePlugin)}で行う。
+     * </p>
+     */
+    private final Map<String, List<DevicePlugin>> mPluginsByPackage
+            = new ConcurrentHashMap<String, List<DevicePlugin>>();
+    /** デバイスプラグイン毎のサーキットブレーカー. キーはデバイスプラグインのID. */
+    private final ConcurrentHashMap<String, CircuitBreaker> mCircuitBreakers
+            = new ConcurrentHashMap<String, CircuitBreaker>();
     /** このクラスが属するコンテスト. */
     private Context mContext;
     /** dConnectManagerのドメイン名. */
@@ -184,6 +203,7 @@ public class DevicePluginManager {
                     plugin.setSupportProfiles(checkDevicePluginXML(receiverInfo));
                     plugin.setPluginSdkVersionName(sdkVersionName);
                     mPlugins.put(hash, plugin);
+                    indexPlugin(plugin);
                     if (mEventListener != null) {
                         mEventListener.onDeviceFound(plugin);
                     }
@@ -210,13 +230,13 @@ public class DevicePluginManager {
         if (packageName == null) {
             throw new IllegalArgumentException("packageName is null.");
         }
-        for (String key : mPlugins.keySet()) {
-            DevicePlugin plugin = mPlugins.get(key);
-            if (plugin.getPackageName().equals(packageName)) {
-                mPlugins.remove(key);
-                if (mEventListener != null) {
-                    mEventListener.onDeviceLost(plugin);
-                }
+        for (DevicePlugin plugin : getDevicePluginsByPackage(packageName)) {
+            String key = plugin.getServiceId();
+            mPlugins.remove(key);
+            unindexPlugin(plugin);
+            mCircuitBreakers.remove(key);
+            if (mEventListener != null) {
+                mEventListener.onDeviceLost(plugin);
             }
         }
     }
@@ -240,8 +260,12 @@ public class DevicePluginManager {
                     mLogger.info("    PackageName: " + packageName);
                     mLogger.info("    className: " + className);
                     DevicePlugin plugin = mPlugins.remove(hash);
-                    if (plugin != null && mEventListener != null) {
-                        mEventListener.onDeviceLost(plugin);
+                    mCircuitBreakers.remove(hash);
+                    if (plugin != null) {
+                        unindexPlugin(plugin);
+                        if (mEventListener != null) {
+                            mEventListener.onDeviceLost(plugin);
+                        }
                     }
                 }
             }
@@ -250,6 +274,27 @@ public class DevicePluginManager {
         }
     }
 
+    /**
+     * 指定されたデバイスプラグインのサーキットブレーカーを取得する.
+     * <p>
+     * デバイスプラグインの稼働状況は、デバイスプラグインがアンインストールされるまで保持する。
+     * </p>
+     * @param plugin デバイスプラグイン
+     * @return サーキットブレーカー
+     */
+    public CircuitBreaker getCircuitBreaker(final DevicePlugin plugin) {
+        String pluginId = plugin.getServiceId();
+        CircuitBreaker breaker = mCircuitBreakers.get(pluginId);
+        if (breaker == null) {
+            CircuitBreaker newBreaker = new CircuitBreaker();
+            breaker = mCircuitBreakers.putIfAbsent(pluginId, newBreaker);
+            if (breaker == null) {
+                breaker = newBreaker;
+            }
+        }
+        return breaker;
+    }
+
     /**
      * 指定されたサービスIDと一致するデバイスプラグインを取得する.
      * @param serviceId サービスID
@@ -259,6 +304,52 @@ public class DevicePluginManager {
         return mPlugins.get(serviceId);
     }
 
+    /**
+     * 指定されたパッケージに含まれるデバイスプラグインを取得する.
+     * @param packageName パッケージ名
+     * @return デバイスプラグイン一覧。存在しない場合は空のリスト
+     */
+    public List<DevicePlugin> getDevicePluginsByPackage(final String packageName) {
+        List<DevicePlugin> plugins = mPluginsByPackage.get(packageName);
+        return plugins != null ? plugins : Collections.<DevicePlugin>emptyList();
+    }
+
+    /**
+     * パッケージ名のインデックスにデバイスプラグインを追加する.
+     * <p>
+     * 同じデバイスプラグインIDのデバイスプラグインが既にある場合は置き換える。
+     * </p>
+     * @param plugin デバイスプラグイン
+     */
+    private synchronized void indexPlugin(final DevicePlugin plugin) {
+        List<DevicePlugin> plugins = new ArrayList<DevicePlugin>();
+        for (DevicePlugin p : getDevicePluginsByPackage(plugin.getPackageName())) {
+            if (!p.getServiceId().equals(plugin.getServiceId())) {
+                plugins.add(p);
+            }
+        }
+        plugins.add(plugin);
+        mPluginsByPackage.put(plugin.getPackageName(), Collections.unmodifiableList(plugins));
+    }
+
+    /**
+     * パッケージ名のインデックスからデバイスプラグインを削除する.
+     * @param plugin デバイスプラグイン
+     */
+    private synchronized void unindexPlugin(final DevicePlugin plugin) {
+        List<DevicePlugin> plugins = new ArrayList<DevicePlugin>();
+        for (DevicePlugin p : getDevicePluginsByPackage(plugin.getPackageName())) {
+            if (!p.getServiceId().equals(plugin.getServiceId())) {
+                plugins.add(p);
+            }
+        }
+        if (plugins.isEmpty()) {
+            mPluginsByPackage.remove(plugin.getPackageName());
+        } else {
+            mPluginsByPackage.put(plugin.getPackageName(), Collections.unmodifiableList(plugins));
+        }
+    }
+
     /**
      * 指定されたサービスIDからデバイスプラグインを取得する.
      * 指定されたserviceIdに対応するデバイスプラグインが存在しない場合にはnullを返却する。
@@ -0,0 +1,317 @@
+/*
+ RequestRoute.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager;
+
+import org.deviceconnect.message.DConnectMessage;
+import org.deviceconnect.server.http.HttpRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * HTTPリクエストのルーティング情報.
+ * <p>
+ * リクエストのパスとクエリ、ヘッダーを1回の走査で解析した結果を保持する。
+ * 生成後は変更できないため、スレッド間で共有してもよい。
+ * </p>
+ * <p>
+ * 以前はリクエスト毎にURI文字列を組み立てて{@link android.net.Uri}で再解析し、
+ * クエリパラメータのキー毎にクエリ全体を走査していた。このクラスではパスの区切りと
+ * クエリの区切りをそれぞれ1回だけ走査し、エンコードされていない値はデコードせずにそのまま使う。
+ * パスは{@link android.net.Uri#getPathSegments()}と同じく区切りで分割してからセグメント毎にデコードするため、
+ * エンコードされた'/'(%2F)はセグメントの一部として扱う。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+final class RequestRoute {
+
+    /** パスの区切り文字. */
+    private static final char PATH_SEPARATOR = '/';
+
+    /** パスの最大のセグメント数. api/profile/interface/attribute. */
+    private static final int MAX_SEGMENTS = 4;
+
+    /** API名. */
+    private final String mApi;
+
+    /** プロファイル名. */
+    private final String mProfile;
+
+    /** インターフェース名. */
+    private final String mInterface;
+
+    /** アトリビュート名. */
+    private final String mAttribute;
+
+    /** クエリパラメータ. */
+    private final Map<String, String> mParams;
+
+    /** アプリケーションのオリジン. */
+    private final String mOrigin;
+
+    /** オリジンがWebアプリのものか. */
+    private final boolean mWebOrigin;
+
+    /** Content-Type. */
+    private final String mContentType;
+
+    /**
+     * コンストラクタ.
+     * @param segments パスのセグメント
+     * @param segmentCount パスのセグメント数
+     * @param params クエリパラメータ
+     * @param request HTTPリクエスト
+     */
+    private RequestRoute(final String[] segments, final int segmentCount,
+            final Map<String, String> params, final HttpRequest request) {
+        String api = null;
+        String profile = null;
+        String interfaces = null;
+        String attribute = null;
+        if (segmentCount >= 2 && segmentCount <= MAX_SEGMENTS) {
+            api = segments[0];
+            profile = segments[1];
+        }
+        if (segmentCount == 3) {
+            attribute = segments[2];
+        } else if (segmentCount == MAX_SEGMENTS) {
+            interfaces = segments[2];
+            attribute = segments[3];
+        }
+        mApi = api;
+        mProfile = profile;
+        mInterface = interfaces;
+        mAttribute = attribute;
+        mParams = Collections.unmodifiableMap(params);
+
+        String origin = request.getHeader(DConnectMessage.HEADER_GOTAPI_ORIGIN);
+        boolean web = false;
+        if (origin == null) {
+            origin = request.getHeader("origin");
+            web = origin != null;
+        }
+        mOrigin = origin;
+        mWebOrigin = web;
+        mContentType = request.getHeader("content-type");
+    }
+
+    /**
+     * HTTPリクエストを解析する.
+     * <p>
+     * パスのセグメント数が2〜4以外の場合、API名とプロファイル名はnullになる。
+     * パスはデコードされていないものを使用し、分割した後にセグメント毎にデコードする。
+     * </p>
+     * @param request HTTPリクエスト
+     * @return ルーティング情報
+     */
+    static RequestRoute parse(final HttpRequest request) {
+        String path = request.getPath();
+        String query = request.getQueryString();
+        if (path == null) {
+            // パスが設定されていない場合はURIから切り出す
+            String uri = request.getUri();
+            int start = uri.indexOf("://");
+            start = (start < 0) ? 0 : uri.indexOf(PATH_SEPARATOR, start + 3);
+            int q = uri.indexOf('?');
+            if (start < 0 || (q >= 0 && q < start)) {
+                start = (q >= 0) ? q : uri.length();
+            }
+            path = uri.substring(start, (q >= 0) ? q : uri.length());
+            query = (q >= 0) ? uri.substring(q + 1) : null;
+        }
+
+        String[] segments = new String[MAX_SEGMENTS];
+        int count = 0;
+        int length = path.length();
+        int begin = 0;
+        for (int i = 0; i <= length; i++) {
+            if (i == length || path.charAt(i) == PATH_SEPARATOR) {
+                if (i > begin) {
+                    if (count == MAX_SEGMENTS) {
+                        count++;
+                        break;
+                    }
+                    segments[count++] = decode(path.substring(begin, i), false);
+                }
+                begin = i + 1;
+            }
+        }
+
+        return new RequestRoute(segments, count, parseQuery(query), request);
+    }
+
+    /**
+     * クエリ文字列を解析する.
+     * <p>
+     * 同じ名前のパラメータが複数ある場合は、最初の値を使用する。
+     * </p>
+     * @param query クエリ文字列
+     * @return クエリパラメータ
+     */
+    private static Map<String, String> parseQuery(final String query) {
+        Map<String, String> params = new LinkedHashMap<>();
+        if (query == null) {
+            return params;
+        }
+        int length = query.length();
+        int begin = 0;
+        int eq = -1;
+        for (int i = 0; i <= length; i++) {
+            char c = (i == length) ? '&' : query.charAt(i);
+            if (c == '=' && eq < 0) {
+                eq = i;
+            } else if (c == '&') {
+                int nameEnd = (eq < 0) ? i : eq;
+                if (nameEnd > begin) {
+                    String name = decode(query.substring(begin, nameEnd), true);
+                    String value = (eq < 0) ? "" : decode(query.substring(eq + 1, i), true);
+                    if (!params.containsKey(name)) {
+                        params.put(name, value);
+                    }
+                }
+                begin = i + 1;
+                eq = -1;
+            }
+        }
+        return params;
+    }
+
+    /**
+     * パーセントエンコードされた文字列をUTF-8としてデコードする.
+     * <p>
+     * 不正なエスケープはそのままの文字として扱う。
+     * </p>
+     * @param s 文字列
+     * @param plusAsSpace '+'を空白に変換する場合はtrue
+     * @return デコードした文字列
+     */
+    private static String decode(final String s, final boolean plusAsSpace) {
+        if (s.indexOf('%') < 0 && (!plusAsSpace || s.indexOf('+') < 0)) {
+            return s;
+        }
+        StringBuilder sb = new StringBuilder(s.length());
+        ByteArrayOutputStream bytes = null;
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c == '%' && i + 2 < length && hex(s.charAt(i + 1)) >= 0 && hex(s.charAt(i + 2)) >= 0) {
+                if (bytes == null) {
+                    bytes = new ByteArrayOutputStream();
+                }
+                bytes.write((hex(s.charAt(i + 1)) << 4) | hex(s.charAt(i + 2)));
+                i += 2;
+                continue;
+            }
+            flush(sb, bytes);
+            sb.append((c == '+' && plusAsSpace) ? ' ' : c);
+        }
+        flush(sb, bytes);
+        return sb.toString();
+    }
+
+    /**
+     * デコード途中のバイト列をUTF-8の文字列として追加する.
+     * @param sb 追加先
+     * @param bytes バイト列
+     */
+    private static void flush(final StringBuilder sb, final ByteArrayOutputStream bytes) {
+        if (bytes != null && bytes.size() > 0) {
+            try {
+                sb.append(bytes.toString("UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+            bytes.reset();
+        }
+    }
+
+    /**
+     * 16進数の文字を数値に変換する.
+     * @param c 文字
+     * @return 数値。16進数の文字でない場合は-1
+     */
+    private static int hex(final char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * API名を取得する.
+     * @return API名。パスが不正な場合はnull
+     */
+    String getApi() {
+        return mApi;
+    }
+
+    /**
+     * プロファイル名を取得する.
+     * @return プロファイル名。パスが不正な場合はnull
+     */
+    String getProfile() {
+        return mProfile;
+    }
+
+    /**
+     * インターフェース名を取得する.
+     * @return インターフェース名。指定されていない場合はnull
+     */
+    String getInterface() {
+        return mInterface;
+    }
+
+    /**
+     * アトリビュート名を取得する.
+     * @return アトリビュート名。指定されていない場合はnull
+     */
+    String getAttribute() {
+        return mAttribute;
+    }
+
+    /**
+     * クエリパラメータを取得する.
+     * @return 変更不可のクエリパラメータ
+     */
+    Map<String, String> getParams() {
+        return mParams;
+    }
+
+    /**
+     * アプリケーションのオリジンを取得する.
+     * <p>
+     * X-GotAPI-Originヘッダーを優先し、無い場合はOriginヘッダーを使用する。
+     * </p>
+     * @return オリジン。指定されていない場合はnull
+     */
+    String getOrigin() {
+        return mOrigin;
+    }
+
+    /**
+     * オリジンがWebアプリのもの(Originヘッダー)かを取得する.
+     * @return Webアプリのオリジンの場合はtrue、それ以外はfalse
+     */
+    boolean isWebOrigin() {
+        return mWebOrigin;
+    }
+
+    /**
+     * Content-Typeを取得する.
+     * @return Content-Type。指定されていない場合はnull
+     */
+    String getContentType() {
+        return mContentType;
+    }
+}
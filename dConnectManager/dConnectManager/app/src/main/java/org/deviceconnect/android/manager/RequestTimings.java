@@ -0,0 +1,121 @@
+/*
+ RequestTimings.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * リクエスト処理の段階毎の所要時間を集計するクラス.
+ * <p>
+ * 複数のワーカースレッドから同時に記録してもよい。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+public final class RequestTimings {
+
+    /**
+     * リクエスト処理の段階.
+     */
+    public enum Stage {
+        /** オリジンの正当性チェック. */
+        ORIGIN,
+        /** Local OAuthのアクセストークンのチェック. */
+        AUTH,
+        /** Device Connect Managerのプロファイルによる処理. */
+        PROFILE,
+        /** デバイスプラグインへの配送. */
+        DELIVERY,
+    }
+
+    /** 段階毎の処理回数. */
+    private final AtomicLong[] mCounts = new AtomicLong[Stage.values().length];
+
+    /** 段階毎の所要時間の合計[nsec]. */
+    private final AtomicLong[] mTotals = new AtomicLong[Stage.values().length];
+
+    /** 段階毎の所要時間の最大値[nsec]. */
+    private final AtomicLong[] mMaxes = new AtomicLong[Stage.values().length];
+
+    /**
+     * コンストラクタ.
+     */
+    public RequestTimings() {
+        for (int i = 0; i < mCounts.length; i++) {
+            mCounts[i] = new AtomicLong();
+            mTotals[i] = new AtomicLong();
+            mMaxes[i] = new AtomicLong();
+        }
+    }
+
+    /**
+     * 所要時間を記録する.
+     * @param stage 段階
+     * @param nanos 所要時間[nsec]
+     */
+    public void record(final Stage stage, final long nanos) {
+        int i = stage.ordinal();
+        mCounts[i].incrementAndGet();
+        mTotals[i].addAndGet(nanos);
+        AtomicLong max = mMaxes[i];
+        long current;
+        do {
+            current = max.get();
+        } while (nanos > current && !max.compareAndSet(current, nanos));
+    }
+
+    /**
+     * 処理回数を取得する.
+     * @param stage 段階
+     * @return 処理回数
+     */
+    public long getCount(final Stage stage) {
+        return mCounts[stage.ordinal()].get();
+    }
+
+    /**
+     * 所要時間の合計を取得する.
+     * @param stage 段階
+     * @return 所要時間の合計[nsec]
+     */
+    public long getTotalNanos(final Stage stage) {
+        return mTotals[stage.ordinal()].get();
+    }
+
+    /**
+     * 所要時間の最大値を取得する.
+     * @param stage 段階
+     * @return 所要時間の最大値[nsec]
+     */
+    public long getMaxNanos(final Stage stage) {
+        return mMaxes[stage.ordinal()].get();
+    }
+
+    /**
+     * 所要時間の平均値を取得する.
+     * @param stage 段階
+     * @return 所要時間の平均値[nsec]。処理回数が0の場合は0
+     */
+    public long getAverageNanos(final Stage stage) {
+        long count = getCount(stage);
+        return count == 0 ? 0 : getTotalNanos(stage) / count;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Stage stage : Stage.values()) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(String.format(Locale.ENGLISH, "%s: count=%d avg=%.3fms max=%.3fms",
+                    stage.name().toLowerCase(Locale.ENGLISH), getCount(stage),
+                    getAverageNanos(stage) / 1e6, getMaxNanos(stage) / 1e6));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ ServiceDiscoveryCache.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager;
+
+import android.os.Bundle;
+
+import org.deviceconnect.profile.ServiceDiscoveryProfileConstants;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * デバイスプラグイン毎のService Discoveryの結果をキャッシュするクラス.
+ * <p>
+ * デバイスプラグイン毎に有効期限を持ち、期限切れの結果も再取得が終わるまではそのまま返却する
+ * (stale-while-revalidate)。再取得は期限切れのデバイスプラグインにのみ行う。
+ * 応答しなかったデバイスプラグインは短い有効期限で記録し、毎回の Service Discovery が
+ * そのデバイスプラグインのタイムアウトを待たないようにする。
+ * </p>
+ * <p>
+ * onServiceChangeイベントを受信した場合は、該当するサービスのみを更新する。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+public final class ServiceDiscoveryCache {
+
+    /** デフォルトの有効期限[msec]. */
+    public static final long DEFAULT_TTL = 30 * 1000;
+
+    /** 応答しなかったデバイスプラグインのデフォルトの有効期限[msec]. */
+    public static final long DEFAULT_FAILURE_TTL = 5 * 1000;
+
+    /** 応答しなかったデバイスプラグインを再起動する間隔の初期値[msec]. */
+    private static final long RESTART_BACKOFF = 10 * 1000;
+
+    /** 応答しなかったデバイスプラグインを再起動する間隔の上限[msec]. */
+    private static final long MAX_RESTART_BACKOFF = 5 * 60 * 1000;
+
+    /** 有効期限[msec]. */
+    private final long mTtl;
+
+    /** 応答しなかったデバイスプラグインの有効期限[msec]. */
+    private final long mFailureTtl;
+
+    /** デバイスプラグインIDをキーとしたキャッシュ. */
+    private final Map<String, Entry> mEntries = new HashMap<>();
+
+    /** キャッシュから返却した回数. */
+    private long mHitCount;
+
+    /** デバイスプラグインへの問い合わせが必要だった回数. */
+    private long mMissCount;
+
+    /**
+     * デフォルトの有効期限でキャッシュを作成する.
+     */
+    public ServiceDiscoveryCache() {
+        this(DEFAULT_TTL, DEFAULT_FAILURE_TTL);
+    }
+
+    /**
+     * 有効期限を指定してキャッシュを作成する.
+     * @param ttl 有効期限[msec]
+     * @param failureTtl 応答しなかったデバイスプラグインの有効期限[msec]
+     */
+    public ServiceDiscoveryCache(final long ttl, final long failureTtl) {
+        if (ttl < 0) {
+            throw new IllegalArgumentException("ttl must not be negative.");
+        }
+        if (failureTtl < 0) {
+            throw new IllegalArgumentException("failureTtl must not be negative.");
+        }
+        mTtl = ttl;
+        mFailureTtl = failureTtl;
+    }
+
+    /**
+     * キャッシュが無いデバイスプラグインを取得する.
+     * <p>
+     * 全てのデバイスプラグインのキャッシュがある場合はキャッシュのヒット、
+     * それ以外の場合はミスとして数える。
+     * </p>
+     * @param plugins デバイスプラグイン一覧
+     * @return キャッシュが無いデバイスプラグイン一覧
+     */
+    public synchronized List<DevicePlugin> getMissingPlugins(final List<DevicePlugin> plugins) {
+        List<DevicePlugin> missing = new ArrayList<>();
+        for (DevicePlugin plugin : plugins) {
+            if (!mEntries.containsKey(plugin.getServiceId())) {
+                missing.add(plugin);
+            }
+        }
+        if (missing.isEmpty()) {
+            mHitCount++;
+        } else {
+            mMissCount++;
+        }
+        return missing;
+    }
+
+    /**
+     * 有効期限の切れたデバイスプラグインを取得し、再取得中として記録する.
+     * <p>
+     * 既に再取得中のデバイスプラグインは含めない。再取得中の記録は、結果を記録した時か、
+     * 指定した時間が経過した時に解除される。
+     * </p>
+     * @param plugins デバイスプラグイン一覧
+     * @param timeout 再取得のタイムアウト時間[msec]
+     * @return 再取得が必要なデバイスプラグイン一覧
+     */
+    public synchronized List<DevicePlugin> beginRevalidation(final List<DevicePlugin> plugins,
+            final long timeout) {
+        long now = System.currentTimeMillis();
+        List<DevicePlugin> stale = new ArrayList<>();
+        for (DevicePlugin plugin : plugins) {
+            Entry entry = mEntries.get(plugin.getServiceId());
+            if (entry != null && entry.mExpiresAt <= now && entry.mRevalidateDeadline <= now) {
+                entry.mRevalidateDeadline = now + timeout;
+                stale.add(plugin);
+            }
+        }
+        return stale;
+    }
+
+    /**
+     * デバイスプラグインから取得したサービス一覧を記録する.
+     * @param plugin デバイスプラグイン
+     * @param services サービスIDにデバイスプラグインIDを付加したサービス一覧
+     */
+    public synchronized void put(final DevicePlugin plugin, final List<Bundle> services) {
+        Entry entry = new Entry();
+        for (Bundle service : services) {
+            entry.mServices.add(new Bundle(service));
+        }
+        entry.mExpiresAt = System.currentTimeMillis() + mTtl;
+        mEntries.put(plugin.getServiceId(), entry);
+    }
+
+    /**
+     * デバイスプラグインが応答しなかったことを記録する.
+     * <p>
+     * 以前の結果がある場合はそのまま残し、短い有効期限で再取得させる。
+     * </p>
+     * @param plugin デバイスプラグイン
+     */
+    public synchronized void markFailed(final DevicePlugin plugin) {
+        Entry entry = mEntries.get(plugin.getServiceId());
+        if (entry == null) {
+            entry = new Entry();
+            mEntries.put(plugin.getServiceId(), entry);
+        }
+        entry.mExpiresAt = System.currentTimeMillis() + mFailureTtl;
+        entry.mRevalidateDeadline = 0;
+        entry.mFailed = true;
+        entry.mFailureCount++;
+    }
+
+    /**
+     * 応答しなかったデバイスプラグインを再起動してよいかを確認し、再起動したことを記録する.
+     * <p>
+     * 毎回の問い合わせで再起動を繰り返さないように、応答しなかった回数に応じて
+     * 再起動の間隔を{@value #RESTART_BACKOFF}msecから{@value #MAX_RESTART_BACKOFF}msecまで倍にしていく。
+     * デバイスプラグインが応答して結果を記録すると、間隔は元に戻る。
+     * </p>
+     * @param plugin デバイスプラグイン
+     * @return 再起動してよい場合はtrue、前回の再起動から間隔が空いていない場合はfalse
+     */
+    public synchronized boolean tryRestart(final DevicePlugin plugin) {
+        Entry entry = mEntries.get(plugin.getServiceId());
+        if (entry == null) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        if (now < entry.mNextRestartAt) {
+            return false;
+        }
+        long backoff = RESTART_BACKOFF;
+        for (int i = 1; i < entry.mFailureCount && backoff < MAX_RESTART_BACKOFF; i++) {
+            backoff *= 2;
+        }
+        entry.mNextRestartAt = now + Math.min(backoff, MAX_RESTART_BACKOFF);
+        return true;
+    }
+
+    /**
+     * 前回の問い合わせでデバイスプラグインが応答しなかったかを確認する.
+     * @param plugin デバイスプラグイン
+     * @return 応答しなかった場合はtrue、それ以外はfalse
+     */
+    public synchronized boolean isFailing(final DevicePlugin plugin) {
+        Entry entry = mEntries.get(plugin.getServiceId());
+        return entry != null && entry.mFailed;
+    }
+
+    /**
+     * onServiceChangeイベントで通知されたサービスを反映する.
+     * <p>
+     * 該当するサービスの情報を更新し、キャッシュに無いサービスは追加する。
+     * 接続状態(state)がonlineとして通知されていない場合はstateの値をonlineとする。
+     * イベントだけでは削除されたサービスを判別できないため、デバイスプラグインのキャッシュは
+     * 期限切れとして、次回のService Discoveryで再取得させる。
+     * </p>
+     * @param plugin デバイスプラグイン
+     * @param serviceId デバイスプラグインIDを付加したサービスID
+     * @param service イベントに含まれるサービス
+     */
+    public synchronized void onServiceChange(final DevicePlugin plugin, final String serviceId,
+            final Bundle service) {
+        Entry entry = mEntries.get(plugin.getServiceId());
+        if (entry == null || service == null) {
+            return;
+        }
+        Bundle update = new Bundle(service);
+        update.putString(ServiceDiscoveryProfileConstants.PARAM_ID, serviceId);
+        if (!update.containsKey(ServiceDiscoveryProfileConstants.PARAM_ONLINE)
+                && update.containsKey(ServiceDiscoveryProfileConstants.PARAM_STATE)) {
+            update.putBoolean(ServiceDiscoveryProfileConstants.PARAM_ONLINE,
+                    update.getBoolean(ServiceDiscoveryProfileConstants.PARAM_STATE));
+        }
+        update.remove(ServiceDiscoveryProfileConstants.PARAM_STATE);
+
+        boolean found = false;
+        for (Bundle cached : entry.mServices) {
+            if (serviceId.equals(cached.getString(ServiceDiscoveryProfileConstants.PARAM_ID))) {
+                cached.putAll(update);
+                found = true;
+                break;
+            }
+        }
+        if (!found) {
+            entry.mServices.add(update);
+        }
+        entry.mExpiresAt = 0;
+    }
+
+    /**
+     * デバイスプラグインのキャッシュを削除する.
+     * @param pluginId デバイスプラグインID
+     */
+    public synchronized void remove(final String pluginId) {
+        mEntries.remove(pluginId);
+    }
+
+    /**
+     * 全てのキャッシュを削除する.
+     */
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    /**
+     * 指定したデバイスプラグインのキャッシュされたサービス一覧を取得する.
+     * <p>
+     * 返却するBundleはキャッシュのコピーなので、変更してもよい。
+     * </p>
+     * @param plugins デバイスプラグイン一覧
+     * @return サービス一覧
+     */
+    public synchronized Bundle[] getServices(final List<DevicePlugin> plugins) {
+        List<Bundle> services = new ArrayList<>();
+        for (DevicePlugin plugin : plugins) {
+            Entry entry = mEntries.get(plugin.getServiceId());
+            if (entry != null) {
+                for (Bundle service : entry.mServices) {
+                    services.add(new Bundle(service));
+                }
+            }
+        }
+        return services.toArray(new Bundle[services.size()]);
+    }
+
+    /**
+     * キャッシュから返却した回数を取得する.
+     * @return キャッシュから返却した回数
+     */
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * デバイスプラグインへの問い合わせが必要だった回数を取得する.
+     * @return 問い合わせが必要だった回数
+     */
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * デバイスプラグイン1つ分のキャッシュ.
+     */
+    private static class Entry {
+        /** サービス一覧. */
+        private final List<Bundle> mServices = new ArrayList<>();
+
+        /** 有効期限. */
+        private long mExpiresAt;
+
+        /** 再取得の完了を待つ期限. この時刻までは再取得中として扱う. */
+        private long mRevalidateDeadline;
+
+        /** 前回の問い合わせで応答しなかったか. */
+        private boolean mFailed;
+
+        /** 続けて応答しなかった回数. */
+        private int mFailureCount;
+
+        /** 次に再起動してよい時刻. */
+        private long mNextRestartAt;
+    }
+}
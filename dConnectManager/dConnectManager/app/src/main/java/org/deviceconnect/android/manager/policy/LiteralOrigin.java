@@ -35,6 +35,14 @@ class LiteralOrigin implements Origin {
         return mOrigin.equals(((LiteralOrigin) origin).mOrigin);
     }
 
+    /**
+     * Gets the key for exact matching.
+     * @return the string expression of this origin
+     */
+    String getMatchKey() {
+        return mOrigin;
+    }
+
     @Override
     public String toString() {
         return mOrigin;
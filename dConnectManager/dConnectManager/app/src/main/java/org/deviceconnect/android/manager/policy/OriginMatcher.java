@@ -0,0 +1,120 @@
+/*
+ OriginMatcher.java
+ Copyright (c) 2015 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager.policy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An immutable matcher compiled from the origins in a whitelist.
+ * <p>
+ * Web application origins and literal origins are looked up in a hash set,
+ * so that the cost of a check does not depend on the number of origins.
+ * Other origins are checked one by one with {@link Origin#matches(Origin)}.
+ * </p>
+ * <p>
+ * Instances of this class can be shared between threads without synchronization.
+ * </p>
+ * 
+ * @author NTT DOCOMO, INC.
+ */
+final class OriginMatcher {
+
+    /**
+     * The matcher which allows no origins.
+     */
+    static final OriginMatcher EMPTY = new OriginMatcher(Collections.<String>emptySet(),
+            Collections.<Origin>emptyList());
+
+    /**
+     * The prefix of keys for web application origins.
+     */
+    private static final String PREFIX_WEB_APP = "w:";
+
+    /**
+     * The prefix of keys for literal origins.
+     */
+    private static final String PREFIX_LITERAL = "l:";
+
+    /**
+     * The keys of origins which are checked by exact matching.
+     */
+    private final Set<String> mExactKeys;
+
+    /**
+     * The origins which are checked one by one.
+     */
+    private final List<Origin> mPatterns;
+
+    /**
+     * Constructor.
+     * 
+     * @param exactKeys the keys of origins which are checked by exact matching
+     * @param patterns the origins which are checked one by one
+     */
+    private OriginMatcher(final Set<String> exactKeys, final List<Origin> patterns) {
+        mExactKeys = exactKeys;
+        mPatterns = patterns;
+    }
+
+    /**
+     * Compiles the specified origins.
+     * 
+     * @param origins the origins in a whitelist
+     * @return an instance of {@link OriginMatcher}
+     */
+    static OriginMatcher compile(final List<OriginInfo> origins) {
+        Set<String> exactKeys = new HashSet<String>();
+        List<Origin> patterns = new ArrayList<Origin>();
+        for (OriginInfo info : origins) {
+            String key = getKey(info.getOrigin());
+            if (key != null) {
+                exactKeys.add(key);
+            } else {
+                patterns.add(info.getOrigin());
+            }
+        }
+        return new OriginMatcher(exactKeys, patterns);
+    }
+
+    /**
+     * Gets the key for exact matching of the specified origin.
+     * 
+     * @param origin an origin
+     * @return the key, or <code>null</code> if the origin can not be checked by exact matching
+     */
+    private static String getKey(final Origin origin) {
+        if (origin instanceof WebAppOrigin) {
+            return PREFIX_WEB_APP + ((WebAppOrigin) origin).getMatchKey();
+        } else if (origin instanceof LiteralOrigin) {
+            return PREFIX_LITERAL + ((LiteralOrigin) origin).getMatchKey();
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether the specified origin matches one of the compiled origins.
+     * 
+     * @param origin Origin of requests
+     * @return <code>true</code> if the specified origin matches, otherwise <code>false</code>.
+     */
+    boolean matches(final Origin origin) {
+        String key = getKey(origin);
+        if (key != null && mExactKeys.contains(key)) {
+            return true;
+        }
+        for (Origin pattern : mPatterns) {
+            if (pattern.matches(origin)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
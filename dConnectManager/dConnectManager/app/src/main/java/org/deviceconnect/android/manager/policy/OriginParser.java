@@ -6,6 +6,9 @@
  */
 package org.deviceconnect.android.manager.policy;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * A parser of a string expression of origins.
  * 
@@ -13,6 +16,20 @@ package org.deviceconnect.android.manager.policy;
  */
 public final class OriginParser {
 
+    /**
+     * The maximum number of parsed origins to be cached.
+     */
+    private static final int MAX_CACHE_SIZE = 256;
+
+    /**
+     * Cache of parsed origins. The key is the string expression of an origin.
+     * <p>
+     * Instances of {@link Origin} are immutable, so the same instance can be returned
+     * for the same expression. The cache is cleared when it becomes full.
+     * </p>
+     */
+    private static final Map<String, Origin> CACHE = new ConcurrentHashMap<String, Origin>();
+
     /**
      * Private constructor.
      */
@@ -25,11 +42,19 @@ public final class OriginParser {
      * @return an instance of {@link Origin}
      */
     public static Origin parse(final String originExp) {
-        Origin origin = WebAppOrigin.parse(originExp);
+        Origin origin = CACHE.get(originExp);
         if (origin != null) {
             return origin;
         }
-        return new LiteralOrigin(originExp);
+        origin = WebAppOrigin.parse(originExp);
+        if (origin == null) {
+            origin = new LiteralOrigin(originExp);
+        }
+        if (CACHE.size() >= MAX_CACHE_SIZE) {
+            CACHE.clear();
+        }
+        CACHE.put(originExp, origin);
+        return origin;
     }
 
 }
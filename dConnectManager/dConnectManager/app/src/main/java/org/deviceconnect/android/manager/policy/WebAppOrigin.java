@@ -141,6 +141,18 @@ abstract class WebAppOrigin implements Origin {
         return true;
     }
 
+    /**
+     * Gets the key for exact matching.
+     * <p>
+     * Two web application origins have the same key if and only if
+     * {@link #matches(Origin)} returns <code>true</code> for them.
+     * </p>
+     * @return the key which consists of the scheme, the host name and the port number
+     */
+    String getMatchKey() {
+        return mScheme + SEP_HOST + mHost + SEP_PORT + getPort();
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
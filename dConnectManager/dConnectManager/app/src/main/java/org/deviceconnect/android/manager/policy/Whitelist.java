@@ -19,6 +19,12 @@ import android.provider.BaseColumns;
 
 /**
  * Whitelist of origins.
+ * <p>
+ * The origins are compiled into an immutable {@link OriginMatcher}, which is shared
+ * by all instances of this class because they use the same database.
+ * The matcher is replaced atomically whenever the whitelist is edited, so that
+ * {@link #allows(Origin)} neither accesses the database nor acquires a lock.
+ * </p>
  * 
  * @author NTT DOCOMO, INC.
  */
@@ -27,6 +33,9 @@ public class Whitelist {
     /** The origin database. */
     private final OriginDB mCache;
 
+    /** The compiled origins. <code>null</code> until the origins are loaded. */
+    private static volatile OriginMatcher sMatcher;
+
     /**
      * Constructor.
      * 
@@ -44,13 +53,25 @@ public class Whitelist {
      *      otherwise <code>false</code>.
      */
     public boolean allows(final Origin origin) {
-        List<OriginInfo> patterns = getOrigins();
-        for (OriginInfo p : patterns) {
-            if (p.matches(origin)) {
-                return true;
-            }
+        OriginMatcher matcher = sMatcher;
+        if (matcher == null) {
+            matcher = reload();
+        }
+        return matcher.matches(origin);
+    }
+
+    /**
+     * Compiles the origins in the database, and replaces the shared matcher.
+     * 
+     * @return the new matcher
+     */
+    private OriginMatcher reload() {
+        synchronized (Whitelist.class) {
+            List<OriginInfo> origins = mCache.getOrigins();
+            OriginMatcher matcher = origins.isEmpty() ? OriginMatcher.EMPTY : OriginMatcher.compile(origins);
+            sMatcher = matcher;
+            return matcher;
         }
-        return false;
     }
 
     /**
@@ -67,13 +88,8 @@ public class Whitelist {
      * @param originExp a string expression of origin
      * @return <code>true</code> if origin is included, otherwise <code>false</code>
      */
-    public synchronized boolean hasOrigin(final String originExp) {
-        for (OriginInfo info : mCache.getOrigins()) {
-            if (info.matches(OriginParser.parse(originExp))) {
-                return true;
-            }
-        }
-        return false;
+    public boolean hasOrigin(final String originExp) {
+        return allows(OriginParser.parse(originExp));
     }
 
     /**
@@ -89,6 +105,7 @@ public class Whitelist {
         try {
             long date = System.currentTimeMillis();
             long id = mCache.addOrigin(origin, title, date);
+            reload();
             return new OriginInfo(id, origin, title, date);
         } catch (OriginDBException e) {
             throw new WhitelistException("Failed to store origin: " + origin, e);
@@ -104,6 +121,7 @@ public class Whitelist {
     public synchronized void updateOrigin(final OriginInfo info) throws WhitelistException {
         try {
             mCache.updateOrigin(info);
+            reload();
         } catch (OriginDBException e) {
             throw new WhitelistException("Failed to store origin: " + info.mOrigin, e);
         }
@@ -118,6 +136,7 @@ public class Whitelist {
     public synchronized void removeOrigin(final OriginInfo info) throws WhitelistException {
         try {
             mCache.removeOrigin(info);
+            reload();
         } catch (OriginDBException e) {
             throw new WhitelistException("Failed to remove origin: " + info.mOrigin, e);
         }
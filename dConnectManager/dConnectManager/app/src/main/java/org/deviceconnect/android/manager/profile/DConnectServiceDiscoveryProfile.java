@@ -10,7 +10,9 @@ import org.deviceconnect.android.event.EventError;
 import org.deviceconnect.android.event.EventManager;
 import org.deviceconnect.android.manager.DConnectMessageService;
 import org.deviceconnect.android.manager.DConnectService;
+import org.deviceconnect.android.manager.DevicePlugin;
 import org.deviceconnect.android.manager.DevicePluginManager;
+import org.deviceconnect.android.manager.ServiceDiscoveryCache;
 import org.deviceconnect.android.manager.request.ServiceDiscoveryRequest;
 import org.deviceconnect.android.message.MessageUtils;
 import org.deviceconnect.android.profile.DConnectProfileProvider;
@@ -19,6 +21,9 @@ import org.deviceconnect.message.intent.message.IntentDConnectMessage;
 
 import android.content.Intent;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Service Discovery プロファイル.
  * @author NTT DOCOMO, INC.
@@ -30,18 +35,46 @@ public class DConnectServiceDiscoveryProfile extends ServiceDiscoveryProfile {
      */
     private static final int TIMEOUT = 8000;
 
+    /**
+     * 前回応答しなかったデバイスプラグインのタイムアウト時間を定義. (2秒)
+     */
+    private static final int FAILING_PLUGIN_TIMEOUT = 2000;
+
+    /**
+     * パラメータ: {@value}.
+     * <p>
+     * trueを指定した場合、キャッシュを使わずに全てのデバイスプラグインに問い合わせる。
+     * </p>
+     */
+    public static final String PARAM_REFRESH = "refresh";
+
+    /**
+     * パラメータ: {@value}.
+     * <p>
+     * trueを指定した場合、デバイスプラグインが応答する度に、そのデバイスプラグインのサービス一覧を
+     * {@link ServiceDiscoveryRequest#ATTRIBUTE_ON_SERVICES_FOUND}イベントで通知する。
+     * キャッシュのあるデバイスプラグインは、レスポンスを返却する前にキャッシュのサービス一覧を通知する。
+     * </p>
+     */
+    public static final String PARAM_STREAM = "stream";
+
     /** デバイスプラグイン管理クラス. */
     private DevicePluginManager mDevicePluginManager;
 
+    /** Service Discoveryの結果のキャッシュ. */
+    private final ServiceDiscoveryCache mCache;
+
     /**
      * コンストラクタ.
      * @param provider プロファイルプロバイダ
      * @param mgr デバイスプラグイン管理クラス
+     * @param cache Service Discoveryの結果のキャッシュ
      */
     public DConnectServiceDiscoveryProfile(final DConnectProfileProvider provider,
-            final DevicePluginManager mgr) {
+            final DevicePluginManager mgr, final ServiceDiscoveryCache cache) {
         super(provider);
         mDevicePluginManager = mgr;
+        mCache = cache;
     }
 
     @Override
@@ -59,12 +92,35 @@ public class DConnectServiceDiscoveryProfile extends ServiceDiscoveryProfile {
 
     @Override
     protected boolean onGetServices(final Intent request, final Intent response) {
-        ServiceDiscoveryRequest req = new ServiceDiscoveryRequest();
-        req.setContext(getContext());
-        req.setRequest(request);
-        req.setTimeout(TIMEOUT);
-        req.setDevicePluginManager(mDevicePluginManager);
-        ((DConnectMessageService) getContext()).addRequest(req);
+        List<DevicePlugin> plugins = mDevicePluginManager.getDevicePlugins();
+        boolean refresh = "true".equalsIgnoreCase(request.getStringExtra(PARAM_REFRESH));
+        List<DevicePlugin> missing = refresh ? plugins : mCache.getMissingPlugins(plugins);
+        boolean streaming = "true".equalsIgnoreCase(request.getStringExtra(PARAM_STREAM));
+        if (streaming) {
+            sendCachedServicesFound(request, plugins, missing);
+        }
+
+        if (missing.isEmpty()) {
+            // 全てのデバイスプラグインのキャッシュがある場合は、期限切れでもキャッシュを即座に返却する
+            setResult(response, IntentDConnectMessage.RESULT_OK);
+            response.putExtra(PARAM_SERVICES, mCache.getServices(plugins));
+            ((DConnectMessageService) getContext()).sendResponse(request, response);
+        } else {
+            // キャッシュの無いデバイスプラグインにのみ問い合わせて、結果を待つ
+            ServiceDiscoveryRequest req = createRequest(request, missing, false);
+            req.setStreaming(streaming);
+            ((DConnectMessageService) getContext()).addRequest(req);
+        }
+
+        // 期限切れのキャッシュはバックグラウンドで再取得する
+        if (!refresh) {
+            List<DevicePlugin> stale = mCache.beginRevalidation(plugins, TIMEOUT * 2);
+            if (!stale.isEmpty()) {
+                ServiceDiscoveryRequest req = createRequest(request, stale, true);
+                req.setResponseRequired(false);
+                ((DConnectMessageService) getContext()).addRequest(req);
+            }
+        }
 
         // 各デバイスプラグインに送信する場合にはfalseを返却、
         // dConnectManagerで止める場合にはtrueを返却する
@@ -72,6 +128,52 @@ public class DConnectServiceDiscoveryProfile extends ServiceDiscoveryProfile {
         return true;
     }
 
+    /**
+     * キャッシュのあるデバイスプラグインのサービス一覧を逐次通知のイベントで送信する.
+     * @param request リクエスト
+     * @param plugins 全てのデバイスプラグイン一覧
+     * @param missing キャッシュの無いデバイスプラグイン一覧
+     */
+    private void sendCachedServicesFound(final Intent request, final List<DevicePlugin> plugins,
+                                         final List<DevicePlugin> missing) {
+        for (DevicePlugin plugin : plugins) {
+            if (!missing.contains(plugin)) {
+                ServiceDiscoveryRequest.sendServicesFound((DConnectService) getContext(), request, plugin,
+                        mCache.getServices(Collections.singletonList(plugin)));
+            }
+        }
+    }
+
+    /**
+     * 指定したデバイスプラグインに問い合わせるService Discoveryのリクエストを作成する.
+     * <p>
+     * リクエスト元が結果を待つ場合は、前回応答しなかったデバイスプラグインを短いタイムアウト時間で打ち切り、
+     * 他のデバイスプラグインの結果を待たせないようにする。
+     * バックグラウンドでの再取得では通常のタイムアウト時間を与え、応答に時間の掛かるデバイスプラグインも
+     * 応答しなかった状態から回復できるようにする。
+     * </p>
+     * @param request リクエスト
+     * @param plugins 問い合わせるデバイスプラグイン一覧
+     * @param background バックグラウンドでの再取得の場合はtrue、それ以外はfalse
+     * @return Service Discoveryのリクエスト
+     */
+    private ServiceDiscoveryRequest createRequest(final Intent request, final List<DevicePlugin> plugins,
+                                                  final boolean background) {
+        ServiceDiscoveryRequest req = new ServiceDiscoveryRequest();
+        req.setContext(getContext());
+        req.setRequest(request);
+        req.setTimeout(TIMEOUT);
+        req.setDevicePluginManager(mDevicePluginManager);
+        req.setDevicePlugins(plugins);
+        req.setCache(mCache);
+        for (DevicePlugin plugin : plugins) {
+            if (!background && mCache.isFailing(plugin)) {
+                req.setPluginTimeout(plugin, FAILING_PLUGIN_TIMEOUT);
+            }
+        }
+        return req;
+    }
+
     @Override
     protected boolean onPostRequest(final Intent request, final Intent response) {
         MessageUtils.setNotSupportActionError(response);
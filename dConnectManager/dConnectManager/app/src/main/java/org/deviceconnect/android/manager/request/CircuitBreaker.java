@@ -0,0 +1,328 @@
+/*
+ CircuitBreaker.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager.request;
+
+/**
+ * デバイスプラグイン毎の稼働状況を監視するサーキットブレーカー.
+ * <p>
+ * 直近のリクエストの失敗(タイムアウトやエラー)の割合が閾値を超えた場合には
+ * ブレーカーを開き、一定時間はリクエストをデバイスプラグインに送信せずに失敗させる。
+ * 一定時間が経過すると試験的にリクエストを送信し、成功した場合にはブレーカーを閉じる。
+ * また、同時に処理中にできるリクエスト数の上限を設ける。
+ * </p>
+ * <p>
+ * 結果は{@link #tryAcquire()}が返却した{@link Permit}に対して通知する。
+ * ブレーカーが開く前に送信されたリクエストの結果は記録せず、試験的に送信している間は
+ * 試験的なリクエストの結果のみがブレーカーの状態を変更する。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+public class CircuitBreaker {
+    /** 状態. */
+    public enum State {
+        /** リクエストを送信できる状態. */
+        CLOSED,
+        /** リクエストを送信せずに失敗させる状態. */
+        OPEN,
+        /** 試験的にリクエストを送信している状態. */
+        HALF_OPEN,
+    }
+
+    /** 失敗率を計算するリクエスト数のデフォルト値. */
+    private static final int DEFAULT_WINDOW_SIZE = 20;
+
+    /** 失敗率を計算するために必要な最小のリクエスト数のデフォルト値. */
+    private static final int DEFAULT_MINIMUM_REQUESTS = 5;
+
+    /** ブレーカーを開く失敗率(%)のデフォルト値. */
+    private static final int DEFAULT_FAILURE_RATE_THRESHOLD = 50;
+
+    /** ブレーカーを開いておく時間(ms)のデフォルト値. */
+    private static final long DEFAULT_OPEN_DURATION = 30 * 1000;
+
+    /** 同時に処理中にできるリクエスト数のデフォルト値. */
+    private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 8;
+
+    /** 直近のリクエストの結果. trueは失敗を表す. */
+    private final boolean[] mWindow;
+
+    /** 次に結果を書き込む位置. */
+    private int mWindowIndex;
+
+    /** 記録されている結果の数. */
+    private int mRecordedCount;
+
+    /** 記録されている失敗の数. */
+    private int mFailureCount;
+
+    /** 失敗率を計算するために必要な最小のリクエスト数. */
+    private final int mMinimumRequests;
+
+    /** ブレーカーを開く失敗率(%). */
+    private final int mFailureRateThreshold;
+
+    /** ブレーカーを開いておく時間(ms). */
+    private final long mOpenDuration;
+
+    /** 同時に処理中にできるリクエスト数. */
+    private final int mMaxConcurrentRequests;
+
+    /** 現在の状態. */
+    private State mState = State.CLOSED;
+
+    /** ブレーカーを開いた時刻. */
+    private long mOpenedTime;
+
+    /** 処理中のリクエスト数. */
+    private int mActiveCount;
+
+    /** 試験的に送信しているリクエストがあるか. */
+    private boolean mProbing;
+
+    /** ブレーカーを開いた回数. 開く前に送信されたリクエストの結果を判別するために使用する. */
+    private long mGeneration;
+
+    /**
+     * デフォルトの設定でサーキットブレーカーを作成する.
+     */
+    public CircuitBreaker() {
+        this(DEFAULT_WINDOW_SIZE, DEFAULT_MINIMUM_REQUESTS, DEFAULT_FAILURE_RATE_THRESHOLD,
+                DEFAULT_OPEN_DURATION, DEFAULT_MAX_CONCURRENT_REQUESTS);
+    }
+
+    /**
+     * コンストラクタ.
+     * @param windowSize 失敗率を計算するリクエスト数
+     * @param minimumRequests 失敗率を計算するために必要な最小のリクエスト数
+     * @param failureRateThreshold ブレーカーを開く失敗率(%)
+     * @param openDuration ブレーカーを開いておく時間(ms)
+     * @param maxConcurrentRequests 同時に処理中にできるリクエスト数
+     */
+    public CircuitBreaker(final int windowSize, final int minimumRequests,
+                          final int failureRateThreshold, final long openDuration,
+                          final int maxConcurrentRequests) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize must be larger than 0.");
+        }
+        if (minimumRequests <= 0 || minimumRequests > windowSize) {
+            throw new IllegalArgumentException("minimumRequests is out of range.");
+        }
+        if (failureRateThreshold <= 0 || failureRateThreshold > 100) {
+            throw new IllegalArgumentException("failureRateThreshold is out of range.");
+        }
+        if (openDuration < 0) {
+            throw new IllegalArgumentException("openDuration must be 0 or larger.");
+        }
+        if (maxConcurrentRequests <= 0) {
+            throw new IllegalArgumentException("maxConcurrentRequests must be larger than 0.");
+        }
+        mWindow = new boolean[windowSize];
+        mMinimumRequests = minimumRequests;
+        mFailureRateThreshold = failureRateThreshold;
+        mOpenDuration = openDuration;
+        mMaxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**
+     * リクエストの送信許可を取得する.
+     * <p>
+     * 送信許可が返却された場合には、リクエストの終了時に{@link #onSuccess(Permit)}、
+     * {@link #onFailure(Permit)}、{@link #release(Permit)}のいずれかを必ず呼び出すこと。
+     * </p>
+     * @return 送信許可、ブレーカーが開いている場合や処理中のリクエスト数が上限に達している場合はnull
+     */
+    public synchronized Permit tryAcquire() {
+        if (mState == State.OPEN) {
+            if (System.currentTimeMillis() - mOpenedTime < mOpenDuration) {
+                return null;
+            }
+            mState = State.HALF_OPEN;
+        }
+        boolean probe = false;
+        if (mState == State.HALF_OPEN) {
+            // 試験的に送信するリクエストは1つのみ
+            if (mProbing) {
+                return null;
+            }
+            mProbing = true;
+            probe = true;
+        } else if (mActiveCount >= mMaxConcurrentRequests) {
+            return null;
+        }
+        mActiveCount++;
+        return new Permit(probe, mGeneration);
+    }
+
+    /**
+     * リクエストが成功したことを通知する.
+     * @param permit {@link #tryAcquire()}で取得した送信許可
+     */
+    public synchronized void onSuccess(final Permit permit) {
+        if (!finish(permit)) {
+            return;
+        }
+        if (permit.mProbe) {
+            if (mState == State.HALF_OPEN) {
+                close();
+            }
+        } else if (mState == State.CLOSED && permit.mGeneration == mGeneration) {
+            record(false);
+        }
+    }
+
+    /**
+     * リクエストが失敗したことを通知する.
+     * @param permit {@link #tryAcquire()}で取得した送信許可
+     */
+    public synchronized void onFailure(final Permit permit) {
+        if (!finish(permit)) {
+            return;
+        }
+        if (permit.mProbe) {
+            if (mState == State.HALF_OPEN) {
+                open();
+            }
+        } else if (mState == State.CLOSED && permit.mGeneration == mGeneration) {
+            record(true);
+            if (mRecordedCount >= mMinimumRequests
+                    && mFailureCount * 100 >= mFailureRateThreshold * mRecordedCount) {
+                open();
+            }
+        }
+    }
+
+    /**
+     * 結果を記録せずにリクエストの送信許可を返却する.
+     * @param permit {@link #tryAcquire()}で取得した送信許可
+     */
+    public synchronized void release(final Permit permit) {
+        finish(permit);
+    }
+
+    /**
+     * 現在の状態を取得する.
+     * @return 状態
+     */
+    public synchronized State getState() {
+        if (mState == State.OPEN && System.currentTimeMillis() - mOpenedTime >= mOpenDuration) {
+            return State.HALF_OPEN;
+        }
+        return mState;
+    }
+
+    /**
+     * 処理中のリクエスト数を取得する.
+     * @return 処理中のリクエスト数
+     */
+    public synchronized int getActiveCount() {
+        return mActiveCount;
+    }
+
+    /**
+     * 直近のリクエストの失敗率を取得する.
+     * @return 失敗率(%)
+     */
+    public synchronized int getFailureRate() {
+        if (mRecordedCount == 0) {
+            return 0;
+        }
+        return mFailureCount * 100 / mRecordedCount;
+    }
+
+    /**
+     * 送信許可を返却する.
+     * <p>
+     * 試験的なリクエストの送信許可の場合は、次の試験的なリクエストを送信できるようにする。
+     * </p>
+     * @param permit 送信許可
+     * @return 返却した場合はtrue、既に返却されていた場合はfalse
+     */
+    private boolean finish(final Permit permit) {
+        if (permit.mFinished) {
+            return false;
+        }
+        permit.mFinished = true;
+        mActiveCount--;
+        if (permit.mProbe) {
+            mProbing = false;
+        }
+        return true;
+    }
+
+    /**
+     * リクエストの結果を記録する.
+     * @param failure 失敗した場合はtrue
+     */
+    private void record(final boolean failure) {
+        if (mRecordedCount == mWindow.length) {
+            if (mWindow[mWindowIndex]) {
+                mFailureCount--;
+            }
+        } else {
+            mRecordedCount++;
+        }
+        mWindow[mWindowIndex] = failure;
+        if (failure) {
+            mFailureCount++;
+        }
+        mWindowIndex = (mWindowIndex + 1) % mWindow.length;
+    }
+
+    /**
+     * ブレーカーを開く.
+     */
+    private void open() {
+        mState = State.OPEN;
+        mGeneration++;
+        mOpenedTime = System.currentTimeMillis();
+    }
+
+    /**
+     * ブレーカーを閉じて、記録をリセットする.
+     */
+    private void close() {
+        mState = State.CLOSED;
+        mWindowIndex = 0;
+        mRecordedCount = 0;
+        mFailureCount = 0;
+    }
+
+    /**
+     * リクエストの送信許可.
+     * <p>
+     * 結果の通知は1つの送信許可につき1回のみ有効。
+     * </p>
+     */
+    public static final class Permit {
+        /** 試験的に送信するリクエストの送信許可か. */
+        private final boolean mProbe;
+
+        /** 送信許可を取得した時のブレーカーを開いた回数. */
+        private final long mGeneration;
+
+        /** 返却済みか. */
+        private boolean mFinished;
+
+        /**
+         * コンストラクタ.
+         * @param probe 試験的に送信するリクエストの場合はtrue
+         * @param generation ブレーカーを開いた回数
+         */
+        private Permit(final boolean probe, final long generation) {
+            mProbe = probe;
+            mGeneration = generation;
+        }
+
+        /**
+         * 試験的に送信するリクエストの送信許可かを確認する.
+         * @return 試験的に送信するリクエストの場合はtrue、それ以外はfalse
+         */
+        public boolean isProbe() {
+            return mProbe;
+        }
+    }
+}
@@ -14,6 +14,11 @@ import org.deviceconnect.android.message.MessageUtils;
 import org.deviceconnect.message.DConnectMessage;
 import org.deviceconnect.message.intent.message.IntentDConnectMessage;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
@@ -42,6 +47,9 @@ public abstract class DConnectRequest {
     /** リクエスト管理クラス. */
     protected DConnectRequestManager mRequestMgr;
 
+    /** このリクエストが発行したリクエストコード一覧. */
+    private final Set<Integer> mRequestCodes = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
     /**
      * コンストラクタ.
      */
@@ -89,6 +97,17 @@ public abstract class DConnectRequest {
         mPluginMgr = mgr;
     }
 
+    /**
+     * 送信先のデバイスプラグインを取得する.
+     * <p>
+     * 特定のデバイスプラグインに送信しないリクエストの場合はnullを返却する。
+     * </p>
+     * @return 送信先のデバイスプラグイン
+     */
+    public DevicePlugin getDestination() {
+        return null;
+    }
+
     /**
      * 設定されているタイムアウト時間を取得する.
      * @return タイムアウト時間
@@ -129,6 +148,47 @@ public abstract class DConnectRequest {
         mResponse = response;
     }
 
+    /**
+     * デバイスプラグインに送信するリクエストコードを発行する.
+     * <p>
+     * 発行したリクエストコードはリクエスト管理クラスに登録され、
+     * そのリクエストコードを持つレスポンスはこのリクエストに配送される。
+     * </p>
+     * @return リクエストコード
+     */
+    protected int createRequestCode() {
+        int requestCode;
+        if (mRequestMgr != null) {
+            requestCode = mRequestMgr.issueRequestCode(this);
+        } else {
+            requestCode = UUID.randomUUID().hashCode();
+        }
+        mRequestCodes.add(requestCode);
+        return requestCode;
+    }
+
+    /**
+     * 不要になったリクエストコードを破棄する.
+     * <p>
+     * 破棄したリクエストコードを持つレスポンスは、このリクエストに配送されなくなる。
+     * </p>
+     * @param requestCode リクエストコード
+     */
+    protected void releaseRequestCode(final int requestCode) {
+        if (mRequestCodes.remove(requestCode) && mRequestMgr != null) {
+            mRequestMgr.releaseRequestCode(requestCode, this);
+        }
+    }
+
+    /**
+     * このリクエストが発行した全てのリクエストコードを破棄する.
+     */
+    void releaseAllRequestCodes() {
+        for (Integer requestCode : mRequestCodes) {
+            releaseRequestCode(requestCode);
+        }
+    }
+
     /**
      * 各デバイスプラグインへ配送するリクエストを作成する.
      * @param request 配送元のリクエスト用Intent
@@ -171,6 +231,15 @@ public abstract class DConnectRequest {
         sendResponse(response);
     }
 
+    /**
+     * リクエストを受け付けられる状態にないことを通知する.
+     */
+    protected void sendServerBusy() {
+        Intent response = new Intent(IntentDConnectMessage.ACTION_RESPONSE);
+        MessageUtils.setIllegalServerStateError(response, "Too many requests.");
+        sendResponse(response);
+    }
+
     /**
      * 実行時エラーが発生したことを通知する.
      * @param message エラーメッセージ
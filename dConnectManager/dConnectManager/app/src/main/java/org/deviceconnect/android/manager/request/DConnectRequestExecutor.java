@@ -0,0 +1,477 @@
+/*
+ DConnectRequestExecutor.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager.request;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.deviceconnect.android.manager.BuildConfig;
+import org.deviceconnect.android.manager.DevicePlugin;
+
+import android.util.Log;
+
+/**
+ * dConnect Managerのリクエストを実行するスレッドプール.
+ * <p>
+ * 実行待ちのリクエスト数の上限と、同じデバイスプラグインに対して同時に実行するリクエスト数の
+ * 上限を設ける。上限を超えたリクエストは{@link RejectionHandler}に渡される。
+ * また、キューの長さ、待ち時間、実行時間を計測する。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+public final class DConnectRequestExecutor {
+    /** 無制限を表す値. */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    /** スレッド数のデフォルト値. */
+    private static final int DEFAULT_THREAD_SIZE = 8;
+
+    /** 実行待ちのリクエスト数の上限のデフォルト値. */
+    private static final int DEFAULT_QUEUE_SIZE = 128;
+
+    /** デバイスプラグイン毎の同時実行数の上限のデフォルト値. */
+    private static final int DEFAULT_MAX_REQUESTS_PER_PLUGIN = 4;
+
+    /** スレッドプール. */
+    private final ThreadPoolExecutor mExecutor;
+
+    /** 実行待ちのリクエスト数の上限. */
+    private final int mQueueSize;
+
+    /** デバイスプラグイン毎の同時実行数の上限. */
+    private final int mMaxRequestsPerPlugin;
+
+    /** 上限を超えたリクエストを処理するハンドラ. */
+    private final RejectionHandler mRejectionHandler;
+
+    /** デバイスプラグイン毎の実行状況. キーはデバイスプラグインのID. */
+    private final Map<String, PluginLane> mLanes = new HashMap<>();
+
+    /** 実行待ちのリクエスト数. */
+    private int mWaitingCount;
+
+    /** 実行中のリクエスト数. */
+    private final AtomicInteger mActiveCount = new AtomicInteger();
+
+    /** 実行を終えたリクエストの累計数. */
+    private final AtomicLong mCompletedCount = new AtomicLong();
+
+    /** 上限を超えたために実行されなかったリクエストの累計数. */
+    private final AtomicLong mRejectedCount = new AtomicLong();
+
+    /** 待ち時間の累計(ms). */
+    private final AtomicLong mTotalWaitTime = new AtomicLong();
+
+    /** 待ち時間の最大値(ms). */
+    private final AtomicLong mMaxWaitTime = new AtomicLong();
+
+    /** 実行時間の累計(ms). */
+    private final AtomicLong mTotalExecutionTime = new AtomicLong();
+
+    /** 実行時間の最大値(ms). */
+    private final AtomicLong mMaxExecutionTime = new AtomicLong();
+
+    /**
+     * コンストラクタ.
+     * @param builder ビルダー
+     */
+    private DConnectRequestExecutor(final Builder builder) {
+        mQueueSize = builder.mQueueSize;
+        mMaxRequestsPerPlugin = builder.mMaxRequestsPerPlugin;
+        mRejectionHandler = builder.mRejectionHandler;
+        mExecutor = new ThreadPoolExecutor(builder.mThreadSize, builder.mThreadSize,
+                0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                new NamedThreadFactory(builder.mName));
+    }
+
+    /**
+     * リクエストを実行する.
+     * <p>
+     * 実行待ちのリクエスト数が上限に達している場合には{@link RejectionHandler}に渡す。
+     * 送信先のデバイスプラグインで実行中のリクエスト数が上限に達している場合には、
+     * そのデバイスプラグインのリクエストが終了するまで実行を待つ。
+     * </p>
+     * @param request リクエスト
+     * @param task リクエストを実行する処理
+     */
+    public void execute(final DConnectRequest request, final Runnable task) {
+        Task t = new Task(request, task);
+        synchronized (this) {
+            if (mExecutor.isShutdown() || mWaitingCount >= mQueueSize) {
+                t = null;
+            } else {
+                mWaitingCount++;
+                PluginLane lane = getLane(request);
+                t.mLane = lane;
+                if (lane == null || lane.tryAcquire()) {
+                    mExecutor.execute(t);
+                } else {
+                    lane.mWaiting.add(t);
+                }
+            }
+        }
+        if (t == null) {
+            mRejectedCount.incrementAndGet();
+            if (BuildConfig.DEBUG) {
+                Log.w("dConnectManager", "Request was rejected. queue=" + getQueueDepth());
+            }
+            mRejectionHandler.onRejected(request);
+        }
+    }
+
+    /**
+     * スレッドプールを停止する.
+     * <p>
+     * 実行中のリクエストは中断しない。
+     * </p>
+     */
+    public synchronized void shutdown() {
+        mExecutor.shutdown();
+        mLanes.clear();
+    }
+
+    /**
+     * 実行待ちのリクエスト数を取得する.
+     * @return 実行待ちのリクエスト数
+     */
+    public synchronized int getQueueDepth() {
+        return mWaitingCount;
+    }
+
+    /**
+     * 実行中のリクエスト数を取得する.
+     * @return 実行中のリクエスト数
+     */
+    public int getActiveCount() {
+        return mActiveCount.get();
+    }
+
+    /**
+     * 実行を終えたリクエストの累計数を取得する.
+     * @return 実行を終えたリクエストの累計数
+     */
+    public long getCompletedCount() {
+        return mCompletedCount.get();
+    }
+
+    /**
+     * 上限を超えたために実行されなかったリクエストの累計数を取得する.
+     * @return 実行されなかったリクエストの累計数
+     */
+    public long getRejectedCount() {
+        return mRejectedCount.get();
+    }
+
+    /**
+     * リクエストの平均待ち時間を取得する.
+     * @return 平均待ち時間(ms)
+     */
+    public long getAverageWaitTime() {
+        long count = mCompletedCount.get();
+        return count == 0 ? 0 : mTotalWaitTime.get() / count;
+    }
+
+    /**
+     * リクエストの最大待ち時間を取得する.
+     * @return 最大待ち時間(ms)
+     */
+    public long getMaxWaitTime() {
+        return mMaxWaitTime.get();
+    }
+
+    /**
+     * リクエストの平均実行時間を取得する.
+     * @return 平均実行時間(ms)
+     */
+    public long getAverageExecutionTime() {
+        long count = mCompletedCount.get();
+        return count == 0 ? 0 : mTotalExecutionTime.get() / count;
+    }
+
+    /**
+     * リクエストの最大実行時間を取得する.
+     * @return 最大実行時間(ms)
+     */
+    public long getMaxExecutionTime() {
+        return mMaxExecutionTime.get();
+    }
+
+    /**
+     * リクエストの送信先に対応する実行状況を取得する.
+     * @param request リクエスト
+     * @return 実行状況。送信先が無い場合や同時実行数に上限が無い場合はnull
+     */
+    private PluginLane getLane(final DConnectRequest request) {
+        if (mMaxRequestsPerPlugin == UNLIMITED) {
+            return null;
+        }
+        DevicePlugin plugin = request.getDestination();
+        if (plugin == null || plugin.getServiceId() == null) {
+            return null;
+        }
+        PluginLane lane = mLanes.get(plugin.getServiceId());
+        if (lane == null) {
+            lane = new PluginLane(plugin.getServiceId());
+            mLanes.put(plugin.getServiceId(), lane);
+        }
+        return lane;
+    }
+
+    /**
+     * 実行を終えたリクエストのデバイスプラグインで、次に待っているリクエストを実行する.
+     * @param task 実行を終えたリクエスト
+     */
+    private synchronized void onFinished(final Task task) {
+        PluginLane lane = task.mLane;
+        if (lane == null) {
+            return;
+        }
+        Task next = lane.mWaiting.poll();
+        if (next != null && !mExecutor.isShutdown()) {
+            // 同時実行数の枠をそのまま次のリクエストに引き継ぐ
+            mExecutor.execute(next);
+        } else {
+            lane.mActiveCount--;
+            if (lane.mActiveCount == 0 && lane.mWaiting.isEmpty()) {
+                mLanes.remove(lane.mPluginId);
+            }
+        }
+    }
+
+    /**
+     * 最大値を更新する.
+     * @param max 最大値
+     * @param value 値
+     */
+    private static void updateMax(final AtomicLong max, final long value) {
+        long current;
+        do {
+            current = max.get();
+            if (value <= current) {
+                return;
+            }
+        } while (!max.compareAndSet(current, value));
+    }
+
+    /**
+     * 実行するリクエスト.
+     */
+    private class Task implements Runnable {
+        /** リクエスト. */
+        private final DConnectRequest mRequest;
+        /** リクエストを実行する処理. */
+        private final Runnable mTask;
+        /** 実行を受け付けた時刻. */
+        private final long mQueuedTime = System.currentTimeMillis();
+        /** 同時実行数の枠を取得したデバイスプラグイン. */
+        private PluginLane mLane;
+
+        /**
+         * コンストラクタ.
+         * @param request リクエスト
+         * @param task リクエストを実行する処理
+         */
+        Task(final DConnectRequest request, final Runnable task) {
+            mRequest = request;
+            mTask = task;
+        }
+
+        @Override
+        public void run() {
+            long start = System.currentTimeMillis();
+            synchronized (DConnectRequestExecutor.this) {
+                mWaitingCount--;
+            }
+            long waitTime = start - mQueuedTime;
+            mTotalWaitTime.addAndGet(waitTime);
+            updateMax(mMaxWaitTime, waitTime);
+            mActiveCount.incrementAndGet();
+            try {
+                mTask.run();
+            } finally {
+                long executionTime = System.currentTimeMillis() - start;
+                mActiveCount.decrementAndGet();
+                mTotalExecutionTime.addAndGet(executionTime);
+                updateMax(mMaxExecutionTime, executionTime);
+                mCompletedCount.incrementAndGet();
+                onFinished(this);
+            }
+        }
+    }
+
+    /**
+     * デバイスプラグイン毎の実行状況.
+     */
+    private class PluginLane {
+        /** デバイスプラグインのID. */
+        private final String mPluginId;
+        /** 実行中のリクエスト数. */
+        private int mActiveCount;
+        /** 同時実行数の上限により、実行を待っているリクエスト. */
+        private final LinkedList<Task> mWaiting = new LinkedList<>();
+
+        /**
+         * コンストラクタ.
+         * @param pluginId デバイスプラグインのID
+         */
+        PluginLane(final String pluginId) {
+            mPluginId = pluginId;
+        }
+
+        /**
+         * 同時実行数の枠を取得する.
+         * @return 取得できた場合はtrue、上限に達している場合はfalse
+         */
+        boolean tryAcquire() {
+            if (mActiveCount >= mMaxRequestsPerPlugin) {
+                return false;
+            }
+            mActiveCount++;
+            return true;
+        }
+    }
+
+    /**
+     * 名前付きのスレッドを作成するファクトリ.
+     */
+    private static class NamedThreadFactory implements ThreadFactory {
+        /** スレッド名. */
+        private final String mName;
+        /** スレッドの通し番号. */
+        private final AtomicInteger mNumber = new AtomicInteger();
+
+        /**
+         * コンストラクタ.
+         * @param name スレッド名
+         */
+        NamedThreadFactory(final String name) {
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(r, mName + "-" + mNumber.incrementAndGet());
+        }
+    }
+
+    /**
+     * 上限を超えたリクエストを処理するハンドラ.
+     */
+    public interface RejectionHandler {
+        /**
+         * 上限を超えたために実行できなかったリクエストを通知する.
+         * @param request リクエスト
+         */
+        void onRejected(DConnectRequest request);
+    }
+
+    /**
+     * リクエスト元にサーバーの状態異常エラーを返却するハンドラ.
+     */
+    public static final RejectionHandler REJECT_WITH_ERROR = new RejectionHandler() {
+        @Override
+        public void onRejected(final DConnectRequest request) {
+            request.sendServerBusy();
+        }
+    };
+
+    /**
+     * {@link DConnectRequestExecutor}のビルダー.
+     */
+    public static final class Builder {
+        /** スレッド名. */
+        private String mName = "DConnectRequest";
+        /** スレッド数. */
+        private int mThreadSize = DEFAULT_THREAD_SIZE;
+        /** 実行待ちのリクエスト数の上限. */
+        private int mQueueSize = DEFAULT_QUEUE_SIZE;
+        /** デバイスプラグイン毎の同時実行数の上限. */
+        private int mMaxRequestsPerPlugin = DEFAULT_MAX_REQUESTS_PER_PLUGIN;
+        /** 上限を超えたリクエストを処理するハンドラ. */
+        private RejectionHandler mRejectionHandler = REJECT_WITH_ERROR;
+
+        /**
+         * スレッド名を設定する.
+         * @param name スレッド名
+         * @return ビルダー
+         */
+        public Builder name(final String name) {
+            if (name == null) {
+                throw new IllegalArgumentException("name is null.");
+            }
+            mName = name;
+            return this;
+        }
+
+        /**
+         * スレッド数を設定する.
+         * @param threadSize スレッド数
+         * @return ビルダー
+         */
+        public Builder threadSize(final int threadSize) {
+            if (threadSize <= 0) {
+                throw new IllegalArgumentException("threadSize must be larger than 0.");
+            }
+            mThreadSize = threadSize;
+            return this;
+        }
+
+        /**
+         * 実行待ちのリクエスト数の上限を設定する.
+         * @param queueSize 実行待ちのリクエスト数の上限。制限しない場合は{@link #UNLIMITED}
+         * @return ビルダー
+         */
+        public Builder queueSize(final int queueSize) {
+            if (queueSize <= 0) {
+                throw new IllegalArgumentException("queueSize must be larger than 0.");
+            }
+            mQueueSize = queueSize;
+            return this;
+        }
+
+        /**
+         * デバイスプラグイン毎の同時実行数の上限を設定する.
+         * @param maxRequests 同時実行数の上限。制限しない場合は{@link #UNLIMITED}
+         * @return ビルダー
+         */
+        public Builder maxRequestsPerPlugin(final int maxRequests) {
+            if (maxRequests <= 0) {
+                throw new IllegalArgumentException("maxRequests must be larger than 0.");
+            }
+            mMaxRequestsPerPlugin = maxRequests;
+            return this;
+        }
+
+        /**
+         * 上限を超えたリクエストを処理するハンドラを設定する.
+         * @param handler ハンドラ
+         * @return ビルダー
+         */
+        public Builder rejectionHandler(final RejectionHandler handler) {
+            if (handler == null) {
+                throw new IllegalArgumentException("handler is null.");
+            }
+            mRejectionHandler = handler;
+            return this;
+        }
+
+        /**
+         * {@link DConnectRequestExecutor}を作成する.
+         * @return {@link DConnectRequestExecutor}のインスタンス
+         */
+        public DConnectRequestExecutor build() {
+            return new DConnectRequestExecutor(this);
+        }
+    }
+}
@@ -6,11 +6,8 @@
  */
 package org.deviceconnect.android.manager.request;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.deviceconnect.android.manager.BuildConfig;
 import org.deviceconnect.message.intent.message.IntentDConnectMessage;
@@ -26,17 +23,69 @@ public class DConnectRequestManager {
     /** エラーコードを定義する. */
     private static final int ERROR_CODE = Integer.MIN_VALUE;
 
-    /** 最大スレッド数を定義する. */
-    private static final int MAX_THREAD_SIZE = 4;
-
     /** リクエストを実行するためのスレッドを管理するExecutor. */
-    private final ExecutorService mExecutor = Executors.newFixedThreadPool(MAX_THREAD_SIZE);
+    private final DConnectRequestExecutor mExecutor;
 
     /** シングルスレッドでリクエストを実行するためのスレッドを管理するExecutor. */
-    private final ExecutorService mSingleExecutor = Executors.newSingleThreadExecutor();
+    private final DConnectRequestExecutor mSingleExecutor;
+
+    /**
+     * リクエストコードとリクエストの対応表.
+     * <p>
+     * レスポンスを配送するリクエストをリクエストコードから直接引くために使用する。
+     * リクエストコードの発行時に登録し、破棄時またはリクエストの終了時に削除する。
+     * </p>
+     */
+    private final ConcurrentHashMap<Integer, DConnectRequest> mRequestMap = new ConcurrentHashMap<>();
 
-    /** リクエスト一覧. */
-    private final List<DConnectRequest> mRequestList = Collections.synchronizedList(new ArrayList<DConnectRequest>());
+    /**
+     * デフォルトの設定でリクエスト管理クラスを作成する.
+     */
+    public DConnectRequestManager() {
+        this(new DConnectRequestExecutor.Builder().build(),
+                new DConnectRequestExecutor.Builder()
+                        .name("DConnectSingleRequest")
+                        .threadSize(1)
+                        .queueSize(DConnectRequestExecutor.UNLIMITED)
+                        .maxRequestsPerPlugin(DConnectRequestExecutor.UNLIMITED)
+                        .build());
+    }
+
+    /**
+     * リクエストを実行するExecutorを指定してリクエスト管理クラスを作成する.
+     * @param executor リクエストを実行するExecutor
+     * @param singleExecutor {@link #addRequestOnSingleThread(DConnectRequest)}で追加されたリクエストを実行するExecutor
+     */
+    public DConnectRequestManager(final DConnectRequestExecutor executor,
+                                  final DConnectRequestExecutor singleExecutor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor is null.");
+        }
+        if (singleExecutor == null) {
+            throw new IllegalArgumentException("singleExecutor is null.");
+        }
+        mExecutor = executor;
+        mSingleExecutor = singleExecutor;
+    }
+
+    /**
+     * リクエストを実行するExecutorを取得する.
+     * <p>
+     * キューの長さや待ち時間などの統計情報の取得に使用する。
+     * </p>
+     * @return リクエストを実行するExecutor
+     */
+    public DConnectRequestExecutor getExecutor() {
+        return mExecutor;
+    }
+
+    /**
+     * シングルスレッドでリクエストを実行するExecutorを取得する.
+     * @return シングルスレッドでリクエストを実行するExecutor
+     */
+    public DConnectRequestExecutor getSingleExecutor() {
+        return mSingleExecutor;
+    }
 
     /**
      * リクエスト管理を終了する.
@@ -52,8 +101,7 @@ public class DConnectRequestManager {
      */
     public void addRequest(final DConnectRequest request) {
         request.setRequestMgr(this);
-        mRequestList.add(request);
-        mExecutor.execute(new Runnable() {
+        mExecutor.execute(request, new Runnable() {
             @Override
             public void run() {
                 try {
@@ -64,7 +112,7 @@ public class DConnectRequestManager {
                         Log.e("dConnectManager", "runtime", e);
                     }
                 } finally {
-                    mRequestList.remove(request);
+                    request.releaseAllRequestCodes();
                 }
             }
         });
@@ -75,14 +123,9 @@ public class DConnectRequestManager {
      * @param response レスポンス
      */
     public void setResponse(final Intent response) {
-        int code = response.getIntExtra(
-                IntentDConnectMessage.EXTRA_REQUEST_CODE, ERROR_CODE);
-        for (int i = 0; i < mRequestList.size(); i++) {
-            DConnectRequest request = mRequestList.get(i);
-            if (request.hasRequestCode(code)) {
-                request.setResponse(response);
-                return;
-            }
+        DConnectRequest request = findRequest(response);
+        if (request != null) {
+            request.setResponse(response);
         }
     }
 
@@ -92,8 +135,7 @@ public class DConnectRequestManager {
      */
     public void addRequestOnSingleThread(final DConnectRequest request) {
         request.setRequestMgr(this);
-        mRequestList.add(request);
-        mSingleExecutor.execute(new Runnable() {
+        mSingleExecutor.execute(request, new Runnable() {
             @Override
             public void run() {
                 try {
@@ -105,7 +147,7 @@ public class DConnectRequestManager {
                         Log.e("dConnectManager", "runtime", e);
                     }
                 } finally {
-                    mRequestList.remove(request);
+                    request.releaseAllRequestCodes();
                 }
             }
         });
@@ -118,14 +160,49 @@ public class DConnectRequestManager {
      * @return リクエストIntent
      */
     public Intent getRequestIntent(final Intent response) {
+        DConnectRequest request = findRequest(response);
+        if (request != null) {
+            return request.getRequest();
+        }
+        return null;
+    }
+
+    /**
+     * レスポンスのリクエストコードに対応するリクエストを取得する.
+     * @param response レスポンス
+     * @return リクエスト。対応するリクエストが存在しない場合にはnull
+     */
+    private DConnectRequest findRequest(final Intent response) {
         int code = response.getIntExtra(
                 IntentDConnectMessage.EXTRA_REQUEST_CODE, ERROR_CODE);
-        for (int i = 0; i < mRequestList.size(); i++) {
-            DConnectRequest request = mRequestList.get(i);
-            if (request.hasRequestCode(code)) {
-                return request.getRequest();
-            }
+        if (code == ERROR_CODE) {
+            return null;
         }
-        return null;
+        return mRequestMap.get(code);
+    }
+
+    /**
+     * リクエストコードを発行し、リクエストと対応付ける.
+     * <p>
+     * 処理中の他のリクエストと重複しないリクエストコードを返却する。
+     * </p>
+     * @param request リクエストコードを使用するリクエスト
+     * @return リクエストコード
+     */
+    int issueRequestCode(final DConnectRequest request) {
+        int code;
+        do {
+            code = UUID.randomUUID().hashCode();
+        } while (code == ERROR_CODE || mRequestMap.putIfAbsent(code, request) != null);
+        return code;
+    }
+
+    /**
+     * リクエストコードとリクエストの対応付けを解除する.
+     * @param code リクエストコード
+     * @param request リクエストコードを使用していたリクエスト
+     */
+    void releaseRequestCode(final int code, final DConnectRequest request) {
+        mRequestMap.remove(code, request);
     }
 }
@@ -9,6 +9,7 @@ package org.deviceconnect.android.manager.request;
 import android.content.Intent;
 
 import org.deviceconnect.android.manager.BuildConfig;
+import org.deviceconnect.android.message.MessageUtils;
 import org.deviceconnect.message.DConnectMessage;
 import org.deviceconnect.message.intent.message.IntentDConnectMessage;
 
@@ -31,26 +32,56 @@ public class DeliveryRequest extends LocalOAuthRequest {
      * @param accessToken アクセストークン
      */
     protected void executeRequest(final String accessToken) {
-        // 命令を実行する前にレスポンスを初期化しておく
-        mResponse = null;
-
-        if (BuildConfig.DEBUG) {
-            mLogger.info(String.format("Delivery Request: %s, intent: %s",
-                    mDevicePlugin.getPackageName(), mRequest.getExtras()));
+        // 応答しないデバイスプラグインにはリクエストを送信せずにエラーを返却する
+        CircuitBreaker breaker = null;
+        CircuitBreaker.Permit permit = null;
+        if (mPluginMgr != null) {
+            breaker = mPluginMgr.getCircuitBreaker(mDevicePlugin);
+            permit = breaker.tryAcquire();
+            if (permit == null) {
+                if (BuildConfig.DEBUG) {
+                    mLogger.warning(String.format("Device plug-in is unavailable: %s, state: %s",
+                            mDevicePlugin.getPackageName(), breaker.getState()));
+                }
+                sendDevicePluginUnavailable();
+                return;
+            }
         }
 
-        // 命令をデバイスプラグインに送信
-        Intent request = createRequestMessage(mRequest, mDevicePlugin);
-        request.setComponent(mDevicePlugin.getComponentName());
-        request.putExtra(IntentDConnectMessage.EXTRA_REQUEST_CODE, mRequestCode);
-        if (accessToken != null) {
-            request.putExtra(DConnectMessage.EXTRA_ACCESS_TOKEN, accessToken);
-        }
-        mContext.sendBroadcast(request);
+        // 送信許可を取得した後は、例外が発生した場合も必ず結果を記録して送信許可を返却する
+        boolean failure = true;
+        try {
+            // 命令を実行する前にレスポンスを初期化しておく
+            mResponse = null;
+
+            if (BuildConfig.DEBUG) {
+                mLogger.info(String.format("Delivery Request: %s, intent: %s",
+                        mDevicePlugin.getPackageName(), mRequest.getExtras()));
+            }
 
-        if (mResponse == null) {
-            // 各デバイスのレスポンスを待つ
-            waitForResponse();
+            // 命令をデバイスプラグインに送信
+            Intent request = createRequestMessage(mRequest, mDevicePlugin);
+            request.setComponent(mDevicePlugin.getComponentName());
+            request.putExtra(IntentDConnectMessage.EXTRA_REQUEST_CODE, mRequestCode);
+            if (accessToken != null) {
+                request.putExtra(DConnectMessage.EXTRA_ACCESS_TOKEN, accessToken);
+            }
+            mContext.sendBroadcast(request);
+
+            if (mResponse == null) {
+                // 各デバイスのレスポンスを待つ
+                waitForResponse();
+            }
+            failure = isDevicePluginFailure(mResponse);
+        } finally {
+            // デバイスプラグインの稼働状況を記録する
+            if (breaker != null) {
+                if (failure) {
+                    breaker.onFailure(permit);
+                } else {
+                    breaker.onSuccess(permit);
+                }
+            }
         }
 
         // レスポンスを解析して、処理を行う
@@ -86,6 +117,32 @@ public class DeliveryRequest extends LocalOAuthRequest {
         }
     }
 
+    /**
+     * デバイスプラグインが正常に応答しなかったかを判定する.
+     * <p>
+     * タイムアウトと原因不明のエラーをデバイスプラグインの異常とみなす。
+     * リクエストのパラメータ不正などのエラーは異常とみなさない。
+     * </p>
+     * @param response レスポンス
+     * @return 正常に応答しなかった場合はtrue、それ以外はfalse
+     */
+    private boolean isDevicePluginFailure(final Intent response) {
+        if (response == null) {
+            return true;
+        }
+        return getResult(response) == DConnectMessage.RESULT_ERROR
+                && getErrorCode(response) == DConnectMessage.ErrorCode.UNKNOWN.getCode();
+    }
+
+    /**
+     * デバイスプラグインが一時的に利用できないことを通知する.
+     */
+    private void sendDevicePluginUnavailable() {
+        Intent response = new Intent(IntentDConnectMessage.ACTION_RESPONSE);
+        MessageUtils.setDevicePluginUnavailableError(response);
+        sendResponse(response);
+    }
+
     /**
      * Restart a device plugin.
      */
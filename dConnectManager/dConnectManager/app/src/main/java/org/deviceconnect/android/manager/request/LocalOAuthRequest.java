@@ -19,7 +19,6 @@ import org.deviceconnect.profile.AuthorizationProfileConstants;
 import org.deviceconnect.profile.DConnectProfileConstants;
 
 import java.util.List;
-import java.util.UUID;
 import java.util.logging.Logger;
 
 /**
@@ -68,6 +67,11 @@ public class LocalOAuthRequest extends DConnectRequest {
         mDevicePlugin = plugin;
     }
 
+    @Override
+    public DevicePlugin getDestination() {
+        return mDevicePlugin;
+    }
+
     /**
      * Local OAuth管理クラスを設定する.
      * @param auth Local OAuth管理クラス
@@ -127,7 +131,7 @@ public class LocalOAuthRequest extends DConnectRequest {
         mRetryCount = 0;
 
         // リクエストコードを作成する
-        mRequestCode = UUID.randomUUID().hashCode();
+        mRequestCode = createRequestCode();
 
         // 実行
         executeRequest();
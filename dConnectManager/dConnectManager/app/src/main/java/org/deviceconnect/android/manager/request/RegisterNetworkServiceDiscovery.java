@@ -6,7 +6,6 @@
  */
 package org.deviceconnect.android.manager.request;
 
-import java.util.UUID;
 import java.util.logging.Logger;
 
 import org.deviceconnect.android.manager.DevicePlugin;
@@ -44,6 +43,11 @@ public class RegisterNetworkServiceDiscovery extends DConnectRequest {
         mDevicePlugin = plugin;
     }
 
+    @Override
+    public DevicePlugin getDestination() {
+        return mDevicePlugin;
+    }
+
     /**
      * セッションキーを設定する.
      * @param sessionKey セッションキー
@@ -68,7 +72,7 @@ public class RegisterNetworkServiceDiscovery extends DConnectRequest {
     @Override
     public void run() {
         // リクエストコードを作成する
-        mRequestCode = UUID.randomUUID().hashCode();
+        mRequestCode = createRequestCode();
 
         // リクエストを作成
         mRequest = new Intent(IntentDConnectMessage.ACTION_PUT);
@@ -7,7 +7,6 @@
 package org.deviceconnect.android.manager.request;
 
 import java.util.List;
-import java.util.UUID;
 import java.util.logging.Logger;
 
 import org.deviceconnect.android.manager.DevicePlugin;
@@ -43,6 +42,9 @@ public class RemoveEventsRequest extends DConnectRequest {
             return;
         }
 
+        // 同じデバイスプラグインからのレスポンスを重複して数えないように、リクエストコードを破棄する
+        releaseRequestCode(requestCode);
+
         // レスポンス個数を追加
         mResponseCount++;
         synchronized (mLockObj) {
@@ -73,7 +75,7 @@ public class RemoveEventsRequest extends DConnectRequest {
             Intent request = createRequestMessage(mRequest, plugin);
 
             // リクエストコード作成
-            int requestCode = UUID.randomUUID().hashCode();
+            int requestCode = createRequestCode();
             mRequestCodeArray.put(requestCode, plugin);
 
             request.setComponent(plugin.getComponentName());
@@ -6,21 +6,26 @@
  */
 package org.deviceconnect.android.manager.request;
 
+import android.content.ComponentName;
 import android.content.Intent;
 import android.os.Bundle;
 import android.os.Parcelable;
-import android.util.SparseArray;
 
 import org.deviceconnect.android.manager.BuildConfig;
+import org.deviceconnect.android.manager.DConnectService;
 import org.deviceconnect.android.manager.DevicePlugin;
+import org.deviceconnect.android.manager.ServiceDiscoveryCache;
 import org.deviceconnect.android.profile.ServiceDiscoveryProfile;
 import org.deviceconnect.message.DConnectMessage;
 import org.deviceconnect.message.intent.message.IntentDConnectMessage;
 import org.deviceconnect.profile.ServiceDiscoveryProfileConstants;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 /**
@@ -31,6 +36,11 @@ import java.util.logging.Logger;
  * になり、他方Network Service Discovery用リクエストでは登録されているデバイスプラグイン
  * の数だけレスポンスを受け取ったかどうかになっている.
  * </p>
+ * <p>
+ * デバイスプラグイン毎に応答の期限を持ち、期限を過ぎたデバイスプラグインは待たずに打ち切る.
+ * また、逐次通知を有効にした場合は、デバイスプラグインが応答する度にそのデバイスプラグインの
+ * サービス一覧をリクエスト元にイベントとして通知する.
+ * </p>
  * @author NTT DOCOMO, INC.
  */
 public class ServiceDiscoveryRequest extends DConnectRequest {
@@ -40,11 +50,19 @@ public class ServiceDiscoveryRequest extends DConnectRequest {
     /** プラグイン側のService Discoveryのプロファイル名: {@value}. */
     private static final String ATTRIBUTE_GET_NETWORK_SERVICES = "getNetworkServices";
 
-    /** レスポンスが返ってきた個数. */
-    private int mResponseCount;
+    /**
+     * 逐次通知するイベントのアトリビュート名: {@value}.
+     */
+    public static final String ATTRIBUTE_ON_SERVICES_FOUND = "onServicesFound";
 
-    /** リクエストコードを格納する配列. */
-    private SparseArray<DevicePlugin> mRequestCodeArray = new SparseArray<DevicePlugin>();
+    /**
+     * リクエストコードをキーとした問い合わせ先のデバイスプラグイン.
+     * <p>
+     * {@link #run()}で登録した後は削除しない。レスポンスを処理するスレッドからも参照するため、
+     * スレッドセーフなMapを使用する。
+     * </p>
+     */
+    private final Map<Integer, DevicePlugin> mRequestCodeArray = new ConcurrentHashMap<>();
 
     /** 発見したサービスを一時的に格納しておくリスト. */
     private final List<Bundle> mServices = new ArrayList<Bundle>();
@@ -55,6 +73,101 @@ public class ServiceDiscoveryRequest extends DConnectRequest {
     /** ロックオブジェクト. */
     private final Object mLockObj = new Object();
 
+    /** 問い合わせるデバイスプラグイン一覧. nullの場合は全てのデバイスプラグインに問い合わせる. */
+    private List<DevicePlugin> mPlugins;
+
+    /** Service Discoveryの結果のキャッシュ. */
+    private ServiceDiscoveryCache mCache;
+
+    /** リクエスト元にレスポンスを返却するか. */
+    private boolean mResponseRequired = true;
+
+    /** デバイスプラグインが応答したサービス一覧を逐次通知するか. */
+    private boolean mStreaming;
+
+    /** デバイスプラグインIDをキーとした応答のタイムアウト時間[msec]. */
+    private final Map<String, Integer> mPluginTimeouts = new HashMap<String, Integer>();
+
+    /**
+     * 応答を待っているリクエストコードをキーとした応答の期限. mLockObjで保護する.
+     * <p>
+     * レスポンスの処理と期限切れの判定は、どちらもこのMapからリクエストコードを削除できた場合にのみ行う。
+     * </p>
+     */
+    private final Map<Integer, Long> mDeadlines = new HashMap<Integer, Long>();
+
+    /** 期限内に届いて処理中のレスポンスの数. mLockObjで保護する. */
+    private int mProcessingCount;
+
+    /**
+     * 問い合わせるデバイスプラグインを指定する.
+     * <p>
+     * 指定しない場合は、全てのデバイスプラグインに問い合わせる。
+     * </p>
+     * @param plugins デバイスプラグイン一覧
+     */
+    public void setDevicePlugins(final List<DevicePlugin> plugins) {
+        mPlugins = plugins;
+    }
+
+    /**
+     * Service Discoveryの結果のキャッシュを設定する.
+     * <p>
+     * 設定した場合、各デバイスプラグインの結果をキャッシュに記録し、
+     * レスポンスには全デバイスプラグインのキャッシュされた結果を返却する。
+     * </p>
+     * @param cache キャッシュ
+     */
+    public void setCache(final ServiceDiscoveryCache cache) {
+        mCache = cache;
+    }
+
+    /**
+     * リクエスト元にレスポンスを返却するかを設定する.
+     * <p>
+     * キャッシュをバックグラウンドで更新する場合はfalseを指定する。
+     * </p>
+     * @param required レスポンスを返却する場合はtrue、それ以外はfalse
+     */
+    public void setResponseRequired(final boolean required) {
+        mResponseRequired = required;
+    }
+
+    /**
+     * デバイスプラグインが応答したサービス一覧を逐次通知するかを設定する.
+     * <p>
+     * trueを指定した場合、デバイスプラグインが応答する度に、そのデバイスプラグインの
+     * サービス一覧を{@link #ATTRIBUTE_ON_SERVICES_FOUND}イベントとしてリクエスト元に送信する。
+     * 全てのデバイスプラグインの結果は、これまで通りレスポンスとして返却する。
+     * </p>
+     * @param streaming 逐次通知する場合はtrue、それ以外はfalse
+     */
+    public void setStreaming(final boolean streaming) {
+        mStreaming = streaming;
+    }
+
+    /**
+     * 指定したデバイスプラグインの応答のタイムアウト時間を設定する.
+     * <p>
+     * 指定しないデバイスプラグインには{@link #setTimeout(int)}のタイムアウト時間を使用する。
+     * </p>
+     * @param plugin デバイスプラグイン
+     * @param timeout タイムアウト時間[msec]
+     */
+    public void setPluginTimeout(final DevicePlugin plugin, final int timeout) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout must be positive.");
+        }
+        mPluginTimeouts.put(plugin.getServiceId(), timeout);
+    }
+
+    @Override
+    public void sendResponse(final Intent response) {
+        if (mResponseRequired) {
+            super.sendResponse(response);
+        }
+    }
+
     @Override
     public void setResponse(final Intent response) {
         // リクエストコードを取得
@@ -64,21 +177,50 @@ public class ServiceDiscoveryRequest extends DConnectRequest {
             mLogger.warning("Illegal requestCode. requestCode=" + requestCode);
             return;
         }
+        // 期限の判定と競合しないように、リクエストコードを取り除けた場合にのみ処理する
+        synchronized (mLockObj) {
+            if (mDeadlines.remove(requestCode) == null) {
+                // 期限を過ぎてから届いたレスポンスや、重複したレスポンスは破棄する
+                mLogger.warning("Response arrived after deadline. requestCode=" + requestCode);
+                return;
+            }
+            mProcessingCount++;
+        }
+
+        try {
+            handleResponse(requestCode, response);
+        } finally {
+            // 同じデバイスプラグインからのレスポンスを重複して数えないように、リクエストコードを破棄する
+            releaseRequestCode(requestCode);
+
+            synchronized (mLockObj) {
+                mProcessingCount--;
+                mLockObj.notifyAll();
+            }
+        }
+    }
 
+    /**
+     * 期限内に届いたデバイスプラグインのレスポンスを処理する.
+     * @param requestCode リクエストコード
+     * @param response レスポンス
+     */
+    private void handleResponse(final int requestCode, final Intent response) {
         // エラーが返ってきた場合には、サービスには登録しない。
+        DevicePlugin plugin = mRequestCodeArray.get(requestCode);
         int result = response.getIntExtra(IntentDConnectMessage.EXTRA_RESULT, -1);
         if (result == IntentDConnectMessage.RESULT_OK) {
             // 送られてきたサービスIDにデバイスプラグインのIDを付加して保存
             Parcelable[] services = response.getParcelableArrayExtra(
                     ServiceDiscoveryProfileConstants.PARAM_SERVICES);
+            List<Bundle> found = new ArrayList<Bundle>();
             if (services != null) {
-                DevicePlugin plugin = mRequestCodeArray.get(requestCode);
                 for (Parcelable p : services) {
                     Bundle b = (Bundle) p;
                     String id = b.getString(ServiceDiscoveryProfile.PARAM_ID);
                     b.putString(ServiceDiscoveryProfile.PARAM_ID, 
                             mPluginMgr.appendServiceId(plugin, id));
-                    mServices.add(b);
+                    found.add(b);
 
                     if (BuildConfig.DEBUG) {
                         Object scopes = b.getStringArray(ServiceDiscoveryProfileConstants.PARAM_SCOPES);
@@ -87,15 +229,56 @@ public class ServiceDiscoveryRequest extends DConnectRequest {
                         }
                     }
                 }
-                mRequestCodeArray.remove(requestCode);
             }
+            synchronized (mServices) {
+                mServices.addAll(found);
+            }
+            if (mCache != null && plugin != null) {
+                mCache.put(plugin, found);
+            }
+            if (mStreaming && plugin != null) {
+                sendServicesFound(plugin, found);
+            }
+        } else if (mCache != null && plugin != null) {
+            mCache.markFailed(plugin);
         }
+    }
 
-        // レスポンス個数を追加
-        mResponseCount++;
-        synchronized (mLockObj) {
-            mLockObj.notifyAll();
+    /**
+     * デバイスプラグインが応答したサービス一覧をリクエスト元にイベントとして送信する.
+     * @param plugin 応答したデバイスプラグイン
+     * @param found サービスIDにデバイスプラグインIDを付加したサービス一覧
+     */
+    private void sendServicesFound(final DevicePlugin plugin, final List<Bundle> found) {
+        Bundle[] services = new Bundle[found.size()];
+        for (int i = 0; i < services.length; i++) {
+            services[i] = new Bundle(found.get(i));
         }
+        sendServicesFound((DConnectService) getContext(), mRequest, plugin, services);
+    }
+
+    /**
+     * デバイスプラグインのサービス一覧を{@link #ATTRIBUTE_ON_SERVICES_FOUND}イベントとしてリクエスト元に送信する.
+     * <p>
+     * イベントのサービスIDにはデバイスプラグインのIDを設定する。
+     * </p>
+     * @param service イベントを送信するサービス
+     * @param request リクエスト元のリクエスト
+     * @param plugin デバイスプラグイン
+     * @param services サービスIDにデバイスプラグインIDを付加したサービス一覧
+     */
+    public static void sendServicesFound(final DConnectService service, final Intent request,
+                                         final DevicePlugin plugin, final Bundle[] services) {
+        Intent event = new Intent(IntentDConnectMessage.ACTION_EVENT);
+        event.putExtra(DConnectMessage.EXTRA_SESSION_KEY,
+                request.getStringExtra(DConnectMessage.EXTRA_SESSION_KEY));
+        event.putExtra(DConnectMessage.EXTRA_SERVICE_ID, plugin.getServiceId());
+        event.putExtra(DConnectMessage.EXTRA_PROFILE, ServiceDiscoveryProfileConstants.PROFILE_NAME);
+        event.putExtra(DConnectMessage.EXTRA_ATTRIBUTE, ATTRIBUTE_ON_SERVICES_FOUND);
+        event.putExtra(ServiceDiscoveryProfileConstants.PARAM_SERVICES, services);
+
+        ComponentName receiver = request.getParcelableExtra(IntentDConnectMessage.EXTRA_RECEIVER);
+        service.sendEvent(receiver != null ? receiver.flattenToString() : null, event);
     }
 
     /**
@@ -118,7 +301,7 @@ public class ServiceDiscoveryRequest extends DConnectRequest {
 
     @Override
     public boolean hasRequestCode(final int requestCode) {
-        return mRequestCodeArray.get(requestCode) != null;
+        return mRequestCodeArray.containsKey(requestCode);
     }
 
     @Override
@@ -131,7 +314,7 @@ public class ServiceDiscoveryRequest extends DConnectRequest {
             throw new RuntimeException("mDevicePluginManager is null.");
         }
 
-        List<DevicePlugin> plugins = mPluginMgr.getDevicePlugins();
+        List<DevicePlugin> plugins = (mPlugins != null) ? mPlugins : mPluginMgr.getDevicePlugins();
 
         // 送信用のIntentを作成
         Intent request = createRequestMessage(mRequest, null);
@@ -140,41 +323,86 @@ public class ServiceDiscoveryRequest extends DConnectRequest {
         request.putExtra(DConnectMessage.EXTRA_PROFILE, PROFILE_NETWORK_SERVICE_DISCOVERY);
         request.putExtra(DConnectMessage.EXTRA_ATTRIBUTE, ATTRIBUTE_GET_NETWORK_SERVICES);
 
+        long start = System.currentTimeMillis();
         for (int i = 0; i < plugins.size(); i++) {
             DevicePlugin plugin = plugins.get(i);
 
-            int requestCode = UUID.randomUUID().hashCode();
+            int requestCode = createRequestCode();
             mRequestCodeArray.put(requestCode, plugin);
+            Integer timeout = mPluginTimeouts.get(plugin.getServiceId());
+            synchronized (mLockObj) {
+                mDeadlines.put(requestCode, start + (timeout != null ? timeout : mTimeout));
+            }
 
             request.setComponent(plugin.getComponentName());
             request.putExtra(IntentDConnectMessage.EXTRA_REQUEST_CODE, requestCode);
             mContext.sendBroadcast(request);
         }
 
-        // 各デバイスのレスポンスを待つ
-        long start = System.currentTimeMillis();
-        while (plugins.size() > 0 && mResponseCount < plugins.size()) {
-            synchronized (mLockObj) {
+        // 各デバイスのレスポンスを、デバイスプラグイン毎の期限まで待つ。
+        // 期限内に届いたレスポンスは、処理が終わって結果に反映されるまで待つ。
+        List<DevicePlugin> expired = new ArrayList<DevicePlugin>();
+        synchronized (mLockObj) {
+            while (!mDeadlines.isEmpty() || mProcessingCount > 0) {
+                long now = System.currentTimeMillis();
+                long next = Long.MAX_VALUE;
+                Iterator<Map.Entry<Integer, Long>> it = mDeadlines.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<Integer, Long> deadline = it.next();
+                    if (deadline.getValue() <= now) {
+                        DevicePlugin plugin = mRequestCodeArray.get(deadline.getKey());
+                        if (plugin != null) {
+                            expired.add(plugin);
+                        }
+                        it.remove();
+                    } else {
+                        next = Math.min(next, deadline.getValue());
+                    }
+                }
+                if (mDeadlines.isEmpty() && mProcessingCount == 0) {
+                    break;
+                }
                 try {
-                    mLockObj.wait(mTimeout);
+                    if (next == Long.MAX_VALUE) {
+                        mLockObj.wait();
+                    } else {
+                        mLockObj.wait(next - now);
+                    }
                 } catch (InterruptedException e) {
                     // do nothing.
                     mLogger.warning("Exception ouccered in wait.");
                 }
             }
-            // タイムアウトチェック
-            if (System.currentTimeMillis() - start > mTimeout) {
-                restartDevicePlugins();
-                break;
+        }
+
+        // 応答しなかったデバイスプラグインを記録して、再起動する
+        // キャッシュがある場合は、間隔を空けずに再起動を繰り返さないようにする
+        if (!expired.isEmpty()) {
+            List<DevicePlugin> restart = new ArrayList<DevicePlugin>();
+            for (DevicePlugin plugin : expired) {
+                if (mCache != null) {
+                    mCache.markFailed(plugin);
+                }
+                if (mCache == null || mCache.tryRestart(plugin)) {
+                    restart.add(plugin);
+                }
             }
+            restartDevicePlugins(restart);
         }
 
         // パラメータを設定する
+        Bundle[] services;
+        if (mCache != null) {
+            services = mCache.getServices(mPluginMgr.getDevicePlugins());
+        } else {
+            synchronized (mServices) {
+                services = mServices.toArray(new Bundle[mServices.size()]);
+            }
+        }
         mResponse = new Intent(IntentDConnectMessage.ACTION_RESPONSE);
         mResponse.putExtra(IntentDConnectMessage.EXTRA_RESULT,
                 IntentDConnectMessage.RESULT_OK);
-        mResponse.putExtra(ServiceDiscoveryProfile.PARAM_SERVICES,
-                mServices.toArray(new Bundle[mServices.size()]));
+        mResponse.putExtra(ServiceDiscoveryProfile.PARAM_SERVICES, services);
 
         // レスポンスを返却する
         sendResponse(mResponse);
@@ -182,10 +410,10 @@ public class ServiceDiscoveryRequest extends DConnectRequest {
     
     /**
      * Restart all device plugins that response did not come back.
+     * @param plugins device plugins that did not respond
      */
-    private void restartDevicePlugins() {
-        for (int i = 0; i < mRequestCodeArray.size(); i++) {
-            DevicePlugin plugin = mRequestCodeArray.valueAt(i);
+    private void restartDevicePlugins(final List<DevicePlugin> plugins) {
+        for (DevicePlugin plugin : plugins) {
             if (plugin.getStartServiceClassName() != null) {
                 Intent service = new Intent();
                 service.setClassName(plugin.getPackageName(), 
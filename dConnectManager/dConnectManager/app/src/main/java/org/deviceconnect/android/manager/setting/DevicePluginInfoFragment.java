@@ -29,6 +29,7 @@ import android.widget.TextView;
 import org.deviceconnect.android.localoauth.DevicePluginXmlProfile;
 import org.deviceconnect.android.localoauth.DevicePluginXmlProfileLocale;
 import org.deviceconnect.android.localoauth.DevicePluginXmlUtil;
+import org.deviceconnect.android.manager.DConnectApplication;
 import org.deviceconnect.android.manager.DevicePlugin;
 import org.deviceconnect.android.manager.DevicePluginManager;
 import org.deviceconnect.android.manager.R;
@@ -167,12 +168,10 @@ public class DevicePluginInfoFragment extends Fragment {
      * Open device plug-in's settings.
      */
     private void openSettings() {
-        DevicePluginManager mgr = new DevicePluginManager(getActivity(), null);
-        mgr.createDevicePluginList();
-        List<DevicePlugin> plugins = mgr.getDevicePlugins();
+        DevicePluginManager mgr = DConnectApplication.getInstance().getDevicePluginManager();
+        List<DevicePlugin> plugins = mgr.getDevicePluginsByPackage(mPackageName);
         for (DevicePlugin plugin : plugins) {
-            if (mPackageName.equals(plugin.getPackageName())
-                    && plugin.getServiceId() != null) {
+            if (plugin.getServiceId() != null) {
                 Intent request = new Intent();
                 request.setComponent(plugin.getComponentName());
                 request.setAction(IntentDConnectMessage.ACTION_PUT);
@@ -205,12 +204,10 @@ public class DevicePluginInfoFragment extends Fragment {
         new Thread(new Runnable() {
             @Override
             public void run() {
-                DevicePluginManager mgr = new DevicePluginManager(getActivity(), null);
-                mgr.createDevicePluginList();
-                List<DevicePlugin> plugins = mgr.getDevicePlugins();
+                DevicePluginManager mgr = DConnectApplication.getInstance().getDevicePluginManager();
+                List<DevicePlugin> plugins = mgr.getDevicePluginsByPackage(mPackageName);
                 for (DevicePlugin plugin : plugins) {
-                    if (mPackageName.equals(plugin.getPackageName())
-                            && plugin.getStartServiceClassName() != null
+                    if (plugin.getStartServiceClassName() != null
                             && plugin.getServiceId() != null) {
                         restartDevicePlugin(plugin);
                         break;
@@ -26,6 +26,7 @@ import android.widget.ListView;
 import android.widget.TextView;
 
 import org.deviceconnect.android.manager.BuildConfig;
+import org.deviceconnect.android.manager.DConnectApplication;
 import org.deviceconnect.android.manager.DevicePlugin;
 import org.deviceconnect.android.manager.DevicePluginManager;
 import org.deviceconnect.android.manager.R;
@@ -92,8 +93,7 @@ public class DevicePluginListFragment extends Fragment {
     private List<PluginContainer> createPluginContainers() {
         List<PluginContainer> containers = new ArrayList<PluginContainer>();
         PackageManager pm = getActivity().getPackageManager();
-        DevicePluginManager manager = new DevicePluginManager(getActivity(), "");
-        manager.createDevicePluginList();
+        DevicePluginManager manager = DConnectApplication.getInstance().getDevicePluginManager();
         for (DevicePlugin plugin : manager.getDevicePlugins()) {
             try {
                 ApplicationInfo app = pm.getApplicationInfo(plugin.getPackageName(), 0);
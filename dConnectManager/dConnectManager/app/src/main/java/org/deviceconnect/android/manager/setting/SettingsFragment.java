@@ -33,6 +33,7 @@ import android.preference.PreferenceScreen;
 import android.preference.SwitchPreference;
 
 import org.deviceconnect.android.manager.BuildConfig;
+import org.deviceconnect.android.manager.DConnectApplication;
 import org.deviceconnect.android.manager.DevicePlugin;
 import org.deviceconnect.android.manager.DevicePluginManager;
 import org.deviceconnect.android.manager.IDConnectService;
@@ -534,8 +535,7 @@ public class SettingsFragment extends PreferenceFragment implements Preference.O
         new Thread(new Runnable() {
             @Override
             public void run() {
-                DevicePluginManager mgr = new DevicePluginManager(getActivity(), null);
-                mgr.createDevicePluginList();
+                DevicePluginManager mgr = DConnectApplication.getInstance().getDevicePluginManager();
                 List<DevicePlugin> plugins = mgr.getDevicePlugins();
                 for (DevicePlugin plugin : plugins) {
                     if (plugin.getStartServiceClassName() != null
@@ -595,8 +595,7 @@ public class SettingsFragment extends PreferenceFragment implements Preference.O
         new Thread(new Runnable() {
             @Override
             public void run() {
-                DevicePluginManager mgr = new DevicePluginManager(getActivity(), null);
-                mgr.createDevicePluginList();
+                DevicePluginManager mgr = DConnectApplication.getInstance().getDevicePluginManager();
                 List<DevicePlugin> plugins = mgr.getDevicePlugins();
                 for (DevicePlugin plugin : plugins) {
                     if (plugin.getServiceId() != null) {
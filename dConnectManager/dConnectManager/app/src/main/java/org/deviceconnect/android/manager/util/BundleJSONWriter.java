@@ -0,0 +1,482 @@
+/*
+ BundleJSONWriter.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager.util;
+
+import android.os.Bundle;
+import android.os.Parcelable;
+
+import org.deviceconnect.message.intent.message.IntentDConnectMessage;
+import org.json.JSONException;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * BundleをJSONのUTF-8のバイト列に直接書き出すクラス.
+ * <p>
+ * {@link DConnectUtil#convertBundleToJSON(org.json.JSONObject, Bundle)}のように
+ * JSONObjectのツリーを作成してから文字列、バイト列へと変換せずに、Bundleを1回走査するだけで
+ * 再利用するバッファにUTF-8で書き出す。content://から始まるuriもその場で変換する。
+ * </p>
+ * <p>
+ * 出力はJSONObjectを経由した場合と同じになるようにしている。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+public final class BundleJSONWriter {
+
+    /** UTF-8. */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** バッファの初期サイズ. */
+    private static final int INITIAL_SIZE = 1024;
+
+    /** 再利用するバッファの最大サイズ. これより大きくなったバッファは使用後に破棄する. */
+    private static final int MAX_RETAINED_SIZE = 64 * 1024;
+
+    /** 変換対象のuriのキー. */
+    private static final String KEY_URI = "uri";
+
+    /** 変換対象のuriの接頭辞. */
+    private static final String CONTENT_SCHEME = "content://";
+
+    /** 負のゼロ. */
+    private static final Double NEGATIVE_ZERO = -0d;
+
+    /** 16進数の文字. */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** スレッド毎に再利用するインスタンス. */
+    private static final ThreadLocal<BundleJSONWriter> WRITERS = new ThreadLocal<BundleJSONWriter>() {
+        @Override
+        protected BundleJSONWriter initialValue() {
+            return new BundleJSONWriter();
+        }
+    };
+
+    /** 書き出し先のバッファ. */
+    private byte[] mBuf = new byte[INITIAL_SIZE];
+
+    /** バッファに書き出したサイズ. */
+    private int mCount;
+
+    /**
+     * コンストラクタ.
+     */
+    private BundleJSONWriter() {
+    }
+
+    /**
+     * BundleをJSONのUTF-8のバイト列に変換する.
+     * @param bundle 変換するBundle
+     * @return JSONのバイト列
+     * @throws JSONException 数値がNaNまたは無限大の場合
+     */
+    public static byte[] toJSONBytes(final Bundle bundle) throws JSONException {
+        BundleJSONWriter writer = WRITERS.get();
+        try {
+            writer.writeBundle(bundle, true);
+            return Arrays.copyOf(writer.mBuf, writer.mCount);
+        } finally {
+            writer.reset();
+        }
+    }
+
+    /**
+     * BundleをJSONの文字列に変換する.
+     * @param bundle 変換するBundle
+     * @return JSONの文字列
+     * @throws JSONException 数値がNaNまたは無限大の場合
+     */
+    public static String toJSONString(final Bundle bundle) throws JSONException {
+        BundleJSONWriter writer = WRITERS.get();
+        try {
+            writer.writeBundle(bundle, true);
+            return new String(writer.mBuf, 0, writer.mCount, UTF8);
+        } finally {
+            writer.reset();
+        }
+    }
+
+    /**
+     * バッファを再利用できる状態に戻す.
+     */
+    private void reset() {
+        mCount = 0;
+        if (mBuf.length > MAX_RETAINED_SIZE) {
+            mBuf = new byte[INITIAL_SIZE];
+        }
+    }
+
+    /**
+     * BundleをJSONのオブジェクトとして書き出す.
+     * <p>
+     * request_codeはRESTfulには不要なので書き出さない。
+     * </p>
+     * @param b Bundle
+     * @param convertUri content://から始まるuriを変換する場合はtrue
+     * @throws JSONException 数値がNaNまたは無限大の場合
+     */
+    private void writeBundle(final Bundle b, final boolean convertUri) throws JSONException {
+        write('{');
+        if (b != null) {
+            boolean first = true;
+            for (String key : b.keySet()) {
+                if (key.equals(IntentDConnectMessage.EXTRA_REQUEST_CODE)) {
+                    continue;
+                }
+                Object value = b.get(key);
+                if (value == null || !isSupported(value)) {
+                    continue;
+                }
+                if (!first) {
+                    write(',');
+                }
+                first = false;
+                writeString(key);
+                write(':');
+                if (convertUri && value instanceof String && KEY_URI.equals(key)
+                        && ((String) value).startsWith(CONTENT_SCHEME)) {
+                    writeString(DConnectUtil.createUri((String) value));
+                } else {
+                    writeValue(value, convertUri);
+                }
+            }
+        }
+        write('}');
+    }
+
+    /**
+     * JSONに書き出す型かチェックする.
+     * @param value 値
+     * @return 書き出す場合はtrue、それ以外はfalse
+     */
+    private static boolean isSupported(final Object value) {
+        if (value instanceof Object[] && !(value instanceof Parcelable[])
+                && !(value instanceof Integer[] || value instanceof Long[] || value instanceof Short[]
+                || value instanceof Byte[] || value instanceof Character[] || value instanceof Float[]
+                || value instanceof Double[] || value instanceof Boolean[] || value instanceof String[])) {
+            // プリミティブ型のラッパークラスの配列がObject[]として扱われる場合のみ書き出す
+            return isPrimitiveWrapperArray((Object[]) value);
+        }
+        return isPrimitiveWrapper(value) || value instanceof String || value instanceof Bundle
+                || value instanceof List<?> || value instanceof Object[] || value instanceof int[] || value instanceof long[]
+                || value instanceof short[] || value instanceof byte[] || value instanceof char[]
+                || value instanceof float[] || value instanceof double[] || value instanceof boolean[];
+    }
+
+    /**
+     * Bundleに格納されていた値を書き出す.
+     * @param value 値
+     * @param convertUri content://から始まるuriを変換する場合はtrue
+     * @throws JSONException 数値がNaNまたは無限大の場合
+     */
+    private void writeValue(final Object value, final boolean convertUri) throws JSONException {
+        if (value instanceof String) {
+            writeString((String) value);
+        } else if (value instanceof Bundle) {
+            writeBundle((Bundle) value, convertUri);
+        } else if (value instanceof Character) {
+            // JSONObject#put(String, int)として格納されるため数値になる
+            writeRaw(Integer.toString(((Character) value).charValue()));
+        } else if (value instanceof Float) {
+            // JSONObject#put(String, double)として格納されるためdoubleに拡張する
+            writeNumber(Double.valueOf(((Float) value).doubleValue()));
+        } else if (value instanceof Number) {
+            writeNumber((Number) value);
+        } else if (value instanceof Boolean) {
+            writeRaw(value.toString());
+        } else if (value instanceof Parcelable[]) {
+            Parcelable[] array = (Parcelable[]) value;
+            write('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) {
+                    write(',');
+                }
+                writeBundle(array[i] instanceof Bundle ? (Bundle) array[i] : null, false);
+            }
+            write(']');
+        } else if (value instanceof Object[]) {
+            Object[] array = (Object[]) value;
+            write('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) {
+                    write(',');
+                }
+                writeElement(array[i]);
+            }
+            write(']');
+        } else if (value instanceof List<?>) {
+            List<?> list = (List<?>) value;
+            write('[');
+            for (int i = 0; i < list.size(); i++) {
+                if (i > 0) {
+                    write(',');
+                }
+                Object v = list.get(i);
+                if (v instanceof Parcelable) {
+                    writeBundle(v instanceof Bundle ? (Bundle) v : null, false);
+                } else {
+                    writeElement(v);
+                }
+            }
+            write(']');
+        } else {
+            writePrimitiveArray(value);
+        }
+    }
+
+    /**
+     * プリミティブ型の配列を書き出す.
+     * @param value プリミティブ型の配列
+     * @throws JSONException 数値がNaNまたは無限大の場合
+     */
+    private void writePrimitiveArray(final Object value) throws JSONException {
+        write('[');
+        if (value instanceof int[]) {
+            int[] array = (int[]) value;
+            for (int i = 0; i < array.length; i++) {
+                writeSeparator(i);
+                writeRaw(Integer.toString(array[i]));
+            }
+        } else if (value instanceof long[]) {
+            long[] array = (long[]) value;
+            for (int i = 0; i < array.length; i++) {
+                writeSeparator(i);
+                writeRaw(Long.toString(array[i]));
+            }
+        } else if (value instanceof short[]) {
+            short[] array = (short[]) value;
+            for (int i = 0; i < array.length; i++) {
+                writeSeparator(i);
+                writeRaw(Integer.toString(array[i]));
+            }
+        } else if (value instanceof byte[]) {
+            byte[] array = (byte[]) value;
+            for (int i = 0; i < array.length; i++) {
+                writeSeparator(i);
+                writeRaw(Integer.toString(array[i]));
+            }
+        } else if (value instanceof char[]) {
+            char[] array = (char[]) value;
+            for (int i = 0; i < array.length; i++) {
+                writeSeparator(i);
+                writeRaw(Integer.toString(array[i]));
+            }
+        } else if (value instanceof float[]) {
+            float[] array = (float[]) value;
+            for (int i = 0; i < array.length; i++) {
+                writeSeparator(i);
+                writeNumber(Double.valueOf(array[i]));
+            }
+        } else if (value instanceof double[]) {
+            double[] array = (double[]) value;
+            for (int i = 0; i < array.length; i++) {
+                writeSeparator(i);
+                writeNumber(Double.valueOf(array[i]));
+            }
+        } else if (value instanceof boolean[]) {
+            boolean[] array = (boolean[]) value;
+            for (int i = 0; i < array.length; i++) {
+                writeSeparator(i);
+                writeRaw(array[i] ? "true" : "false");
+            }
+        }
+        write(']');
+    }
+
+    /**
+     * 配列の要素を書き出す.
+     * <p>
+     * JSONArray#put(Object)で格納した場合と同じく、数値と真偽値以外は文字列として書き出す。
+     * </p>
+     * @param element 要素
+     * @throws JSONException 数値がNaNまたは無限大の場合
+     */
+    private void writeElement(final Object element) throws JSONException {
+        if (element == null) {
+            writeRaw("null");
+        } else if (element instanceof Number) {
+            writeNumber((Number) element);
+        } else if (element instanceof Boolean) {
+            writeRaw(element.toString());
+        } else {
+            writeString(element.toString());
+        }
+    }
+
+    /**
+     * 配列の要素の区切り文字を書き出す.
+     * @param index 要素のインデックス
+     */
+    private void writeSeparator(final int index) {
+        if (index > 0) {
+            write(',');
+        }
+    }
+
+    /**
+     * 数値を書き出す.
+     * <p>
+     * JSONObject#numberToString(Number)と同じ形式で書き出す。
+     * </p>
+     * @param number 数値
+     * @throws JSONException 数値がNaNまたは無限大の場合
+     */
+    private void writeNumber(final Number number) throws JSONException {
+        double d = number.doubleValue();
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            throw new JSONException("Forbidden numeric value: " + number);
+        }
+        if (NEGATIVE_ZERO.equals(number)) {
+            writeRaw("-0");
+            return;
+        }
+        long l = number.longValue();
+        if (d == (double) l) {
+            writeRaw(Long.toString(l));
+        } else {
+            writeRaw(number.toString());
+        }
+    }
+
+    /**
+     * 文字列をエスケープして書き出す.
+     * <p>
+     * JSONStringerと同じく、'/'もエスケープする。
+     * </p>
+     * @param s 文字列
+     */
+    private void writeString(final String s) {
+        write('"');
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                write('\\');
+                write(c);
+                break;
+            case '\t':
+                writeRaw("\\t");
+                break;
+            case '\b':
+                writeRaw("\\b");
+                break;
+            case '\n':
+                writeRaw("\\n");
+                break;
+            case '\r':
+                writeRaw("\\r");
+                break;
+            case '\f':
+                writeRaw("\\f");
+                break;
+            default:
+                if (c <= 0x1F) {
+                    writeRaw("\\u00");
+                    write(HEX[(c >> 4) & 0xF]);
+                    write(HEX[c & 0xF]);
+                } else if (c < 0x80) {
+                    write(c);
+                } else if (c < 0x800) {
+                    ensure(2);
+                    mBuf[mCount++] = (byte) (0xC0 | (c >> 6));
+                    mBuf[mCount++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    ensure(4);
+                    mBuf[mCount++] = (byte) (0xF0 | (cp >> 18));
+                    mBuf[mCount++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    mBuf[mCount++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    mBuf[mCount++] = (byte) (0x80 | (cp & 0x3F));
+                } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                    // 対になっていないサロゲートはString#getBytes(String)と同じく'?'にする
+                    // Character#isSurrogate(char)はAPI 19からのため範囲で判定する
+                    write('?');
+                } else {
+                    ensure(3);
+                    mBuf[mCount++] = (byte) (0xE0 | (c >> 12));
+                    mBuf[mCount++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    mBuf[mCount++] = (byte) (0x80 | (c & 0x3F));
+                }
+                break;
+            }
+        }
+        write('"');
+    }
+
+    /**
+     * ASCII文字列をそのまま書き出す.
+     * @param s ASCII文字列
+     */
+    private void writeRaw(final String s) {
+        int length = s.length();
+        ensure(length);
+        for (int i = 0; i < length; i++) {
+            mBuf[mCount++] = (byte) s.charAt(i);
+        }
+    }
+
+    /**
+     * ASCII文字を書き出す.
+     * @param c ASCII文字
+     */
+    private void write(final char c) {
+        ensure(1);
+        mBuf[mCount++] = (byte) c;
+    }
+
+    /**
+     * バッファの空きを確保する.
+     * @param size 必要なサイズ
+     */
+    private void ensure(final int size) {
+        if (mCount + size > mBuf.length) {
+            mBuf = Arrays.copyOf(mBuf, Math.max(mBuf.length * 2, mCount + size));
+        }
+    }
+
+    /**
+     * 指定したObject[]がプリミティブ型のラッパークラスの配列であるかどうかをチェックする.
+     * <p>
+     * 全ての要素の型が同一でない場合はfalseを返す。
+     * </p>
+     * @param array チェックするオブジェクト配列
+     * @return プリミティブ型のラッパークラスの配列である場合はtrue、そうでない場合はfalse
+     */
+    private static boolean isPrimitiveWrapperArray(final Object[] array) {
+        Class<?> type = null;
+        for (Object obj : array) {
+            if (obj != null) {
+                if (!isPrimitiveWrapper(obj)) {
+                    return false;
+                }
+                if (type != null && type != obj.getClass()) {
+                    return false;
+                }
+                type = obj.getClass();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 指定したObjectがプリミティブ型のラッパークラスであるかどうかをチェックする.
+     * @param obj チェックするオブジェクト
+     * @return プリミティブ型のラッパークラスである場合はtrue、そうでない場合はfalse
+     */
+    private static boolean isPrimitiveWrapper(final Object obj) {
+        return obj instanceof Byte || obj instanceof Short || obj instanceof Integer
+                || obj instanceof Long || obj instanceof Float || obj instanceof Double
+                || obj instanceof Character || obj instanceof Boolean;
+    }
+}
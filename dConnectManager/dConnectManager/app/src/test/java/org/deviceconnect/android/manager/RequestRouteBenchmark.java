@@ -0,0 +1,200 @@
+/*
+ RequestRouteBenchmark.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager;
+
+import static org.junit.Assert.assertEquals;
+
+import org.deviceconnect.server.http.HttpRequest;
+import org.junit.Test;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link RequestRoute}とURIを再解析する従来の方法の処理時間を比較する.
+ * <p>
+ * 従来の{@link android.net.Uri}はJVM上では動作しないため、同じ手順(URI文字列の解析、
+ * パスのセグメント分割、キー毎のクエリ全体の走査)を{@link URI}で再現したものと比較する。
+ * 処理時間は実行環境に左右されるため、結果は標準出力に出力し、
+ * テストとしては両者の解析結果が一致することのみを確認する。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+public class RequestRouteBenchmark {
+
+    /** 計測前に実行する回数. */
+    private static final int WARMUP_COUNT = 20000;
+
+    /** 計測する回数. */
+    private static final int MEASURE_COUNT = 100000;
+
+    /** 計測を繰り返す回数. */
+    private static final int ROUND_COUNT = 3;
+
+    /** 最適化で解析処理が省かれないように、解析結果を足し込む変数. */
+    private long mSink;
+
+    /**
+     * クエリの少ないイベント登録のリクエストの解析を比較する.
+     *
+     * @throws Exception 解析に失敗した場合
+     */
+    @Test
+    public void benchmarkEventRequest() throws Exception {
+        compare("event", RequestRouteTest.createRequest("/gotapi/deviceorientation/ondeviceorientation",
+                "serviceId=host.HostDevicePlugin.localhost.deviceconnect.org&accessToken=0123456789abcdef"));
+    }
+
+    /**
+     * エンコードされたパスとクエリの多いリクエストの解析を比較する.
+     *
+     * @throws Exception 解析に失敗した場合
+     */
+    @Test
+    public void benchmarkEncodedRequest() throws Exception {
+        compare("encoded", RequestRouteTest.createRequest("/gotapi/file/a%2Fb",
+                "serviceId=host.HostDevicePlugin.localhost.deviceconnect.org&accessToken=0123456789abcdef"
+                        + "&path=%2Fdata%2F%E3%83%86%E3%82%B9%E3%83%88.txt&mimeType=text%2Fplain"
+                        + "&title=hello+world&body=%E3%81%82%E3%81%84%E3%81%86&tag=a&tag=b"));
+    }
+
+    /**
+     * 2つの解析の結果が一致することを確認し、処理時間を計測して出力する.
+     *
+     * @param name 計測対象の名前
+     * @param request HTTPリクエスト
+     * @throws URISyntaxException URIが不正な場合
+     * @throws UnsupportedEncodingException UTF-8がサポートされていない場合
+     */
+    private void compare(final String name, final HttpRequest request)
+            throws URISyntaxException, UnsupportedEncodingException {
+        RequestRoute route = RequestRoute.parse(request);
+        Object[] expected = parseWithURI(request);
+        assertEquals(expected[0], route.getApi());
+        assertEquals(expected[1], route.getProfile());
+        assertEquals(expected[2], route.getInterface());
+        assertEquals(expected[3], route.getAttribute());
+        assertEquals(expected[4], route.getParams());
+
+        runURI(request, WARMUP_COUNT);
+        runRoute(request, WARMUP_COUNT);
+        for (int round = 0; round < ROUND_COUNT; round++) {
+            long uri = runURI(request, MEASURE_COUNT);
+            long parse = runRoute(request, MEASURE_COUNT);
+            System.out.println(String.format("RequestRoute %s round %d: URI %d ns/op, RequestRoute %d ns/op (%.2fx)",
+                    name, round, uri / MEASURE_COUNT, parse / MEASURE_COUNT, (double) uri / parse));
+        }
+        System.out.println("sink=" + mSink);
+    }
+
+    /**
+     * URIを再解析する方法を指定回数実行する.
+     *
+     * @param request HTTPリクエスト
+     * @param count 実行回数
+     * @return 処理時間[nsec]
+     * @throws URISyntaxException URIが不正な場合
+     * @throws UnsupportedEncodingException UTF-8がサポートされていない場合
+     */
+    private long runURI(final HttpRequest request, final int count)
+            throws URISyntaxException, UnsupportedEncodingException {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            mSink += ((Map<?, ?>) parseWithURI(request)[4]).size();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * {@link RequestRoute}による解析を指定回数実行する.
+     *
+     * @param request HTTPリクエスト
+     * @param count 実行回数
+     * @return 処理時間[nsec]
+     */
+    private long runRoute(final HttpRequest request, final int count) {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            mSink += RequestRoute.parse(request).getParams().size();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * 従来と同じ手順でリクエストを解析する.
+     * <p>
+     * URI文字列を解析してパスをセグメント毎にデコードし、クエリパラメータはキー毎に
+     * クエリ全体を走査して最初の値を取得する。
+     * </p>
+     *
+     * @param request HTTPリクエスト
+     * @return API名、プロファイル名、インターフェース名、アトリビュート名、クエリパラメータの配列
+     * @throws URISyntaxException URIが不正な場合
+     * @throws UnsupportedEncodingException UTF-8がサポートされていない場合
+     */
+    private static Object[] parseWithURI(final HttpRequest request)
+            throws URISyntaxException, UnsupportedEncodingException {
+        URI uri = new URI(request.getUri());
+        List<String> segments = new ArrayList<>();
+        for (String segment : uri.getRawPath().split("/")) {
+            if (segment.length() > 0) {
+                segments.add(URLDecoder.decode(segment.replace("+", "%2B"), "UTF-8"));
+            }
+        }
+        Object[] result = new Object[5];
+        if (segments.size() >= 2 && segments.size() <= 4) {
+            result[0] = segments.get(0);
+            result[1] = segments.get(1);
+            if (segments.size() == 3) {
+                result[3] = segments.get(2);
+            } else if (segments.size() == 4) {
+                result[2] = segments.get(2);
+                result[3] = segments.get(3);
+            }
+        }
+
+        Map<String, String> params = new LinkedHashMap<>();
+        String query = uri.getRawQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int eq = pair.indexOf('=');
+                String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+                if (key.length() > 0 && !params.containsKey(key)) {
+                    params.put(key, getQueryParameter(query, key));
+                }
+            }
+        }
+        result[4] = params;
+        return result;
+    }
+
+    /**
+     * クエリ全体を走査して、指定したキーの最初の値を取得する.
+     *
+     * @param query クエリ文字列
+     * @param key キー
+     * @return 値
+     * @throws UnsupportedEncodingException UTF-8がサポートされていない場合
+     */
+    private static String getQueryParameter(final String query, final String key)
+            throws UnsupportedEncodingException {
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+            if (name.equals(key)) {
+                return eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ RequestRouteTest.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.deviceconnect.server.http.HttpRequest;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link RequestRoute}のテスト.
+ *
+ * @author NTT DOCOMO, INC.
+ */
+public class RequestRouteTest {
+
+    /**
+     * パスのセグメント数に応じてAPI名、プロファイル名、インターフェース名、アトリビュート名を取得できることを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・セグメント数が2〜4の場合は各名前が設定されること。
+     * ・連続した区切りや末尾の区切りは無視されること。
+     * </pre>
+     */
+    @Test
+    public void testSegments() {
+        RequestRoute route = RequestRoute.parse(createRequest("/gotapi/availability", null));
+        assertEquals("gotapi", route.getApi());
+        assertEquals("availability", route.getProfile());
+        assertNull(route.getInterface());
+        assertNull(route.getAttribute());
+
+        route = RequestRoute.parse(createRequest("/gotapi/battery/level/", null));
+        assertEquals("battery", route.getProfile());
+        assertNull(route.getInterface());
+        assertEquals("level", route.getAttribute());
+
+        route = RequestRoute.parse(createRequest("//gotapi/file//list/all", null));
+        assertEquals("gotapi", route.getApi());
+        assertEquals("file", route.getProfile());
+        assertEquals("list", route.getInterface());
+        assertEquals("all", route.getAttribute());
+    }
+
+    /**
+     * パスのセグメント数が範囲外の場合にAPI名とプロファイル名がnullになることを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・セグメント数が1または5以上の場合は、全ての名前がnullになること。
+     * </pre>
+     */
+    @Test
+    public void testInvalidSegmentCount() {
+        RequestRoute route = RequestRoute.parse(createRequest("/gotapi", null));
+        assertNull(route.getApi());
+        assertNull(route.getProfile());
+
+        route = RequestRoute.parse(createRequest("/gotapi/a/b/c/d", null));
+        assertNull(route.getApi());
+        assertNull(route.getProfile());
+        assertNull(route.getInterface());
+        assertNull(route.getAttribute());
+    }
+
+    /**
+     * エンコードされた'/'がパスの区切りとして扱われないことを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・%2Fを含むセグメントが1つのセグメントとしてデコードされること。
+     * ・マルチバイト文字がUTF-8としてデコードされること。
+     * </pre>
+     */
+    @Test
+    public void testEncodedSeparator() {
+        RequestRoute route = RequestRoute.parse(createRequest("/gotapi/file/a%2Fb", null));
+        assertEquals("gotapi", route.getApi());
+        assertEquals("file", route.getProfile());
+        assertNull(route.getInterface());
+        assertEquals("a/b", route.getAttribute());
+
+        route = RequestRoute.parse(createRequest("/gotapi/%E3%83%86%E3%82%B9%E3%83%88/a+b", null));
+        assertEquals("テスト", route.getProfile());
+        assertEquals("a+b", route.getAttribute());
+    }
+
+    /**
+     * パスが設定されていない場合にURIから解析することを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・URIのパスを分割してからデコードすること。
+     * ・URIのクエリが解析されること。
+     * </pre>
+     */
+    @Test
+    public void testParseFromUri() {
+        HttpRequest request = new HttpRequest();
+        request.setUri("http://localhost:4035/gotapi/file/a%2Fb?path=%2Fx");
+        RequestRoute route = RequestRoute.parse(request);
+        assertEquals("gotapi", route.getApi());
+        assertEquals("file", route.getProfile());
+        assertEquals("a/b", route.getAttribute());
+        assertEquals("/x", route.getParams().get("path"));
+    }
+
+    /**
+     * クエリパラメータの解析を確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・同じ名前のパラメータは最初の値が使われること。
+     * ・'+'が空白に、パーセントエンコードがUTF-8としてデコードされること。
+     * ・値の無いパラメータは空文字になること。
+     * ・不正なエスケープはそのままの文字として扱われること。
+     * </pre>
+     */
+    @Test
+    public void testQuery() {
+        RequestRoute route = RequestRoute.parse(createRequest("/gotapi/notification/notify",
+                "a=1&a=2&body=%E3%81%82+b&flag&&bad=%zz&=x"));
+        Map<String, String> params = route.getParams();
+        assertEquals(4, params.size());
+        assertEquals("1", params.get("a"));
+        assertEquals("あ b", params.get("body"));
+        assertEquals("", params.get("flag"));
+        assertEquals("%zz", params.get("bad"));
+    }
+
+    /**
+     * オリジンの解析を確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・X-GotAPI-Originヘッダーが優先され、Webアプリのオリジンとして扱われないこと。
+     * ・Originヘッダーのみの場合はWebアプリのオリジンとして扱われること。
+     * </pre>
+     */
+    @Test
+    public void testOrigin() {
+        HttpRequest request = createRequest("/gotapi/availability", null);
+        Map<String, String> headers = new HashMap<>();
+        headers.put("x-gotapi-origin", "org.deviceconnect.android.test");
+        headers.put("origin", "http://localhost");
+        headers.put("content-type", "application/x-www-form-urlencoded");
+        request.setHeaders(headers);
+        RequestRoute route = RequestRoute.parse(request);
+        assertEquals("org.deviceconnect.android.test", route.getOrigin());
+        assertFalse(route.isWebOrigin());
+        assertEquals("application/x-www-form-urlencoded", route.getContentType());
+
+        headers.remove("x-gotapi-origin");
+        route = RequestRoute.parse(request);
+        assertEquals("http://localhost", route.getOrigin());
+        assertTrue(route.isWebOrigin());
+    }
+
+    /**
+     * テスト用のHTTPリクエストを作成する.
+     * @param path デコードされていないパス
+     * @param query デコードされていないクエリ文字列
+     * @return HTTPリクエスト
+     */
+    static HttpRequest createRequest(final String path, final String query) {
+        HttpRequest request = new HttpRequest();
+        request.setUri("http://localhost:4035" + path + (query == null ? "" : "?" + query));
+        request.setPath(path);
+        request.setQueryString(query);
+        return request;
+    }
+}
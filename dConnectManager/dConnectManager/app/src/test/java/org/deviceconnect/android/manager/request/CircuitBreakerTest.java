@@ -0,0 +1,194 @@
+/*
+ CircuitBreakerTest.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * {@link CircuitBreaker}のテスト.
+ *
+ * @author NTT DOCOMO, INC.
+ */
+public class CircuitBreakerTest {
+
+    /** ブレーカーを開いておく時間(ms). */
+    private static final long OPEN_DURATION = 100;
+
+    /** ブレーカーを開いておく時間が経過するまでの待ち時間(ms). */
+    private static final long WAIT = OPEN_DURATION + 50;
+
+    /**
+     * 失敗率が閾値に達するとブレーカーが開くことを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・最小のリクエスト数に達するまではブレーカーが開かないこと。
+     * ・失敗率が閾値に達するとブレーカーが開き、送信許可が取得できないこと。
+     * </pre>
+     */
+    @Test
+    public void testClosedToOpen() {
+        CircuitBreaker breaker = new CircuitBreaker(4, 4, 50, 60 * 1000, 8);
+
+        breaker.onSuccess(breaker.tryAcquire());
+        breaker.onFailure(breaker.tryAcquire());
+        breaker.onSuccess(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.onFailure(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertNull(breaker.tryAcquire());
+        assertEquals(0, breaker.getActiveCount());
+    }
+
+    /**
+     * ブレーカーを開いておく時間が経過すると、試験的なリクエストを1つだけ送信できることを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・状態がHALF_OPENになること。
+     * ・最初の送信許可が試験的なリクエストの送信許可であること。
+     * ・試験的なリクエストが終了するまで、次の送信許可が取得できないこと。
+     * </pre>
+     *
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    @Test
+    public void testOpenToHalfOpen() throws InterruptedException {
+        CircuitBreaker breaker = createOpenBreaker();
+        Thread.sleep(WAIT);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        CircuitBreaker.Permit probe = breaker.tryAcquire();
+        assertNotNull(probe);
+        assertTrue(probe.isProbe());
+        assertNull(breaker.tryAcquire());
+
+        breaker.release(probe);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertNotNull(breaker.tryAcquire());
+    }
+
+    /**
+     * 試験的なリクエストが成功するとブレーカーが閉じることを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・状態がCLOSEDになり、失敗率がリセットされること。
+     * </pre>
+     *
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    @Test
+    public void testHalfOpenToClosed() throws InterruptedException {
+        CircuitBreaker breaker = createOpenBreaker();
+        Thread.sleep(WAIT);
+
+        breaker.onSuccess(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getFailureRate());
+        assertEquals(0, breaker.getActiveCount());
+    }
+
+    /**
+     * 試験的なリクエストが失敗するとブレーカーが再び開くことを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・状態がOPENになり、送信許可が取得できないこと。
+     * </pre>
+     *
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    @Test
+    public void testHalfOpenToOpen() throws InterruptedException {
+        CircuitBreaker breaker = createOpenBreaker();
+        Thread.sleep(WAIT);
+
+        breaker.onFailure(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertNull(breaker.tryAcquire());
+    }
+
+    /**
+     * ブレーカーが開く前に送信されたリクエストの結果が、試験中の状態を変更しないことを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・試験中に古いリクエストが成功・失敗しても状態がHALF_OPENのままであること。
+     * ・試験的なリクエストの結果で状態が変わること。
+     * ・ブレーカーが閉じた後に届いた古いリクエストの失敗が記録されないこと。
+     * </pre>
+     *
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    @Test
+    public void testStaleResultDoesNotChangeState() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(2, 2, 50, OPEN_DURATION, 8);
+        CircuitBreaker.Permit first = breaker.tryAcquire();
+        CircuitBreaker.Permit second = breaker.tryAcquire();
+        CircuitBreaker.Permit staleSuccess = breaker.tryAcquire();
+        CircuitBreaker.Permit staleFailure = breaker.tryAcquire();
+        CircuitBreaker.Permit lateFailure = breaker.tryAcquire();
+        breaker.onFailure(first);
+        breaker.onFailure(second);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Thread.sleep(WAIT);
+
+        CircuitBreaker.Permit probe = breaker.tryAcquire();
+        assertTrue(probe.isProbe());
+        breaker.onSuccess(staleSuccess);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onFailure(staleFailure);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertNull(breaker.tryAcquire());
+
+        breaker.onSuccess(probe);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onFailure(lateFailure);
+        assertEquals(0, breaker.getFailureRate());
+        assertEquals(0, breaker.getActiveCount());
+    }
+
+    /**
+     * 処理中のリクエスト数の上限を確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・上限に達すると送信許可が取得できないこと。
+     * ・同じ送信許可を2回返却しても処理中のリクエスト数が1つだけ減ること。
+     * </pre>
+     */
+    @Test
+    public void testMaxConcurrentRequests() {
+        CircuitBreaker breaker = new CircuitBreaker(4, 4, 50, OPEN_DURATION, 2);
+        CircuitBreaker.Permit first = breaker.tryAcquire();
+        CircuitBreaker.Permit second = breaker.tryAcquire();
+        assertNotNull(first);
+        assertNotNull(second);
+        assertFalse(first.isProbe());
+        assertNull(breaker.tryAcquire());
+
+        breaker.release(first);
+        breaker.release(first);
+        assertEquals(1, breaker.getActiveCount());
+        assertNotNull(breaker.tryAcquire());
+        assertNull(breaker.tryAcquire());
+    }
+
+    /**
+     * 開いた状態のサーキットブレーカーを作成する.
+     * @return サーキットブレーカー
+     */
+    private static CircuitBreaker createOpenBreaker() {
+        CircuitBreaker breaker = new CircuitBreaker(2, 2, 50, OPEN_DURATION, 8);
+        breaker.onFailure(breaker.tryAcquire());
+        breaker.onFailure(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        return breaker;
+    }
+}
@@ -8,10 +8,19 @@ package org.deviceconnect.server;
 
 import org.deviceconnect.server.logger.LogHandler;
 import org.deviceconnect.server.websocket.DConnectWebSocket;
+import org.deviceconnect.server.websocket.WebSocketEvent;
+import org.deviceconnect.server.websocket.WebSocketEventQueue;
 
 import java.io.IOException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
@@ -41,6 +50,26 @@ public abstract class DConnectServer {
     /** デバッグフラグ. */
     private static final boolean DEBUG = false;
 
+    /** イベント送信スレッドの最大数. */
+    private static final int EVENT_WRITER_THREADS = 4;
+
+    /** イベント送信スレッドが待機する時間[sec]. これを過ぎると終了する. */
+    private static final long EVENT_WRITER_KEEP_ALIVE = 60;
+
+    /**
+     * イベント送信スレッドプール.
+     * <p>
+     * このサーバーの全WebSocketのイベント送信キューで共有する。各キューは同時に1スレッドしか使わないため、
+     * 送信の順序はWebSocket毎に保たれる。スレッド数はWebSocketの数に関係なく
+     * {@value #EVENT_WRITER_THREADS}までとし、待ち行列には各キューの送信処理が高々1つずつ入る。
+     * 送信が止まったWebSocketがスレッドを占有し続けないように、{@link #mEventWatchdog}で切断する。
+     * </p>
+     */
+    private final ThreadPoolExecutor mEventWriter;
+
+    /** イベントの送信が終わらないWebSocketを監視するスレッド. */
+    private ScheduledExecutorService mEventWatchdog;
+
     /**
      * コンストラクタ. サーバーを生成します
      * 
@@ -54,6 +83,11 @@ public abstract class DConnectServer {
 
         mConfig = config;
         mSockets = new ConcurrentHashMap<String, DConnectWebSocket>();
+        mEventWriter = new ThreadPoolExecutor(EVENT_WRITER_THREADS, EVENT_WRITER_THREADS,
+                EVENT_WRITER_KEEP_ALIVE, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("dconnect-event-writer"));
+        // 使われていない間はスレッドを残さない
+        mEventWriter.allowCoreThreadTimeOut(true);
 
         if (DEBUG) {
             LogHandler handler = new LogHandler("dconnect.server");
@@ -97,6 +131,81 @@ public abstract class DConnectServer {
         this.mListener = listener;
     }
 
+    /**
+     * イベントの送信が終わらないWebSocketの監視を開始する.
+     * <p>
+     * サーバーを起動する時に呼び出すこと。
+     * </p>
+     */
+    protected synchronized void startEventWatchdog() {
+        if (mEventWatchdog != null) {
+            return;
+        }
+        long period = Math.max(mConfig.getEventSendTimeout() / 2, 1);
+        mEventWatchdog = Executors.newSingleThreadScheduledExecutor(
+                new NamedThreadFactory("dconnect-event-watchdog"));
+        mEventWatchdog.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                checkEventSendTimeout();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * イベントの送信が終わらないWebSocketの監視を停止する.
+     * <p>
+     * サーバーを終了する時に呼び出すこと。
+     * </p>
+     */
+    protected synchronized void stopEventWatchdog() {
+        if (mEventWatchdog != null) {
+            mEventWatchdog.shutdownNow();
+            mEventWatchdog = null;
+        }
+    }
+
+    /**
+     * イベントの送信がタイムアウト時間以上終わらないWebSocketを切断する.
+     */
+    void checkEventSendTimeout() {
+        for (DConnectWebSocket socket : mSockets.values()) {
+            try {
+                WebSocketEventQueue queue = socket.getEventQueue();
+                if (queue != null) {
+                    queue.checkSendTimeout(mConfig.getEventSendTimeout());
+                }
+            } catch (RuntimeException e) {
+                mLogger.warning("Exception in the DConnectServer#checkEventSendTimeout() method. " + e.toString());
+            }
+        }
+    }
+
+    /**
+     * WebSocketのイベント送信キューを作成する.
+     * 
+     * @param socket 送信先のWebSocket
+     * @return イベント送信キュー
+     */
+    protected WebSocketEventQueue createEventQueue(final DConnectWebSocket socket) {
+        return new WebSocketEventQueue(socket, mEventWriter, mConfig.getEventQueueSize(),
+                mConfig.getEventOverflowPolicy());
+    }
+
+    /**
+     * 指定されたセッションキーを持つクライアントのイベント送信キューを取得する.
+     * 
+     * @param sessionKey クライアントを特定するためのセッションキー
+     * @return イベント送信キュー。セッションが見つからない場合はnull
+     */
+    public WebSocketEventQueue getEventQueue(final String sessionKey) {
+        DConnectWebSocket socket = mSockets.get(sessionKey);
+        if (socket == null) {
+            return null;
+        }
+        return socket.getEventQueue();
+    }
+
     /**
      * 指定されたセッションキーを持つクライアントにWebSocketを通じてイベントメッセージを送る.
      * 
@@ -106,6 +215,31 @@ public abstract class DConnectServer {
      * @throws IOException セッションが見つからない場合スローされる
      */
     public void sendEvent(final String sessionKey, final String event) throws IOException {
+        sendEvent(sessionKey, new WebSocketEvent() {
+            @Override
+            public String getKey() {
+                return null;
+            }
+
+            @Override
+            public String createMessage() {
+                return event;
+            }
+        });
+    }
+
+    /**
+     * 指定されたセッションキーを持つクライアントにWebSocketを通じてイベントを送る.
+     * <p>
+     * イベントはクライアントのイベント送信キューに追加され、このメソッドは送信完了を待たずに戻る。
+     * </p>
+     * 
+     * @param sessionKey クライアントを特定するためのセッションキー
+     * @param event 送信するイベント
+     * 
+     * @throws IOException セッションが見つからない場合、または送信キューが閉じられている場合にスローされる
+     */
+    public void sendEvent(final String sessionKey, final WebSocketEvent event) throws IOException {
         if (!isRunning()) {
             throw new RuntimeException("DConnectServer is not running.");
         }
@@ -115,6 +249,34 @@ public abstract class DConnectServer {
             throw new IOException("Cannot found session's socket.");
         }
 
-        socket.sendEvent(event);
+        WebSocketEventQueue queue = socket.getEventQueue();
+        if (!queue.offer(event) && queue.isClosed()) {
+            throw new IOException("Session's event queue is closed.");
+        }
+    }
+
+    /**
+     * デーモンスレッドを作成するファクトリ.
+     */
+    private static class NamedThreadFactory implements ThreadFactory {
+        /** スレッド名. */
+        private final String mName;
+        /** スレッドの通し番号. */
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        /**
+         * コンストラクタ.
+         * @param name スレッド名
+         */
+        NamedThreadFactory(final String name) {
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(r, mName + "-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 }
@@ -8,6 +8,8 @@ package org.deviceconnect.server;
 
 import java.util.ArrayList;
 
+import org.deviceconnect.server.websocket.WebSocketEventQueue.OverflowPolicy;
+
 /**
  * サーバーの設定情報.
  * 
@@ -24,6 +26,24 @@ public final class DConnectServerConfig {
     /** WebSocket最大コネクション数. */
     private int mMaxWebSocketConnectionSize;
 
+    /** 処理待ちのコネクションを保持するキューの上限. */
+    private int mAcceptQueueSize;
+
+    /** 1つのリモートアドレスからの最大コネクション数. */
+    private int mMaxConnectionSizePerAddress;
+
+    /** ソケットの読み込みタイムアウト[msec]. */
+    private int mSocketReadTimeout;
+
+    /** 持続的接続で次のリクエストを待つ時間[msec]. */
+    private int mKeepAliveTimeout;
+
+    /** 1つのコネクションで処理する最大リクエスト数. */
+    private int mMaxRequestsPerConnection;
+
+    /** レスポンスを圧縮するBodyのサイズの閾値. */
+    private int mCompressionThreshold;
+
     /** ドキュメントルートのパス. */
     private String mDocumentRootPath;
 
@@ -39,6 +59,21 @@ public final class DConnectServerConfig {
     /** IPのホワイトリスト. */
     private ArrayList<String> mIpWhiteList;
 
+    /** WebSocket毎のイベント送信キューの上限. */
+    private int mEventQueueSize;
+
+    /** イベント送信キューが上限に達した場合の振る舞い. */
+    private OverflowPolicy mEventOverflowPolicy;
+
+    /** 1件のイベントの送信が終わらないWebSocketを切断するまでの時間[msec]. */
+    private int mEventSendTimeout;
+
+    /** WebSocketのpingを送信するインターバル[msec]. */
+    private int mWebSocketPingInterval;
+
+    /** WebSocketが死んでいるとみなすまでにpongが返ってこなかったインターバルの回数. */
+    private int mWebSocketDeadPeerThreshold;
+
     /**
      * 最大コネクション数を取得する.
      * 
@@ -57,6 +92,60 @@ public final class DConnectServerConfig {
         return mMaxWebSocketConnectionSize;
     }
 
+    /**
+     * 処理待ちのコネクションを保持するキューの上限を取得する.
+     * 
+     * @return キューの上限
+     */
+    public int getAcceptQueueSize() {
+        return mAcceptQueueSize;
+    }
+
+    /**
+     * 1つのリモートアドレスからの最大コネクション数を取得する.
+     * 
+     * @return 最大コネクション数。0の場合は制限しない。
+     */
+    public int getMaxConnectionSizePerAddress() {
+        return mMaxConnectionSizePerAddress;
+    }
+
+    /**
+     * ソケットの読み込みタイムアウトを取得する.
+     * 
+     * @return 読み込みタイムアウト[msec]
+     */
+    public int getSocketReadTimeout() {
+        return mSocketReadTimeout;
+    }
+
+    /**
+     * 持続的接続で次のリクエストを待つ時間を取得する.
+     * 
+     * @return 次のリクエストを待つ時間[msec]
+     */
+    public int getKeepAliveTimeout() {
+        return mKeepAliveTimeout;
+    }
+
+    /**
+     * 1つのコネクションで処理する最大リクエスト数を取得する.
+     * 
+     * @return 最大リクエスト数。0の場合は制限しない。
+     */
+    public int getMaxRequestsPerConnection() {
+        return mMaxRequestsPerConnection;
+    }
+
+    /**
+     * レスポンスを圧縮するBodyのサイズの閾値を取得する.
+     * 
+     * @return 閾値[byte]。負の値の場合は圧縮しない。
+     */
+    public int getCompressionThreshold() {
+        return mCompressionThreshold;
+    }
+
     /**
      * ドキュメントルートのパスを取得する.
      * 
@@ -102,6 +191,51 @@ public final class DConnectServerConfig {
         return mIpWhiteList;
     }
 
+    /**
+     * WebSocket毎のイベント送信キューの上限を取得する.
+     * 
+     * @return イベント送信キューの上限
+     */
+    public int getEventQueueSize() {
+        return mEventQueueSize;
+    }
+
+    /**
+     * イベント送信キューが上限に達した場合の振る舞いを取得する.
+     * 
+     * @return イベント送信キューが上限に達した場合の振る舞い
+     */
+    public OverflowPolicy getEventOverflowPolicy() {
+        return mEventOverflowPolicy;
+    }
+
+    /**
+     * 1件のイベントの送信が終わらないWebSocketを切断するまでの時間を取得する.
+     * 
+     * @return 切断するまでの時間[msec]
+     */
+    public int getEventSendTimeout() {
+        return mEventSendTimeout;
+    }
+
+    /**
+     * WebSocketのpingを送信するインターバルを取得する.
+     * 
+     * @return pingを送信するインターバル[msec]
+     */
+    public int getWebSocketPingInterval() {
+        return mWebSocketPingInterval;
+    }
+
+    /**
+     * WebSocketが死んでいるとみなすまでにpongが返ってこなかったインターバルの回数を取得する.
+     * 
+     * @return pongが返ってこなかったインターバルの回数
+     */
+    public int getWebSocketDeadPeerThreshold() {
+        return mWebSocketDeadPeerThreshold;
+    }
+
     /**
      * コンストラクタ.
      * 
@@ -112,10 +246,21 @@ public final class DConnectServerConfig {
         this.mDocumentRootPath = builder.mDocumentRootPath;
         this.mMaxConnectionSize = builder.mMaxConnectionSize;
         this.mMaxWebSocketConnectionSize = builder.mMaxWebSocketConnectionSize;
+        this.mAcceptQueueSize = builder.mAcceptQueueSize;
+        this.mMaxConnectionSizePerAddress = builder.mMaxConnectionSizePerAddress;
+        this.mSocketReadTimeout = builder.mSocketReadTimeout;
+        this.mKeepAliveTimeout = builder.mKeepAliveTimeout;
+        this.mMaxRequestsPerConnection = builder.mMaxRequestsPerConnection;
+        this.mCompressionThreshold = builder.mCompressionThreshold;
         this.mIsSsl = builder.mIsSsl;
         this.mPort = builder.mPort;
         this.mHost = builder.mHost;
         this.mIpWhiteList = builder.mIpWhiteList;
+        this.mEventQueueSize = builder.mEventQueueSize;
+        this.mEventOverflowPolicy = builder.mEventOverflowPolicy;
+        this.mEventSendTimeout = builder.mEventSendTimeout;
+        this.mWebSocketPingInterval = builder.mWebSocketPingInterval;
+        this.mWebSocketDeadPeerThreshold = builder.mWebSocketDeadPeerThreshold;
     }
 
     /**
@@ -132,6 +277,27 @@ public final class DConnectServerConfig {
         /** WebSocket最大コネクション数. */
         private int mMaxWebSocketConnectionSize = 32;
 
+        /** 処理待ちのコネクションを保持するキューの上限. */
+        private int mAcceptQueueSize = 32;
+
+        /**
+         * 1つのリモートアドレスからの最大コネクション数.
+         * ローカルのアプリは全て同じループバックアドレスから接続するため、デフォルトでは制限しない。
+         */
+        private int mMaxConnectionSizePerAddress = 0;
+
+        /** ソケットの読み込みタイムアウト[msec]. */
+        private int mSocketReadTimeout = 5000;
+
+        /** 持続的接続で次のリクエストを待つ時間[msec]. */
+        private int mKeepAliveTimeout = 5000;
+
+        /** 1つのコネクションで処理する最大リクエスト数. */
+        private int mMaxRequestsPerConnection = 100;
+
+        /** レスポンスを圧縮するBodyのサイズの閾値. */
+        private int mCompressionThreshold = 1024;
+
         /** ドキュメントルートのパス. */
         private String mDocumentRootPath;
 
@@ -147,6 +313,21 @@ public final class DConnectServerConfig {
         /** IPのホワイトリスト. */
         private ArrayList<String> mIpWhiteList;
 
+        /** WebSocket毎のイベント送信キューの上限. */
+        private int mEventQueueSize = 64;
+
+        /** イベント送信キューが上限に達した場合の振る舞い. */
+        private OverflowPolicy mEventOverflowPolicy = OverflowPolicy.COALESCE;
+
+        /** 1件のイベントの送信が終わらないWebSocketを切断するまでの時間[msec]. */
+        private int mEventSendTimeout = 10000;
+
+        /** WebSocketのpingを送信するインターバル[msec]. */
+        private int mWebSocketPingInterval = 3000;
+
+        /** WebSocketが死んでいるとみなすまでにpongが返ってこなかったインターバルの回数. */
+        private int mWebSocketDeadPeerThreshold = 1;
+
         /**
          * DConnectServerConfigのインスタンスを設定された設定値で生成する.
          * 
@@ -197,6 +378,110 @@ public final class DConnectServerConfig {
             return this;
         }
 
+        /**
+         * 処理待ちのコネクションを保持するキューの上限を設定する.
+         * <p>
+         * 全てのスレッドが使用中でキューも一杯の場合、新しいコネクションには503を返却する。
+         * </p>
+         * 
+         * @param acceptQueueSize キューの上限。1以上を指定すること。
+         * @return ビルダー。
+         */
+        public Builder acceptQueueSize(final int acceptQueueSize) {
+
+            if (acceptQueueSize <= 0) {
+                throw new IllegalArgumentException("AcceptQueueSize must be larger than 0.");
+            }
+
+            this.mAcceptQueueSize = acceptQueueSize;
+            return this;
+        }
+
+        /**
+         * 1つのリモートアドレスからの最大コネクション数を設定する.
+         * <p>
+         * 上限を超えたコネクションには503を返却する。
+         * </p>
+         * 
+         * @param maxConnectionSizePerAddress 最大コネクション数。0の場合は制限しない。
+         * @return ビルダー。
+         */
+        public Builder maxConnectionSizePerAddress(final int maxConnectionSizePerAddress) {
+
+            if (maxConnectionSizePerAddress < 0) {
+                throw new IllegalArgumentException("MaxConnectionSizePerAddress must not be negative.");
+            }
+
+            this.mMaxConnectionSizePerAddress = maxConnectionSizePerAddress;
+            return this;
+        }
+
+        /**
+         * ソケットの読み込みタイムアウトを設定する.
+         * 
+         * @param socketReadTimeout 読み込みタイムアウト[msec]。1以上を指定すること。
+         * @return ビルダー。
+         */
+        public Builder socketReadTimeout(final int socketReadTimeout) {
+
+            if (socketReadTimeout <= 0) {
+                throw new IllegalArgumentException("SocketReadTimeout must be larger than 0.");
+            }
+
+            this.mSocketReadTimeout = socketReadTimeout;
+            return this;
+        }
+
+        /**
+         * 持続的接続で次のリクエストを待つ時間を設定する.
+         * <p>
+         * 待っている間もスレッドを占有するため、長くしすぎないこと。
+         * </p>
+         * 
+         * @param keepAliveTimeout 次のリクエストを待つ時間[msec]。1以上を指定すること。
+         * @return ビルダー。
+         */
+        public Builder keepAliveTimeout(final int keepAliveTimeout) {
+
+            if (keepAliveTimeout <= 0) {
+                throw new IllegalArgumentException("KeepAliveTimeout must be larger than 0.");
+            }
+
+            this.mKeepAliveTimeout = keepAliveTimeout;
+            return this;
+        }
+
+        /**
+         * 1つのコネクションで処理する最大リクエスト数を設定する.
+         * 
+         * @param maxRequestsPerConnection 最大リクエスト数。0の場合は制限しない。
+         * @return ビルダー。
+         */
+        public Builder maxRequestsPerConnection(final int maxRequestsPerConnection) {
+
+            if (maxRequestsPerConnection < 0) {
+                throw new IllegalArgumentException("MaxRequestsPerConnection must not be negative.");
+            }
+
+            this.mMaxRequestsPerConnection = maxRequestsPerConnection;
+            return this;
+        }
+
+        /**
+         * レスポンスを圧縮するBodyのサイズの閾値を設定する.
+         * <p>
+         * クライアントがAccept-Encodingでgzipまたはdeflateに対応している場合、
+         * 閾値以上のサイズのテキストやJSONのレスポンスを圧縮する。
+         * </p>
+         * 
+         * @param compressionThreshold 閾値[byte]。負の値の場合は圧縮しない。
+         * @return ビルダー。
+         */
+        public Builder compressionThreshold(final int compressionThreshold) {
+            this.mCompressionThreshold = compressionThreshold;
+            return this;
+        }
+
         /**
          * SSLの利用設定を行う.
          * 
@@ -259,5 +544,85 @@ public final class DConnectServerConfig {
             this.mIpWhiteList = ipWhiteList;
             return this;
         }
+
+        /**
+         * WebSocket毎のイベント送信キューの上限を設定する.
+         * 
+         * @param eventQueueSize イベント送信キューの上限。1以上を指定すること。
+         * @return ビルダー。
+         */
+        public Builder eventQueueSize(final int eventQueueSize) {
+
+            if (eventQueueSize <= 0) {
+                throw new IllegalArgumentException("EventQueueSize must be larger than 0.");
+            }
+
+            this.mEventQueueSize = eventQueueSize;
+            return this;
+        }
+
+        /**
+         * イベント送信キューが上限に達した場合の振る舞いを設定する.
+         * 
+         * @param policy イベント送信キューが上限に達した場合の振る舞い。
+         * @return ビルダー。
+         */
+        public Builder eventOverflowPolicy(final OverflowPolicy policy) {
+
+            if (policy == null) {
+                throw new IllegalArgumentException("EventOverflowPolicy must be not null.");
+            }
+
+            this.mEventOverflowPolicy = policy;
+            return this;
+        }
+
+        /**
+         * 1件のイベントの送信が終わらないWebSocketを切断するまでの時間を設定する.
+         * 
+         * @param timeout 切断するまでの時間[msec]。1以上を指定すること。
+         * @return ビルダー。
+         */
+        public Builder eventSendTimeout(final int timeout) {
+
+            if (timeout <= 0) {
+                throw new IllegalArgumentException("EventSendTimeout must be larger than 0.");
+            }
+
+            this.mEventSendTimeout = timeout;
+            return this;
+        }
+
+        /**
+         * WebSocketのpingを送信するインターバルを設定する.
+         * 
+         * @param interval pingを送信するインターバル[msec]。1以上を指定すること。
+         * @return ビルダー。
+         */
+        public Builder webSocketPingInterval(final int interval) {
+
+            if (interval <= 0) {
+                throw new IllegalArgumentException("WebSocketPingInterval must be larger than 0.");
+            }
+
+            this.mWebSocketPingInterval = interval;
+            return this;
+        }
+
+        /**
+         * WebSocketが死んでいるとみなすまでにpongが返ってこなかったインターバルの回数を設定する.
+         * 
+         * @param threshold pongが返ってこなかったインターバルの回数。1以上を指定すること。
+         * @return ビルダー。
+         */
+        public Builder webSocketDeadPeerThreshold(final int threshold) {
+
+            if (threshold <= 0) {
+                throw new IllegalArgumentException("WebSocketDeadPeerThreshold must be larger than 0.");
+            }
+
+            this.mWebSocketDeadPeerThreshold = threshold;
+            return this;
+        }
     }
 }
@@ -20,6 +20,11 @@ public interface DConnectServerEventListener {
      * Httpリクエストの受信時に呼び出されます. <br/>
      * Device Connect のリクエストとして正しくないなどの理由でリクエストの受理を破棄する
      * 場合は、戻り値としてfalseを返すことでサーバーに通常のHTTPリクエストとして処理させます。
+     * <p>
+     * レスポンスを後から返却する場合は{@link HttpResponse#suspend()}でハンドルを取得してから
+     * trueを返し、レスポンスの準備ができた時点で{@link org.deviceconnect.server.http.PendingHttpResponse#complete()}
+     * を呼び出してください。レスポンスを待つ間、サーバーのスレッドは占有されません。
+     * </p>
      * 
      * @param req Httpリクエスト
      * @param res Httpレスポンス
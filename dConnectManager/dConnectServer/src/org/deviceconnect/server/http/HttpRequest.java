@@ -6,6 +6,8 @@
  */
 package org.deviceconnect.server.http;
 
+import java.io.InputStream;
+import java.util.Locale;
 import java.util.Map;
 
 /**
@@ -33,12 +35,21 @@ public final class HttpRequest {
     /** リクエストURI. */
     private String mUri;
 
+    /** デコードされていないリクエストパス. */
+    private String mPath;
+
+    /** デコードされていないクエリ文字列. */
+    private String mQueryString;
+
     /** ヘッダー群. */
     private Map<String, String> mHeaders;
 
     /** HTTPリクエストのBodyデータ. */
     private byte[] mBody;
 
+    /** HTTPリクエストのBodyデータのストリーム. */
+    private InputStream mBodyStream;
+
     /**
      * HTTPメソッドを取得する.
      * 
@@ -75,6 +86,47 @@ public final class HttpRequest {
         this.mUri = uri;
     }
 
+    /**
+     * デコードされていないリクエストパスを取得する.
+     * <p>
+     * パーセントエンコードされた'/'(%2F)をパスの区切りと区別できるように、
+     * パスは区切りで分割してからセグメント毎にデコードすること。
+     * サーバがパスを設定していない場合は、{@link #getUri()}から解析すること。
+     * </p>
+     * 
+     * @return リクエストパス。設定されていない場合はnull
+     */
+    public String getPath() {
+        return mPath;
+    }
+
+    /**
+     * デコードされていないリクエストパスを設定する.
+     * 
+     * @param path リクエストパス
+     */
+    public void setPath(final String path) {
+        this.mPath = path;
+    }
+
+    /**
+     * デコードされていないクエリ文字列を取得する.
+     * 
+     * @return クエリ文字列。クエリが無い場合はnull
+     */
+    public String getQueryString() {
+        return mQueryString;
+    }
+
+    /**
+     * デコードされていないクエリ文字列を設定する.
+     * 
+     * @param queryString クエリ文字列
+     */
+    public void setQueryString(final String queryString) {
+        this.mQueryString = queryString;
+    }
+
     /**
      * ヘッダーを取得する.
      * 
@@ -93,6 +145,33 @@ public final class HttpRequest {
         this.mHeaders = headers;
     }
 
+    /**
+     * 名前を指定してヘッダーの値を取得する.
+     * <p>
+     * ヘッダー名の大文字・小文字は区別しない。サーバはヘッダー名を小文字で格納するため、
+     * 通常は1回の検索で見つかる。
+     * </p>
+     * 
+     * @param name ヘッダー名
+     * @return ヘッダーの値。存在しない場合はnull
+     */
+    public String getHeader(final String name) {
+        if (mHeaders == null || name == null) {
+            return null;
+        }
+        String lower = name.toLowerCase(Locale.ENGLISH);
+        String value = mHeaders.get(lower);
+        if (value != null || mHeaders.containsKey(lower)) {
+            return value;
+        }
+        for (Map.Entry<String, String> entry : mHeaders.entrySet()) {
+            if (name.equalsIgnoreCase(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
     /**
      * HTTPリクエストのBodyデータを取得する.
      * 
@@ -111,4 +190,27 @@ public final class HttpRequest {
         this.mBody = body;
     }
 
+    /**
+     * HTTPリクエストのBodyデータのストリームを取得する.
+     * <p>
+     * サイズの大きいBodyデータ(マルチパートなど)はメモリに読み込まず、ストリームとして渡す。
+     * その場合、{@link #getBody()}はnullを返す。
+     * ストリームは{@link org.deviceconnect.server.DConnectServerEventListener#onReceivedHttpRequest(HttpRequest, HttpResponse)}
+     * の中でのみ読み込むことができる。
+     * </p>
+     * 
+     * @return HTTPリクエストのBodyデータのストリーム。ストリームで渡さない場合はnull
+     */
+    public InputStream getBodyStream() {
+        return mBodyStream;
+    }
+
+    /**
+     * HTTPリクエストのBodyデータのストリームを設定する.
+     * 
+     * @param bodyStream HTTPリクエストのBodyデータのストリーム
+     */
+    public void setBodyStream(final InputStream bodyStream) {
+        this.mBodyStream = bodyStream;
+    }
 }
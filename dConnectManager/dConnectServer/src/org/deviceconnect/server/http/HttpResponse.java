@@ -31,6 +31,9 @@ public final class HttpResponse {
     /** ステータスコード. */
     private StatusCode mCode;
 
+    /** 非同期レスポンスのハンドル. */
+    private PendingHttpResponse mPending;
+
     /**
      * HTTPレスポンスのステータスコード定数.
      * 
@@ -231,4 +234,39 @@ public final class HttpResponse {
     public void setCode(final StatusCode code) {
         this.mCode = code;
     }
+
+    /**
+     * レスポンスを非同期で返却することを宣言する.
+     * <p>
+     * {@link org.deviceconnect.server.DConnectServerEventListener#onReceivedHttpRequest(HttpRequest, HttpResponse)}
+     * の中で呼び出した場合、サーバーはレスポンスの送信を保留し、ハンドルの
+     * {@link PendingHttpResponse#complete()}が呼び出された時点でレスポンスを送信する。
+     * </p>
+     * 
+     * @return 非同期レスポンスのハンドル
+     */
+    public synchronized PendingHttpResponse suspend() {
+        if (mPending == null) {
+            mPending = new PendingHttpResponse(this);
+        }
+        return mPending;
+    }
+
+    /**
+     * レスポンスが非同期で返却されるかを確認する.
+     * 
+     * @return 非同期で返却される場合はtrue、それ以外はfalse
+     */
+    public synchronized boolean isSuspended() {
+        return mPending != null;
+    }
+
+    /**
+     * 非同期レスポンスのハンドルを取得する.
+     * 
+     * @return 非同期レスポンスのハンドル。{@link #suspend()}が呼ばれていない場合はnull
+     */
+    public synchronized PendingHttpResponse getPendingResponse() {
+        return mPending;
+    }
 }
@@ -0,0 +1,112 @@
+/*
+ PendingHttpResponse.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.server.http;
+
+/**
+ * 非同期で返却されるHttpレスポンスのハンドル.
+ * <p>
+ * {@link HttpResponse#suspend()}で取得する。
+ * リスナーはレスポンスの内容を設定した後に{@link #complete()}を呼び出すことで、
+ * サーバーにレスポンスの送信を依頼する。
+ * </p>
+ *
+ * @author NTT DOCOMO, INC.
+ */
+public final class PendingHttpResponse {
+
+    /** レスポンス. */
+    private final HttpResponse mResponse;
+
+    /** 完了通知を受けるリスナー. */
+    private OnCompleteListener mListener;
+
+    /** 完了フラグ. */
+    private boolean mCompleted;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param response 非同期で返却するレスポンス
+     */
+    PendingHttpResponse(final HttpResponse response) {
+        mResponse = response;
+    }
+
+    /**
+     * 非同期で返却するレスポンスを取得する.
+     *
+     * @return レスポンス
+     */
+    public HttpResponse getResponse() {
+        return mResponse;
+    }
+
+    /**
+     * レスポンスの設定が完了したことを通知する.
+     * <p>
+     * 2回目以降の呼び出しは無視する。
+     * </p>
+     *
+     * @return 完了を受け付けた場合はtrue、既に完了していた場合はfalse
+     */
+    public boolean complete() {
+        OnCompleteListener listener;
+        synchronized (this) {
+            if (mCompleted) {
+                return false;
+            }
+            mCompleted = true;
+            listener = mListener;
+        }
+        if (listener != null) {
+            listener.onComplete(mResponse);
+        }
+        return true;
+    }
+
+    /**
+     * レスポンスの設定が完了しているかを確認する.
+     *
+     * @return 完了している場合はtrue、それ以外はfalse
+     */
+    public synchronized boolean isCompleted() {
+        return mCompleted;
+    }
+
+    /**
+     * 完了通知を受けるリスナーを設定する.
+     * <p>
+     * 既に完了している場合には、このメソッドの中でリスナーを呼び出す。
+     * </p>
+     *
+     * @param listener リスナー
+     */
+    public void setOnCompleteListener(final OnCompleteListener listener) {
+        boolean completed;
+        synchronized (this) {
+            mListener = listener;
+            completed = mCompleted;
+        }
+        if (completed && listener != null) {
+            listener.onComplete(mResponse);
+        }
+    }
+
+    /**
+     * レスポンスの完了通知を受けるリスナー.
+     *
+     * @author NTT DOCOMO, INC.
+     */
+    public interface OnCompleteListener {
+        /**
+         * レスポンスの設定が完了した時に呼び出される.
+         *
+         * @param response レスポンス
+         */
+        void onComplete(HttpResponse response);
+    }
+}
@@ -19,5 +19,17 @@ public interface DConnectWebSocket {
 	 * @param event イベントメッセージ
 	 */
 	void sendEvent(String event);
+
+	/**
+	 * クライアントとの接続を切断します.
+	 */
+	void disconnect();
+
+	/**
+	 * イベントメッセージの送信キューを取得します.
+	 * 
+	 * @return 送信キュー
+	 */
+	WebSocketEventQueue getEventQueue();
 	
 }
@@ -0,0 +1,37 @@
+/*
+ WebSocketEvent.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.server.websocket;
+
+/**
+ * WebSocketで送信するイベント.
+ * <p>
+ * 送信するメッセージは、送信キューから取り出されて実際に送信される直前に作成する。
+ * そのため、破棄されたりまとめられたりしたイベントのメッセージは作成されない。
+ * </p>
+ *
+ * @author NTT DOCOMO, INC.
+ */
+public interface WebSocketEvent {
+
+    /**
+     * 同じ種類のイベントを識別するキーを取得する.
+     * <p>
+     * {@link WebSocketEventQueue.OverflowPolicy#COALESCE}の場合、送信キューが上限に達した時に
+     * キーが同じで未送信のイベントを新しいイベントで置き換える。
+     * </p>
+     *
+     * @return キー。まとめない場合はnull
+     */
+    String getKey();
+
+    /**
+     * クライアントに送信するメッセージを作成する.
+     *
+     * @return メッセージ。送信しない場合はnull
+     */
+    String createMessage();
+}
@@ -0,0 +1,342 @@
+/*
+ WebSocketEventQueue.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.server.websocket;
+
+import java.util.LinkedList;
+import java.util.ListIterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Logger;
+
+/**
+ * WebSocket毎のイベント送信キュー.
+ * <p>
+ * イベントはキューに追加するだけで呼び出し元には戻り、実際の送信はWebSocket毎に1つの送信処理が
+ * 共有スレッドプール上で順番に行う。送信処理は一度に{@value #MAX_EVENTS_PER_RUN}件まで送信したら
+ * スレッドを明け渡すため、イベントの多いクライアントがスレッドを占有することはない。
+ * </p>
+ * <p>
+ * キューには上限があり、上限に達した場合の振る舞いは{@link OverflowPolicy}で指定する。
+ * </p>
+ * <p>
+ * 1件の送信が終わらないWebSocketは共有スレッドを占有してしまうため、
+ * {@link #checkSendTimeout(long)}で送信時間を監視して切断する。
+ * </p>
+ *
+ * @author NTT DOCOMO, INC.
+ */
+public final class WebSocketEventQueue {
+
+    /**
+     * キューが上限に達した場合の振る舞い.
+     */
+    public enum OverflowPolicy {
+        /** 最も古いイベントを破棄する. */
+        DROP_OLDEST,
+
+        /**
+         * キーが同じで未送信のイベントを新しいイベントで置き換える.
+         * 置き換えられるイベントが無い場合は最も古いイベントを破棄する。
+         * キューに空きがある間は置き換えずに全てのイベントを送信する。
+         */
+        COALESCE,
+
+        /** WebSocketを切断する. */
+        DISCONNECT,
+    }
+
+    /** 1回の送信処理で送信するイベントの最大数. */
+    static final int MAX_EVENTS_PER_RUN = 16;
+
+    /** ロガー. */
+    private final Logger mLogger = Logger.getLogger("dconnect.server");
+
+    /** 送信先のWebSocket. */
+    private final DConnectWebSocket mSocket;
+
+    /** 送信処理を実行するExecutor. */
+    private final Executor mExecutor;
+
+    /** キューの上限. */
+    private final int mCapacity;
+
+    /** キューが上限に達した場合の振る舞い. */
+    private final OverflowPolicy mPolicy;
+
+    /** 未送信のイベント. */
+    private final LinkedList<WebSocketEvent> mQueue = new LinkedList<WebSocketEvent>();
+
+    /** 送信処理を実行中または実行待ちか. */
+    private boolean mScheduled;
+
+    /** キューが閉じられたか. */
+    private boolean mClosed;
+
+    /** 送信したイベント数. */
+    private long mSentCount;
+
+    /** 破棄したイベント数. */
+    private long mDroppedCount;
+
+    /** 新しいイベントで置き換えたイベント数. */
+    private long mCoalescedCount;
+
+    /** 送信中のイベントの送信を開始した時刻[msec]. 送信中でない場合は0. */
+    private volatile long mSendStartedAt;
+
+    /** 送信処理. */
+    private final Runnable mWriter = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * コンストラクタ.
+     *
+     * @param socket 送信先のWebSocket
+     * @param executor 送信処理を実行するExecutor
+     * @param capacity キューの上限
+     * @param policy キューが上限に達した場合の振る舞い
+     */
+    public WebSocketEventQueue(final DConnectWebSocket socket, final Executor executor,
+            final int capacity, final OverflowPolicy policy) {
+        if (socket == null) {
+            throw new IllegalArgumentException("socket must not be null.");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null.");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be larger than 0.");
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("policy must not be null.");
+        }
+        mSocket = socket;
+        mExecutor = executor;
+        mCapacity = capacity;
+        mPolicy = policy;
+    }
+
+    /**
+     * イベントをキューに追加する.
+     *
+     * @param event イベント
+     * @return キューに追加した場合はtrue、破棄した場合はfalse
+     */
+    public boolean offer(final WebSocketEvent event) {
+        if (event == null) {
+            throw new IllegalArgumentException("event must not be null.");
+        }
+
+        boolean schedule = false;
+        synchronized (this) {
+            if (mClosed) {
+                mDroppedCount++;
+                return false;
+            }
+
+            if (mQueue.size() >= mCapacity) {
+                if (mPolicy == OverflowPolicy.COALESCE && coalesce(event)) {
+                    return true;
+                }
+                if (mPolicy == OverflowPolicy.DISCONNECT) {
+                    mDroppedCount += mQueue.size() + 1;
+                    mQueue.clear();
+                    mClosed = true;
+                } else {
+                    mQueue.removeFirst();
+                    mDroppedCount++;
+                }
+            }
+
+            if (!mClosed) {
+                mQueue.addLast(event);
+                if (!mScheduled) {
+                    mScheduled = true;
+                    schedule = true;
+                }
+            }
+        }
+
+        if (!schedule) {
+            if (isClosed()) {
+                mLogger.warning("WebSocket event queue overflowed. Disconnecting.");
+                mSocket.disconnect();
+                return false;
+            }
+            return true;
+        }
+
+        try {
+            mExecutor.execute(mWriter);
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                mScheduled = false;
+            }
+            mLogger.warning("Failed to start the WebSocket event writer. " + e.toString());
+        }
+        return true;
+    }
+
+    /**
+     * キーが同じで未送信のイベントを新しいイベントで置き換える.
+     * <p>
+     * このインスタンスのロックを取得した状態で呼び出すこと。
+     * </p>
+     *
+     * @param event 新しいイベント
+     * @return 置き換えた場合はtrue、キーが同じイベントが無い場合はfalse
+     */
+    private boolean coalesce(final WebSocketEvent event) {
+        if (event.getKey() == null) {
+            return false;
+        }
+        for (ListIterator<WebSocketEvent> it = mQueue.listIterator(); it.hasNext();) {
+            if (event.getKey().equals(it.next().getKey())) {
+                it.set(event);
+                mCoalescedCount++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * キューを閉じて、未送信のイベントを破棄する.
+     * <p>
+     * WebSocketが閉じられた時に呼び出すこと。以降に追加されたイベントは破棄する。
+     * </p>
+     */
+    public synchronized void close() {
+        mDroppedCount += mQueue.size();
+        mQueue.clear();
+        mClosed = true;
+    }
+
+    /**
+     * キューが閉じられているかを確認する.
+     *
+     * @return 閉じられている場合はtrue、それ以外はfalse
+     */
+    public synchronized boolean isClosed() {
+        return mClosed;
+    }
+
+    /**
+     * 未送信のイベント数を取得する.
+     *
+     * @return 未送信のイベント数
+     */
+    public synchronized int getDepth() {
+        return mQueue.size();
+    }
+
+    /**
+     * 送信したイベント数を取得する.
+     *
+     * @return 送信したイベント数
+     */
+    public synchronized long getSentCount() {
+        return mSentCount;
+    }
+
+    /**
+     * 破棄したイベント数を取得する.
+     *
+     * @return 破棄したイベント数
+     */
+    public synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * 新しいイベントで置き換えたイベント数を取得する.
+     *
+     * @return 置き換えたイベント数
+     */
+    public synchronized long getCoalescedCount() {
+        return mCoalescedCount;
+    }
+
+    /**
+     * イベントの送信がタイムアウト時間以上終わっていない場合、キューを閉じてWebSocketを切断する.
+     * <p>
+     * 送信先のクライアントが受信しないまま送信が止まっている場合に、
+     * 送信処理のスレッドを解放するために定期的に呼び出すこと。
+     * </p>
+     *
+     * @param timeout タイムアウト時間[msec]
+     * @return 切断した場合はtrue、それ以外はfalse
+     */
+    public boolean checkSendTimeout(final long timeout) {
+        long startedAt = mSendStartedAt;
+        if (startedAt == 0 || System.currentTimeMillis() - startedAt < timeout) {
+            return false;
+        }
+        synchronized (this) {
+            if (mClosed) {
+                return false;
+            }
+        }
+        mLogger.warning("WebSocket event send timed out. Disconnecting.");
+        close();
+        mSocket.disconnect();
+        return true;
+    }
+
+    /**
+     * キューが空になるまでイベントを送信する.
+     * <p>
+     * {@value #MAX_EVENTS_PER_RUN}件送信した時点でイベントが残っている場合は、
+     * 他のWebSocketの送信処理を先に実行させるために、送信処理を実行し直す。
+     * </p>
+     */
+    private void drain() {
+        for (int count = 0;; count++) {
+            WebSocketEvent event;
+            synchronized (this) {
+                if (mClosed || mQueue.isEmpty()) {
+                    mScheduled = false;
+                    return;
+                }
+                if (count >= MAX_EVENTS_PER_RUN) {
+                    break;
+                }
+                event = mQueue.poll();
+            }
+
+            try {
+                String message = event.createMessage();
+                if (message != null) {
+                    mSendStartedAt = System.currentTimeMillis();
+                    try {
+                        mSocket.sendEvent(message);
+                    } finally {
+                        mSendStartedAt = 0;
+                    }
+                    synchronized (this) {
+                        mSentCount++;
+                    }
+                }
+            } catch (RuntimeException e) {
+                mLogger.warning("Exception in the WebSocketEventQueue#drain() method. " + e.toString());
+            }
+        }
+
+        try {
+            mExecutor.execute(mWriter);
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                mScheduled = false;
+            }
+            mLogger.warning("Failed to restart the WebSocket event writer. " + e.toString());
+        }
+    }
+}
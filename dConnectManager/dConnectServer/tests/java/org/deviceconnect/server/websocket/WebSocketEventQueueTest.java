@@ -0,0 +1,306 @@
+/*
+ WebSocketEventQueueTest.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.server.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.deviceconnect.server.websocket.WebSocketEventQueue.OverflowPolicy;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * {@link WebSocketEventQueue}のテスト.
+ *
+ * @author NTT DOCOMO, INC.
+ */
+public class WebSocketEventQueueTest {
+
+    /** 送信処理を溜めておき、テストから実行するExecutor. */
+    private ManualExecutor mExecutor;
+
+    /** 送信されたメッセージを記録するWebSocket. */
+    private RecordingWebSocket mSocket;
+
+    /**
+     * テストの準備.
+     */
+    @Before
+    public void setUp() {
+        mExecutor = new ManualExecutor();
+        mSocket = new RecordingWebSocket();
+    }
+
+    /**
+     * COALESCEでも、キューに空きがある間はキーが同じイベントを置き換えないことを確認する.
+     */
+    @Test
+    public void testCoalesceKeepsEventsWhileQueueHasRoom() {
+        WebSocketEventQueue queue = new WebSocketEventQueue(mSocket, mExecutor, 10, OverflowPolicy.COALESCE);
+        assertTrue(queue.offer(event("k", "1")));
+        assertTrue(queue.offer(event("k", "2")));
+        assertTrue(queue.offer(event("k", "3")));
+        mExecutor.runAll();
+
+        assertEquals(Arrays.asList("1", "2", "3"), mSocket.mMessages);
+        assertEquals(0, queue.getCoalescedCount());
+        assertEquals(0, queue.getDroppedCount());
+    }
+
+    /**
+     * COALESCEで上限に達した場合、キーが同じ未送信のイベントを置き換えることを確認する.
+     */
+    @Test
+    public void testCoalesceReplacesSameKeyOnOverflow() {
+        WebSocketEventQueue queue = new WebSocketEventQueue(mSocket, mExecutor, 2, OverflowPolicy.COALESCE);
+        assertTrue(queue.offer(event("a", "a1")));
+        assertTrue(queue.offer(event("b", "b1")));
+        assertTrue(queue.offer(event("a", "a2")));
+        assertEquals(2, queue.getDepth());
+        mExecutor.runAll();
+
+        assertEquals(Arrays.asList("a2", "b1"), mSocket.mMessages);
+        assertEquals(1, queue.getCoalescedCount());
+        assertEquals(0, queue.getDroppedCount());
+    }
+
+    /**
+     * COALESCEで上限に達し、キーが同じイベントが無い場合は最も古いイベントを破棄することを確認する.
+     */
+    @Test
+    public void testCoalesceDropsOldestWithoutSameKey() {
+        WebSocketEventQueue queue = new WebSocketEventQueue(mSocket, mExecutor, 2, OverflowPolicy.COALESCE);
+        assertTrue(queue.offer(event("a", "a1")));
+        assertTrue(queue.offer(event("b", "b1")));
+        assertTrue(queue.offer(event(null, "c1")));
+        mExecutor.runAll();
+
+        assertEquals(Arrays.asList("b1", "c1"), mSocket.mMessages);
+        assertEquals(0, queue.getCoalescedCount());
+        assertEquals(1, queue.getDroppedCount());
+    }
+
+    /**
+     * DROP_OLDESTで上限に達した場合、最も古いイベントを破棄することを確認する.
+     */
+    @Test
+    public void testDropOldest() {
+        WebSocketEventQueue queue = new WebSocketEventQueue(mSocket, mExecutor, 2, OverflowPolicy.DROP_OLDEST);
+        assertTrue(queue.offer(event("k", "1")));
+        assertTrue(queue.offer(event("k", "2")));
+        assertTrue(queue.offer(event("k", "3")));
+        mExecutor.runAll();
+
+        assertEquals(Arrays.asList("2", "3"), mSocket.mMessages);
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(2, queue.getSentCount());
+    }
+
+    /**
+     * DISCONNECTで上限に達した場合、WebSocketを切断して以降のイベントを破棄することを確認する.
+     */
+    @Test
+    public void testDisconnect() {
+        WebSocketEventQueue queue = new WebSocketEventQueue(mSocket, mExecutor, 1, OverflowPolicy.DISCONNECT);
+        assertTrue(queue.offer(event(null, "1")));
+        assertFalse(queue.offer(event(null, "2")));
+
+        assertTrue(mSocket.mDisconnected);
+        assertTrue(queue.isClosed());
+        assertEquals(2, queue.getDroppedCount());
+        assertFalse(queue.offer(event(null, "3")));
+        mExecutor.runAll();
+        assertTrue(mSocket.mMessages.isEmpty());
+    }
+
+    /**
+     * 閉じたキューのイベントは送信されないことを確認する.
+     */
+    @Test
+    public void testClose() {
+        WebSocketEventQueue queue = new WebSocketEventQueue(mSocket, mExecutor, 10, OverflowPolicy.DROP_OLDEST);
+        assertTrue(queue.offer(event(null, "1")));
+        queue.close();
+        mExecutor.runAll();
+
+        assertTrue(mSocket.mMessages.isEmpty());
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(0, queue.getDepth());
+    }
+
+    /**
+     * 1回の送信処理で送信するイベント数に上限があり、残りは送信処理を実行し直して送信することを確認する.
+     */
+    @Test
+    public void testWriterYieldsAfterBatch() {
+        int total = WebSocketEventQueue.MAX_EVENTS_PER_RUN + 4;
+        WebSocketEventQueue queue = new WebSocketEventQueue(mSocket, mExecutor, 64, OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < total; i++) {
+            assertTrue(queue.offer(event(null, String.valueOf(i))));
+        }
+        assertEquals(1, mExecutor.mTasks.size());
+
+        mExecutor.runNext();
+        assertEquals(WebSocketEventQueue.MAX_EVENTS_PER_RUN, mSocket.mMessages.size());
+        assertEquals(1, mExecutor.mTasks.size());
+
+        mExecutor.runNext();
+        assertEquals(total, mSocket.mMessages.size());
+        assertEquals(0, mExecutor.mTasks.size());
+        assertEquals("0", mSocket.mMessages.get(0));
+        assertEquals(String.valueOf(total - 1), mSocket.mMessages.get(total - 1));
+    }
+
+    /**
+     * 送信がタイムアウト時間以上終わらないWebSocketを切断し、送信中のスレッドを解放することを確認する.
+     *
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    @Test
+    public void testSendTimeoutDisconnects() throws InterruptedException {
+        final StalledWebSocket socket = new StalledWebSocket();
+        Executor executor = new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                new Thread(command).start();
+            }
+        };
+        WebSocketEventQueue queue = new WebSocketEventQueue(socket, executor, 10, OverflowPolicy.DROP_OLDEST);
+        assertFalse(queue.checkSendTimeout(10));
+        assertTrue(queue.offer(event(null, "1")));
+        assertTrue(queue.offer(event(null, "2")));
+        assertTrue(socket.mSending.await(5, TimeUnit.SECONDS));
+
+        assertFalse(queue.checkSendTimeout(10000));
+        Thread.sleep(50);
+        assertTrue(queue.checkSendTimeout(10));
+        assertTrue(queue.isClosed());
+        assertTrue(socket.mReleased.await(5, TimeUnit.SECONDS));
+        assertEquals(1, queue.getDroppedCount());
+        assertFalse(queue.checkSendTimeout(10));
+    }
+
+    /**
+     * テスト用のイベントを作成する.
+     *
+     * @param key キー
+     * @param message メッセージ
+     * @return イベント
+     */
+    private static WebSocketEvent event(final String key, final String message) {
+        return new WebSocketEvent() {
+            @Override
+            public String getKey() {
+                return key;
+            }
+
+            @Override
+            public String createMessage() {
+                return message;
+            }
+        };
+    }
+
+    /**
+     * 送信処理を溜めておき、テストから実行するExecutor.
+     */
+    private static class ManualExecutor implements Executor {
+        /** 実行待ちの処理. */
+        private final LinkedList<Runnable> mTasks = new LinkedList<Runnable>();
+
+        @Override
+        public void execute(final Runnable command) {
+            mTasks.add(command);
+        }
+
+        /**
+         * 実行待ちの処理を1つ実行する.
+         */
+        void runNext() {
+            mTasks.poll().run();
+        }
+
+        /**
+         * 実行待ちの処理が無くなるまで実行する.
+         */
+        void runAll() {
+            while (!mTasks.isEmpty()) {
+                runNext();
+            }
+        }
+    }
+
+    /**
+     * 切断されるまで送信が終わらないWebSocket.
+     */
+    private static class StalledWebSocket implements DConnectWebSocket {
+        /** 送信を開始したことを通知するラッチ. */
+        private final CountDownLatch mSending = new CountDownLatch(1);
+
+        /** 切断されて送信が終わったことを通知するラッチ. */
+        private final CountDownLatch mReleased = new CountDownLatch(1);
+
+        /** 切断を通知するラッチ. */
+        private final CountDownLatch mDisconnected = new CountDownLatch(1);
+
+        @Override
+        public void sendEvent(final String event) {
+            mSending.countDown();
+            try {
+                mDisconnected.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mReleased.countDown();
+        }
+
+        @Override
+        public void disconnect() {
+            mDisconnected.countDown();
+        }
+
+        @Override
+        public WebSocketEventQueue getEventQueue() {
+            return null;
+        }
+    }
+
+    /**
+     * 送信されたメッセージを記録するWebSocket.
+     */
+    private static class RecordingWebSocket implements DConnectWebSocket {
+        /** 送信されたメッセージ. */
+        private final List<String> mMessages = new ArrayList<String>();
+
+        /** 切断されたか. */
+        private boolean mDisconnected;
+
+        @Override
+        public void sendEvent(final String event) {
+            mMessages.add(event);
+        }
+
+        @Override
+        public void disconnect() {
+            mDisconnected = true;
+        }
+
+        @Override
+        public WebSocketEventQueue getEventQueue() {
+            return null;
+        }
+    }
+}
@@ -22,7 +22,9 @@ import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.URLDecoder;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.security.KeyStore;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -37,6 +39,12 @@ import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TimeZone;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
@@ -123,8 +131,21 @@ public abstract class NanoHTTPD {
     private ServerSocket myServerSocket;
     private SSLServerSocketFactory sslServerSocketFactory;
     private Set<Socket> openConnections = new HashSet<Socket>();
+    private Map<InetAddress, Integer> connectionsPerAddress = new HashMap<InetAddress, Integer>();
     private Thread myThread;
 
+    /** Read timeout of the accepted sockets (in milliseconds). */
+    private int socketReadTimeout = SOCKET_READ_TIMEOUT;
+
+    /** Maximum number of connections from one remote address. 0 means unlimited. */
+    private int maxConnectionsPerAddress;
+
+    /** Time to wait for the next request on a persistent connection (in milliseconds). */
+    private int keepAliveTimeout = SOCKET_READ_TIMEOUT;
+
+    /** Maximum number of requests served on one connection. 0 means unlimited. */
+    private int maxRequestsPerConnection;
+
     /** ファイアウォール. */
     private Firewall firewall;
 
@@ -223,6 +244,59 @@ public abstract class NanoHTTPD {
         }
     }
 
+    /**
+     * Call before start() to change the read timeout of the accepted sockets.
+     * 
+     * @param socketReadTimeout timeout in milliseconds. 0 means infinite.
+     */
+    public void setSocketReadTimeout(int socketReadTimeout) {
+        if (socketReadTimeout < 0) {
+            throw new IllegalArgumentException("socketReadTimeout must not be negative.");
+        }
+        this.socketReadTimeout = socketReadTimeout;
+    }
+
+    /**
+     * Call before start() to change how long a persistent connection waits
+     * for the next request before it is closed.
+     * 
+     * @param keepAliveTimeout timeout in milliseconds. 0 means infinite.
+     */
+    public void setKeepAliveTimeout(int keepAliveTimeout) {
+        if (keepAliveTimeout < 0) {
+            throw new IllegalArgumentException("keepAliveTimeout must not be negative.");
+        }
+        this.keepAliveTimeout = keepAliveTimeout;
+    }
+
+    /**
+     * Call before start() to limit the number of requests served on one
+     * connection. The last response is sent with "Connection: close".
+     * 
+     * @param maxRequestsPerConnection maximum number of requests. 0 means
+     *            unlimited.
+     */
+    public void setMaxRequestsPerConnection(int maxRequestsPerConnection) {
+        if (maxRequestsPerConnection < 0) {
+            throw new IllegalArgumentException("maxRequestsPerConnection must not be negative.");
+        }
+        this.maxRequestsPerConnection = maxRequestsPerConnection;
+    }
+
+    /**
+     * Call before start() to limit the number of connections from one remote
+     * address. Connections over the limit are answered with 503.
+     * 
+     * @param maxConnectionsPerAddress maximum number of connections. 0 means
+     *            unlimited.
+     */
+    public void setMaxConnectionsPerAddress(int maxConnectionsPerAddress) {
+        if (maxConnectionsPerAddress < 0) {
+            throw new IllegalArgumentException("maxConnectionsPerAddress must not be negative.");
+        }
+        this.maxConnectionsPerAddress = maxConnectionsPerAddress;
+    }
+
     /**
      * Call before start() to serve over HTTPS instead of HTTP
      */
@@ -258,41 +332,26 @@ public abstract class NanoHTTPD {
                             continue;
                         }
 
-                        registerConnection(finalAccept);
-                        finalAccept.setSoTimeout(SOCKET_READ_TIMEOUT);
+                        finalAccept.setSoTimeout(socketReadTimeout);
+                        // headers and body are written separately. Without this a
+                        // persistent connection waits for the delayed ACK of the
+                        // client on every response.
+                        finalAccept.setTcpNoDelay(true);
+                        if (!registerConnection(finalAccept)) {
+                            rejectConnection(finalAccept);
+                            continue;
+                        }
                         final InputStream inputStream = finalAccept.getInputStream();
                         if (inputStream == null) {
                             safeClose(finalAccept);
-                        } else {
-                            asyncRunner.exec(new Runnable() {
-                                @Override
-                                public void run() {
-                                    OutputStream outputStream = null;
-                                    try {
-                                        outputStream = finalAccept.getOutputStream();
-                                        TempFileManager tempFileManager = tempFileManagerFactory.create();
-                                        HTTPSession session = new HTTPSession(tempFileManager, inputStream,
-                                                outputStream);
-                                        while (!finalAccept.isClosed()) {
-                                            session.execute();
-                                        }
-                                    } catch (Exception e) {
-                                        // When the socket is closed by the
-                                        // client, we throw our own
-                                        // SocketException
-                                        // to break the "keep alive" loop above.
-                                        if (!(e instanceof SocketException && "NanoHttpd Shutdown".equals(e
-                                                .getMessage()))) {
-                                            e.printStackTrace();
-                                        }
-                                    } finally {
-                                        safeClose(outputStream);
-                                        safeClose(inputStream);
-                                        safeClose(finalAccept);
-                                        unRegisterConnection(finalAccept);
-                                    }
-                                }
-                            });
+                            unRegisterConnection(finalAccept);
+                            continue;
+                        }
+                        try {
+                            asyncRunner.exec(new ClientHandler(finalAccept, inputStream));
+                        } catch (RejectedExecutionException e) {
+                            unRegisterConnection(finalAccept);
+                            rejectConnection(finalAccept);
                         }
                     } catch (IOException e) {
                     }
@@ -305,6 +364,108 @@ public abstract class NanoHTTPD {
         myThread.start();
     }
 
+    /**
+     * Answers a connection that cannot be served with 503 and closes it.
+     * 
+     * @param socket the rejected connection.
+     */
+    private void rejectConnection(Socket socket) {
+        try {
+            Response response = new Response(Response.Status.SERVICE_UNAVAILABLE, MIME_PLAINTEXT,
+                    "Server is busy.");
+            response.addHeader("Connection", "close");
+            response.addHeader("Retry-After", "1");
+            response.send(socket.getOutputStream());
+        } catch (IOException e) {
+            // the connection is closed anyway.
+        } finally {
+            safeClose(socket);
+        }
+    }
+
+    /**
+     * Handles one client connection.
+     * <p>
+     * The connection is served in a "keep alive" loop. When serve() returns a
+     * {@link DeferredResponse}, the loop is left without closing the socket so
+     * that no thread is held while the response is pending. The handler is
+     * executed again on the {@link AsyncRunner} once the response is resumed.
+     * </p>
+     */
+    private class ClientHandler implements Runnable {
+        private final Socket acceptSocket;
+        private final InputStream inputStream;
+        private OutputStream outputStream;
+        private HTTPSession session;
+        private Response resumeResponse;
+
+        private ClientHandler(Socket acceptSocket, InputStream inputStream) {
+            this.acceptSocket = acceptSocket;
+            this.inputStream = inputStream;
+        }
+
+        /**
+         * Sends the deferred response and continues the "keep alive" loop.
+         */
+        private void resume(Response response) {
+            synchronized (this) {
+                resumeResponse = response;
+            }
+            try {
+                asyncRunner.exec(this);
+            } catch (RejectedExecutionException e) {
+                safeClose(acceptSocket);
+                unRegisterConnection(acceptSocket);
+            }
+        }
+
+        @Override
+        public void run() {
+            boolean suspended = false;
+            try {
+                Response response;
+                synchronized (this) {
+                    response = resumeResponse;
+                    resumeResponse = null;
+                }
+                if (session == null) {
+                    outputStream = acceptSocket.getOutputStream();
+                    TempFileManager tempFileManager = tempFileManagerFactory.create();
+                    session = new HTTPSession(tempFileManager, inputStream, outputStream);
+                    session.socket = acceptSocket;
+                } else if (response != null) {
+                    session.sendDeferred(response);
+                }
+                while (!acceptSocket.isClosed()) {
+                    session.execute();
+                    DeferredResponse deferred = session.getDeferredResponse();
+                    if (deferred != null) {
+                        // park the connection until the response is resumed.
+                        suspended = true;
+                        deferred.attach(this);
+                        return;
+                    }
+                }
+            } catch (Exception e) {
+                // When the socket is closed by the
+                // client, we throw our own
+                // SocketException
+                // to break the "keep alive" loop above.
+                if (!(e instanceof SocketException && "NanoHttpd Shutdown".equals(e
+                        .getMessage()))) {
+                    e.printStackTrace();
+                }
+            } finally {
+                if (!suspended) {
+                    safeClose(outputStream);
+                    safeClose(inputStream);
+                    safeClose(acceptSocket);
+                    unRegisterConnection(acceptSocket);
+                }
+            }
+        }
+    }
+
     /**
      * Stop the server.
      */
@@ -313,6 +474,9 @@ public abstract class NanoHTTPD {
             safeClose(myServerSocket);
             closeAllConnections();
             myThread.join();
+            if (asyncRunner instanceof BoundedAsyncRunner) {
+                ((BoundedAsyncRunner) asyncRunner).shutdown();
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -322,9 +486,18 @@ public abstract class NanoHTTPD {
      * Registers that a new connection has been set up.
      * 
      * @param socket the {@link Socket} for the connection.
+     * @return false if the remote address has too many connections.
      */
-    public synchronized void registerConnection(Socket socket) {
+    public synchronized boolean registerConnection(Socket socket) {
+        InetAddress address = socket.getInetAddress();
+        Integer count = connectionsPerAddress.get(address);
+        int newCount = (count == null) ? 1 : count + 1;
+        if (maxConnectionsPerAddress > 0 && newCount > maxConnectionsPerAddress) {
+            return false;
+        }
+        connectionsPerAddress.put(address, newCount);
         openConnections.add(socket);
+        return true;
     }
 
     /**
@@ -333,7 +506,16 @@ public abstract class NanoHTTPD {
      * @param socket the {@link Socket} for the connection.
      */
     public synchronized void unRegisterConnection(Socket socket) {
-        openConnections.remove(socket);
+        if (!openConnections.remove(socket)) {
+            return;
+        }
+        InetAddress address = socket.getInetAddress();
+        Integer count = connectionsPerAddress.get(address);
+        if (count == null || count <= 1) {
+            connectionsPerAddress.remove(address);
+        } else {
+            connectionsPerAddress.put(address, count - 1);
+        }
     }
 
     /**
@@ -585,6 +767,67 @@ public abstract class NanoHTTPD {
         }
     }
 
+    /**
+     * Threading strategy with a bounded pool of named threads.
+     * <p/>
+     * <p>
+     * At most <code>maxThreads</code> connections are served at the same time
+     * and at most <code>queueSize</code> connections wait for a free thread.
+     * Idle threads are terminated after a minute. When both are exhausted,
+     * {@link #exec(Runnable)} throws {@link RejectedExecutionException} and
+     * the server answers the connection with 503.
+     * </p>
+     */
+    public static class BoundedAsyncRunner implements AsyncRunner {
+        private final ThreadPoolExecutor executor;
+
+        public BoundedAsyncRunner(int maxThreads, int queueSize) {
+            if (maxThreads <= 0) {
+                throw new IllegalArgumentException("maxThreads must be larger than 0.");
+            }
+            if (queueSize <= 0) {
+                throw new IllegalArgumentException("queueSize must be larger than 0.");
+            }
+            executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+                        private final AtomicInteger requestCount = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            return new Thread(r, "NanoHttpd Request Processor (#"
+                                    + requestCount.incrementAndGet() + ")");
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+        }
+
+        @Override
+        public void exec(Runnable code) {
+            executor.execute(code);
+        }
+
+        /**
+         * @return the number of threads serving connections.
+         */
+        public int getActiveCount() {
+            return executor.getActiveCount();
+        }
+
+        /**
+         * @return the number of connections waiting for a thread.
+         */
+        public int getQueuedCount() {
+            return executor.getQueue().size();
+        }
+
+        /**
+         * Stops accepting new work. Running connections are not interrupted.
+         */
+        public void shutdown() {
+            executor.shutdown();
+        }
+    }
+
     /**
      * Default strategy for creating and cleaning up temporary files.
      * <p/>
@@ -685,6 +928,18 @@ public abstract class NanoHTTPD {
          * Use chunkedTransfer
          */
         private boolean chunkedTransfer;
+        /**
+         * File sent as the body instead of data, may be null.
+         */
+        private File file;
+        /**
+         * Offset of the part of the file to send.
+         */
+        private long fileOffset;
+        /**
+         * Length of the part of the file to send.
+         */
+        private long fileLength;
 
         /**
          * Default constructor: response = HTTP_OK, mime = MIME_HTML and your
@@ -723,6 +978,18 @@ public abstract class NanoHTTPD {
             header.put(name, value);
         }
 
+        /**
+         * Checks whether the header is set, ignoring the case of the name.
+         */
+        public boolean hasHeader(String name) {
+            for (String key : header.keySet()) {
+                if (key.equalsIgnoreCase(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
         /**
          * Sends given response to the socket.
          */
@@ -768,7 +1035,7 @@ public abstract class NanoHTTPD {
                     pw.print("Connection: keep-alive\r\n");
                 }
 
-                if (requestMethod != Method.HEAD && chunkedTransfer) {
+                if (requestMethod != Method.HEAD && chunkedTransfer && file == null) {
                     sendAsChunked(outputStream, pw);
                 } else {
                     sendAsFixedLength(outputStream, pw);
@@ -797,6 +1064,16 @@ public abstract class NanoHTTPD {
         }
 
         private void sendAsFixedLength(OutputStream outputStream, PrintWriter pw) throws IOException {
+            if (file != null) {
+                pw.print("Content-Length: " + fileLength + "\r\n");
+                pw.print("\r\n");
+                pw.flush();
+                if (requestMethod != Method.HEAD) {
+                    sendFile(outputStream);
+                }
+                return;
+            }
+
             int pending = data != null ? data.available() : 0; // This is to
                                                                // support
                                                                // partial
@@ -822,6 +1099,47 @@ public abstract class NanoHTTPD {
             }
         }
 
+        /**
+         * Copies the part of the file to the socket with FileChannel#transferTo
+         * instead of reading it through a heap buffer.
+         */
+        private void sendFile(OutputStream outputStream) throws IOException {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                FileChannel channel = in.getChannel();
+                WritableByteChannel out = Channels.newChannel(outputStream);
+                long position = fileOffset;
+                long remaining = fileLength;
+                while (remaining > 0) {
+                    long sent = channel.transferTo(position, remaining, out);
+                    if (sent <= 0) {
+                        break;
+                    }
+                    position += sent;
+                    remaining -= sent;
+                }
+            } finally {
+                safeClose(in);
+            }
+        }
+
+        /**
+         * Sends a part of the file as the body instead of data.
+         * 
+         * @param file the file to send
+         * @param offset offset of the part in bytes
+         * @param length length of the part in bytes
+         */
+        public void setFile(File file, long offset, long length) {
+            if (offset < 0 || length < 0) {
+                throw new IllegalArgumentException("offset and length must not be negative.");
+            }
+            this.file = file;
+            this.fileOffset = offset;
+            this.fileLength = length;
+            this.data = null;
+        }
+
         public Status getStatus() {
             return status;
         }
@@ -868,7 +1186,7 @@ public abstract class NanoHTTPD {
                     401, "Unauthorized"), FORBIDDEN(403, "Forbidden"), NOT_FOUND(404, "Not Found"), METHOD_NOT_ALLOWED(
                     405, "Method Not Allowed"), REQUEST_ENTITY_TOO_LARGE(413, "Request Entity Too Large"), RANGE_NOT_SATISFIABLE(
                     416, "Requested Range Not Satisfiable"), INTERNAL_ERROR(500, "Internal Server Error"), NOT_IMPLEMENTED(
-                    501, "Not Implemented");
+                    501, "Not Implemented"), SERVICE_UNAVAILABLE(503, "Service Unavailable");
             private final int requestStatus;
             private final String description;
 
@@ -887,6 +1205,67 @@ public abstract class NanoHTTPD {
         }
     }
 
+    /**
+     * HTTP response which is sent later.
+     * <p>
+     * Return one of these from serve() to release the connection thread while
+     * the response is being prepared, then call {@link #resume(Response)} from
+     * any thread to send the actual response. The response is written on the
+     * {@link AsyncRunner}.
+     * </p>
+     */
+    public static class DeferredResponse extends Response {
+        private ClientHandler handler;
+        private Response response;
+
+        public DeferredResponse() {
+            super(Status.OK, MIME_PLAINTEXT, (InputStream) null);
+        }
+
+        /**
+         * Sends the actual response for the deferred request.
+         * 
+         * @param response the response to send
+         * @return true if the response is accepted, false if already resumed
+         */
+        public boolean resume(Response response) {
+            if (response == null) {
+                throw new IllegalArgumentException("response is null.");
+            }
+            ClientHandler h;
+            synchronized (this) {
+                if (this.response != null) {
+                    return false;
+                }
+                this.response = response;
+                h = handler;
+            }
+            if (h != null) {
+                h.resume(response);
+            }
+            return true;
+        }
+
+        /**
+         * Binds the connection which waits for this response.
+         */
+        private void attach(ClientHandler handler) {
+            Response r;
+            synchronized (this) {
+                this.handler = handler;
+                r = response;
+            }
+            if (r != null) {
+                handler.resume(r);
+            }
+        }
+
+        @Override
+        protected void send(OutputStream outputStream) {
+            throw new IllegalStateException("DeferredResponse must not be sent.");
+        }
+    }
+
     public static final class ResponseException extends Exception {
 
         private final Response.Status status;
@@ -932,6 +1311,11 @@ public abstract class NanoHTTPD {
          */
         String getUri();
 
+        /**
+         * @return the path part of the URL as it was sent, before percent-decoding.
+         */
+        String getRawUri();
+
         String getQueryParameterString();
 
         Method getMethod();
@@ -956,11 +1340,23 @@ public abstract class NanoHTTPD {
         private int splitbyte;
         private int rlen;
         private String uri;
+
+        private String rawUri;
         private Method method;
         private Map<String, String> parms;
         private Map<String, String> headers;
         private CookieHandler cookies;
         private String queryParameterString;
+        private DeferredResponse deferredResponse;
+
+        /** The connection, used to switch between the idle and read timeouts. May be null. */
+        private Socket socket;
+        /** Number of requests received on this connection. */
+        private int requestCount;
+        /** Whether the connection is kept open after the current response. */
+        private boolean keepAlive;
+        /** Body of the current request. */
+        private BodyInputStream body;
 
         public HTTPSession(TempFileManager tempFileManager, InputStream inputStream, OutputStream outputStream) {
             this.tempFileManager = tempFileManager;
@@ -989,8 +1385,98 @@ public abstract class NanoHTTPD {
             return rlen;
         }
 
+        /**
+         * Returns the response which serve() deferred in the last execute().
+         * 
+         * @return the deferred response, or null if the response has been sent
+         */
+        public DeferredResponse getDeferredResponse() {
+            return deferredResponse;
+        }
+
+        /**
+         * Sends the response of the request which was deferred.
+         * 
+         * @param r the actual response
+         */
+        private void sendDeferred(Response r) {
+            deferredResponse = null;
+            sendResponse(r);
+        }
+
+        /**
+         * Sends the response and closes the connection unless it is kept
+         * alive for the next request.
+         */
+        private void sendResponse(Response r) {
+            cookies.unloadQueue(r);
+            r.setRequestMethod(method);
+            if (!keepAlive && !r.hasHeader("connection")) {
+                r.addHeader("Connection", "close");
+            }
+            r.send(outputStream);
+            if (!keepAlive) {
+                safeClose(outputStream);
+            }
+        }
+
+        /**
+         * Decides whether the connection can be reused after this request.
+         * <p>
+         * HTTP/1.1 connections are persistent unless the client asks to close
+         * them, HTTP/1.0 connections only when the client asks for keep-alive.
+         * A POST or PUT without Content-Length is read until the end of the
+         * stream like before, so the connection cannot be reused. Neither can
+         * a connection that is upgraded to another protocol.
+         * </p>
+         */
+        private boolean isKeepAlive(String protocol) {
+            String connection = headers.get("connection");
+            if (connection != null && connection.toLowerCase(Locale.US).contains("close")) {
+                return false;
+            }
+            if (headers.containsKey("upgrade")) {
+                return false;
+            }
+            if ((method == Method.POST || method == Method.PUT) && !headers.containsKey("content-length")) {
+                return false;
+            }
+            if (maxRequestsPerConnection > 0 && requestCount >= maxRequestsPerConnection) {
+                return false;
+            }
+            if ("HTTP/1.1".equalsIgnoreCase(protocol)) {
+                return true;
+            }
+            return connection != null && connection.toLowerCase(Locale.US).contains("keep-alive");
+        }
+
+        /**
+         * Returns the length of the request body, or -1 if it is read until
+         * the end of the stream.
+         */
+        private long getBodyLength() {
+            String contentLength = headers.get("content-length");
+            if (contentLength != null) {
+                try {
+                    return Long.parseLong(contentLength.trim());
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+            return keepAlive ? 0 : -1;
+        }
+
         @Override
         public void execute() throws IOException {
+            deferredResponse = null;
+            if (body != null) {
+                // skip the part of the previous body which the handler did not read.
+                body.skipRemaining();
+                body = null;
+            }
+            if (socket != null && requestCount > 0) {
+                socket.setSoTimeout(keepAliveTimeout);
+            }
             try {
                 // Read the first 8192 bytes.
                 // The full header should fit in here.
@@ -1003,7 +1489,14 @@ public abstract class NanoHTTPD {
                 {
                     int read = -1;
                     try {
-                        read = inputStream.read(buf, 0, BUFSIZE);
+                        // PushbackInputStream keeps reading from the socket after
+                        // the pushed back bytes, so do not ask for more than is
+                        // available when the next pipelined request is buffered.
+                        int available = inputStream.available();
+                        read = inputStream.read(buf, 0, available > 0 ? Math.min(available, BUFSIZE) : BUFSIZE);
+                        if (read != -1 && socket != null && requestCount > 0) {
+                            socket.setSoTimeout(socketReadTimeout);
+                        }
                     } catch (Exception e) {
                         safeClose(inputStream);
                         safeClose(outputStream);
@@ -1060,7 +1553,12 @@ public abstract class NanoHTTPD {
                     throw new ResponseException(Response.Status.BAD_REQUEST, "BAD REQUEST: Syntax error.");
                 }
 
+                requestCount++;
+                keepAlive = isKeepAlive(pre.get("protocol"));
+                body = new BodyInputStream(getBodyLength());
+
                 uri = pre.get("uri");
+                rawUri = pre.get("rawUri");
 
                 cookies = new CookieHandler(headers);
 
@@ -1069,11 +1567,10 @@ public abstract class NanoHTTPD {
                 if (r == null) {
                     throw new ResponseException(Response.Status.INTERNAL_ERROR,
                             "SERVER INTERNAL ERROR: Serve() returned a null response.");
+                } else if (r instanceof DeferredResponse) {
+                    deferredResponse = (DeferredResponse) r;
                 } else {
-                    cookies.unloadQueue(r);
-                    r.setRequestMethod(method);
-                    r.send(outputStream);
-
+                    sendResponse(r);
                 }
             } catch (SocketException e) {
                 // throw it out to close socket object (finalAccept)
@@ -1115,7 +1612,7 @@ public abstract class NanoHTTPD {
                 // Now read all the body and write it to f
                 byte[] buf = new byte[512];
                 while (rlen >= 0 && size > 0) {
-                    rlen = inputStream.read(buf, 0, (int) Math.min(size, 512));
+                    rlen = getInputStream().read(buf, 0, (int) Math.min(size, 512));
                     size -= rlen;
                     if (rlen > 0) {
                         randomAccessFile.write(buf, 0, rlen);
@@ -1215,17 +1712,19 @@ public abstract class NanoHTTPD {
                 int qmi = uri.indexOf('?');
                 if (qmi >= 0) {
                     decodeParms(uri.substring(qmi + 1), parms);
-                    uri = decodePercent(uri.substring(0, qmi));
+                    uri = uri.substring(0, qmi);
                 } else {
                     decodeParms(null, parms);
-                    uri = decodePercent(uri);
                 }
+                pre.put("rawUri", uri);
+                uri = decodePercent(uri);
 
                 // If there's another token, it's protocol version,
                 // followed by HTTP headers. Ignore version but parse headers.
                 // NOTE: this now forces header names lowercase since they are
                 // case insensitive and vary by client.
                 if (st.hasMoreTokens()) {
+                    pre.put("protocol", st.nextToken());
                     String line = in.readLine();
                     while (line != null && line.trim().length() > 0) {
                         int p = line.indexOf(':');
@@ -1462,14 +1961,93 @@ public abstract class NanoHTTPD {
             return uri;
         }
 
+        @Override
+        public final String getRawUri() {
+            return rawUri;
+        }
+
         @Override
         public final Method getMethod() {
             return method;
         }
 
+        /**
+         * Returns the body of the current request. Reading stops at the end of
+         * the body so that the next request on the connection is not consumed.
+         */
         @Override
         public final InputStream getInputStream() {
-            return inputStream;
+            return body != null ? body : inputStream;
+        }
+
+        /**
+         * Request body limited to its Content-Length.
+         */
+        private class BodyInputStream extends InputStream {
+            /** Bytes left in the body, or -1 if it is read until the end of the stream. */
+            private long remaining;
+
+            private BodyInputStream(long length) {
+                this.remaining = length;
+            }
+
+            @Override
+            public int read() throws IOException {
+                if (remaining == 0) {
+                    return -1;
+                }
+                int b = inputStream.read();
+                if (b >= 0 && remaining > 0) {
+                    remaining--;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (remaining == 0) {
+                    return -1;
+                }
+                if (remaining > 0 && len > remaining) {
+                    len = (int) remaining;
+                }
+                int read = inputStream.read(b, off, len);
+                if (read > 0 && remaining > 0) {
+                    remaining -= read;
+                }
+                return read;
+            }
+
+            @Override
+            public int available() throws IOException {
+                int available = inputStream.available();
+                return (remaining >= 0 && available > remaining) ? (int) remaining : available;
+            }
+
+            /**
+             * Closes the connection only if the body is read until the end of
+             * the stream. A bounded body leaves the connection open for the
+             * next request.
+             */
+            @Override
+            public void close() throws IOException {
+                if (remaining < 0) {
+                    inputStream.close();
+                }
+            }
+
+            private void skipRemaining() throws IOException {
+                while (remaining > 0) {
+                    long skipped = inputStream.skip(remaining);
+                    if (skipped <= 0) {
+                        if (inputStream.read() < 0) {
+                            break;
+                        }
+                        skipped = 1;
+                    }
+                    remaining -= skipped;
+                }
+            }
         }
 
         @Override
@@ -10,6 +10,7 @@ import java.io.OutputStream;
 import java.nio.charset.CharacterCodingException;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 public abstract class WebSocket {
     protected final InputStream in;
@@ -20,6 +21,10 @@ public abstract class WebSocket {
 
     protected State state = State.UNCONNECTED;
 
+    // Serializes frame writes. A lock instead of the monitor, so that callers which
+    // must not block behind a stalled writer can use tryLock().
+    private final ReentrantLock sendLock = new ReentrantLock();
+
     public static enum State {
         UNCONNECTED, CONNECTING, OPEN, CLOSING, CLOSED
     }
@@ -129,13 +134,35 @@ public abstract class WebSocket {
         }
     }
 
-    public synchronized void sendFrame(WebSocketFrame frame) throws IOException {
-        frame.write(out);
+    public void sendFrame(WebSocketFrame frame) throws IOException {
+        sendLock.lock();
+        try {
+            frame.write(out);
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * Sends a frame only if no other thread is sending a frame.
+     *
+     * @return true if the frame was sent, false if it was skipped because another frame is being sent
+     */
+    public boolean trySendFrame(WebSocketFrame frame) throws IOException {
+        if (!sendLock.tryLock()) {
+            return false;
+        }
+        try {
+            frame.write(out);
+            return true;
+        } finally {
+            sendLock.unlock();
+        }
     }
 
     // --------------------------------Close-----------------------------------
 
-    protected void doClose(CloseCode code, String reason, boolean initiatedByRemote) {
+    protected synchronized void doClose(CloseCode code, String reason, boolean initiatedByRemote) {
         if (state == State.CLOSED) {
             return;
         }
@@ -173,6 +200,15 @@ public abstract class WebSocket {
         sendFrame(new WebSocketFrame(OpCode.Ping, true, payload));
     }
 
+    /**
+     * Sends a ping frame only if no other thread is sending a frame.
+     *
+     * @return true if the ping was sent, false if it was skipped
+     */
+    public boolean tryPing(byte[] payload) throws IOException {
+        return trySendFrame(new WebSocketFrame(OpCode.Ping, true, payload));
+    }
+
     public void send(byte[] payload) throws IOException {
         sendFrame(new WebSocketFrame(OpCode.Binary, true, payload));
     }
@@ -191,6 +227,30 @@ public abstract class WebSocket {
         }
     }
 
+    /**
+     * Starts the closing handshake only if no other thread is sending a frame.
+     *
+     * @return true if the close frame was sent or the connection was closed,
+     *         false if it was skipped because another frame is being sent
+     */
+    public boolean tryClose(CloseCode code, String reason) throws IOException {
+        State oldState = state;
+        state = State.CLOSING;
+        if (oldState == State.OPEN) {
+            return trySendFrame(new CloseFrame(code, reason));
+        }
+        doClose(code, reason, false);
+        return true;
+    }
+
+    /**
+     * Closes the connection immediately without the closing handshake.
+     * Closing the streams also unblocks a thread which is stuck writing to a stalled peer.
+     */
+    public void terminate(CloseCode code, String reason) {
+        doClose(code, reason, false);
+    }
+
     // --------------------------------Getters---------------------------------
 
     public NanoHTTPD.IHTTPSession getHandshakeRequest() {
@@ -13,18 +13,18 @@ import org.deviceconnect.server.DConnectServerConfig;
 import org.deviceconnect.server.DConnectServerError;
 import org.deviceconnect.server.http.HttpRequest;
 import org.deviceconnect.server.http.HttpResponse;
+import org.deviceconnect.server.http.PendingHttpResponse;
 import org.deviceconnect.server.nanohttpd.logger.AndroidHandler;
 import org.deviceconnect.server.nanohttpd.security.Firewall;
 import org.deviceconnect.server.nanohttpd.util.KeyStoreManager;
 import org.deviceconnect.server.websocket.DConnectWebSocket;
+import org.deviceconnect.server.websocket.WebSocketEventQueue;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.GeneralSecurityException;
@@ -33,8 +33,6 @@ import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.SimpleFormatter;
@@ -62,9 +60,6 @@ public class DConnectServerNanoHttpd extends DConnectServer {
     /** バージョン. */
     private static final String VERESION = "1.0.1";
 
-    /** WebSocketのKeepAlive処理のインターバル. */
-    private static final int WEBSOCKET_KEEP_ALIVE_INTERVAL = 3000;
-
     /** 対応するMIME_TYPE群. */
     private static final Map<String, String> MIME_TYPES;
 
@@ -77,20 +72,11 @@ public class DConnectServerNanoHttpd extends DConnectServer {
     /** コンテキストオブジェクト. */
     private Context mContext;
 
-    /**
-     * Keep-Aliveの状態定数.
-     * 
-     * @author NTT DOCOMO, INC.
-     * 
-     */
-    private enum KeepAliveState {
-        /** クライアントの返事待ち状態. */
-        WAITING_PONG,
-
-        /** pong受信完了状態. */
-        GOT_PONG,
+    /** WebSocketのKeep-Alive処理を管理するクラス. */
+    private final WebSocketKeepAliveManager mKeepAliveManager;
 
-    }
+    /** レスポンスを圧縮するクラス. 圧縮しない場合はnull. */
+    private final ResponseCompressor mCompressor;
 
     /**
      * 設定値を元にサーバーを構築します.
@@ -106,6 +92,10 @@ public class DConnectServerNanoHttpd extends DConnectServer {
         }
 
         mContext = context;
+        mKeepAliveManager = new WebSocketKeepAliveManager(config.getWebSocketPingInterval(),
+                config.getWebSocketDeadPeerThreshold());
+        mCompressor = config.getCompressionThreshold() >= 0
+                ? new ResponseCompressor(config.getCompressionThreshold()) : null;
         if (BuildConfig.DEBUG) {
             Handler handler = new AndroidHandler(TAG);
             handler.setFormatter(new SimpleFormatter());
@@ -146,6 +136,8 @@ public class DConnectServerNanoHttpd extends DConnectServer {
         }
 
         mServer = new NanoServer(mConfig.getHost(), mConfig.getPort());
+        mKeepAliveManager.start();
+        startEventWatchdog();
 
         if (mConfig.isSsl()) {
             SSLServerSocketFactory factory = createServerSocketFactory();
@@ -192,20 +184,48 @@ public class DConnectServerNanoHttpd extends DConnectServer {
 
             for (Entry<String, DConnectWebSocket> data : mSockets.entrySet()) {
                 if (data.getValue() instanceof WebSocket) {
+                    WebSocket socket = (WebSocket) data.getValue();
                     try {
-                        ((WebSocket) data.getValue()).close(CloseCode.NormalClosure, "Server was shutdown.");
+                        if (socket.tryClose(CloseCode.NormalClosure, "Server was shutdown.")) {
+                            continue;
+                        }
                     } catch (IOException e) {
                         mLogger.warning("Exception in the DConnectServerNanoHttpd#shutdown() method. " + e.toString());
                     }
+                    // 送信中のWebSocketは待たずに切断する
+                    socket.terminate(CloseCode.NormalClosure, "Server was shutdown.");
                 }
             }
             mSockets.clear();
         }
 
+        mKeepAliveManager.stop();
+        stopEventWatchdog();
         mServer.stop();
         mServer = null;
     }
 
+    /**
+     * レスポンスを圧縮するクラスを取得する.
+     * <p>
+     * 圧縮によって削減したサイズや圧縮に要した時間を取得するために使用する。
+     * </p>
+     * 
+     * @return レスポンスを圧縮するクラス。圧縮しない設定の場合はnull
+     */
+    public ResponseCompressor getResponseCompressor() {
+        return mCompressor;
+    }
+
+    /**
+     * 死んでいるとみなして切断したWebSocketの数を取得する.
+     * 
+     * @return 切断したWebSocketの数
+     */
+    public long getReapedWebSocketCount() {
+        return mKeepAliveManager.getReapedCount();
+    }
+
     @Override
     public synchronized boolean isRunning() {
         return (mServer == null) ? false : mServer.isAlive();
@@ -259,6 +279,9 @@ public class DConnectServerNanoHttpd extends DConnectServer {
         /** WebSocketのコネクションカウンター. */
         private int mWebSocketCount;
 
+        /** 静的ファイルの情報のキャッシュ. */
+        private StaticFileCache mStaticFileCache;
+
         /**
          * コンストラクタ.
          * @param hostname ホスト名
@@ -268,7 +291,20 @@ public class DConnectServerNanoHttpd extends DConnectServer {
             super(hostname, port);
             Firewall firewall = new Firewall(mConfig.getIPWhiteList());
             setFirewall(firewall);
+            // WebSocketは接続中ずっとスレッドを占有するため、その分もスレッド数に含める。
+            setAsyncRunner(new BoundedAsyncRunner(
+                    mConfig.getMaxConnectionSize() + mConfig.getMaxWebSocketConnectionSize(),
+                    mConfig.getAcceptQueueSize()));
+            setMaxConnectionsPerAddress(mConfig.getMaxConnectionSizePerAddress());
+            setSocketReadTimeout(mConfig.getSocketReadTimeout());
+            setKeepAliveTimeout(mConfig.getKeepAliveTimeout());
+            setMaxRequestsPerConnection(mConfig.getMaxRequestsPerConnection());
             mWebSocketCount = 0;
+            try {
+                mStaticFileCache = new StaticFileCache(mConfig.getDocumentRootPath());
+            } catch (IOException e) {
+                mLogger.warning("Exception in the NanoServer#NanoServer() method. " + e.toString());
+            }
         }
 
         @Override
@@ -312,32 +348,87 @@ public class DConnectServerNanoHttpd extends DConnectServer {
 
                 HttpResponse res = new HttpResponse();
                 if (mListener != null && mListener.onReceivedHttpRequest(req, res)) {
-
-                    ByteArrayInputStream stream;
-
-                    if (res.getBody() != null) {
-                        stream = new ByteArrayInputStream(res.getBody());
-                    } else {
-                        stream = new ByteArrayInputStream("".getBytes());
+                    if (res.isSuspended()) {
+                        // レスポンスが返却されるまでスレッドを占有しないように、送信を保留する。
+                        return createDeferredResponse(res.getPendingResponse(), getAllowHeaders(session),
+                                session.getHeaders().get("accept-encoding"));
                     }
-
-                    nanoRes.setStatus(getStatus(res.getCode()));
-                    nanoRes.setMimeType(res.getContentType());
-                    nanoRes.setData(stream);
-
-                    Map<String, String> headers = res.getHeaders();
-                    for (Entry<String, String> head : headers.entrySet()) {
-                        nanoRes.addHeader(head.getKey(), head.getValue());
-                    }
-
+                    setHttpResponse(nanoRes, res, session.getHeaders().get("accept-encoding"));
                 } else {
                     nanoRes = super.serve(session);
                 }
 
             } while (false);
 
-            nanoRes.addHeader("Access-Control-Allow-Origin", "*");
+            addCorsHeaders(nanoRes, getAllowHeaders(session));
+            return nanoRes;
+        }
 
+        /**
+         * 非同期で返却されるレスポンスを生成する.
+         * 
+         * @param pending 非同期レスポンスのハンドル
+         * @param allowHeaders Access-Control-Allow-Headersに設定する値
+         * @param acceptEncoding リクエストのAccept-Encodingの値
+         * @return 送信を保留したレスポンス
+         */
+        private Response createDeferredResponse(final PendingHttpResponse pending, final String allowHeaders,
+                final String acceptEncoding) {
+            final NanoHTTPD.DeferredResponse deferred = new NanoHTTPD.DeferredResponse();
+            pending.setOnCompleteListener(new PendingHttpResponse.OnCompleteListener() {
+                @Override
+                public void onComplete(final HttpResponse response) {
+                    NanoHTTPD.Response nanoRes = new NanoHTTPD.Response("");
+                    setHttpResponse(nanoRes, response, acceptEncoding);
+                    addCorsHeaders(nanoRes, allowHeaders);
+                    deferred.resume(nanoRes);
+                }
+            });
+            return deferred;
+        }
+
+        /**
+         * Device Connect Managerのレスポンスの内容をNanoHTTPDのレスポンスに設定する.
+         * 
+         * @param nanoRes NanoHTTPDのレスポンス
+         * @param res Device Connect Managerのレスポンス
+         * @param acceptEncoding リクエストのAccept-Encodingの値
+         */
+        private void setHttpResponse(final NanoHTTPD.Response nanoRes, final HttpResponse res,
+                final String acceptEncoding) {
+            byte[] body = res.getBody();
+            if (body == null) {
+                body = new byte[0];
+            }
+
+            Map<String, String> headers = res.getHeaders();
+            for (Entry<String, String> head : headers.entrySet()) {
+                nanoRes.addHeader(head.getKey(), head.getValue());
+            }
+
+            if (mCompressor != null && !nanoRes.hasHeader("content-encoding")
+                    && mCompressor.isCompressible(res.getContentType(), body.length)) {
+                String encoding = mCompressor.selectEncoding(acceptEncoding);
+                byte[] compressed = (encoding != null) ? mCompressor.compress(body, encoding) : null;
+                if (compressed != null) {
+                    body = compressed;
+                    nanoRes.addHeader("Content-Encoding", encoding);
+                }
+                nanoRes.addHeader("Vary", "Accept-Encoding");
+            }
+
+            nanoRes.setStatus(getStatus(res.getCode()));
+            nanoRes.setMimeType(res.getContentType());
+            nanoRes.setData(new ByteArrayInputStream(body));
+        }
+
+        /**
+         * Access-Control-Allow-Headersに設定する値を取得する.
+         * 
+         * @param session リクエスト情報
+         * @return Access-Control-Allow-Headersに設定する値
+         */
+        private String getAllowHeaders(final IHTTPSession session) {
             // クロスドメインでアクセスする際にプリフライトリクエストで使用するHTTPヘッダを送信される。
             // このヘッダを受けた場合、Access-Control-Allow-Headersでそれらを許可する必要がある。
             // また、X-Requested-WithというヘッダーでXMLHttpRequestが使えるかの問い合わせがくる場合が
@@ -348,9 +439,18 @@ public class DConnectServerNanoHttpd extends DConnectServer {
             } else {
                 requestHeaders = "XMLHttpRequest";
             }
+            return requestHeaders;
+        }
 
-            nanoRes.addHeader("Access-Control-Allow-Headers", requestHeaders);
-            return nanoRes;
+        /**
+         * CORS用のヘッダーをレスポンスに追加する.
+         * 
+         * @param nanoRes レスポンス
+         * @param allowHeaders Access-Control-Allow-Headersに設定する値
+         */
+        private void addCorsHeaders(final NanoHTTPD.Response nanoRes, final String allowHeaders) {
+            nanoRes.addHeader("Access-Control-Allow-Origin", "*");
+            nanoRes.addHeader("Access-Control-Allow-Headers", allowHeaders);
         }
 
         /**
@@ -462,35 +562,58 @@ public class DConnectServerNanoHttpd extends DConnectServer {
 
                 // 静的コンテンツへのアクセスの場合はdocument rootからファイルを検索する。
                 File file = new File(mConfig.getDocumentRootPath(), session.getUri());
+                StaticFileCache.CachedFile entry;
+                try {
+                    entry = (mStaticFileCache != null) ? mStaticFileCache.get(file) : null;
+                } catch (IOException e) {
+                    mLogger.warning("Exception in the NanoServer#checkStaticFile() method. " + e.toString());
+                    retval = new Response(Status.FORBIDDEN, MIME_PLAINTEXT, Status.FORBIDDEN.getDescription());
+                    break;
+                }
 
-                if (!file.exists()) {
+                if (entry == null) {
+                    if (file.isDirectory()) {
+                        break;
+                    }
                     retval = new Response(Status.NOT_FOUND, MIME_PLAINTEXT, Status.NOT_FOUND.getDescription());
                     break;
-                } else if (file.isDirectory()) {
-                    break;
-                } else if (!isReadableFile(file)) {
+                } else if (!entry.isReadable()) {
                     retval = new Response(Status.FORBIDDEN, MIME_PLAINTEXT, Status.FORBIDDEN.getDescription());
+                    break;
                 }
 
+                Map<String, String> headers = session.getHeaders();
+                String etag = entry.getETag();
+                long length = entry.getLength();
+
                 // If-None-Match対応
-                String etag = Integer.toHexString((file.getAbsolutePath() + file.lastModified() + "" + file.length())
-                        .hashCode());
-                if (etag.equals(session.getHeaders().get("if-none-match"))) {
+                if (etag.equals(headers.get("if-none-match"))) {
                     retval = new Response(Status.NOT_MODIFIED, mime, "");
-                } else {
-                    try {
-                        retval = new Response(Status.OK, mime, new FileInputStream(file));
-                        retval.addHeader("Content-Length", "" + file.length());
-                        retval.addHeader("ETag", etag);
-                    } catch (FileNotFoundException e) {
-                        retval = new Response(Status.NOT_FOUND, MIME_PLAINTEXT, Status.NOT_FOUND.getDescription());
-                        break;
-                    }
+                    retval.addHeader("ETag", etag);
+                    break;
                 }
 
-                // ByteRangeへの対応は必須ではないため、noneを指定して対応しないことを伝える。
-                // 対応が必要な場合はbyteを設定して実装すること。
-                retval.addHeader("Accept-Ranges", "none");
+                // Range対応。If-Rangeが現在のETagと一致しない場合はファイル全体を返却する。
+                long[] range = null;
+                String ifRange = headers.get("if-range");
+                if (ifRange == null || ifRange.equals(etag)) {
+                    range = StaticFileCache.parseRange(headers.get("range"), length);
+                }
+
+                if (range != null && range.length == 0) {
+                    retval = new Response(Status.RANGE_NOT_SATISFIABLE, MIME_PLAINTEXT,
+                            Status.RANGE_NOT_SATISFIABLE.getDescription());
+                    retval.addHeader("Content-Range", "bytes */" + length);
+                } else if (range != null) {
+                    retval = new Response(Status.PARTIAL_CONTENT, mime, (InputStream) null);
+                    retval.setFile(entry.getFile(), range[0], range[1] - range[0] + 1);
+                    retval.addHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+                } else {
+                    retval = new Response(Status.OK, mime, (InputStream) null);
+                    retval.setFile(entry.getFile(), 0, length);
+                }
+                retval.addHeader("ETag", etag);
+                retval.addHeader("Accept-Ranges", "bytes");
 
             } while (false);
             return retval;
@@ -588,20 +711,39 @@ public class DConnectServerNanoHttpd extends DConnectServer {
             }
 
             String http = mConfig.isSsl() ? "https://" : "http://";
-            String uri = http + session.getHeaders().get("host") + session.getUri();
+            String uri = http + session.getHeaders().get("host") + session.getRawUri();
             if (session.getQueryParameterString() != null && session.getQueryParameterString().length() != 0) {
                 uri += "?" + session.getQueryParameterString();
             }
 
             HttpRequest req = new HttpRequest();
-            req.setBody(parseBody(session));
+            if (isMultipart(session)) {
+                // マルチパートはファイルを含みサイズが大きくなるため、メモリに読み込まずにストリームで渡す。
+                req.setBodyStream(session.getInputStream());
+            } else {
+                req.setBody(parseBody(session));
+            }
             req.setMethod(method);
             req.setUri(uri);
+            req.setPath(session.getRawUri());
+            req.setQueryString(session.getQueryParameterString());
             req.setHeaders(session.getHeaders());
 
             return req;
         }
 
+        /**
+         * リクエストのBodyがマルチパートかチェックする.
+         * 
+         * @param session リクエストデータ
+         * @return マルチパートの場合はtrue、それ以外はfalse
+         */
+        private boolean isMultipart(final IHTTPSession session) {
+            String contentType = session.getHeaders().get("content-type");
+            return contentType != null
+                    && contentType.toLowerCase(Locale.ENGLISH).contains("multipart/form-data");
+        }
+
         /**
          * リクエストからBodyを抜き出す.
          * 
@@ -661,28 +803,6 @@ public class DConnectServerNanoHttpd extends DConnectServer {
 
             return retval;
         }
-
-        /**
-         * ファイルが読み込み可能なファイルかチェックする.
-         * 
-         * @param file チェック対象のファイル。
-         * @return 読み込めるファイルの場合trueを、その他はfalseを返す。
-         */
-        private boolean isReadableFile(final File file) {
-            boolean retval;
-            try {
-                // ../ などのDocument Rootより上の階層にいくファイルパスをチェックし
-                // 不正なリクエストを拒否する。
-                File root = new File(mConfig.getDocumentRootPath());
-                String rootAbPath = root.getCanonicalPath() + "/";
-                String fileAbPath = file.getCanonicalPath();
-                retval = fileAbPath.contains(rootAbPath) && file.canRead();
-            } catch (IOException e) {
-                mLogger.warning("Exception in the NanoServer#isDeployedInDocumentRoot() method. " + e.toString());
-                retval = false;
-            }
-            return retval;
-        }
     }
 
     /**
@@ -691,27 +811,22 @@ public class DConnectServerNanoHttpd extends DConnectServer {
      * @author NTT DOCOMO, INC.
      * 
      */
-    private class NanoWebSocket extends WebSocket implements DConnectWebSocket {
-
-        /** KeepAlive実行用のタイマー. */
-        private Timer mKeepAliveTimer;
-
-        /** Keep-Aliveのタスク. */
-        private KeepAliveTask mKeepAliveTask;
+    private class NanoWebSocket extends WebSocket implements DConnectWebSocket, WebSocketKeepAliveManager.Target {
 
         /** セッションキー. */
         private String mSessionKey;
 
+        /** イベント送信キュー. */
+        private final WebSocketEventQueue mEventQueue;
+
         /**
          * コンストラクタ.
          * @param handshakeRequest リクエスト
          */
         public NanoWebSocket(final IHTTPSession handshakeRequest) {
             super(handshakeRequest);
-            mKeepAliveTask = new KeepAliveTask();
-            mKeepAliveTimer = new Timer();
-            mKeepAliveTimer.scheduleAtFixedRate(mKeepAliveTask, WEBSOCKET_KEEP_ALIVE_INTERVAL,
-                    WEBSOCKET_KEEP_ALIVE_INTERVAL);
+            mEventQueue = createEventQueue(this);
+            mKeepAliveManager.register(this);
         }
 
         @Override
@@ -730,12 +845,58 @@ public class DConnectServerNanoHttpd extends DConnectServer {
         }
 
         @Override
-        protected void onPong(final WebSocketFrame pongFrame) {
-            synchronized (mKeepAliveTask) {
-                if (mKeepAliveTask.getState() == KeepAliveState.WAITING_PONG) {
-                    mKeepAliveTask.setState(KeepAliveState.GOT_PONG);
+        public void disconnect() {
+            // イベントを送信するスレッドから呼び出されるため、送信中のスレッドを待たない
+            try {
+                if (tryClose(CloseCode.PolicyViolation, "Event delivery failed.")) {
+                    return;
                 }
+            } catch (IOException e) {
+                mLogger.warning("Exception in the NanoWebSocket#disconnect() method. " + e.toString());
+            }
+            // 送信中で切断要求を送れない場合や、送信に失敗した場合は強制的に切断する
+            terminate(CloseCode.PolicyViolation, "Event delivery failed.");
+        }
+
+        @Override
+        public WebSocketEventQueue getEventQueue() {
+            return mEventQueue;
+        }
+
+        @Override
+        public boolean ping() throws IOException {
+            return tryPing("".getBytes());
+        }
+
+        @Override
+        public void reap() {
+            try {
+                if (tryClose(CloseCode.GoingAway, "Client is dead.")) {
+                    return;
+                }
+            } catch (IOException e) {
+                mLogger.warning("Exception in the NanoWebSocket#reap() method. " + e.toString());
             }
+            // 送信中で切断要求を送れない場合や、送信に失敗した場合は強制的に切断する
+            terminate();
+        }
+
+        @Override
+        public void terminate() {
+            terminate(CloseCode.GoingAway, "Client is dead.");
+        }
+
+        @Override
+        public void onPingFailed(final IOException e) {
+            // タイムアウトに任せる
+            if (mListener != null && mSessionKey != null) {
+                mListener.onWebSocketDisconnected(mSessionKey);
+            }
+        }
+
+        @Override
+        protected void onPong(final WebSocketFrame pongFrame) {
+            mKeepAliveManager.onPong(this);
         }
 
         @Override
@@ -775,72 +936,14 @@ public class DConnectServerNanoHttpd extends DConnectServer {
                 mServer.countdownWebSocket();
             }
 
-            mKeepAliveTimer.cancel();
+            mEventQueue.close();
+            mKeepAliveManager.unregister(this);
         }
 
         @Override
         protected void onException(final IOException e) {
             mLogger.warning("Exception in the NanoWebSocket#onException() method. " + e.toString());
         }
-
-        /**
-         * Keep-Alive用タイマータスク.
-         * 
-         * @author NTT DOCOMO, INC.
-         * 
-         */
-        private class KeepAliveTask extends TimerTask {
-
-            /** 処理状態. */
-            private KeepAliveState mState;
-
-            /**
-             * コンストラクタ.
-             */
-            public KeepAliveTask() {
-                setState(KeepAliveState.GOT_PONG);
-            }
-
-            /**
-             * 状態を変更する.
-             * 
-             * @param state 状態
-             */
-            public void setState(final KeepAliveState state) {
-                mState = state;
-            }
-
-            /**
-             * 状態を取得する.
-             * 
-             * @return 状態
-             */
-            public KeepAliveState getState() {
-                return mState;
-            }
-
-            @Override
-            public void run() {
-                try {
-
-                    synchronized (this) {
-                        if (mState == KeepAliveState.GOT_PONG) {
-                            setState(KeepAliveState.WAITING_PONG);
-                            ping("".getBytes());
-                        } else {
-                            close(CloseCode.GoingAway, "Client is dead.");
-                        }
-                    }
-
-                } catch (IOException e) {
-                    // 例外が発生したらタスクを終了し、タイムアウトに任せる
-                    cancel();
-                    if (mSessionKey != null) {
-                        mListener.onWebSocketDisconnected(mSessionKey);
-                    }
-                }
-            }
-        }
     }
 
     @Override
@@ -0,0 +1,254 @@
+/*
+ ResponseCompressor.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.server.nanohttpd;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * レスポンスのBodyを圧縮するクラス.
+ * <p>
+ * クライアントのAccept-Encodingに従って、閾値以上のサイズのBodyをgzipまたはdeflateで圧縮する。
+ * {@link Deflater}はネイティブのメモリを確保するため、リクエスト毎に生成せずにプールして再利用する。
+ * </p>
+ *
+ * @author NTT DOCOMO, INC.
+ */
+public final class ResponseCompressor {
+
+    /** gzipのContent-Encoding. */
+    public static final String ENCODING_GZIP = "gzip";
+
+    /** deflateのContent-Encoding. */
+    public static final String ENCODING_DEFLATE = "deflate";
+
+    /** プールするDeflaterの数. */
+    private static final int POOL_SIZE = 4;
+
+    /** 圧縮時のバッファサイズ. */
+    private static final int BUF_SIZE = 8192;
+
+    /** gzipのヘッダー. */
+    private static final byte[] GZIP_HEADER = {
+        0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    /** 圧縮するBodyのサイズの閾値. */
+    private final int mThreshold;
+
+    /** gzip用のDeflaterのプール. */
+    private final BlockingQueue<Deflater> mGzipPool = new ArrayBlockingQueue<Deflater>(POOL_SIZE);
+
+    /** deflate用のDeflaterのプール. */
+    private final BlockingQueue<Deflater> mDeflatePool = new ArrayBlockingQueue<Deflater>(POOL_SIZE);
+
+    /** 圧縮したレスポンスの数. */
+    private final AtomicLong mCompressedCount = new AtomicLong();
+
+    /** 圧縮前のサイズの合計. */
+    private final AtomicLong mOriginalBytes = new AtomicLong();
+
+    /** 圧縮後のサイズの合計. */
+    private final AtomicLong mCompressedBytes = new AtomicLong();
+
+    /** 圧縮に要した時間の合計[nsec]. */
+    private final AtomicLong mCompressionTime = new AtomicLong();
+
+    /**
+     * コンストラクタ.
+     *
+     * @param threshold 圧縮するBodyのサイズの閾値[byte]
+     */
+    public ResponseCompressor(final int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("threshold must not be negative.");
+        }
+        mThreshold = threshold;
+    }
+
+    /**
+     * Accept-Encodingから使用するContent-Encodingを選択する.
+     *
+     * @param acceptEncoding Accept-Encodingの値
+     * @return {@link #ENCODING_GZIP}、{@link #ENCODING_DEFLATE}、または圧縮しない場合はnull
+     */
+    public String selectEncoding(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        boolean deflate = false;
+        for (String token : acceptEncoding.toLowerCase(Locale.ENGLISH).split(",")) {
+            String[] params = token.split(";");
+            String coding = params[0].trim();
+            if (isRefused(params)) {
+                continue;
+            }
+            if (ENCODING_GZIP.equals(coding)) {
+                return ENCODING_GZIP;
+            } else if (ENCODING_DEFLATE.equals(coding)) {
+                deflate = true;
+            }
+        }
+        return deflate ? ENCODING_DEFLATE : null;
+    }
+
+    /**
+     * 圧縮の対象となるレスポンスかチェックする.
+     *
+     * @param mimeType レスポンスのMIMEタイプ
+     * @param length Bodyのサイズ
+     * @return 圧縮の対象の場合はtrue、それ以外はfalse
+     */
+    public boolean isCompressible(final String mimeType, final int length) {
+        if (length < mThreshold || length == 0 || mimeType == null) {
+            return false;
+        }
+        String mime = mimeType.toLowerCase(Locale.ENGLISH);
+        return mime.startsWith("text/") || mime.startsWith("application/json")
+                || mime.startsWith("application/javascript") || mime.startsWith("application/xml");
+    }
+
+    /**
+     * Bodyを圧縮する.
+     *
+     * @param body Body
+     * @param encoding {@link #ENCODING_GZIP}または{@link #ENCODING_DEFLATE}
+     * @return 圧縮したBody。圧縮してもサイズが小さくならない場合はnull
+     */
+    public byte[] compress(final byte[] body, final String encoding) {
+        boolean gzip = ENCODING_GZIP.equals(encoding);
+        BlockingQueue<Deflater> pool = gzip ? mGzipPool : mDeflatePool;
+        Deflater deflater = pool.poll();
+        if (deflater == null) {
+            // gzipはヘッダーとトレイラーを自前で付けるため、zlibのヘッダーを付けない
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, gzip);
+        }
+
+        long start = System.nanoTime();
+        byte[] result;
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+            if (gzip) {
+                out.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+            }
+            deflater.setInput(body);
+            deflater.finish();
+            byte[] buf = new byte[BUF_SIZE];
+            while (!deflater.finished()) {
+                int len = deflater.deflate(buf);
+                out.write(buf, 0, len);
+            }
+            if (gzip) {
+                CRC32 crc = new CRC32();
+                crc.update(body);
+                writeIntLE(out, (int) crc.getValue());
+                writeIntLE(out, body.length);
+            }
+            result = out.toByteArray();
+        } finally {
+            deflater.reset();
+            if (!pool.offer(deflater)) {
+                deflater.end();
+            }
+        }
+        mCompressionTime.addAndGet(System.nanoTime() - start);
+
+        if (result.length >= body.length) {
+            return null;
+        }
+        mCompressedCount.incrementAndGet();
+        mOriginalBytes.addAndGet(body.length);
+        mCompressedBytes.addAndGet(result.length);
+        return result;
+    }
+
+    /**
+     * 圧縮したレスポンスの数を取得する.
+     *
+     * @return 圧縮したレスポンスの数
+     */
+    public long getCompressedCount() {
+        return mCompressedCount.get();
+    }
+
+    /**
+     * 圧縮したレスポンスの圧縮前のサイズの合計を取得する.
+     *
+     * @return 圧縮前のサイズの合計[byte]
+     */
+    public long getOriginalBytes() {
+        return mOriginalBytes.get();
+    }
+
+    /**
+     * 圧縮したレスポンスの圧縮後のサイズの合計を取得する.
+     *
+     * @return 圧縮後のサイズの合計[byte]
+     */
+    public long getCompressedBytes() {
+        return mCompressedBytes.get();
+    }
+
+    /**
+     * 圧縮によって削減したサイズの合計を取得する.
+     *
+     * @return 削減したサイズの合計[byte]
+     */
+    public long getSavedBytes() {
+        return mOriginalBytes.get() - mCompressedBytes.get();
+    }
+
+    /**
+     * 圧縮に要した時間の合計を取得する.
+     * <p>
+     * 圧縮してもサイズが小さくならずに破棄したものも含む。
+     * </p>
+     *
+     * @return 圧縮に要した時間の合計[nsec]
+     */
+    public long getCompressionTimeNanos() {
+        return mCompressionTime.get();
+    }
+
+    /**
+     * Accept-Encodingの要素がq=0で拒否されているかチェックする.
+     *
+     * @param params 要素をセミコロンで区切った配列
+     * @return 拒否されている場合はtrue、それ以外はfalse
+     */
+    private static boolean isRefused(final String[] params) {
+        for (int i = 1; i < params.length; i++) {
+            String param = params[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Float.parseFloat(param.substring(2).trim()) <= 0;
+                } catch (NumberFormatException e) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * int値をリトルエンディアンで書き込む.
+     *
+     * @param out 書き込み先
+     * @param value 値
+     */
+    private static void writeIntLE(final ByteArrayOutputStream out, final int value) {
+        out.write(value & 0xff);
+        out.write((value >> 8) & 0xff);
+        out.write((value >> 16) & 0xff);
+        out.write((value >> 24) & 0xff);
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ StaticFileCache.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.server.nanohttpd;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ドキュメントルート以下の静的ファイルの情報をキャッシュするクラス.
+ * <p>
+ * リクエスト毎に行っていた正規パスの解決とETagの計算を、パスと更新日時・サイズをキーにして再利用する。
+ * ファイルが更新された場合は更新日時かサイズが変わるため、キャッシュは自動的に作り直される。
+ * </p>
+ *
+ * @author NTT DOCOMO, INC.
+ */
+final class StaticFileCache {
+
+    /** 保持する件数の上限. */
+    private static final int MAX_SIZE = 256;
+
+    /** ドキュメントルートの正規パス. 末尾は区切り文字. */
+    private final String mRootPath;
+
+    /** リクエストされたパスをキーとしたキャッシュ. 参照順に並べる. */
+    private final Map<String, CachedFile> mEntries = new LinkedHashMap<String, CachedFile>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, CachedFile> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    /**
+     * コンストラクタ.
+     *
+     * @param documentRoot ドキュメントルート
+     * @throws IOException ドキュメントルートの正規パスが取得できない場合
+     */
+    StaticFileCache(final String documentRoot) throws IOException {
+        mRootPath = new File(documentRoot).getCanonicalPath() + File.separator;
+    }
+
+    /**
+     * ファイルの情報を取得する.
+     *
+     * @param file リクエストされたファイル
+     * @return ファイルの情報。ファイルが存在しない場合やディレクトリの場合はnull
+     * @throws IOException 正規パスが取得できない場合
+     */
+    CachedFile get(final File file) throws IOException {
+        long lastModified = file.lastModified();
+        long length = file.length();
+        String key = file.getPath();
+
+        synchronized (mEntries) {
+            CachedFile entry = mEntries.get(key);
+            if (entry != null && entry.mLastModified == lastModified && entry.mLength == length) {
+                return entry;
+            }
+        }
+
+        if (!file.isFile()) {
+            synchronized (mEntries) {
+                mEntries.remove(key);
+            }
+            return null;
+        }
+
+        // ../ などのDocument Rootより上の階層にいくファイルパスをチェックし
+        // 不正なリクエストを拒否する。
+        File canonical = file.getCanonicalFile();
+        boolean readable = canonical.getPath().startsWith(mRootPath) && canonical.canRead();
+        CachedFile entry = new CachedFile(canonical, readable, lastModified, length);
+        synchronized (mEntries) {
+            mEntries.put(key, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Rangeヘッダーを解析する.
+     * <p>
+     * 単一の範囲のみに対応する。複数の範囲が指定された場合は、ファイル全体を返却するためにnullを返す。
+     * </p>
+     * 
+     * @param range Rangeヘッダーの値
+     * @param length ファイルのサイズ
+     * @return 範囲の先頭と末尾(末尾を含む)の配列。範囲が満たせない場合は空の配列、
+     *         Rangeヘッダーが無い場合や解析できない場合はnullを返す
+     */
+    static long[] parseRange(final String range, final long length) {
+        if (range == null || !range.startsWith("bytes=")) {
+            return null;
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0 || spec.indexOf(',') >= 0) {
+            return null;
+        }
+
+        try {
+            String startStr = spec.substring(0, dash).trim();
+            String endStr = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (startStr.length() == 0) {
+                // bytes=-500 の場合は末尾の500バイト
+                long suffix = Long.parseLong(endStr);
+                if (suffix <= 0 || length == 0) {
+                    return new long[0];
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(startStr);
+                end = (endStr.length() == 0) ? length - 1 : Math.min(Long.parseLong(endStr), length - 1);
+                if (endStr.length() != 0 && Long.parseLong(endStr) < start) {
+                    return null;
+                }
+                if (start >= length) {
+                    return new long[0];
+                }
+            }
+            return new long[] {start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 静的ファイル1件分の情報.
+     */
+    static final class CachedFile {
+        /** 正規パスのファイル. */
+        private final File mFile;
+
+        /** ドキュメントルート以下の読み込み可能なファイルか. */
+        private final boolean mReadable;
+
+        /** 更新日時. */
+        private final long mLastModified;
+
+        /** サイズ. */
+        private final long mLength;
+
+        /** ETag. */
+        private final String mETag;
+
+        /**
+         * コンストラクタ.
+         *
+         * @param file 正規パスのファイル
+         * @param readable ドキュメントルート以下の読み込み可能なファイルか
+         * @param lastModified 更新日時
+         * @param length サイズ
+         */
+        private CachedFile(final File file, final boolean readable, final long lastModified, final long length) {
+            mFile = file;
+            mReadable = readable;
+            mLastModified = lastModified;
+            mLength = length;
+            mETag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "-"
+                    + Integer.toHexString(file.getPath().hashCode()) + "\"";
+        }
+
+        /**
+         * 正規パスのファイルを取得する.
+         *
+         * @return ファイル
+         */
+        File getFile() {
+            return mFile;
+        }
+
+        /**
+         * ドキュメントルート以下の読み込み可能なファイルかを取得する.
+         *
+         * @return 読み込み可能な場合はtrue、それ以外はfalse
+         */
+        boolean isReadable() {
+            return mReadable;
+        }
+
+        /**
+         * サイズを取得する.
+         *
+         * @return サイズ
+         */
+        long getLength() {
+            return mLength;
+        }
+
+        /**
+         * ETagを取得する.
+         *
+         * @return ETag
+         */
+        String getETag() {
+            return mETag;
+        }
+    }
+}
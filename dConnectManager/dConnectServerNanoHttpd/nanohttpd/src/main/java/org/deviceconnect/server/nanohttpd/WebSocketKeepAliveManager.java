@@ -0,0 +1,317 @@
+/*
+ WebSocketKeepAliveManager.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.server.nanohttpd;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * WebSocketのKeep-Alive処理を管理するクラス.
+ * <p>
+ * 全てのWebSocketのKeep-Aliveを1つのスレッドでまとめて行う。
+ * インターバル毎に登録されている全WebSocketにpingを送信し、pongが返ってこないまま
+ * 指定回数のインターバルが過ぎたWebSocketは死んでいるとみなして切断する。
+ * </p>
+ * <p>
+ * 1つのWebSocketへの送信で全WebSocketのKeep-Aliveが止まらないように、他のスレッドが送信中の
+ * WebSocketにはpingを送らない。送信中のWebSocketはイベントなどを送信できているため、
+ * pongが返ってこなかった回数には数えない。送信が終わらないWebSocketの切断は送信側で行う。
+ * また、pingの送信がインターバル以上終わらないWebSocketや、切断要求を送ってから
+ * インターバル以内に閉じないWebSocketは、別スレッドから強制的に切断する。
+ * </p>
+ *
+ * @author NTT DOCOMO, INC.
+ */
+public final class WebSocketKeepAliveManager {
+
+    /**
+     * Keep-Aliveの対象となるWebSocket.
+     */
+    public interface Target {
+        /**
+         * pingを送信する.
+         * <p>
+         * 他のスレッドが送信中の場合には、送信完了を待たずにfalseを返却すること。
+         * </p>
+         *
+         * @return pingを送信した場合はtrue、他のスレッドが送信中のため送信しなかった場合はfalse
+         * @throws IOException 送信に失敗した場合
+         */
+        boolean ping() throws IOException;
+
+        /**
+         * pongが返ってこないWebSocketの切断を開始する.
+         * <p>
+         * 他のスレッドが送信中の場合には、送信完了を待たずに{@link #terminate()}で切断すること。
+         * </p>
+         */
+        void reap();
+
+        /**
+         * WebSocketを強制的に切断する.
+         * <p>
+         * 送信中のスレッドがあっても待たずに接続を閉じ、そのスレッドの送信処理を中断させること。
+         * </p>
+         */
+        void terminate();
+
+        /**
+         * pingの送信に失敗したことを通知する.
+         *
+         * @param e 発生した例外
+         */
+        void onPingFailed(IOException e);
+    }
+
+    /** ロガー. */
+    private final Logger mLogger = Logger.getLogger("dconnect.server");
+
+    /** pingを送信するインターバル[msec]. */
+    private final long mInterval;
+
+    /** 死んでいるとみなすまでにpongが返ってこなかったインターバルの回数. */
+    private final int mThreshold;
+
+    /** Keep-Alive対象のWebSocketと、pongが返ってこなかったインターバルの回数. */
+    private final Map<Target, AtomicInteger> mTargets = new ConcurrentHashMap<Target, AtomicInteger>();
+
+    /** 切断したWebSocketの数. */
+    private final AtomicLong mReapedCount = new AtomicLong();
+
+    /** Keep-Alive処理と強制切断を行うスレッド. */
+    private volatile ScheduledExecutorService mScheduler;
+
+    /** Keep-Alive処理で送信中のWebSocket. */
+    private volatile Target mSending;
+
+    /** Keep-Alive処理で送信を開始した時刻[msec]. */
+    private volatile long mSendingSince;
+
+    /** Keep-Alive処理. */
+    private final Runnable mSweeper = new Runnable() {
+        @Override
+        public void run() {
+            sweep();
+        }
+    };
+
+    /** 送信が終わらないWebSocketの監視処理. */
+    private final Runnable mWatchdog = new Runnable() {
+        @Override
+        public void run() {
+            checkStalledSend();
+        }
+    };
+
+    /**
+     * コンストラクタ.
+     *
+     * @param interval pingを送信するインターバル[msec]
+     * @param threshold 死んでいるとみなすまでにpongが返ってこなかったインターバルの回数
+     */
+    public WebSocketKeepAliveManager(final long interval, final int threshold) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval must be larger than 0.");
+        }
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("threshold must be larger than 0.");
+        }
+        mInterval = interval;
+        mThreshold = threshold;
+    }
+
+    /**
+     * Keep-Alive処理を開始する.
+     */
+    public synchronized void start() {
+        if (mScheduler != null) {
+            return;
+        }
+        // Keep-Alive処理が送信で止まっている間も強制切断を行えるように2スレッドにする
+        mScheduler = new ScheduledThreadPoolExecutor(2, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(r, "dconnect-websocket-keepalive");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mScheduler.scheduleAtFixedRate(mSweeper, mInterval, mInterval, TimeUnit.MILLISECONDS);
+        mScheduler.scheduleAtFixedRate(mWatchdog, mInterval, mInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Keep-Alive処理を停止する.
+     * <p>
+     * 登録されていたWebSocketは全て登録解除する。
+     * </p>
+     */
+    public synchronized void stop() {
+        if (mScheduler != null) {
+            mScheduler.shutdownNow();
+            mScheduler = null;
+        }
+        mTargets.clear();
+    }
+
+    /**
+     * WebSocketをKeep-Aliveの対象に登録する.
+     *
+     * @param target WebSocket
+     */
+    public void register(final Target target) {
+        mTargets.put(target, new AtomicInteger());
+    }
+
+    /**
+     * WebSocketをKeep-Aliveの対象から外す.
+     *
+     * @param target WebSocket
+     */
+    public void unregister(final Target target) {
+        mTargets.remove(target);
+    }
+
+    /**
+     * WebSocketからpongを受信したことを通知する.
+     *
+     * @param target WebSocket
+     */
+    public void onPong(final Target target) {
+        AtomicInteger missed = mTargets.get(target);
+        if (missed != null) {
+            missed.set(0);
+        }
+    }
+
+    /**
+     * Keep-Alive対象のWebSocketの数を取得する.
+     *
+     * @return WebSocketの数
+     */
+    public int getTargetCount() {
+        return mTargets.size();
+    }
+
+    /**
+     * 死んでいるとみなして切断したWebSocketの数を取得する.
+     *
+     * @return 切断したWebSocketの数
+     */
+    public long getReapedCount() {
+        return mReapedCount.get();
+    }
+
+    /**
+     * 全WebSocketのpongの受信状況を確認し、pingを送信する.
+     */
+    void sweep() {
+        for (Iterator<Map.Entry<Target, AtomicInteger>> it = mTargets.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Target, AtomicInteger> entry = it.next();
+            Target target = entry.getKey();
+            mSendingSince = System.currentTimeMillis();
+            mSending = target;
+            try {
+                if (entry.getValue().get() >= mThreshold) {
+                    it.remove();
+                    mReapedCount.incrementAndGet();
+                    target.reap();
+                    scheduleTerminate(target);
+                } else {
+                    // ping送信直後に届いたpongを取りこぼさないように、送信前に数えておく
+                    entry.getValue().incrementAndGet();
+                    if (!target.ping()) {
+                        // 送信中で送れなかった場合は、pongが返ってこなかった回数に数えない
+                        decrementMissed(entry.getValue());
+                    }
+                }
+            } catch (IOException e) {
+                it.remove();
+                mReapedCount.incrementAndGet();
+                target.onPingFailed(e);
+            } catch (RuntimeException e) {
+                mLogger.warning("Exception in the WebSocketKeepAliveManager#sweep() method. " + e.toString());
+            } finally {
+                mSending = null;
+            }
+        }
+    }
+
+    /**
+     * pongが返ってこなかった回数を1つ戻す.
+     * <p>
+     * 送信中にpongを受信して0に戻っている場合はそのままにする。
+     * </p>
+     *
+     * @param missed pongが返ってこなかった回数
+     */
+    private static void decrementMissed(final AtomicInteger missed) {
+        int current;
+        do {
+            current = missed.get();
+            if (current <= 0) {
+                return;
+            }
+        } while (!missed.compareAndSet(current, current - 1));
+    }
+
+    /**
+     * Keep-Alive処理の送信がインターバル以上終わっていない場合、そのWebSocketを強制的に切断する.
+     */
+    void checkStalledSend() {
+        Target target = mSending;
+        if (target != null && System.currentTimeMillis() - mSendingSince >= mInterval) {
+            mLogger.warning("WebSocket keep-alive send is stalled. Terminating the connection.");
+            terminate(target);
+        }
+    }
+
+    /**
+     * 切断要求を送ったWebSocketが閉じない場合に備えて、インターバル後に強制的に切断する.
+     *
+     * @param target WebSocket
+     */
+    private void scheduleTerminate(final Target target) {
+        ScheduledExecutorService scheduler = mScheduler;
+        if (scheduler == null) {
+            return;
+        }
+        try {
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    terminate(target);
+                }
+            }, mInterval, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // 停止済みの場合は何もしない
+        }
+    }
+
+    /**
+     * WebSocketを強制的に切断する.
+     *
+     * @param target WebSocket
+     */
+    private void terminate(final Target target) {
+        try {
+            target.terminate();
+        } catch (RuntimeException e) {
+            mLogger.warning("Exception in the WebSocketKeepAliveManager#terminate() method. " + e.toString());
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ NanoHTTPDKeepAliveTest.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package fi.iki.elonen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fi.iki.elonen.NanoHTTPD.Response.Status;
+
+/**
+ * Tests for persistent and pipelined connections of {@link NanoHTTPD}.
+ */
+public class NanoHTTPDKeepAliveTest {
+
+    /** Server which answers with the requested URI, and the raw URI in a header. */
+    private NanoHTTPD mServer;
+
+    /** Connection to the server. */
+    private Socket mSocket;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new NanoHTTPD("127.0.0.1", 0) {
+            @Override
+            public Response serve(IHTTPSession session) {
+                Response response = new Response(Status.OK, MIME_PLAINTEXT, session.getUri());
+                response.addHeader("X-Raw-Uri", session.getRawUri());
+                return response;
+            }
+        };
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (mSocket != null) {
+            mSocket.close();
+        }
+        mServer.stop();
+    }
+
+    /**
+     * An HTTP/1.1 connection serves several requests, also when they are pipelined.
+     */
+    @Test
+    public void testPipelinedRequests() throws IOException {
+        connect();
+        write("GET /a HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                + "GET /b HTTP/1.1\r\nHost: localhost\r\n\r\n");
+
+        assertEquals("/a", readResponse().body);
+        assertEquals("/b", readResponse().body);
+
+        write("GET /c HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        HttpResponse third = readResponse();
+        assertEquals("/c", third.body);
+        assertEquals("keep-alive", third.headers.get("connection"));
+    }
+
+    /**
+     * The part of a request body which the handler did not read is skipped
+     * before the next request on the connection is parsed.
+     */
+    @Test
+    public void testUnreadBodyIsSkipped() throws IOException {
+        connect();
+        write("PUT /a HTTP/1.1\r\nHost: localhost\r\nContent-Length: 5\r\n\r\nhello"
+                + "GET /b HTTP/1.1\r\nHost: localhost\r\n\r\n");
+
+        assertEquals("/a", readResponse().body);
+        assertEquals("/b", readResponse().body);
+    }
+
+    /**
+     * An HTTP/1.0 connection is closed after the response unless the client asks for keep-alive.
+     */
+    @Test
+    public void testHttp10ConnectionIsClosed() throws IOException {
+        connect();
+        write("GET /a HTTP/1.0\r\n\r\n");
+
+        HttpResponse response = readResponse();
+        assertEquals("/a", response.body);
+        assertEquals("close", response.headers.get("connection"));
+        assertEquals(-1, mSocket.getInputStream().read());
+    }
+
+    /**
+     * An HTTP/1.0 connection with "Connection: keep-alive" is kept open.
+     */
+    @Test
+    public void testHttp10KeepAlive() throws IOException {
+        connect();
+        write("GET /a HTTP/1.0\r\nConnection: keep-alive\r\n\r\n");
+        assertEquals("/a", readResponse().body);
+
+        write("GET /b HTTP/1.0\r\nConnection: keep-alive\r\n\r\n");
+        assertEquals("/b", readResponse().body);
+    }
+
+    /**
+     * "Connection: close" from the client closes the connection after the response.
+     */
+    @Test
+    public void testConnectionCloseFromClient() throws IOException {
+        connect();
+        write("GET /a HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+
+        HttpResponse response = readResponse();
+        assertEquals("close", response.headers.get("connection"));
+        assertEquals(-1, mSocket.getInputStream().read());
+    }
+
+    /**
+     * The last request allowed on a connection gets "Connection: close".
+     */
+    @Test
+    public void testMaxRequestsPerConnection() throws IOException {
+        mServer.setMaxRequestsPerConnection(2);
+        connect();
+        write("GET /a HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        HttpResponse first = readResponse();
+        assertEquals("keep-alive", first.headers.get("connection"));
+
+        write("GET /b HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        HttpResponse second = readResponse();
+        assertEquals("/b", second.body);
+        assertEquals("close", second.headers.get("connection"));
+        assertEquals(-1, mSocket.getInputStream().read());
+    }
+
+    /**
+     * An idle persistent connection is closed after the keep-alive timeout.
+     */
+    @Test
+    public void testKeepAliveTimeout() throws IOException {
+        mServer.setKeepAliveTimeout(200);
+        connect();
+        write("GET /a HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        assertEquals("/a", readResponse().body);
+
+        assertEquals(-1, mSocket.getInputStream().read());
+    }
+
+    /**
+     * Each request on a connection exposes its own path before percent-decoding.
+     */
+    @Test
+    public void testRawUri() throws IOException {
+        connect();
+        write("GET /a%2Fb?c=%2F HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                + "GET /d HTTP/1.1\r\nHost: localhost\r\n\r\n");
+
+        HttpResponse first = readResponse();
+        assertEquals("/a/b", first.body);
+        assertEquals("/a%2Fb", first.headers.get("x-raw-uri"));
+        HttpResponse second = readResponse();
+        assertEquals("/d", second.body);
+        assertEquals("/d", second.headers.get("x-raw-uri"));
+    }
+
+    private void connect() throws IOException {
+        mServer.start();
+        mSocket = new Socket("127.0.0.1", mServer.getListeningPort());
+        mSocket.setSoTimeout(5000);
+    }
+
+    private void write(String request) throws IOException {
+        OutputStream out = mSocket.getOutputStream();
+        out.write(request.getBytes("US-ASCII"));
+        out.flush();
+    }
+
+    /**
+     * Reads one response with a Content-Length from the connection.
+     */
+    private HttpResponse readResponse() throws IOException {
+        InputStream in = mSocket.getInputStream();
+        HttpResponse response = new HttpResponse();
+        response.status = readLine(in);
+        assertTrue(response.status.startsWith("HTTP/1.1 200 OK"));
+        String line;
+        while ((line = readLine(in)).length() > 0) {
+            int colon = line.indexOf(':');
+            response.headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US),
+                    line.substring(colon + 1).trim());
+        }
+        String length = response.headers.get("content-length");
+        assertNull(response.headers.get("transfer-encoding"));
+        byte[] body = new byte[Integer.parseInt(length)];
+        int offset = 0;
+        while (offset < body.length) {
+            int read = in.read(body, offset, body.length - offset);
+            if (read < 0) {
+                throw new IOException("Unexpected end of stream.");
+            }
+            offset += read;
+        }
+        response.body = new String(body, "US-ASCII");
+        return response;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                throw new IOException("Unexpected end of stream.");
+            }
+            if (c != '\r') {
+                line.write(c);
+            }
+        }
+        return line.toString("US-ASCII");
+    }
+
+    private static class HttpResponse {
+        String status;
+        final Map<String, String> headers = new HashMap<String, String>();
+        String body;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ NanoHTTPDTest.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package fi.iki.elonen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fi.iki.elonen.NanoHTTPD.Method;
+import fi.iki.elonen.NanoHTTPD.Response;
+import fi.iki.elonen.NanoHTTPD.Response.Status;
+
+/**
+ * Tests for {@link NanoHTTPD}.
+ */
+public class NanoHTTPDTest {
+
+    /** File served by the tests. */
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("nanohttpd", ".txt");
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write("0123456789".getBytes("US-ASCII"));
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    /**
+     * A response with a file sends the whole file with its length.
+     */
+    @Test
+    public void testSendWholeFile() throws IOException {
+        Response response = new Response(Status.OK, "text/plain", (InputStream) null);
+        response.setFile(mFile, 0, mFile.length());
+
+        String sent = send(response, Method.GET);
+        assertTrue(sent.startsWith("HTTP/1.1 200 OK"));
+        assertTrue(sent.contains("\r\nContent-Length: 10\r\n"));
+        assertEquals("0123456789", body(sent));
+    }
+
+    /**
+     * A response with a part of a file sends only that part.
+     */
+    @Test
+    public void testSendFileRange() throws IOException {
+        Response response = new Response(Status.PARTIAL_CONTENT, "text/plain", (InputStream) null);
+        response.setFile(mFile, 2, 3);
+        response.addHeader("Content-Range", "bytes 2-4/10");
+
+        String sent = send(response, Method.GET);
+        assertTrue(sent.startsWith("HTTP/1.1 206 Partial Content"));
+        assertTrue(sent.contains("\r\nContent-Length: 3\r\n"));
+        assertTrue(sent.contains("\r\nContent-Range: bytes 2-4/10\r\n"));
+        assertEquals("234", body(sent));
+    }
+
+    /**
+     * A response to HEAD sends the length of the file but not its content.
+     */
+    @Test
+    public void testSendFileToHead() throws IOException {
+        Response response = new Response(Status.OK, "text/plain", (InputStream) null);
+        response.setFile(mFile, 0, mFile.length());
+
+        String sent = send(response, Method.HEAD);
+        assertTrue(sent.contains("\r\nContent-Length: 10\r\n"));
+        assertEquals("", body(sent));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetFileRejectsNegativeOffset() {
+        new Response(Status.OK, "text/plain", (InputStream) null).setFile(mFile, -1, 1);
+    }
+
+    private static String send(Response response, Method method) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.setRequestMethod(method);
+        response.send(out);
+        return out.toString("US-ASCII");
+    }
+
+    private static String body(String sent) {
+        return sent.substring(sent.indexOf("\r\n\r\n") + 4);
+    }
+}
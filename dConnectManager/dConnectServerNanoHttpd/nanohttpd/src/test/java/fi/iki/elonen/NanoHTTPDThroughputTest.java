@@ -0,0 +1,184 @@
+/*
+ NanoHTTPDThroughputTest.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package fi.iki.elonen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Locale;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fi.iki.elonen.NanoHTTPD.Response.Status;
+
+/**
+ * Compares the loopback throughput of persistent connections with a new
+ * connection per request.
+ * <p>
+ * Throughput depends on the machine, so the results (requests per second) are
+ * printed and the test only checks that every request was answered.
+ * </p>
+ */
+public class NanoHTTPDThroughputTest {
+
+    /** Requests sent before measuring. */
+    private static final int WARMUP_COUNT = 500;
+
+    /** Requests sent in each measurement. */
+    private static final int MEASURE_COUNT = 2000;
+
+    /** Number of measurements of each mode. */
+    private static final int ROUND_COUNT = 3;
+
+    /** Body of every response. */
+    private static final String BODY = "{\"result\":0}";
+
+    /** Server which answers every request with the same small body. */
+    private NanoHTTPD mServer;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new NanoHTTPD("127.0.0.1", 0) {
+            @Override
+            public Response serve(IHTTPSession session) {
+                return new Response(Status.OK, "application/json", BODY);
+            }
+        };
+        mServer.setMaxRequestsPerConnection(0);
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    /**
+     * Sends the same number of requests over one persistent connection and over
+     * a new connection per request, and prints the requests per second of both.
+     */
+    @Test
+    public void testKeepAliveThroughput() throws IOException {
+        sendKeepAlive(WARMUP_COUNT);
+        sendPerConnection(WARMUP_COUNT);
+        for (int round = 0; round < ROUND_COUNT; round++) {
+            long keepAlive = sendKeepAlive(MEASURE_COUNT);
+            long perConnection = sendPerConnection(MEASURE_COUNT);
+            System.out.println(String.format(Locale.US,
+                    "NanoHTTPD round %d: keep-alive %.0f req/s, connection per request %.0f req/s (%.2fx)",
+                    round, perSecond(keepAlive), perSecond(perConnection), (double) perConnection / keepAlive));
+        }
+    }
+
+    /**
+     * Sends requests one after another over a single persistent connection.
+     *
+     * @return elapsed time in nanoseconds
+     */
+    private long sendKeepAlive(int count) throws IOException {
+        long start = System.nanoTime();
+        Socket socket = connect();
+        try {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            byte[] request = "GET /gotapi/availability HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes("US-ASCII");
+            for (int i = 0; i < count; i++) {
+                out.write(request);
+                out.flush();
+                assertEquals("keep-alive", readResponse(in));
+            }
+        } finally {
+            socket.close();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Sends each request over a new connection which is closed after the response.
+     *
+     * @return elapsed time in nanoseconds
+     */
+    private long sendPerConnection(int count) throws IOException {
+        long start = System.nanoTime();
+        byte[] request = "GET /gotapi/availability HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+                .getBytes("US-ASCII");
+        for (int i = 0; i < count; i++) {
+            Socket socket = connect();
+            try {
+                OutputStream out = socket.getOutputStream();
+                out.write(request);
+                out.flush();
+                assertEquals("close", readResponse(new BufferedInputStream(socket.getInputStream())));
+            } finally {
+                socket.close();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket("127.0.0.1", mServer.getListeningPort());
+        socket.setSoTimeout(5000);
+        socket.setTcpNoDelay(true);
+        return socket;
+    }
+
+    private static double perSecond(long elapsed) {
+        return MEASURE_COUNT * 1000000000.0 / elapsed;
+    }
+
+    /**
+     * Reads one response with a Content-Length and checks its status and body.
+     *
+     * @return value of the Connection header
+     */
+    private static String readResponse(InputStream in) throws IOException {
+        assertTrue(readLine(in).startsWith("HTTP/1.1 200 OK"));
+        String connection = null;
+        int length = -1;
+        String line;
+        while ((line = readLine(in)).length() > 0) {
+            int colon = line.indexOf(':');
+            String name = line.substring(0, colon).trim().toLowerCase(Locale.US);
+            String value = line.substring(colon + 1).trim();
+            if (name.equals("connection")) {
+                connection = value;
+            } else if (name.equals("content-length")) {
+                length = Integer.parseInt(value);
+            }
+        }
+        byte[] body = new byte[length];
+        int offset = 0;
+        while (offset < body.length) {
+            int read = in.read(body, offset, body.length - offset);
+            if (read < 0) {
+                throw new IOException("Unexpected end of stream.");
+            }
+            offset += read;
+        }
+        assertEquals(BODY, new String(body, "US-ASCII"));
+        return connection;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0 && c != '\n') {
+            if (c != '\r') {
+                sb.append((char) c);
+            }
+        }
+        return sb.toString();
+    }
+}
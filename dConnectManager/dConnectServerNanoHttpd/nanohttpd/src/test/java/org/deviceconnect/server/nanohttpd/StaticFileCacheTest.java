@@ -0,0 +1,205 @@
+/*
+ StaticFileCacheTest.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.server.nanohttpd;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * {@link StaticFileCache}のテスト.
+ *
+ * @author NTT DOCOMO, INC.
+ */
+public class StaticFileCacheTest {
+
+    /** テスト用の作業ディレクトリ. */
+    private File mWorkDir;
+
+    /** ドキュメントルート. */
+    private File mRoot;
+
+    /** テスト対象. */
+    private StaticFileCache mCache;
+
+    /**
+     * テストの準備.
+     *
+     * @throws IOException ディレクトリが作成できない場合
+     */
+    @Before
+    public void setUp() throws IOException {
+        mWorkDir = File.createTempFile("static", "");
+        assertTrue(mWorkDir.delete());
+        assertTrue(mWorkDir.mkdir());
+        mRoot = new File(mWorkDir, "root");
+        assertTrue(mRoot.mkdir());
+        mCache = new StaticFileCache(mRoot.getPath());
+    }
+
+    /**
+     * テストの後始末.
+     */
+    @After
+    public void tearDown() {
+        delete(mWorkDir);
+    }
+
+    /**
+     * 更新されていないファイルはキャッシュを再利用することを確認する.
+     *
+     * @throws IOException ファイルの操作に失敗した場合
+     */
+    @Test
+    public void testReusesEntryWhileFileIsUnchanged() throws IOException {
+        File file = write(new File(mRoot, "index.html"), "hello");
+
+        StaticFileCache.CachedFile first = mCache.get(file);
+        assertNotNull(first);
+        assertTrue(first.isReadable());
+        assertEquals(5, first.getLength());
+        assertEquals(file.getCanonicalFile(), first.getFile());
+        assertSame(first, mCache.get(new File(mRoot, "index.html")));
+    }
+
+    /**
+     * ファイルが更新された場合はキャッシュを作り直し、ETagが変わることを確認する.
+     *
+     * @throws IOException ファイルの操作に失敗した場合
+     */
+    @Test
+    public void testRebuildsEntryWhenFileChanges() throws IOException {
+        File file = write(new File(mRoot, "index.html"), "hello");
+        StaticFileCache.CachedFile first = mCache.get(file);
+
+        write(file, "hello, world");
+        assertTrue(file.setLastModified(first.getFile().lastModified() + 2000));
+        StaticFileCache.CachedFile second = mCache.get(file);
+
+        assertNotSame(first, second);
+        assertEquals(12, second.getLength());
+        assertFalse(first.getETag().equals(second.getETag()));
+    }
+
+    /**
+     * 存在しないファイルやディレクトリはnullを返すことを確認する.
+     *
+     * @throws IOException ファイルの操作に失敗した場合
+     */
+    @Test
+    public void testMissingFileAndDirectory() throws IOException {
+        File file = write(new File(mRoot, "index.html"), "hello");
+        assertNotNull(mCache.get(file));
+        assertTrue(file.delete());
+
+        assertNull(mCache.get(file));
+        assertNull(mCache.get(mRoot));
+    }
+
+    /**
+     * ドキュメントルートより上の階層のファイルは読み込み不可とすることを確認する.
+     *
+     * @throws IOException ファイルの操作に失敗した場合
+     */
+    @Test
+    public void testRejectsFileOutsideDocumentRoot() throws IOException {
+        write(new File(mWorkDir, "secret.txt"), "secret");
+
+        StaticFileCache.CachedFile entry = mCache.get(new File(mRoot, "../secret.txt"));
+        assertNotNull(entry);
+        assertFalse(entry.isReadable());
+    }
+
+    /**
+     * 先頭と末尾を指定したRangeを解析できることを確認する.
+     */
+    @Test
+    public void testParseRange() {
+        assertArrayEquals(new long[] {0, 9}, StaticFileCache.parseRange("bytes=0-9", 100));
+        assertArrayEquals(new long[] {10, 99}, StaticFileCache.parseRange("bytes=10-", 100));
+        assertArrayEquals(new long[] {90, 99}, StaticFileCache.parseRange("bytes=90-200", 100));
+        assertArrayEquals(new long[] {50, 50}, StaticFileCache.parseRange("bytes= 50-50 ", 100));
+    }
+
+    /**
+     * 末尾からのバイト数を指定したRangeを解析できることを確認する.
+     */
+    @Test
+    public void testParseSuffixRange() {
+        assertArrayEquals(new long[] {80, 99}, StaticFileCache.parseRange("bytes=-20", 100));
+        assertArrayEquals(new long[] {0, 99}, StaticFileCache.parseRange("bytes=-500", 100));
+    }
+
+    /**
+     * 満たせないRangeには空の配列を返すことを確認する.
+     */
+    @Test
+    public void testUnsatisfiableRange() {
+        assertEquals(0, StaticFileCache.parseRange("bytes=100-", 100).length);
+        assertEquals(0, StaticFileCache.parseRange("bytes=-0", 100).length);
+        assertEquals(0, StaticFileCache.parseRange("bytes=-10", 0).length);
+    }
+
+    /**
+     * 解析できないRangeや複数の範囲にはnullを返し、ファイル全体を返却させることを確認する.
+     */
+    @Test
+    public void testIgnoredRange() {
+        assertNull(StaticFileCache.parseRange(null, 100));
+        assertNull(StaticFileCache.parseRange("items=0-9", 100));
+        assertNull(StaticFileCache.parseRange("bytes=0-9,20-29", 100));
+        assertNull(StaticFileCache.parseRange("bytes=9-0", 100));
+        assertNull(StaticFileCache.parseRange("bytes=a-b", 100));
+        assertNull(StaticFileCache.parseRange("bytes=10", 100));
+    }
+
+    /**
+     * ファイルに文字列を書き込む.
+     *
+     * @param file ファイル
+     * @param text 文字列
+     * @return ファイル
+     * @throws IOException 書き込みに失敗した場合
+     */
+    private static File write(final File file, final String text) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(text.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * ファイルやディレクトリを再帰的に削除する.
+     *
+     * @param file ファイルやディレクトリ
+     */
+    private static void delete(final File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ WebSocketKeepAliveManagerTest.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.server.nanohttpd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * {@link WebSocketKeepAliveManager}のテスト.
+ *
+ * @author NTT DOCOMO, INC.
+ */
+public class WebSocketKeepAliveManagerTest {
+
+    /** テスト対象. */
+    private WebSocketKeepAliveManager mManager;
+
+    /**
+     * テストの後始末.
+     */
+    @After
+    public void tearDown() {
+        if (mManager != null) {
+            mManager.stop();
+        }
+    }
+
+    /**
+     * pongが返ってこないまま閾値に達したWebSocketを切断することを確認する.
+     */
+    @Test
+    public void testReapsTargetWithoutPong() {
+        mManager = new WebSocketKeepAliveManager(1000, 2);
+        FakeTarget target = new FakeTarget();
+        mManager.register(target);
+
+        mManager.sweep();
+        mManager.sweep();
+        assertEquals(2, target.mPingCount);
+        assertEquals(0, target.mReapCount);
+
+        mManager.sweep();
+        assertEquals(1, target.mReapCount);
+        assertEquals(0, mManager.getTargetCount());
+        assertEquals(1, mManager.getReapedCount());
+    }
+
+    /**
+     * pongを受信したWebSocketは切断しないことを確認する.
+     */
+    @Test
+    public void testPongKeepsTargetAlive() {
+        mManager = new WebSocketKeepAliveManager(1000, 2);
+        FakeTarget target = new FakeTarget();
+        mManager.register(target);
+
+        for (int i = 0; i < 10; i++) {
+            mManager.sweep();
+            mManager.onPong(target);
+        }
+        assertEquals(10, target.mPingCount);
+        assertEquals(0, target.mReapCount);
+        assertEquals(1, mManager.getTargetCount());
+    }
+
+    /**
+     * 送信中でpingを送れなかったWebSocketは、pongが返ってこなかったものとして数えずに切断しないことを確認する.
+     */
+    @Test
+    public void testBusyTargetIsNotReaped() {
+        mManager = new WebSocketKeepAliveManager(1000, 1);
+        FakeTarget target = new FakeTarget();
+        target.mBusy = true;
+        mManager.register(target);
+
+        for (int i = 0; i < 10; i++) {
+            mManager.sweep();
+        }
+        assertEquals(0, target.mPingCount);
+        assertEquals(0, target.mReapCount);
+        assertEquals(1, mManager.getTargetCount());
+
+        // 送信が終わった後は通常通りpingを送り、pongが返ってこなければ切断する
+        target.mBusy = false;
+        mManager.sweep();
+        assertEquals(1, target.mPingCount);
+        mManager.sweep();
+        assertEquals(1, target.mReapCount);
+        assertEquals(1, mManager.getReapedCount());
+    }
+
+    /**
+     * pingの送信に失敗したWebSocketを登録解除して通知することを確認する.
+     */
+    @Test
+    public void testPingFailure() {
+        mManager = new WebSocketKeepAliveManager(1000, 2);
+        FakeTarget target = new FakeTarget();
+        target.mFail = true;
+        mManager.register(target);
+
+        mManager.sweep();
+        assertEquals(1, target.mPingFailedCount);
+        assertEquals(0, mManager.getTargetCount());
+        assertEquals(1, mManager.getReapedCount());
+    }
+
+    /**
+     * 切断要求を送っても閉じないWebSocketを強制的に切断することを確認する.
+     *
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    @Test
+    public void testReapedTargetIsTerminatedAfterTimeout() throws InterruptedException {
+        mManager = new WebSocketKeepAliveManager(50, 1);
+        FakeTarget target = new FakeTarget();
+        mManager.register(target);
+        mManager.start();
+
+        assertTrue(target.mTerminated.await(5, TimeUnit.SECONDS));
+        assertEquals(1, target.mReapCount);
+    }
+
+    /**
+     * pingの送信が終わらないWebSocketを強制的に切断し、他のWebSocketのKeep-Aliveが続くことを確認する.
+     *
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    @Test
+    public void testStalledPingIsTerminated() throws InterruptedException {
+        mManager = new WebSocketKeepAliveManager(50, 100);
+        StalledTarget stalled = new StalledTarget();
+        FakeTarget healthy = new FakeTarget();
+        mManager.register(stalled);
+        mManager.register(healthy);
+        mManager.start();
+
+        assertTrue(stalled.mTerminated.await(5, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (healthy.mPingCount < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(healthy.mPingCount >= 3);
+        assertFalse(healthy.mTerminated.getCount() == 0);
+    }
+
+    /**
+     * 呼び出しを記録するKeep-Alive対象.
+     */
+    private static class FakeTarget implements WebSocketKeepAliveManager.Target {
+        /** 送信中として振る舞うフラグ. */
+        volatile boolean mBusy;
+        /** pingの送信に失敗するフラグ. */
+        volatile boolean mFail;
+        /** pingを送信した回数. */
+        volatile int mPingCount;
+        /** 切断を開始した回数. */
+        volatile int mReapCount;
+        /** pingの送信失敗を通知された回数. */
+        volatile int mPingFailedCount;
+        /** 強制的に切断されたことを通知するラッチ. */
+        final CountDownLatch mTerminated = new CountDownLatch(1);
+
+        @Override
+        public boolean ping() throws IOException {
+            if (mFail) {
+                throw new IOException("Broken pipe.");
+            }
+            if (mBusy) {
+                return false;
+            }
+            mPingCount++;
+            return true;
+        }
+
+        @Override
+        public void reap() {
+            mReapCount++;
+        }
+
+        @Override
+        public void terminate() {
+            mTerminated.countDown();
+        }
+
+        @Override
+        public void onPingFailed(final IOException e) {
+            mPingFailedCount++;
+        }
+    }
+
+    /**
+     * 強制的に切断されるまでpingの送信が終わらないKeep-Alive対象.
+     */
+    private static class StalledTarget implements WebSocketKeepAliveManager.Target {
+        /** 強制的に切断されたことを通知するラッチ. */
+        final CountDownLatch mTerminated = new CountDownLatch(1);
+
+        @Override
+        public boolean ping() throws IOException {
+            try {
+                mTerminated.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException("Socket closed.");
+        }
+
+        @Override
+        public void reap() {
+        }
+
+        @Override
+        public void terminate() {
+            mTerminated.countDown();
+        }
+
+        @Override
+        public void onPingFailed(final IOException e) {
+        }
+    }
+}
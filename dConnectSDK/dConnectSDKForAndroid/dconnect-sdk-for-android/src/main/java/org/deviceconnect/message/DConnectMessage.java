@@ -286,7 +286,11 @@ public interface DConnectMessage extends Map<String, Object> {
         /**
          * リクエストの発行元が不正.
          */
-        INVALID_ORIGIN(18, "Origin of request is invalid.");
+        INVALID_ORIGIN(18, "Origin of request is invalid."),
+        /**
+         * デバイスプラグインが一時的に利用できない.
+         */
+        DEVICE_PLUGIN_UNAVAILABLE(19, "Device plug-in is temporarily unavailable.");
 
         /**
          * エラーコード.